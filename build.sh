@@ -24,16 +24,12 @@ fi
 
 # Compile the code
 echo "Compiling source code..."
-javac -cp "$SYNTHEA_JAR" -d build src/main/java/com/healthcaremock/generator/EnhancedPatientData.java
-javac -cp "$SYNTHEA_JAR:build" -d build src/main/java/com/healthcaremock/generator/EnhancedGenerator.java
-javac -cp "$SYNTHEA_JAR:build" -d build src/main/java/com/healthcaremock/generator/HealthcareDataGenerator.java
-
-# Check if compilation succeeded
-if [ $? -ne 0 ]; then
+javac -encoding UTF-8 -cp "$SYNTHEA_JAR" -d build $(find src/main/java -name "*.java") || {
     echo "Compilation failed"
     exit 1
-fi
+}
+cp src/main/resources/*.properties build/
 
 # Run the application
 echo "Running Healthcare Data Generator..."
-java -cp "build:$SYNTHEA_JAR" com.healthcaremock.generator.HealthcareDataGenerator "$@" 
\ No newline at end of file
+java $JAVA_OPTS -cp "build:$SYNTHEA_JAR" com.healthcaremock.generator.HealthcareDataGenerator "$@" 
\ No newline at end of file
@@ -0,0 +1,87 @@
+package com.healthcaremock.generator.benchmark;
+
+import com.healthcaremock.generator.EnhancedPatientData;
+import com.healthcaremock.generator.config.ConfigManager;
+import com.healthcaremock.generator.enrichment.EnrichmentPipeline;
+import com.healthcaremock.generator.enrichment.ImagingEnricher;
+import com.healthcaremock.generator.enrichment.PatientReportedOutcomeEnricher;
+import com.healthcaremock.generator.enrichment.SocialDeterminantsEnricher;
+import com.healthcaremock.generator.enrichment.WearableEnricher;
+import org.mitre.synthea.engine.Generator;
+import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.world.agents.Person;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Shared inputs for the benchmarks: configuration, a generator and a simulated patient with
+ * every kind of enrichment data, all from a fixed seed so runs are comparable.
+ */
+final class BenchmarkFixtures {
+    static final long SEED = 20240101L;
+    
+    // Enough encounters that per-encounter enrichers produce imaging reports and questionnaires
+    private static final int MIN_ENCOUNTERS = 20;
+    private static final int MAX_CANDIDATES = 100;
+    
+    private BenchmarkFixtures() {
+    }
+    
+    /**
+     * Loads the Synthea and project configuration the way the generator does.
+     * @throws IOException if synthea.properties cannot be read.
+     */
+    static void loadConfig() throws IOException {
+        if (Config.get("exporter.baseDirectory") == null) {
+            Config.load(new File("src/main/resources/synthea.properties"));
+        }
+        ConfigManager.initialize();
+    }
+    
+    /**
+     * Creates a Synthea generator with default options and the fixed seed.
+     * @return The generator.
+     */
+    static Generator createGenerator() {
+        Generator.GeneratorOptions options = new Generator.GeneratorOptions();
+        options.population = 1;
+        options.seed = SEED;
+        return new Generator(options);
+    }
+    
+    /**
+     * Simulates the first person, by index from the fixed seed, whose record has enough
+     * encounters to exercise the per-encounter model factories.
+     * @return The person.
+     * @throws IllegalStateException if no such person turns up.
+     */
+    static Person simulatedPerson() {
+        Generator generator = createGenerator();
+        for (int index = 0; index < MAX_CANDIDATES; index++) {
+            Person person = generator.generatePerson(index, SEED + index);
+            if (person != null && person.record != null && person.record.encounters != null
+                    && person.record.encounters.size() >= MIN_ENCOUNTERS) {
+                return person;
+            }
+        }
+        throw new IllegalStateException("No simulated person with " + MIN_ENCOUNTERS + " encounters");
+    }
+    
+    /**
+     * Enriches a person with every enricher enabled, independent of the configured profile.
+     * @param person The simulated person.
+     * @return The enhanced patient.
+     */
+    static EnhancedPatientData enrichedPatient(Person person) {
+        EnrichmentPipeline pipeline = new EnrichmentPipeline(Arrays.asList(
+                new SocialDeterminantsEnricher(),
+                new WearableEnricher(7, 24, true, true, true, true, 0.05),
+                new ImagingEnricher(0.05, 0.3, true),
+                new PatientReportedOutcomeEnricher(0.1)));
+        EnhancedPatientData patient = new EnhancedPatientData(person);
+        patient.setExtendedData(pipeline.enrich(person));
+        return patient;
+    }
+}
@@ -0,0 +1,65 @@
+package com.healthcaremock.generator.benchmark;
+
+import com.healthcaremock.generator.config.ConfigManager;
+import org.mitre.synthea.helpers.Config;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of configuration lookups, which the enrichment and export setup performs
+ * for every job.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigBenchmark {
+    
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkFixtures.loadConfig();
+    }
+    
+    @Benchmark
+    public int getInteger() {
+        return ConfigManager.getAsInteger("wearable.data_points_per_day", 24);
+    }
+    
+    @Benchmark
+    public int getMissingInteger() {
+        return ConfigManager.getAsInteger("benchmark.missing_key", 24);
+    }
+    
+    @Benchmark
+    public double getDouble() {
+        return ConfigManager.getAsDouble("wearable.data_noise_factor", 0.05);
+    }
+    
+    @Benchmark
+    public boolean getBoolean() {
+        return ConfigManager.getAsBoolean("extended_data.wearable_device_data", false);
+    }
+    
+    @Benchmark
+    public String getString() {
+        return ConfigManager.getAsString("export.profile", "full");
+    }
+    
+    @Benchmark
+    public String getSyntheaProperty() {
+        return Config.get("exporter.baseDirectory");
+    }
+}
@@ -0,0 +1,83 @@
+package com.healthcaremock.generator.benchmark;
+
+import com.google.gson.Gson;
+import com.healthcaremock.generator.EnhancedPatientData;
+import com.healthcaremock.generator.export.ExportRecord;
+import com.healthcaremock.generator.export.ModelTypeAdapterFactory;
+import com.healthcaremock.generator.export.PatientJsonExporter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of JSON export for one fully enriched patient: the whole per-patient document as
+ * the JSON exporter writes it, and the extended data through the hand-written model adapters
+ * compared with Gson's reflective adapters. Output goes to a discarding writer, so only
+ * serialization is measured. Setup fails if the two paths write different JSON.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonExportBenchmark {
+    private final Gson adapters = ModelTypeAdapterFactory.gson();
+    private final Gson reflective = new Gson();
+    private final Writer sink = Writer.nullWriter();
+    private ExportRecord record;
+    private com.healthcaremock.generator.models.EnhancedPatientData extendedData;
+    private String extendedJson;
+    
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkFixtures.loadConfig();
+        EnhancedPatientData patient = BenchmarkFixtures.enrichedPatient(BenchmarkFixtures.simulatedPerson());
+        record = ExportRecord.of(patient);
+        extendedData = patient.getExtendedData();
+        extendedJson = adapters.toJson(extendedData);
+        // Only compare throughput of paths that produce the same document
+        if (!extendedJson.equals(reflective.toJson(extendedData))) {
+            throw new IllegalStateException("Model adapters and reflective Gson write different JSON");
+        }
+        if (!extendedJson.equals(adapters.toJson(readExtendedDataWithAdapters()))) {
+            throw new IllegalStateException("Model adapters do not read back the JSON they write");
+        }
+    }
+    
+    @Benchmark
+    public void exportPatient() throws IOException {
+        PatientJsonExporter.writeTo(record, sink, false);
+    }
+    
+    @Benchmark
+    public void writeExtendedDataWithAdapters() {
+        adapters.toJson(extendedData, sink);
+    }
+    
+    @Benchmark
+    public void writeExtendedDataReflectively() {
+        reflective.toJson(extendedData, sink);
+    }
+    
+    @Benchmark
+    public Object readExtendedDataWithAdapters() {
+        return adapters.fromJson(extendedJson, com.healthcaremock.generator.models.EnhancedPatientData.class);
+    }
+    
+    @Benchmark
+    public Object readExtendedDataReflectively() {
+        return reflective.fromJson(extendedJson, com.healthcaremock.generator.models.EnhancedPatientData.class);
+    }
+}
@@ -0,0 +1,95 @@
+package com.healthcaremock.generator.benchmark;
+
+import com.healthcaremock.generator.models.ImagingReport;
+import com.healthcaremock.generator.models.PatientReportedOutcome;
+import com.healthcaremock.generator.models.SocialDeterminantsOfHealth;
+import com.healthcaremock.generator.models.WearableData;
+import org.mitre.synthea.world.agents.Person;
+import org.mitre.synthea.world.concepts.HealthRecord.Encounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the enrichment model factories for one simulated person. The person is its
+ * own random number generator, as in the enrichment pipeline.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ModelFactoryBenchmark {
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    
+    private Person person;
+    private Encounter encounter;
+    private String patientId;
+    private long time;
+    
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkFixtures.loadConfig();
+        person = BenchmarkFixtures.simulatedPerson();
+        encounter = person.record.encounters.get(person.record.encounters.size() - 1);
+        patientId = person.attributes.get(Person.ID).toString();
+        time = encounter.start;
+    }
+    
+    @Benchmark
+    public WearableData wearableData() {
+        time += HOUR;
+        return WearableData.generateRandom(person, time, patientId, true, true, true, true, 0.05);
+    }
+    
+    @Benchmark
+    public ImagingReport xrayReport() {
+        return ImagingReport.generateRandomXray(person, person, encounter, true);
+    }
+    
+    @Benchmark
+    public ImagingReport xrayReportWithoutText() {
+        return ImagingReport.generateRandomXray(person, person, encounter, false);
+    }
+    
+    @Benchmark
+    public ImagingReport ctReport() {
+        return ImagingReport.generateRandomCT(person, person, encounter, true);
+    }
+    
+    @Benchmark
+    public ImagingReport ctReportWithoutText() {
+        return ImagingReport.generateRandomCT(person, person, encounter, false);
+    }
+    
+    @Benchmark
+    public PatientReportedOutcome painAssessment() {
+        return PatientReportedOutcome.generatePainAssessment(person, person, encounter);
+    }
+    
+    @Benchmark
+    public PatientReportedOutcome phq9() {
+        return PatientReportedOutcome.generatePHQ9(person, person, encounter);
+    }
+    
+    @Benchmark
+    public PatientReportedOutcome eq5d5l() {
+        return PatientReportedOutcome.generateEQ5D5L(person, person, encounter);
+    }
+    
+    @Benchmark
+    public SocialDeterminantsOfHealth socialDeterminants() {
+        return SocialDeterminantsOfHealth.generateRandom(person, person);
+    }
+}
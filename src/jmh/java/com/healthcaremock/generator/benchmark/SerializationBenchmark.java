@@ -0,0 +1,114 @@
+package com.healthcaremock.generator.benchmark;
+
+import com.healthcaremock.generator.EnhancedPatientData;
+import com.healthcaremock.generator.codec.ModelCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the binary model codec compared with Java serialization, for the extended
+ * data of one fully enriched patient.
+ *
+ * <p>Java serialization of the model itself goes through the codec, so the plain Java
+ * baseline serializes the model's parts instead, as it was written before the codec. The
+ * whole patient, Synthea person included, is measured as well: that is what spilling,
+ * population snapshots and the simulation cache pay per patient.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+    private EnhancedPatientData patient;
+    private com.healthcaremock.generator.models.EnhancedPatientData extendedData;
+    private Object[] parts;
+    private byte[] encoded;
+    private byte[] serializedModel;
+    private byte[] serializedParts;
+    
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkFixtures.loadConfig();
+        patient = BenchmarkFixtures.enrichedPatient(BenchmarkFixtures.simulatedPerson());
+        extendedData = patient.getExtendedData();
+        parts = new Object[] {
+            extendedData.getPatientId(),
+            extendedData.getSocialDeterminants(),
+            new ArrayList<>(extendedData.getWearableData()),
+            new ArrayList<>(extendedData.getImagingReports()),
+            new ArrayList<>(extendedData.getPatientReportedOutcomes()),
+            new HashMap<>(extendedData.getAdditionalData())
+        };
+        encoded = ModelCodec.encode(extendedData);
+        serializedModel = serialize(extendedData);
+        serializedParts = serialize(parts);
+    }
+    
+    @Benchmark
+    public byte[] encodeWithCodec() {
+        return ModelCodec.encode(extendedData);
+    }
+    
+    @Benchmark
+    public Object decodeWithCodec() {
+        return ModelCodec.decode(encoded);
+    }
+    
+    @Benchmark
+    public byte[] serializeModel() throws IOException {
+        return serialize(extendedData);
+    }
+    
+    @Benchmark
+    public Object deserializeModel() throws IOException, ClassNotFoundException {
+        return deserialize(serializedModel);
+    }
+    
+    @Benchmark
+    public byte[] serializeParts() throws IOException {
+        return serialize(parts);
+    }
+    
+    @Benchmark
+    public Object deserializeParts() throws IOException, ClassNotFoundException {
+        return deserialize(serializedParts);
+    }
+    
+    @Benchmark
+    public byte[] serializePatient() throws IOException {
+        return serialize(patient);
+    }
+    
+    private static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+            out.writeObject(value);
+        }
+        return buffer.toByteArray();
+    }
+    
+    private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.healthcaremock.generator.benchmark;
+
+import org.mitre.synthea.engine.Generator;
+import org.mitre.synthea.world.agents.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a full Synthea simulation per person. Each invocation simulates the next
+ * index with a seed derived from it, so a run covers the same sequence of people every time.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class SimulationBenchmark {
+    private Generator generator;
+    private int index;
+    
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkFixtures.loadConfig();
+        generator = BenchmarkFixtures.createGenerator();
+    }
+    
+    @Benchmark
+    public Person generatePerson() {
+        int next = index++;
+        return generator.generatePerson(next, BenchmarkFixtures.SEED + next);
+    }
+}
@@ -1,23 +1,61 @@
 package com.healthcaremock.generator;
 
+import com.healthcaremock.generator.config.ConfigManager;
+import com.healthcaremock.generator.enrichment.EnrichmentPipeline;
+import com.healthcaremock.generator.index.PopulationIndex;
+import com.healthcaremock.generator.index.PopulationQuery;
+import com.healthcaremock.generator.metrics.AllocationAccounting;
+import com.healthcaremock.generator.metrics.PipelineMetrics;
+import com.healthcaremock.generator.scheduler.JobScheduler;
+import com.healthcaremock.generator.scheduler.Priority;
+import com.healthcaremock.generator.scheduler.ScheduledJob;
+import com.healthcaremock.generator.stats.PopulationStatistics;
+import com.healthcaremock.generator.storage.PopulationSnapshot;
+import com.healthcaremock.generator.storage.SimulationCache;
+import com.healthcaremock.generator.storage.SpillingPatientList;
 import org.mitre.synthea.engine.Generator;
 import org.mitre.synthea.helpers.Config;
 import org.mitre.synthea.world.agents.Person;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * Enhanced generator that extends Synthea's Generator with additional functionality.
+ * Close the generator when its patients are no longer needed, to delete any spilled to disk.
  */
-public class EnhancedGenerator {
+public class EnhancedGenerator implements Closeable {
+    private final Generator.GeneratorOptions options;
     private final Generator syntheaGenerator;
-    private final List<EnhancedPatientData> generatedPatients;
+    private final SpillingPatientList generatedPatients;
+    private final PopulationIndex populationIndex;
+    private final EnrichmentPipeline enrichmentPipeline;
+    private final SimulationCache simulationCache;
+    private final long seed;
+    // The thread's allocation counter when its current patient was started
+    private final ThreadLocal<Long> patientAllocationStart = new ThreadLocal<>();
+    private volatile GenerationReport lastReport;
+    private volatile long simulatedUntil;
     
     /**
      * Creates a new enhanced generator with default settings.
@@ -34,8 +72,16 @@ public class EnhancedGenerator {
         Generator.GeneratorOptions options = new Generator.GeneratorOptions();
         options.population = 10; // Default to 10 patients
         
+        // Before the generator loads any modules, so abandoned simulations can stop early
+        SimulationGuard.install();
+        this.options = options;
         this.syntheaGenerator = new Generator(options);
-        this.generatedPatients = new ArrayList<>();
+        this.generatedPatients = createPatientStore();
+        this.populationIndex = new PopulationIndex(generatedPatients, System.currentTimeMillis());
+        this.enrichmentPipeline = EnrichmentPipeline.fromConfig();
+        this.seed = options.seed;
+        this.simulatedUntil = syntheaGenerator.stop;
+        this.simulationCache = SimulationCache.fromConfig(options, syntheaGenerator.stop);
     }
     
     /**
@@ -45,65 +91,488 @@ public class EnhancedGenerator {
      * @throws Exception if configuration loading fails
      */
     public EnhancedGenerator(Generator.GeneratorOptions options) throws Exception {
+        this(options, EnrichmentPipeline.fromConfig());
+    }
+    
+    /**
+     * Creates a new enhanced generator with the specified options and enrichment pipeline.
+     * 
+     * @param options The generator options
+     * @param enrichmentPipeline The enrichers to run on each simulated patient
+     * @throws Exception if configuration loading fails
+     */
+    public EnhancedGenerator(Generator.GeneratorOptions options,
+            EnrichmentPipeline enrichmentPipeline) throws Exception {
         // Initialize configuration if not already loaded
         if (Config.get("exporter.baseDirectory") == null) {
             Config.load(new File("src/main/resources/synthea.properties"));
         }
         
+        // Before the generator loads any modules, so abandoned simulations can stop early
+        SimulationGuard.install();
+        this.options = options;
         this.syntheaGenerator = new Generator(options);
-        this.generatedPatients = new ArrayList<>();
+        this.generatedPatients = createPatientStore();
+        this.populationIndex = new PopulationIndex(generatedPatients, System.currentTimeMillis());
+        this.enrichmentPipeline = enrichmentPipeline;
+        this.seed = options.seed;
+        this.simulatedUntil = syntheaGenerator.stop;
+        this.simulationCache = SimulationCache.fromConfig(options, syntheaGenerator.stop);
     }
     
     /**
      * Generates a specified number of patients.
      * 
+     * <p>Each attempt gets a time budget ({@code generator.patient_timeout_seconds}). An attempt
+     * that fails or overruns its budget is abandoned and retried with a seed derived from its
+     * index, up to {@code generator.max_attempts_per_patient} attempts, so a run delivers the
+     * requested population even when a few simulations misbehave. Abandoned attempts are
+     * interrupted: a Synthea simulation that is still running stops its modules at the next
+     * time step (see {@link SimulationGuard}), and enrichment stops at the next checkpoint.
+     * Only the attempt that is kept is counted in the metrics, statistics and allocation
+     * accounting.
+     * 
      * @param count The number of patients to generate
-     * @return A list of enhanced patient data
+     * @return A read-only view of all patients generated so far
      */
     public List<EnhancedPatientData> generatePatients(int count) {
         int threadCount = Runtime.getRuntime().availableProcessors();
-        ExecutorService threadPool = Executors.newFixedThreadPool(threadCount);
+        long budgetNanos = TimeUnit.SECONDS.toNanos(
+                ConfigManager.getAsInteger("generator.patient_timeout_seconds", 600));
+        int maxAttempts = Math.max(1, ConfigManager.getAsInteger("generator.max_attempts_per_patient", 5));
         
+        // Abandoned stragglers keep their thread until Synthea returns from the module that was
+        // running, so the pool has room for as many stragglers as live attempts; beyond that,
+        // new attempts queue until one returns.
+        // Queued attempts have not started, so their budget does not run.
+        ExecutorService threadPool = Executors.newFixedThreadPool(threadCount * 2);
+        CompletionService<EnhancedPatientData> completion = new ExecutorCompletionService<>(threadPool);
+        Deque<PatientAttempt> pending = new ArrayDeque<>();
+        Map<Future<EnhancedPatientData>, PatientAttempt> live = new HashMap<>();
         for (int i = 0; i < count; i++) {
-            final int patientNumber = i;
-            threadPool.submit(() -> {
-                try {
-                    Person person = syntheaGenerator.generatePerson(patientNumber);
-                    if (person != null) {
-                        EnhancedPatientData enhancedPatient = new EnhancedPatientData(person);
-                        synchronized (generatedPatients) {
-                            generatedPatients.add(enhancedPatient);
-                        }
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error generating patient: " + e.getMessage());
-                    e.printStackTrace();
-                }
-            });
+            pending.add(new PatientAttempt(i, 0));
         }
         
-        threadPool.shutdown();
+        int generated = 0;
+        int retried = 0;
+        int failed = 0;
+        int timedOut = 0;
+        long slowest = 0;
+        long runStart = System.nanoTime();
+        
         try {
-            threadPool.awaitTermination(30, TimeUnit.MINUTES);
+            while (!pending.isEmpty() || !live.isEmpty()) {
+                while (live.size() < threadCount && !pending.isEmpty()) {
+                    PatientAttempt attempt = pending.poll();
+                    live.put(completion.submit(attempt), attempt);
+                }
+                
+                Future<EnhancedPatientData> done = completion.poll(
+                        nanosUntilNextDeadline(live.values(), budgetNanos), TimeUnit.NANOSECONDS);
+                PatientAttempt attempt = done != null ? live.remove(done) : null;
+                if (attempt != null) {
+                    EnhancedPatientData patient = null;
+                    try {
+                        patient = done.get();
+                    } catch (ExecutionException e) {
+                        System.err.println("Error generating patient " + attempt.index
+                                + " (attempt " + (attempt.attempt + 1) + "): " + e.getCause());
+                    }
+                    if (patient != null) {
+                        record(patient);
+                        generated++;
+                        slowest = Math.max(slowest, attempt.elapsedNanos());
+                    } else {
+                        failed++;
+                        if (attempt.attempt + 1 < maxAttempts) {
+                            pending.add(new PatientAttempt(attempt.index, attempt.attempt + 1));
+                            retried++;
+                        }
+                    }
+                }
+                
+                // Abandon attempts that have overrun their budget and retry them
+                Iterator<Map.Entry<Future<EnhancedPatientData>, PatientAttempt>> iterator =
+                        live.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<Future<EnhancedPatientData>, PatientAttempt> entry = iterator.next();
+                    PatientAttempt running = entry.getValue();
+                    // An attempt that has already been kept is about to complete
+                    if (running.elapsedNanos() > budgetNanos && running.abandon()) {
+                        iterator.remove();
+                        entry.getKey().cancel(true);
+                        timedOut++;
+                        System.err.println("Patient " + running.index + " exceeded its time budget"
+                                + " (attempt " + (running.attempt + 1) + ")");
+                        if (running.attempt + 1 < maxAttempts) {
+                            pending.add(new PatientAttempt(running.index, running.attempt + 1));
+                            retried++;
+                        }
+                    }
+                }
+            }
         } catch (InterruptedException e) {
             System.err.println("Patient generation interrupted: " + e.getMessage());
             Thread.currentThread().interrupt();
+        } finally {
+            threadPool.shutdownNow();
         }
         
-        return new ArrayList<>(generatedPatients);
+        lastReport = new GenerationReport(count, generated, retried, failed, timedOut,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - runStart),
+                TimeUnit.NANOSECONDS.toMillis(slowest));
+        return getGeneratedPatients();
+    }
+    
+    /**
+     * Resumes a population saved by {@link #writeSnapshot(File)} and simulates it a number of
+     * days further, instead of simulating every person again from birth.
+     * 
+     * <p>Each person continues from their saved state through Synthea's
+     * {@code Generator.updatePerson}, and the enrichers append data for the new time window
+     * only (see {@link EnrichmentPipeline#enrichSince}). Shards are resumed in parallel and
+     * the patients are recorded in their original order. A person whose update fails is
+     * reported and left out.
+     * 
+     * @param snapshotDirectory The directory holding the snapshot
+     * @param days The number of days to simulate past the end of the snapshot
+     * @return A read-only view of all patients generated so far
+     * @throws IOException if the snapshot cannot be read
+     * @throws InterruptedException if interrupted while waiting for a shard
+     */
+    public List<EnhancedPatientData> resumePatients(File snapshotDirectory, int days)
+            throws IOException, InterruptedException {
+        PopulationSnapshot snapshot = PopulationSnapshot.open(snapshotDirectory);
+        long since = snapshot.getSimulatedUntil();
+        long until = since + TimeUnit.DAYS.toMillis(Math.max(0, days));
+        Generator updater = new Generator(withEndTime(options, until));
+        
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        ExecutorService threadPool = Executors.newFixedThreadPool(threadCount);
+        List<File> shards = snapshot.getShards();
+        try {
+            // Shards are submitted a few at a time ahead of the one being recorded, so only
+            // a bounded number of resumed shards wait in memory
+            List<Future<List<EnhancedPatientData>>> futures = new ArrayList<>();
+            int window = threadCount * 2;
+            for (int i = 0; i < Math.min(window, shards.size()); i++) {
+                File shard = shards.get(i);
+                futures.add(threadPool.submit(() -> resumeShard(updater, shard, since)));
+            }
+            for (int i = 0; i < shards.size(); i++) {
+                List<EnhancedPatientData> resumed;
+                try {
+                    resumed = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException("Unable to resume " + shards.get(i), e.getCause());
+                }
+                futures.set(i, null);
+                if (i + window < shards.size()) {
+                    File shard = shards.get(i + window);
+                    futures.add(threadPool.submit(() -> resumeShard(updater, shard, since)));
+                }
+                for (EnhancedPatientData patient : resumed) {
+                    record(patient);
+                }
+            }
+        } finally {
+            threadPool.shutdownNow();
+        }
+        simulatedUntil = until;
+        return getGeneratedPatients();
+    }
+    
+    /**
+     * Saves the generated patients as a population snapshot that a later run can resume
+     * with {@link #resumePatients(File, int)}. Shards hold {@code snapshot.shard_size}
+     * patients each.
+     * 
+     * @param snapshotDirectory The directory to write, replacing any snapshot already there
+     * @return The number of shard files written
+     * @throws IOException if the snapshot cannot be written
+     */
+    public int writeSnapshot(File snapshotDirectory) throws IOException {
+        return PopulationSnapshot.write(snapshotDirectory, generatedPatients, simulatedUntil,
+                ConfigManager.getAsInteger("snapshot.shard_size", 1000));
+    }
+    
+    /**
+     * Gets the time the generated patients have been simulated up to.
+     * 
+     * @return The end of the simulation in milliseconds
+     */
+    public long getSimulatedUntil() {
+        return simulatedUntil;
+    }
+    
+    /**
+     * Resumes the patients of one snapshot shard.
+     * 
+     * @param updater The generator whose end time is the end of the new window
+     * @param shard The shard file
+     * @param since The time the snapshot was simulated up to
+     * @return The resumed patients, in population order
+     * @throws IOException if the shard cannot be read
+     */
+    private List<EnhancedPatientData> resumeShard(Generator updater, File shard, long since)
+            throws IOException {
+        List<EnhancedPatientData> resumed = new ArrayList<>();
+        for (PopulationSnapshot.Entry entry : PopulationSnapshot.readShard(shard)) {
+            try {
+                startPatient();
+                Person person = timed(null, () -> {
+                    updater.updatePerson(entry.getPerson());
+                    return entry.getPerson();
+                });
+                if (person == null) {
+                    // Interrupted part way through the update
+                    continue;
+                }
+                EnhancedPatientData patient = new EnhancedPatientData(person);
+                patient.setExtendedData(enrichmentPipeline.isEmpty() ? entry.getExtendedData()
+                        : enrichmentPipeline.enrichSince(person, entry.getExtendedData(), since));
+                resumed.add(patient);
+                keepPatient(patient);
+            } catch (RuntimeException e) {
+                System.err.println("Error resuming patient " + entry.getIndex() + ": " + e);
+            }
+        }
+        return resumed;
+    }
+    
+    /**
+     * Gets the accounting report of the most recent {@link #generatePatients(int)} run.
+     * 
+     * @return The report, or null if no run has completed
+     */
+    public GenerationReport getLastReport() {
+        return lastReport;
+    }
+    
+    /**
+     * Generates a specified number of patients on a shared scheduler instead of a private
+     * thread pool, so that concurrent callers share the machine fairly.
+     * 
+     * @param count The number of patients to generate
+     * @param scheduler The shared job scheduler
+     * @param priority The priority of this run relative to other jobs
+     * @return A read-only view of all patients generated so far
+     * @throws InterruptedException if interrupted while waiting for patients
+     */
+    public List<EnhancedPatientData> generatePatients(int count, JobScheduler scheduler,
+            Priority priority) throws InterruptedException {
+        ScheduledJob job = scheduler.submit("EnhancedGenerator", count, priority,
+                TimeUnit.SECONDS.toMillis(ConfigManager.getAsInteger("generator.patient_timeout_seconds", 600)),
+                ConfigManager.getAsInteger("generator.max_attempts_per_patient", 5),
+                new JobScheduler.PatientTask() {
+                    @Override
+                    public EnhancedPatientData generate(int index, int attempt) {
+                        return new PatientAttempt(index, attempt).generate();
+                    }
+                    
+                    @Override
+                    public void accepted(EnhancedPatientData patient) {
+                        keepPatient(patient);
+                    }
+                });
+        EnhancedPatientData patient;
+        while ((patient = job.take()) != null) {
+            record(patient);
+        }
+        return getGeneratedPatients();
+    }
+    
+    /**
+     * Generates a single patient from an explicit seed without recording it in this generator.
+     * The same index and seed always produce the same patient, which lets a long-lived
+     * generator serve many independent jobs. The patient is not counted in the metrics or
+     * statistics until the caller keeps it with {@link #keepPatient(EnhancedPatientData)}.
+     * 
+     * @param index The patient index within its population
+     * @param personSeed The seed for the person
+     * @return The enhanced patient data, or null if Synthea did not produce a person
+     */
+    public EnhancedPatientData generatePatient(int index, long personSeed) {
+        startPatient();
+        Person person = simulatePerson(index, personSeed);
+        return person == null ? null : enhance(person);
+    }
+    
+    /**
+     * Marks the start of a patient on the calling thread, so that
+     * {@link #keepPatient(EnhancedPatientData)} can account for the memory it allocated.
+     */
+    public void startPatient() {
+        AllocationAccounting accounting = AllocationAccounting.active();
+        if (accounting != null) {
+            patientAllocationStart.set(accounting.threadAllocatedBytes());
+        }
+    }
+    
+    /**
+     * Counts a patient that is kept in the metrics, statistics and allocation accounting.
+     * Attempts that are abandoned, rejected or retried are never passed here, so each patient
+     * is counted once. Must be called on the thread that generated the patient, after
+     * {@link #startPatient()}.
+     * 
+     * @param patient The patient
+     */
+    public void keepPatient(EnhancedPatientData patient) {
+        PipelineMetrics metrics = PipelineMetrics.active();
+        if (metrics != null) {
+            metrics.patientCompleted();
+        }
+        PopulationStatistics statistics = PopulationStatistics.active();
+        if (statistics != null) {
+            statistics.record(patient);
+        }
+        AllocationAccounting accounting = AllocationAccounting.active();
+        Long allocated = patientAllocationStart.get();
+        if (accounting != null && allocated != null) {
+            accounting.record(patient, allocated);
+        }
+        patientAllocationStart.remove();
+    }
+    
+    /**
+     * Runs only the Synthea simulation for a patient, without enrichment. Callers that may
+     * discard the person, such as quota or cohort scheduling, can inspect it first and
+     * call {@link #enhance(Person)} only for patients they keep.
+     * 
+     * @param index The patient index within its population
+     * @param personSeed The seed for the person
+     * @return The simulated person, or null if Synthea did not produce one
+     */
+    public Person simulatePerson(int index, long personSeed) {
+        return simulatePerson(index, personSeed, null);
     }
     
     /**
-     * Gets the list of generated patients.
+     * Runs only the Synthea simulation for a patient, abandoning it as soon as a check shows
+     * the person cannot be used, e.g. because it can no longer match a cohort.
+     * 
+     * @param index The patient index within its population
+     * @param personSeed The seed for the person
+     * @param abandon Checked once per simulated time step, or null to run to the end
+     * @return The simulated person, or null if the simulation was abandoned or Synthea did
+     *         not produce a person
+     */
+    public Person simulatePerson(int index, long personSeed, Predicate<Person> abandon) {
+        return simulate("seed=" + personSeed + ",index=" + index, abandon,
+                () -> syntheaGenerator.generatePerson(index, personSeed));
+    }
+    
+    /**
+     * Runs a Synthea simulation, or reads its result from the simulation cache when enabled.
+     * A freshly simulated person is cached before anything else draws from its random
+     * number generator; an abandoned simulation is not cached.
+     * 
+     * @param key The cache key of the person
+     * @param abandon Checked once per simulated time step, or null to run to the end
+     * @param simulation The simulation to run on a miss
+     * @return The simulated person, or null if the simulation was abandoned or Synthea did
+     *         not produce a person
+     */
+    private Person simulate(String key, Predicate<Person> abandon, Supplier<Person> simulation) {
+        if (simulationCache == null) {
+            return timed(abandon, simulation);
+        }
+        Person person = simulationCache.get(key);
+        if (person == null) {
+            person = timed(abandon, simulation);
+            if (person != null) {
+                simulationCache.put(key, person);
+            }
+        }
+        return person;
+    }
+    
+    /**
+     * Runs a Synthea simulation under the {@link SimulationGuard}, timing it as the
+     * {@code simulate} stage when metrics are on. The simulation is abandoned if the thread
+     * is interrupted.
+     * 
+     * @param abandon Checked once per simulated time step, or null to run to the end
+     * @param simulation The simulation
+     * @return The simulated person, or null if the simulation was abandoned or Synthea did
+     *         not produce a person
+     */
+    private static Person timed(Predicate<Person> abandon, Supplier<Person> simulation) {
+        PipelineMetrics metrics = PipelineMetrics.active();
+        if (metrics == null) {
+            return SimulationGuard.run(abandon, simulation);
+        }
+        long start = System.nanoTime();
+        try {
+            return SimulationGuard.run(abandon, simulation);
+        } finally {
+            metrics.record("simulate", start);
+        }
+    }
+    
+    /**
+     * Derives the seed for a retry of a patient whose earlier attempts failed or timed out.
+     * 
+     * @param seed The population seed
+     * @param index The patient index
+     * @param attempt The attempt number, starting at 1 for the first retry
+     * @return The person seed
+     */
+    public static long deriveRetrySeed(long seed, int index, int attempt) {
+        return derivePersonSeed(derivePersonSeed(seed, index), attempt);
+    }
+    
+    /**
+     * Derives a well-mixed per-person seed from a population seed and a patient index.
+     * 
+     * @param seed The population seed
+     * @param index The patient index
+     * @return The person seed
+     */
+    public static long derivePersonSeed(long seed, int index) {
+        // SplitMix64 finalizer over the combined value
+        long z = seed + 0x9E3779B97F4A7C15L * (index + 1L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+    
+    /**
+     * Wraps a simulated person and runs the enrichment pipeline on it. The patient is not
+     * counted until it is passed to {@link #keepPatient(EnhancedPatientData)}.
+     * 
+     * @param person The simulated person
+     * @return The enhanced patient data
+     */
+    public EnhancedPatientData enhance(Person person) {
+        // Checkpoint: an abandoned attempt stops here instead of running the enrichers
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Patient generation cancelled after simulation");
+        }
+        EnhancedPatientData enhancedPatient = new EnhancedPatientData(person);
+        if (!enrichmentPipeline.isEmpty()) {
+            enhancedPatient.setExtendedData(enrichmentPipeline.enrich(person));
+        }
+        return enhancedPatient;
+    }
+    
+    /**
+     * Gets the list of generated patients. The list is a live, read-only view; patients
+     * beyond {@code generator.heap_budget_mb} are read back from disk when accessed.
      * 
      * @return The list of enhanced patient data
      */
     public List<EnhancedPatientData> getGeneratedPatients() {
-        return new ArrayList<>(generatedPatients);
+        return Collections.unmodifiableList(generatedPatients);
     }
     
     /**
      * Filters the generated patients based on a predicate.
+     * This evaluates the predicate against every patient; for demographic and condition
+     * filters, {@link #filterPatients(PopulationQuery)} answers from the index instead.
      * 
      * @param predicate The filter predicate
      * @return A filtered list of enhanced patient data
@@ -117,4 +586,166 @@ public class EnhancedGenerator {
         }
         return filteredPatients;
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Filters the generated patients using the population index, without evaluating
+     * anything against the patient objects.
+     * 
+     * @param query The query
+     * @return A filtered list of enhanced patient data, in generation order
+     */
+    public List<EnhancedPatientData> filterPatients(PopulationQuery query) {
+        return query.list(populationIndex);
+    }
+    
+    /**
+     * Gets the cache of simulated people.
+     * 
+     * @return The cache, or null if {@code cache.enabled} is off
+     */
+    public SimulationCache getSimulationCache() {
+        return simulationCache;
+    }
+    
+    /**
+     * Gets the index over the generated patients.
+     * 
+     * @return The population index
+     */
+    public PopulationIndex getPopulationIndex() {
+        return populationIndex;
+    }
+    
+    /**
+     * Deletes the spill files of the generated patients. The patient list must not be
+     * used afterwards.
+     */
+    @Override
+    public void close() {
+        generatedPatients.close();
+    }
+    
+    /**
+     * Records a generated patient in the population index, which appends it to the list.
+     * 
+     * @param patient The patient
+     */
+    private void record(EnhancedPatientData patient) {
+        populationIndex.add(patient);
+    }
+    
+    /**
+     * Creates the store for generated patients. With a heap budget configured, older
+     * patients are spilled to disk once the budget is exceeded.
+     * 
+     * @return The patient store
+     */
+    private static SpillingPatientList createPatientStore() {
+        int budgetMb = ConfigManager.getAsInteger("generator.heap_budget_mb", 0);
+        if (budgetMb <= 0) {
+            return new SpillingPatientList();
+        }
+        File spillDirectory = new File(ConfigManager.getAsString("generator.spill_directory",
+                System.getProperty("java.io.tmpdir")));
+        return new SpillingPatientList(budgetMb * 1024L * 1024L, spillDirectory,
+                ConfigManager.getAsInteger("generator.spill_cache_size", 256));
+    }
+    
+    /**
+     * Copies generator options with a different simulation end time.
+     * 
+     * @param base The options to copy
+     * @param endTime The end time in milliseconds
+     * @return The new options
+     */
+    private static Generator.GeneratorOptions withEndTime(Generator.GeneratorOptions base, long endTime) {
+        Generator.GeneratorOptions options = new Generator.GeneratorOptions();
+        options.population = base.population;
+        options.seed = base.seed;
+        options.clinicianSeed = base.clinicianSeed;
+        options.overflow = base.overflow;
+        options.state = base.state;
+        options.city = base.city;
+        options.gender = base.gender;
+        options.ageSpecified = base.ageSpecified;
+        options.minAge = base.minAge;
+        options.maxAge = base.maxAge;
+        options.enabledModules = base.enabledModules;
+        options.referenceTime = base.referenceTime;
+        options.endTime = endTime;
+        return options;
+    }
+    
+    private static long nanosUntilNextDeadline(Iterable<PatientAttempt> attempts, long budgetNanos) {
+        long wait = budgetNanos;
+        for (PatientAttempt attempt : attempts) {
+            if (attempt.startedAt != 0) {
+                wait = Math.min(wait, budgetNanos - attempt.elapsedNanos());
+            }
+        }
+        return Math.max(1, wait);
+    }
+    
+    /**
+     * A single attempt at generating the patient at an index.
+     * Every attempt uses a seed derived from the population seed, the index and the attempt
+     * number. Synthea's own seed sequence is handed out in the order worker threads ask, so
+     * only a derived seed ties a patient index to the same person in every run, with or
+     * without the simulation cache.
+     */
+    private class PatientAttempt implements Callable<EnhancedPatientData> {
+        private final int index;
+        private final int attempt;
+        private volatile long startedAt;
+        // Guarded by this
+        private boolean abandoned;
+        private boolean kept;
+        
+        PatientAttempt(int index, int attempt) {
+            this.index = index;
+            this.attempt = attempt;
+        }
+        
+        @Override
+        public EnhancedPatientData call() {
+            EnhancedPatientData patient = generate();
+            if (patient != null) {
+                synchronized (this) {
+                    if (abandoned) {
+                        return null;
+                    }
+                    kept = true;
+                }
+                keepPatient(patient);
+            }
+            return patient;
+        }
+        
+        /**
+         * Gives up on this attempt unless its patient has already been kept.
+         * 
+         * @return true if the attempt was abandoned
+         */
+        synchronized boolean abandon() {
+            if (kept) {
+                return false;
+            }
+            abandoned = true;
+            return true;
+        }
+        
+        EnhancedPatientData generate() {
+            startedAt = System.nanoTime();
+            startPatient();
+            Person person = simulatePerson(index, attempt > 0
+                    ? deriveRetrySeed(seed, index, attempt)
+                    : derivePersonSeed(seed, index));
+            return person == null ? null : enhance(person);
+        }
+        
+        long elapsedNanos() {
+            long started = startedAt;
+            return started == 0 ? 0 : System.nanoTime() - started;
+        }
+    }
+}
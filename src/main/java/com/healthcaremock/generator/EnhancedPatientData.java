@@ -1,10 +1,14 @@
 package com.healthcaremock.generator;
 
+import com.healthcaremock.generator.models.SymbolTable;
 import org.mitre.synthea.world.agents.Person;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 
 /**
  * Enhanced patient data that extends Synthea's Person model with additional information.
@@ -18,6 +22,9 @@ public class EnhancedPatientData implements Serializable {
     // Additional patient-reported data
     private final Map<String, Object> patientReportedData;
     
+    // Data added by the enrichment pipeline, if any
+    private com.healthcaremock.generator.models.EnhancedPatientData extendedData;
+    
     /**
      * Creates a new enhanced patient data instance.
      * 
@@ -33,14 +40,18 @@ public class EnhancedPatientData implements Serializable {
     
     /**
      * Initializes patient-reported data with default values.
+     * The values are drawn from a generator seeded by the person's seed, so a rerun with
+     * the same seed reproduces them without consuming the person's own random numbers.
      */
     private void initializePatientReportedData() {
+        Random random = new Random(person.seed);
+        
         // Add examples of patient-reported data
-        patientReportedData.put("painLevel", generateRandomPainLevel());
-        patientReportedData.put("sleepQuality", generateRandomSleepQuality());
-        patientReportedData.put("stressLevel", generateRandomStressLevel());
-        patientReportedData.put("exerciseMinutesPerWeek", generateRandomExerciseMinutes());
-        patientReportedData.put("dietQuality", generateRandomDietQuality());
+        patientReportedData.put("painLevel", generateRandomPainLevel(random));
+        patientReportedData.put("sleepQuality", generateRandomSleepQuality(random));
+        patientReportedData.put("stressLevel", generateRandomStressLevel(random));
+        patientReportedData.put("exerciseMinutesPerWeek", generateRandomExerciseMinutes(random));
+        patientReportedData.put("dietQuality", generateRandomDietQuality(random));
     }
     
     /**
@@ -81,27 +92,55 @@ public class EnhancedPatientData implements Serializable {
         patientReportedData.put(key, value);
     }
     
+    /**
+     * Gets the data added by the enrichment pipeline.
+     * 
+     * @return The extended data, or null if the patient was not enriched
+     */
+    public com.healthcaremock.generator.models.EnhancedPatientData getExtendedData() {
+        return extendedData;
+    }
+    
+    /**
+     * Sets the data added by the enrichment pipeline.
+     * 
+     * @param extendedData The extended data
+     */
+    public void setExtendedData(com.healthcaremock.generator.models.EnhancedPatientData extendedData) {
+        this.extendedData = extendedData;
+    }
+    
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // Ratings such as "Good" come back as fresh copies; swap in the shared instances
+        for (Map.Entry<String, Object> entry : patientReportedData.entrySet()) {
+            if (entry.getValue() instanceof String) {
+                entry.setValue(SymbolTable.global().intern((String) entry.getValue()));
+            }
+        }
+    }
+    
     // Utility methods to generate random patient-reported data
     
-    private int generateRandomPainLevel() {
-        return (int) (Math.random() * 10);
+    private int generateRandomPainLevel(Random random) {
+        return (int) (random.nextDouble() * 10);
     }
     
-    private String generateRandomSleepQuality() {
+    private String generateRandomSleepQuality(Random random) {
         String[] options = {"Poor", "Fair", "Good", "Excellent"};
-        return options[(int) (Math.random() * options.length)];
+        return options[(int) (random.nextDouble() * options.length)];
     }
     
-    private int generateRandomStressLevel() {
-        return (int) (Math.random() * 10);
+    private int generateRandomStressLevel(Random random) {
+        return (int) (random.nextDouble() * 10);
     }
     
-    private int generateRandomExerciseMinutes() {
-        return (int) (Math.random() * 300);
+    private int generateRandomExerciseMinutes(Random random) {
+        return (int) (random.nextDouble() * 300);
     }
     
-    private String generateRandomDietQuality() {
+    private String generateRandomDietQuality(Random random) {
         String[] options = {"Poor", "Fair", "Good", "Excellent"};
-        return options[(int) (Math.random() * options.length)];
+        return options[(int) (random.nextDouble() * options.length)];
     }
 } 
\ No newline at end of file
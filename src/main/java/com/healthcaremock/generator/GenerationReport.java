@@ -0,0 +1,85 @@
+package com.healthcaremock.generator;
+
+/**
+ * Accounting for a generation run: how many patients were requested, generated, retried,
+ * failed or timed out, and how long the slowest patient took.
+ */
+public class GenerationReport {
+    private final int requested;
+    private final int generated;
+    private final int retried;
+    private final int failed;
+    private final int timedOut;
+    private final long elapsedMillis;
+    private final long slowestPatientMillis;
+    
+    /**
+     * Creates a new report.
+     * 
+     * @param requested The number of patients requested
+     * @param generated The number of patients delivered
+     * @param retried The number of attempts retried with a derived seed
+     * @param failed The number of attempts that threw or produced no patient
+     * @param timedOut The number of attempts abandoned after exceeding their time budget
+     * @param elapsedMillis The wall time of the run
+     * @param slowestPatientMillis The wall time of the slowest delivered patient
+     */
+    public GenerationReport(int requested, int generated, int retried, int failed, int timedOut,
+            long elapsedMillis, long slowestPatientMillis) {
+        this.requested = requested;
+        this.generated = generated;
+        this.retried = retried;
+        this.failed = failed;
+        this.timedOut = timedOut;
+        this.elapsedMillis = elapsedMillis;
+        this.slowestPatientMillis = slowestPatientMillis;
+    }
+    
+    public int getRequested() {
+        return requested;
+    }
+    
+    public int getGenerated() {
+        return generated;
+    }
+    
+    public int getRetried() {
+        return retried;
+    }
+    
+    public int getFailed() {
+        return failed;
+    }
+    
+    public int getTimedOut() {
+        return timedOut;
+    }
+    
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+    
+    public long getSlowestPatientMillis() {
+        return slowestPatientMillis;
+    }
+    
+    /**
+     * Gets the number of requested patients that could not be delivered.
+     * 
+     * @return The shortfall, 0 for a complete run
+     */
+    public int getShortfall() {
+        return Math.max(0, requested - generated);
+    }
+    
+    @Override
+    public String toString() {
+        return "requested=" + requested
+                + ", generated=" + generated
+                + ", retried=" + retried
+                + ", failed=" + failed
+                + ", timedOut=" + timedOut
+                + ", elapsed=" + elapsedMillis + "ms"
+                + ", slowestPatient=" + slowestPatientMillis + "ms";
+    }
+}
@@ -0,0 +1,36 @@
+package com.healthcaremock.generator;
+
+import org.mitre.synthea.engine.Module;
+import org.mitre.synthea.world.agents.Person;
+
+/**
+ * A Synthea module that runs another module until the {@link SimulationGuard} abandons the
+ * simulation, and from then on reports that it has finished without running.
+ */
+class GuardedModule extends Module {
+    private static final long serialVersionUID = 1L;
+    
+    private final Module delegate;
+    
+    GuardedModule(Module delegate) {
+        this.delegate = delegate;
+        this.name = delegate.name;
+        this.submodule = delegate.submodule;
+    }
+    
+    @Override
+    public boolean process(Person person, long time) {
+        return SimulationGuard.isAbandoned(person, time) || delegate.process(person, time);
+    }
+    
+    @Override
+    public boolean process(Person person, long time, boolean terminateOnDeath) {
+        return SimulationGuard.isAbandoned(person, time)
+                || delegate.process(person, time, terminateOnDeath);
+    }
+    
+    @Override
+    public Module clone() {
+        return new GuardedModule(delegate.clone());
+    }
+}
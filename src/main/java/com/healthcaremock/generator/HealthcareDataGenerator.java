@@ -1,9 +1,32 @@
 package com.healthcaremock.generator;
 
+import com.healthcaremock.generator.cohort.CohortSearch;
+import com.healthcaremock.generator.cohort.CohortSpec;
+import com.healthcaremock.generator.cohort.QuotaScheduler;
+import com.healthcaremock.generator.config.ConfigManager;
+import com.healthcaremock.generator.enrichment.Enricher;
+import com.healthcaremock.generator.enrichment.EnrichmentPipeline;
+import com.healthcaremock.generator.enrichment.FhirBundleEnricher;
+import com.healthcaremock.generator.export.ExportFanout;
+import com.healthcaremock.generator.index.BundleIndex;
+import com.healthcaremock.generator.metrics.AllocationAccounting;
+import com.healthcaremock.generator.metrics.ModuleProfiler;
+import com.healthcaremock.generator.metrics.PipelineMetrics;
+import com.healthcaremock.generator.perf.PerfHarness;
+import com.healthcaremock.generator.perf.PerfReport;
+import com.healthcaremock.generator.perf.PerfResult;
+import com.healthcaremock.generator.query.QueryRunner;
+import com.healthcaremock.generator.query.ScanQuery;
+import com.healthcaremock.generator.scheduler.JobScheduler;
+import com.healthcaremock.generator.scheduler.Priority;
+import com.healthcaremock.generator.server.GenerationServer;
+import com.healthcaremock.generator.stats.PopulationStatistics;
 import org.mitre.synthea.engine.Generator;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -14,15 +37,48 @@ public class HealthcareDataGenerator {
     /**
      * Main method to run the generator.
      * 
-     * @param args Command line arguments
+     * @param args Command line arguments: a population count followed by optional flags
+     *             (--stratified, --cohort spec, --snapshot directory), or
+     *             --resume directory [--days n] [--snapshot directory], or --daemon [port], or
+     *             --enrich-fhir [input directory] [output directory], or
+     *             --index-fhir [directory], or
+     *             --query [--where filter] [--select paths] [--count] [files or directories],
+     *             or --perf [--update-baseline]
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--daemon")) {
+            runDaemon(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--enrich-fhir")) {
+            enrichFhirBundles(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--index-fhir")) {
+            indexFhirBundles(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--query")) {
+            queryExports(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--perf")) {
+            runPerfHarness(args);
+            return;
+        }
+        
+        PipelineMetrics metrics = null;
+        AllocationAccounting accounting = null;
+        ModuleProfiler profiler = null;
+        PopulationStatistics statistics = null;
+        EnhancedGenerator generator = null;
         try {
             System.out.println("Starting Healthcare Data Generator...");
+            ConfigManager.initialize();
             
             // Parse command line arguments
             int population = 10; // Default
-            if (args.length > 0) {
+            if (args.length > 0 && !args[0].startsWith("--")) {
                 try {
                     population = Integer.parseInt(args[0]);
                 } catch (NumberFormatException e) {
@@ -35,86 +91,384 @@ public class HealthcareDataGenerator {
             Generator.GeneratorOptions options = new Generator.GeneratorOptions();
             options.population = population;
             options.overflow = false; // Don't generate beyond the requested population count
+            metrics = PipelineMetrics.fromConfig(population);
+            List<String> enricherNames = new ArrayList<>();
+            for (Enricher enricher : EnrichmentPipeline.fromConfig().getEnrichers()) {
+                enricherNames.add(enricher.getName());
+            }
+            accounting = AllocationAccounting.fromConfig(enricherNames);
+            profiler = ModuleProfiler.fromConfig();
+            statistics = PopulationStatistics.fromConfig();
             
-            // Create and run the enhanced generator
-            System.out.println("Generating " + population + " patients...");
-            EnhancedGenerator generator = new EnhancedGenerator(options);
-            List<EnhancedPatientData> patients = generator.generatePatients(population);
+            List<EnhancedPatientData> patients;
+            EnhancedGenerator snapshotSource = null;
+            String cohortArg = flagValue(args, "--cohort");
+            String resumeArg = flagValue(args, "--resume");
+            if (resumeArg != null) {
+                // Continue a saved population instead of simulating it again from birth
+                int days = ConfigManager.getAsInteger("snapshot.days_forward", 30);
+                String daysArg = flagValue(args, "--days");
+                if (daysArg != null) {
+                    days = Integer.parseInt(daysArg);
+                }
+                System.out.println("Resuming population from " + resumeArg + " for " + days + " days...");
+                generator = new EnhancedGenerator(options);
+                patients = generator.resumePatients(new File(resumeArg), days);
+                snapshotSource = generator;
+                
+                System.out.println("Resumed " + patients.size() + " patients successfully.");
+            } else if (cohortArg != null) {
+                // Push the cohort's demographics into the generator and filter clinically
+                // before enrichment, continuing until enough patients match
+                CohortSpec cohort = CohortSpec.parse(cohortArg);
+                cohort.applyTo(options);
+                generator = new EnhancedGenerator(options);
+                CohortSearch search = new CohortSearch(generator, cohort, options.seed,
+                        ConfigManager.getAsInteger("cohort.max_candidates_per_patient", 200));
+                JobScheduler scheduler = new JobScheduler(Runtime.getRuntime().availableProcessors());
+                System.out.println("Generating " + population + " patients matching " + cohortArg + "...");
+                try {
+                    patients = search.generate(population, scheduler, Priority.NORMAL,
+                            ConfigManager.getAsInteger("generator.max_attempts_per_patient", 5));
+                } finally {
+                    scheduler.shutdown();
+                }
+                
+                System.out.println("Generated " + patients.size() + " patients successfully.");
+                System.out.printf("Cohort acceptance rate: %.1f%% (%d of %d candidates)%n",
+                        100 * search.getAcceptanceRate(), search.getAccepted(), search.getCandidates());
+            } else if (hasFlag(args, "--stratified")) {
+                // Steer generation toward the prevalence targets in healthcare-generator.properties
+                System.out.println("Generating " + population + " patients to prevalence targets...");
+                try (QuotaScheduler scheduler = QuotaScheduler.fromConfig(options)) {
+                    patients = scheduler.generatePatients(population);
+                    
+                    System.out.println("Generated " + patients.size() + " patients successfully.");
+                    System.out.print(scheduler.getLastTracker().report());
+                }
+            } else {
+                // Create and run the enhanced generator
+                System.out.println("Generating " + population + " patients...");
+                generator = new EnhancedGenerator(options);
+                patients = generator.generatePatients(population);
+                snapshotSource = generator;
+                
+                // Output results
+                System.out.println("Generated " + patients.size() + " patients successfully.");
+                System.out.println("Generation report: " + generator.getLastReport());
+                if (generator.getSimulationCache() != null) {
+                    System.out.println("Simulation cache: " + generator.getSimulationCache().getHits()
+                            + " hits, " + generator.getSimulationCache().getMisses() + " misses");
+                }
+                if (generator.getLastReport().getShortfall() > 0) {
+                    System.err.println("Warning: " + generator.getLastReport().getShortfall()
+                            + " patients could not be generated");
+                }
+            }
             
-            // Output results
-            System.out.println("Generated " + patients.size() + " patients successfully.");
+            // Export in every enabled format
+            exportPatients(patients);
             
-            // Export to JSON
-            exportToJson(patients);
+            String snapshotArg = flagValue(args, "--snapshot");
+            if (snapshotArg != null) {
+                if (snapshotSource == null) {
+                    System.err.println("Snapshots are not supported with --cohort or --stratified");
+                } else {
+                    int shards = snapshotSource.writeSnapshot(new File(snapshotArg));
+                    System.out.println("Saved population snapshot to " + snapshotArg
+                            + " (" + shards + " shards)");
+                }
+            }
             
+            if (metrics != null) {
+                System.out.print(metrics.report());
+            }
+            if (accounting != null) {
+                File accountingDir = new File(ConfigManager.getAsString("accounting.directory",
+                        "output/accounting"));
+                System.out.print(accounting.writeReport(accountingDir));
+                System.out.println("Per-patient memory written to " + accountingDir.getAbsolutePath());
+            }
+            if (profiler != null) {
+                File profile = new File(ConfigManager.getAsString("profiler.report",
+                        "output/module-profile.txt"));
+                System.out.print(profiler.writeReport(profile,
+                        ConfigManager.getAsInteger("profiler.top_states", 30)));
+                System.out.println("Module profile written to " + profile.getAbsolutePath());
+            }
+            if (statistics != null) {
+                File statisticsFile = new File(ConfigManager.getAsString("stats.report",
+                        "output/population-stats.txt"));
+                System.out.print(statistics.writeReport(statisticsFile));
+                System.out.println("Population statistics written to " + statisticsFile.getAbsolutePath());
+            }
             System.out.println("Data generation complete!");
             
         } catch (Exception e) {
             System.err.println("Error generating healthcare data: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            if (metrics != null) {
+                metrics.stop();
+            }
+            if (accounting != null) {
+                accounting.stop();
+            }
+            if (profiler != null) {
+                profiler.uninstall();
+            }
+            if (statistics != null) {
+                statistics.stop();
+            }
+            if (generator != null) {
+                // Patients spilled past the heap budget are deleted with the generator
+                generator.close();
+            }
         }
     }
     
     /**
-     * Export patient data to JSON files.
+     * Checks whether a flag was passed on the command line.
      * 
-     * @param patients The list of enhanced patient data
+     * @param args Command line arguments
+     * @param flag The flag, e.g. --stratified
+     * @return true if present
+     */
+    private static boolean hasFlag(String[] args, String flag) {
+        for (String arg : args) {
+            if (arg.equals(flag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Gets the value following a flag on the command line.
+     * 
+     * @param args Command line arguments
+     * @param flag The flag, e.g. --cohort
+     * @return The value, or null if the flag is absent or has no value
+     */
+    private static String flagValue(String[] args, String flag) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(flag)) {
+                return args[i + 1];
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Starts the generator as a long-lived daemon serving jobs over localhost HTTP.
+     * 
+     * @param args Command line arguments; the optional second argument is the port
+     */
+    private static void runDaemon(String[] args) {
+        int port = GenerationServer.DEFAULT_PORT;
+        if (args.length > 1) {
+            try {
+                port = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid port: " + args[1]);
+                System.err.println("Using default port " + port);
+            }
+        }
+        
+        try {
+            GenerationServer server = GenerationServer.start(port);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        } catch (Exception e) {
+            System.err.println("Error starting generation daemon: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Adds the enhanced data to existing Synthea FHIR bundles without regenerating them.
+     * 
+     * @param args Command line arguments; the optional second and third arguments are the
+     *             input directory (default output/fhir) and output directory
+     *             (default output/fhir_enriched)
+     */
+    private static void enrichFhirBundles(String[] args) {
+        File inputDir = new File(args.length > 1 ? args[1] : "output/fhir");
+        File outputDir = new File(args.length > 2 ? args[2] : "output/fhir_enriched");
+        
+        try {
+            System.out.println("Enriching FHIR bundles in " + inputDir.getAbsolutePath() + "...");
+            long start = System.nanoTime();
+            int enriched = FhirBundleEnricher.fromConfig().enrichDirectory(inputDir, outputDir);
+            System.out.printf("Enriched %d bundles into %s in %.1f s%n", enriched,
+                    outputDir.getAbsolutePath(), (System.nanoTime() - start) / 1e9);
+        } catch (InterruptedException e) {
+            System.err.println("Enrichment interrupted");
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Error enriching FHIR bundles: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Builds the resource offset index of every FHIR bundle in a directory, skipping bundles
+     * whose index is already current.
+     * 
+     * @param args Command line arguments; the optional second argument is the bundle
+     *             directory (default output/fhir)
+     */
+    private static void indexFhirBundles(String[] args) {
+        File dir = new File(args.length > 1 ? args[1] : "output/fhir");
+        File[] bundles = dir.listFiles((d, name) -> name.endsWith(".json"));
+        if (bundles == null) {
+            System.err.println("Unable to list " + dir.getAbsolutePath());
+            return;
+        }
+        
+        long start = System.nanoTime();
+        int resources = 0;
+        for (File bundle : bundles) {
+            try {
+                resources += BundleIndex.forBundle(bundle).size();
+            } catch (Exception e) {
+                System.err.println("Error indexing " + bundle.getName() + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        System.out.printf("Indexed %d resources in %d bundles in %.1f s%n", resources,
+                bundles.length, (System.nanoTime() - start) / 1e9);
+    }
+    
+    /**
+     * Scans exported patient records for those matching a filter and writes them, or the
+     * selected fields, to standard output as NDJSON. A summary is written to standard error.
+     * 
+     * @param args Command line arguments: --where and --select take a value, --count only
+     *             counts the matches, and any other arguments are the files or directories to
+     *             scan (default output/enhanced_ndjson if present, otherwise output/enhanced)
      */
-    private static void exportToJson(List<EnhancedPatientData> patients) {
+    private static void queryExports(String[] args) {
+        List<File> paths = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--where") || args[i].equals("--select")) {
+                i++;
+            } else if (!args[i].equals("--count")) {
+                paths.add(new File(args[i]));
+            }
+        }
+        if (paths.isEmpty()) {
+            File ndjson = new File("output/enhanced_ndjson");
+            paths.add(ndjson.isDirectory() ? ndjson : new File("output/enhanced"));
+        }
+        
         try {
-            // Create output directory
-            File outputDir = new File("output/enhanced");
-            outputDir.mkdirs();
+            ScanQuery query = ScanQuery.parse(flagValue(args, "--where"), flagValue(args, "--select"));
+            List<File> inputs = new ArrayList<>();
+            for (File path : paths) {
+                inputs.addAll(QueryRunner.findInputs(path));
+            }
             
-            System.out.println("Exporting patient data to " + outputDir.getAbsolutePath());
+            long start = System.nanoTime();
+            OutputStream out = hasFlag(args, "--count")
+                    ? null : new BufferedOutputStream(System.out, 1 << 16);
+            QueryRunner.Summary summary = QueryRunner.fromConfig(query).run(inputs, out);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.err.printf("Matched %d of %d records in %d files (%.1f MB) in %.2f s, %.0f MB/s%n",
+                    summary.getMatched(), summary.getRecords(), inputs.size(),
+                    summary.getBytes() / 1e6, seconds, summary.getBytes() / 1e6 / seconds);
+            if (summary.getMalformed() > 0) {
+                System.err.println("Skipped " + summary.getMalformed() + " malformed records");
+            }
+            if (out == null) {
+                System.out.println(summary.getMatched());
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid query: " + e.getMessage());
+        } catch (InterruptedException e) {
+            System.err.println("Query interrupted");
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Error querying exports: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Runs the performance harness and compares its report with the stored baseline
+     * (perf.baseline). Exits with status 1 if any run regressed beyond the tolerances.
+     * 
+     * @param args Command line arguments: --update-baseline replaces the baseline with the
+     *             new report instead of comparing against it
+     */
+    private static void runPerfHarness(String[] args) {
+        ConfigManager.initialize();
+        File baselineFile = new File(ConfigManager.getAsString("perf.baseline", "perf/baseline.json"));
+        File reportFile = new File(ConfigManager.getAsString("perf.report", "build/perf/report.json"));
+        
+        boolean regressed = false;
+        try {
+            PerfHarness harness = new PerfHarness();
+            System.out.println("Running the performance harness: " + harness.getPopulation()
+                    + " patients, formats " + harness.getFormats() + ", threads " + harness.getThreadCounts());
+            PerfReport report = harness.run();
             
-            // Export each patient
-            for (EnhancedPatientData patient : patients) {
-                // Generate a simple JSON representation
-                StringBuilder json = new StringBuilder();
-                json.append("{\n");
-                
-                // Basic patient info
-                json.append("  \"uuid\": \"").append(patient.getPerson().randUUID().toString()).append("\",\n");
-                
-                // Patient attributes
-                json.append("  \"attributes\": {\n");
-                
-                // Add basic demographics
-                json.append("    \"gender\": \"").append(patient.getPerson().attributes.getOrDefault("gender", "")).append("\",\n");
-                json.append("    \"age\": ").append(patient.getPerson().attributes.getOrDefault("age", 0)).append(",\n");
-                json.append("    \"race\": \"").append(patient.getPerson().attributes.getOrDefault("race", "")).append("\",\n");
-                json.append("    \"ethnicity\": \"").append(patient.getPerson().attributes.getOrDefault("ethnicity", "")).append("\"\n");
-                
-                json.append("  },\n");
-                
-                // Patient-reported data
-                json.append("  \"patientReportedData\": {\n");
-                patient.getPatientReportedData().forEach((key, value) -> {
-                    if (value instanceof String) {
-                        json.append("    \"").append(key).append("\": \"").append(value).append("\",\n");
-                    } else {
-                        json.append("    \"").append(key).append("\": ").append(value).append(",\n");
-                    }
-                });
-                // Remove trailing comma
-                if (!patient.getPatientReportedData().isEmpty()) {
-                    json.setLength(json.length() - 2);
-                    json.append("\n");
+            if (hasFlag(args, "--update-baseline")) {
+                report.write(baselineFile);
+                System.out.println("Baseline updated: " + baselineFile.getAbsolutePath());
+            } else if (baselineFile.isFile()) {
+                List<String> regressions = harness.compare(report, PerfReport.read(baselineFile));
+                regressed = !regressions.isEmpty();
+                for (String regression : regressions) {
+                    System.out.println("REGRESSION " + regression);
                 }
-                
-                json.append("  }\n");
-                json.append("}\n");
-                
-                // Write to file
-                String fileName = "patient_" + patient.getPerson().randUUID().toString() + ".json";
-                try (FileWriter writer = new FileWriter(new File(outputDir, fileName))) {
-                    writer.write(json.toString());
+                System.out.println(regressed ? regressions.size() + " regressions against the baseline"
+                        : "No regressions against the baseline");
+            } else {
+                System.out.println("No baseline at " + baselineFile.getAbsolutePath()
+                        + "; run with --update-baseline to record one");
+            }
+            
+            report.write(reportFile);
+            System.out.println();
+            for (PerfResult result : report.getResults()) {
+                System.out.println(PerfHarness.describe(result));
+            }
+            System.out.println("Report written to " + reportFile.getAbsolutePath());
+        } catch (InterruptedException e) {
+            System.err.println("Performance harness interrupted");
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Error running the performance harness: " + e.getMessage());
+            e.printStackTrace();
+            regressed = true;
+        }
+        if (regressed) {
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Export patient data in every enabled format (exporter.enhanced_*.export) in one pass.
+     * 
+     * @param patients The list of enhanced patient data
+     */
+    private static void exportPatients(List<EnhancedPatientData> patients) {
+        try {
+            File outputDir = new File("output");
+            
+            try (ExportFanout exporter = ExportFanout.fromConfig(outputDir)) {
+                System.out.println("Exporting patient data to " + outputDir.getAbsolutePath()
+                        + " as " + String.join(", ", exporter.getFormatNames()));
+                for (EnhancedPatientData patient : patients) {
+                    exporter.accept(patient);
                 }
             }
             
-            System.out.println("Exported " + patients.size() + " patients to JSON");
+            System.out.println("Exported " + patients.size() + " patients");
             
+        } catch (InterruptedException e) {
+            System.err.println("Export interrupted");
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
             System.err.println("Error exporting patient data: " + e.getMessage());
             e.printStackTrace();
@@ -0,0 +1,148 @@
+package com.healthcaremock.generator;
+
+import org.mitre.synthea.engine.Module;
+import org.mitre.synthea.world.agents.Person;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Lets a running Synthea simulation be abandoned part way through, either because its thread
+ * was interrupted or because a check shows the person can no longer be used.
+ *
+ * <p>Synthea has no hook into its state machine, so, like the module profiler, the guard
+ * wraps every module in Synthea's registry in a {@link GuardedModule}. When a simulation run
+ * through {@link #run(Predicate, Supplier)} is abandoned, every module reports that it has
+ * finished at its next call. The remaining time steps then run no modules, and the simulation
+ * returns quickly without an exception passing through the engine. An abandoned person is
+ * incomplete and is never returned to the caller.
+ */
+public final class SimulationGuard {
+    private static final ThreadLocal<Watch> WATCH = new ThreadLocal<>();
+    private static Field moduleField;
+    private static boolean warned;
+    
+    private SimulationGuard() {
+    }
+    
+    /**
+     * Wraps every module in Synthea's registry that is not wrapped yet, loading any not loaded
+     * yet. Call before a generator simulates anyone; calling again is cheap.
+     * @return true if the modules are guarded.
+     */
+    public static synchronized boolean install() {
+        try {
+            Map<?, ?> registry = registry();
+            for (Object supplier : registry.values()) {
+                if (!(supplier instanceof Supplier)) {
+                    continue;
+                }
+                Object loaded = ((Supplier<?>) supplier).get();
+                if (!(loaded instanceof Module) || loaded instanceof GuardedModule) {
+                    continue;
+                }
+                moduleField(supplier.getClass()).set(supplier, new GuardedModule((Module) loaded));
+            }
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            if (!warned) {
+                System.err.println("Unable to guard Synthea modules; simulations run to the end: " + e);
+                warned = true;
+            }
+            return false;
+        }
+    }
+    
+    /**
+     * Runs a simulation on the calling thread, abandoning it once the thread is interrupted or
+     * the check returns true.
+     * @param abandon Checked once per simulated time step, or null to stop only on interrupt.
+     * @param simulation The simulation.
+     * @return The simulated person, or null if the simulation was abandoned or produced no one.
+     */
+    public static Person run(Predicate<Person> abandon, Supplier<Person> simulation) {
+        Watch previous = WATCH.get();
+        Watch watch = new Watch(abandon);
+        WATCH.set(watch);
+        try {
+            Person person = simulation.get();
+            return watch.abandoned ? null : person;
+        } finally {
+            if (previous != null) {
+                WATCH.set(previous);
+            } else {
+                WATCH.remove();
+            }
+        }
+    }
+    
+    /**
+     * Checks whether the simulation on the calling thread has been abandoned.
+     * @param person The person being simulated.
+     * @param time The simulation time of the module call.
+     * @return true if the module should report that it has finished instead of running.
+     */
+    static boolean isAbandoned(Person person, long time) {
+        Watch watch = WATCH.get();
+        return watch != null && watch.isAbandoned(person, time);
+    }
+    
+    /**
+     * Finds Synthea's registry of module suppliers: the static map in {@link Module}.
+     */
+    private static Map<?, ?> registry() throws ReflectiveOperationException {
+        for (Field field : Module.class.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && Map.class.isAssignableFrom(field.getType())) {
+                field.setAccessible(true);
+                return (Map<?, ?>) field.get(null);
+            }
+        }
+        throw new NoSuchFieldException("Module registry");
+    }
+    
+    /**
+     * Finds the field of a module supplier that holds its loaded module.
+     */
+    private static Field moduleField(Class<?> supplierClass) throws NoSuchFieldException {
+        if (moduleField == null) {
+            for (Field field : supplierClass.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) && field.getType() == Module.class) {
+                    field.setAccessible(true);
+                    moduleField = field;
+                }
+            }
+            if (moduleField == null) {
+                throw new NoSuchFieldException("Module supplier's module");
+            }
+        }
+        return moduleField;
+    }
+    
+    /**
+     * The state of one guarded simulation.
+     */
+    private static final class Watch {
+        private final Predicate<Person> abandon;
+        private long checkedAt = Long.MIN_VALUE;
+        private boolean abandoned;
+        
+        Watch(Predicate<Person> abandon) {
+            this.abandon = abandon;
+        }
+        
+        boolean isAbandoned(Person person, long time) {
+            if (!abandoned && Thread.currentThread().isInterrupted()) {
+                abandoned = true;
+            }
+            // Every module is called at each time step; check once per step
+            if (!abandoned && abandon != null && time != checkedAt) {
+                checkedAt = time;
+                abandoned = abandon.test(person);
+            }
+            return abandoned;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.healthcaremock.generator.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the codec's wire format directly from a {@link ByteBuffer}, including direct and
+ * memory-mapped buffers, without copying the payload first. Reading advances the buffer's
+ * position.
+ */
+public class BinaryDecoder {
+    private final ByteBuffer buffer;
+    private final List<String> strings;
+    
+    /**
+     * Creates a decoder positioned at the start of a payload.
+     * @param buffer The buffer.
+     */
+    public BinaryDecoder(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.strings = new ArrayList<>();
+    }
+    
+    /**
+     * Reads a single unsigned byte.
+     * @return The byte.
+     */
+    public int readByte() {
+        return buffer.get() & 0xFF;
+    }
+    
+    /**
+     * Reads a boolean.
+     * @return The value.
+     */
+    public boolean readBoolean() {
+        return buffer.get() != 0;
+    }
+    
+    /**
+     * Reads a varint.
+     * @return The value.
+     */
+    public int readVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+    
+    /**
+     * Reads a varint long.
+     * @return The value.
+     */
+    public long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+    
+    /**
+     * Reads a zigzag-encoded signed long.
+     * @return The value.
+     */
+    public long readSignedVarLong() {
+        long raw = readVarLong();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+    
+    /**
+     * Reads a double.
+     * @return The value.
+     */
+    public double readDouble() {
+        return Double.longBitsToDouble(buffer.getLong());
+    }
+    
+    /**
+     * Reads a nullable dictionary-coded string.
+     * @return The string, or null.
+     */
+    public String readString() {
+        int tag = readVarInt();
+        if (tag == BinaryEncoder.STRING_NULL) {
+            return null;
+        }
+        if (tag != BinaryEncoder.STRING_LITERAL) {
+            return strings.get(tag - BinaryEncoder.STRING_REFERENCE_BASE);
+        }
+        int length = readVarInt();
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                    StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        strings.add(value);
+        return value;
+    }
+    
+    /**
+     * Reads a length-prefixed byte array.
+     * @return The bytes.
+     */
+    public byte[] readBytes() {
+        byte[] bytes = new byte[readVarInt()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
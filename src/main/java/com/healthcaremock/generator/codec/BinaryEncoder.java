@@ -0,0 +1,158 @@
+package com.healthcaremock.generator.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes primitives into a growable byte array using the codec's wire format.
+ *
+ * <p>Integers are written as LEB128 varints, with zigzag encoding for signed values.
+ * Doubles are written as 8 big-endian bytes. Strings are dictionary-coded per payload:
+ * the first occurrence is written in full and later ones as a reference to it.
+ */
+public class BinaryEncoder {
+    static final int STRING_NULL = 0;
+    static final int STRING_LITERAL = 1;
+    static final int STRING_REFERENCE_BASE = 2;
+    
+    private final Map<String, Integer> strings;
+    private byte[] buffer;
+    private int position;
+    
+    /**
+     * Creates an encoder.
+     * @param initialCapacity The initial buffer size in bytes.
+     */
+    public BinaryEncoder(int initialCapacity) {
+        this.buffer = new byte[Math.max(16, initialCapacity)];
+        this.strings = new HashMap<>();
+    }
+    
+    /**
+     * Writes a single byte.
+     * @param value The byte.
+     */
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+    
+    /**
+     * Writes a boolean as one byte.
+     * @param value The value.
+     */
+    public void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+    
+    /**
+     * Writes a non-negative int as a varint.
+     * @param value The value.
+     */
+    public void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+    
+    /**
+     * Writes a non-negative long as a varint.
+     * @param value The value.
+     */
+    public void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+    
+    /**
+     * Writes a signed long as a zigzag varint, so small negative values stay short.
+     * @param value The value.
+     */
+    public void writeSignedVarLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+    
+    /**
+     * Writes a double as 8 big-endian bytes.
+     * @param value The value.
+     */
+    public void writeDouble(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (bits >>> shift);
+        }
+    }
+    
+    /**
+     * Writes a nullable string, dictionary-coded within this payload.
+     * @param value The string, or null.
+     */
+    public void writeString(String value) {
+        if (value == null) {
+            writeVarInt(STRING_NULL);
+            return;
+        }
+        Integer reference = strings.get(value);
+        if (reference != null) {
+            writeVarInt(STRING_REFERENCE_BASE + reference);
+            return;
+        }
+        strings.put(value, strings.size());
+        writeVarInt(STRING_LITERAL);
+        writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Writes a length-prefixed byte array.
+     * @param bytes The bytes.
+     */
+    public void writeBytes(byte[] bytes) {
+        writeVarInt(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+    
+    /**
+     * Gets the number of bytes written.
+     * @return The size.
+     */
+    public int size() {
+        return position;
+    }
+    
+    /**
+     * Writes the encoded bytes to a stream.
+     * @param out The stream.
+     * @throws IOException if writing fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, position);
+    }
+    
+    /**
+     * Copies the written bytes.
+     * @return The encoded payload.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+    
+    private void ensureCapacity(int extra) {
+        if (position + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+        }
+    }
+}
@@ -0,0 +1,444 @@
+package com.healthcaremock.generator.codec;
+
+import com.healthcaremock.generator.models.EnhancedPatientData;
+import com.healthcaremock.generator.models.ImagingReport;
+import com.healthcaremock.generator.models.PatientReportedOutcome;
+import com.healthcaremock.generator.models.SocialDeterminantsOfHealth;
+import com.healthcaremock.generator.models.WearableData;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned binary encoding of the enrichment models.
+ *
+ * <p>A payload starts with a magic byte and a format version, followed by the fields of
+ * {@link EnhancedPatientData} in a fixed order. Collections are prefixed with their size,
+ * strings are dictionary-coded, and wearable measurement values are written as one block
+ * of doubles. Values of {@code Map<String, Object>} fields carry a one-byte type tag; types
+ * other than strings, booleans, ints, longs, doubles, string-keyed maps and lists fall back
+ * to Java serialization.
+ */
+public final class ModelCodec {
+    /** The format version written by this codec. */
+    public static final int VERSION = 1;
+    
+    private static final int MAGIC = 0xE7;
+    
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_INT = 2;
+    private static final int TAG_LONG = 3;
+    private static final int TAG_DOUBLE = 4;
+    private static final int TAG_TRUE = 5;
+    private static final int TAG_FALSE = 6;
+    private static final int TAG_MAP = 7;
+    private static final int TAG_LIST = 8;
+    private static final int TAG_SERIALIZED = 9;
+    
+    private ModelCodec() {
+    }
+    
+    /**
+     * Encodes patient data.
+     * @param data The data.
+     * @return The payload.
+     */
+    public static byte[] encode(EnhancedPatientData data) {
+        BinaryEncoder out = new BinaryEncoder(1024);
+        encode(data, out);
+        return out.toByteArray();
+    }
+    
+    /**
+     * Encodes patient data into an encoder.
+     * @param data The data.
+     * @param out The encoder.
+     */
+    public static void encode(EnhancedPatientData data, BinaryEncoder out) {
+        out.writeByte(MAGIC);
+        out.writeVarInt(VERSION);
+        out.writeString(data.getPatientId());
+        
+        SocialDeterminantsOfHealth sdoh = data.getSocialDeterminants();
+        out.writeBoolean(sdoh != null);
+        if (sdoh != null) {
+            out.writeString(sdoh.getPatientId());
+            writeMap(out, sdoh.getFactors());
+        }
+        
+        List<WearableData> wearableData = data.getWearableData();
+        writeSize(out, wearableData);
+        if (wearableData != null) {
+            for (WearableData wearable : wearableData) {
+                out.writeBoolean(wearable != null);
+                if (wearable != null) {
+                    writeWearable(out, wearable);
+                }
+            }
+        }
+        
+        List<ImagingReport> imagingReports = data.getImagingReports();
+        writeSize(out, imagingReports);
+        if (imagingReports != null) {
+            for (ImagingReport report : imagingReports) {
+                out.writeBoolean(report != null);
+                if (report != null) {
+                    writeImagingReport(out, report);
+                }
+            }
+        }
+        
+        List<PatientReportedOutcome> outcomes = data.getPatientReportedOutcomes();
+        writeSize(out, outcomes);
+        if (outcomes != null) {
+            for (PatientReportedOutcome outcome : outcomes) {
+                out.writeBoolean(outcome != null);
+                if (outcome != null) {
+                    writeOutcome(out, outcome);
+                }
+            }
+        }
+        
+        writeMap(out, data.getAdditionalData());
+    }
+    
+    /**
+     * Decodes patient data from a byte array.
+     * @param payload The payload.
+     * @return The data.
+     */
+    public static EnhancedPatientData decode(byte[] payload) {
+        return decode(ByteBuffer.wrap(payload));
+    }
+    
+    /**
+     * Decodes patient data from a buffer, advancing its position past the payload.
+     * @param buffer The buffer.
+     * @return The data.
+     * @throws IllegalArgumentException if the payload is not in a supported format
+     */
+    public static EnhancedPatientData decode(ByteBuffer buffer) {
+        BinaryDecoder in = new BinaryDecoder(buffer);
+        if (in.readByte() != MAGIC) {
+            throw new IllegalArgumentException("Not an encoded patient payload");
+        }
+        int version = in.readVarInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported patient payload version: " + version);
+        }
+        
+        EnhancedPatientData data = new EnhancedPatientData(in.readString());
+        if (in.readBoolean()) {
+            SocialDeterminantsOfHealth sdoh = new SocialDeterminantsOfHealth(in.readString());
+            sdoh.setFactors(readMap(in));
+            data.setSocialDeterminants(sdoh);
+        }
+        
+        int count = in.readVarInt() - 1;
+        if (count < 0) {
+            data.setWearableData(null);
+        }
+        for (int i = 0; i < count; i++) {
+            data.addWearableData(in.readBoolean() ? readWearable(in) : null);
+        }
+        
+        count = in.readVarInt() - 1;
+        if (count < 0) {
+            data.setImagingReports(null);
+        }
+        for (int i = 0; i < count; i++) {
+            data.addImagingReport(in.readBoolean() ? readImagingReport(in) : null);
+        }
+        
+        count = in.readVarInt() - 1;
+        if (count < 0) {
+            data.setPatientReportedOutcomes(null);
+        }
+        for (int i = 0; i < count; i++) {
+            data.addPatientReportedOutcome(in.readBoolean() ? readOutcome(in) : null);
+        }
+        
+        data.setAdditionalData(readMap(in));
+        return data;
+    }
+    
+    private static void writeWearable(BinaryEncoder out, WearableData wearable) {
+        out.writeString(wearable.getDeviceType());
+        out.writeString(wearable.getDeviceId());
+        out.writeSignedVarLong(wearable.getRecordedAt());
+        out.writeString(wearable.getPatientId());
+        
+        List<WearableData.Measurement> measurements = wearable.getMeasurements();
+        writeSize(out, measurements);
+        if (measurements == null) {
+            return;
+        }
+        for (WearableData.Measurement measurement : measurements) {
+            out.writeString(measurement.getType());
+            out.writeString(measurement.getUnit());
+        }
+        for (WearableData.Measurement measurement : measurements) {
+            out.writeDouble(measurement.getValue());
+        }
+    }
+    
+    private static WearableData readWearable(BinaryDecoder in) {
+        WearableData wearable = new WearableData();
+        wearable.setDeviceType(in.readString());
+        wearable.setDeviceId(in.readString());
+        wearable.setRecordedAt(in.readSignedVarLong());
+        wearable.setPatientId(in.readString());
+        
+        int count = in.readVarInt() - 1;
+        if (count < 0) {
+            wearable.setMeasurements(null);
+            return wearable;
+        }
+        String[] types = new String[count];
+        String[] units = new String[count];
+        for (int i = 0; i < count; i++) {
+            types[i] = in.readString();
+            units[i] = in.readString();
+        }
+        for (int i = 0; i < count; i++) {
+            wearable.addMeasurement(types[i], units[i], in.readDouble());
+        }
+        return wearable;
+    }
+    
+    private static void writeImagingReport(BinaryEncoder out, ImagingReport report) {
+        out.writeString(report.getId());
+        out.writeString(report.getPatientId());
+        out.writeString(report.getEncounterId());
+        out.writeSignedVarLong(report.getTimestamp());
+        out.writeString(report.getModality());
+        out.writeString(report.getBodyPart());
+        out.writeString(report.getProcedureCode());
+        out.writeString(report.getProcedureDisplay());
+        out.writeString(report.getReportText());
+        out.writeString(report.getImpression());
+        out.writeString(report.getConclusion());
+        
+        List<ImagingReport.Finding> findings = report.getFindings();
+        writeSize(out, findings);
+        if (findings != null) {
+            for (ImagingReport.Finding finding : findings) {
+                out.writeString(finding.getText());
+                out.writeString(finding.getSignificance());
+            }
+        }
+    }
+    
+    private static ImagingReport readImagingReport(BinaryDecoder in) {
+        ImagingReport report = new ImagingReport();
+        report.setId(in.readString());
+        report.setPatientId(in.readString());
+        report.setEncounterId(in.readString());
+        report.setTimestamp(in.readSignedVarLong());
+        report.setModality(in.readString());
+        report.setBodyPart(in.readString());
+        report.setProcedureCode(in.readString());
+        report.setProcedureDisplay(in.readString());
+        report.setReportText(in.readString());
+        report.setImpression(in.readString());
+        report.setConclusion(in.readString());
+        
+        int count = in.readVarInt() - 1;
+        if (count < 0) {
+            report.setFindings(null);
+        }
+        for (int i = 0; i < count; i++) {
+            ImagingReport.Finding finding = new ImagingReport.Finding();
+            finding.setText(in.readString());
+            finding.setSignificance(in.readString());
+            report.getFindings().add(finding);
+        }
+        return report;
+    }
+    
+    private static void writeOutcome(BinaryEncoder out, PatientReportedOutcome outcome) {
+        out.writeString(outcome.getId());
+        out.writeString(outcome.getPatientId());
+        out.writeString(outcome.getEncounterId());
+        out.writeSignedVarLong(outcome.getTimestamp());
+        out.writeString(outcome.getInstrumentType());
+        out.writeSignedVarLong(outcome.getInstrumentVersion());
+        out.writeString(outcome.getCondition());
+        writeMap(out, outcome.getResponses());
+        out.writeDouble(outcome.getTotalScore());
+        out.writeString(outcome.getInterpretation());
+    }
+    
+    private static PatientReportedOutcome readOutcome(BinaryDecoder in) {
+        PatientReportedOutcome outcome = new PatientReportedOutcome();
+        outcome.setId(in.readString());
+        outcome.setPatientId(in.readString());
+        outcome.setEncounterId(in.readString());
+        outcome.setTimestamp(in.readSignedVarLong());
+        outcome.setInstrumentType(in.readString());
+        outcome.setInstrumentVersion((int) in.readSignedVarLong());
+        outcome.setCondition(in.readString());
+        outcome.setResponses(readMap(in));
+        outcome.setTotalScore(in.readDouble());
+        outcome.setInterpretation(in.readString());
+        return outcome;
+    }
+    
+    private static void writeSize(BinaryEncoder out, Collection<?> values) {
+        // Zero marks a null collection
+        out.writeVarInt(values == null ? 0 : values.size() + 1);
+    }
+    
+    private static void writeMap(BinaryEncoder out, Map<String, Object> values) {
+        writeSize(out, values == null ? null : values.keySet());
+        if (values == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            out.writeString(entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+    
+    private static Map<String, Object> readMap(BinaryDecoder in) {
+        int count = in.readVarInt() - 1;
+        if (count < 0) {
+            return null;
+        }
+        // Keep the encoded order so re-exported JSON is unchanged
+        Map<String, Object> values = new LinkedHashMap<>(Math.max(4, count * 4 / 3 + 1));
+        for (int i = 0; i < count; i++) {
+            values.put(in.readString(), readValue(in));
+        }
+        return values;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static void writeValue(BinaryEncoder out, Object value) {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(TAG_STRING);
+            out.writeString((String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(TAG_INT);
+            out.writeSignedVarLong((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TAG_LONG);
+            out.writeSignedVarLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (value instanceof Map && hasStringKeys((Map<?, ?>) value)) {
+            out.writeByte(TAG_MAP);
+            writeMap(out, (Map<String, Object>) value);
+        } else if (value instanceof List) {
+            out.writeByte(TAG_LIST);
+            List<?> list = (List<?>) value;
+            out.writeVarInt(list.size());
+            for (Object element : list) {
+                writeValue(out, element);
+            }
+        } else {
+            out.writeByte(TAG_SERIALIZED);
+            out.writeBytes(serialize(value));
+        }
+    }
+    
+    private static Object readValue(BinaryDecoder in) {
+        int tag = in.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return in.readString();
+            case TAG_INT:
+                return (int) in.readSignedVarLong();
+            case TAG_LONG:
+                return in.readSignedVarLong();
+            case TAG_DOUBLE:
+                return in.readDouble();
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_MAP:
+                return readMap(in);
+            case TAG_LIST:
+                int count = in.readVarInt();
+                List<Object> list = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            case TAG_SERIALIZED:
+                return deserialize(in.readBytes());
+            default:
+                throw new IllegalArgumentException("Unknown value tag: " + tag);
+        }
+    }
+    
+    private static boolean hasStringKeys(Map<?, ?> map) {
+        for (Object key : map.keySet()) {
+            if (!(key instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static byte[] serialize(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to encode value of type " + value.getClass().getName(), e);
+        }
+        return bytes.toByteArray();
+    }
+    
+    private static Object deserialize(byte[] bytes) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to decode value", e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Unable to decode value", e);
+        }
+    }
+    
+    /**
+     * Serialization proxy that lets Java serialization of patient data use this codec.
+     */
+    public static final class SerializedForm implements Serializable {
+        private static final long serialVersionUID = 1L;
+        
+        private final byte[] payload;
+        
+        /**
+         * Creates a proxy for patient data.
+         * @param data The data.
+         */
+        public SerializedForm(EnhancedPatientData data) {
+            this.payload = encode(data);
+        }
+        
+        private Object readResolve() {
+            return decode(payload);
+        }
+    }
+}
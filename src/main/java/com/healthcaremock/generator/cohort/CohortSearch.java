@@ -0,0 +1,114 @@
+package com.healthcaremock.generator.cohort;
+
+import com.healthcaremock.generator.EnhancedGenerator;
+import com.healthcaremock.generator.EnhancedPatientData;
+import com.healthcaremock.generator.scheduler.JobScheduler;
+import com.healthcaremock.generator.scheduler.Priority;
+import com.healthcaremock.generator.scheduler.ScheduledJob;
+import org.mitre.synthea.world.agents.Person;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fills each patient slot of a job with a patient that matches a cohort.
+ *
+ * <p>The cohort's demographic constraints are already applied to the generator's options.
+ * For clinical constraints, candidates are simulated with successive derived seeds and
+ * checked as soon as Synthea returns; candidates that don't match are dropped before
+ * enrichment. A candidate diagnosed with an excluded condition is abandoned as soon as the
+ * diagnosis appears, without simulating the rest of its life.
+ */
+public class CohortSearch implements JobScheduler.PatientTask {
+    private final EnhancedGenerator generator;
+    private final CohortSpec cohort;
+    private final long seed;
+    private final int maxCandidatesPerPatient;
+    private final LongAdder candidates;
+    private final LongAdder accepted;
+    
+    /**
+     * Constructor.
+     * @param generator A generator whose options already carry the cohort's demographics.
+     * @param cohort The cohort.
+     * @param seed The population seed.
+     * @param maxCandidatesPerPatient The number of candidates to try per slot and attempt
+     *     before giving up.
+     */
+    public CohortSearch(EnhancedGenerator generator, CohortSpec cohort, long seed,
+            int maxCandidatesPerPatient) {
+        this.generator = generator;
+        this.cohort = cohort;
+        this.seed = seed;
+        this.maxCandidatesPerPatient = maxCandidatesPerPatient;
+        this.candidates = new LongAdder();
+        this.accepted = new LongAdder();
+    }
+    
+    @Override
+    public EnhancedPatientData generate(int index, int attempt) {
+        long slotSeed = attempt == 0
+                ? EnhancedGenerator.derivePersonSeed(seed, index)
+                : EnhancedGenerator.deriveRetrySeed(seed, index, attempt);
+        generator.startPatient();
+        for (int candidate = 0; candidate < maxCandidatesPerPatient; candidate++) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Cohort search cancelled");
+            }
+            // The first candidate keeps the plain per-index seed so unconstrained jobs match
+            long personSeed = candidate == 0 ? slotSeed : EnhancedGenerator.derivePersonSeed(slotSeed, candidate);
+            Person person = generator.simulatePerson(index, personSeed, cohort.exclusionCheck());
+            candidates.increment();
+            if (person != null && cohort.matchesClinical(person)) {
+                accepted.increment();
+                return generator.enhance(person);
+            }
+        }
+        return null;
+    }
+    
+    @Override
+    public void accepted(EnhancedPatientData patient) {
+        generator.keepPatient(patient);
+    }
+    
+    /**
+     * Generates patients matching the cohort on a scheduler, continuing until the requested
+     * number match or the job runs out of attempts.
+     * @param count The number of matching patients.
+     * @param scheduler The scheduler to run on.
+     * @param priority The job priority.
+     * @param maxAttempts The attempts per patient slot.
+     * @return The matching patients.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public List<EnhancedPatientData> generate(int count, JobScheduler scheduler, Priority priority,
+            int maxAttempts) throws InterruptedException {
+        ScheduledJob job = scheduler.submit("cohort", count, priority, 0, maxAttempts, this);
+        List<EnhancedPatientData> patients = new ArrayList<>();
+        EnhancedPatientData patient;
+        while ((patient = job.take()) != null) {
+            patients.add(patient);
+        }
+        return patients;
+    }
+    
+    public long getCandidates() {
+        return candidates.sum();
+    }
+    
+    public long getAccepted() {
+        return accepted.sum();
+    }
+    
+    /**
+     * Gets the fraction of simulated candidates that matched the cohort.
+     * @return The acceptance rate (0.0-1.0).
+     */
+    public double getAcceptanceRate() {
+        long total = candidates.sum();
+        return total == 0 ? 0 : (double) accepted.sum() / total;
+    }
+}
@@ -0,0 +1,243 @@
+package com.healthcaremock.generator.cohort;
+
+import org.mitre.synthea.engine.Generator;
+import org.mitre.synthea.world.agents.Person;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Describes the constraints of a requested patient cohort.
+ * Demographic constraints that Synthea supports natively are applied to the generator
+ * options so that patients outside the cohort are never simulated. Clinical constraints
+ * are checked as soon as the simulation finishes, before any enrichment is done; a candidate
+ * diagnosed with an excluded condition is abandoned during the simulation (see
+ * {@link #exclusionCheck()}).
+ */
+public class CohortSpec {
+    private String gender;
+    private Integer minAge;
+    private Integer maxAge;
+    private String state;
+    private List<String> conditions;
+    private List<String> excludedConditions;
+    
+    /**
+     * Constructor for an unconstrained cohort.
+     */
+    public CohortSpec() {
+    }
+    
+    /**
+     * Parses a cohort from a command-line specification such as
+     * {@code gender=F;minAge=40;maxAge=65;conditions=44054006,38341003}.
+     * @param spec The specification: semicolon-separated key=value pairs, with
+     *     comma-separated code lists.
+     * @return The cohort.
+     * @throws IllegalArgumentException if a key or value is invalid.
+     */
+    public static CohortSpec parse(String spec) {
+        CohortSpec cohort = new CohortSpec();
+        for (String pair : spec.split(";")) {
+            if (pair.trim().isEmpty()) {
+                continue;
+            }
+            String[] parts = pair.split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected key=value in cohort spec: " + pair);
+            }
+            String key = parts[0].trim();
+            String value = parts[1].trim();
+            try {
+                switch (key) {
+                    case "gender":
+                        cohort.gender = value;
+                        break;
+                    case "minAge":
+                        cohort.minAge = Integer.parseInt(value);
+                        break;
+                    case "maxAge":
+                        cohort.maxAge = Integer.parseInt(value);
+                        break;
+                    case "state":
+                        cohort.state = value;
+                        break;
+                    case "conditions":
+                        cohort.conditions = codes(value);
+                        break;
+                    case "excludedConditions":
+                        cohort.excludedConditions = codes(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown cohort key: " + key);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number for " + key + ": " + value);
+            }
+        }
+        return cohort;
+    }
+    
+    /**
+     * Splits a comma-separated code list, ignoring blanks around codes and empty entries.
+     */
+    private static List<String> codes(String value) {
+        List<String> codes = new ArrayList<>();
+        for (String code : value.split(",")) {
+            if (!code.trim().isEmpty()) {
+                codes.add(code.trim());
+            }
+        }
+        return codes;
+    }
+    
+    /**
+     * Applies the demographic constraints to a set of generator options.
+     * @param options The options to modify.
+     */
+    public void applyTo(Generator.GeneratorOptions options) {
+        if (gender != null) {
+            options.gender = gender;
+        }
+        if (minAge != null || maxAge != null) {
+            options.ageSpecified = true;
+            options.minAge = minAge != null ? minAge : 0;
+            options.maxAge = maxAge != null ? maxAge : 140;
+        }
+        if (state != null) {
+            options.state = state;
+        }
+    }
+    
+    /**
+     * Checks whether the cohort has constraints that can only be checked after simulation.
+     * @return true if there are clinical constraints.
+     */
+    public boolean hasClinicalConstraints() {
+        return (conditions != null && !conditions.isEmpty())
+                || (excludedConditions != null && !excludedConditions.isEmpty());
+    }
+    
+    /**
+     * Checks the clinical constraints against a simulated person: every required condition
+     * must be active at the end of the simulation, and no excluded condition may have been
+     * diagnosed at any point.
+     * @param person The simulated person.
+     * @return true if the person belongs to the cohort.
+     */
+    public boolean matchesClinical(Person person) {
+        if (!hasClinicalConstraints()) {
+            return true;
+        }
+        if (conditions != null && !ConditionCodes.active(person).containsAll(conditions)) {
+            return false;
+        }
+        if (excludedConditions != null) {
+            Set<String> diagnosed = ConditionCodes.diagnosed(person);
+            for (String code : excludedConditions) {
+                if (diagnosed.contains(code)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Creates a check for one candidate's simulation that is true as soon as the candidate is
+     * diagnosed with an excluded condition. A diagnosis cannot be undone, so the candidate can
+     * no longer match and the rest of its simulation can be skipped. Required conditions
+     * cannot be decided before the end: one may still be diagnosed, or resolved.
+     * @return A new check for each candidate, or null if the cohort excludes no conditions.
+     */
+    public Predicate<Person> exclusionCheck() {
+        if (excludedConditions == null || excludedConditions.isEmpty()) {
+            return null;
+        }
+        Set<String> excluded = new HashSet<>(excludedConditions);
+        ConditionCodes.Tracker tracker = new ConditionCodes.Tracker();
+        return person -> tracker.diagnosedAny(person, excluded);
+    }
+    
+    /**
+     * Gets a key identifying the generator configuration this cohort requires.
+     * Cohorts with equal keys can share a generator; clinical constraints are not part of it.
+     * @return The key.
+     */
+    public String getGeneratorKey() {
+        return gender + "|" + minAge + "|" + maxAge + "|" + state;
+    }
+    
+    // Getters and setters
+    
+    public String getGender() {
+        return gender;
+    }
+    
+    public void setGender(String gender) {
+        this.gender = gender;
+    }
+    
+    public Integer getMinAge() {
+        return minAge;
+    }
+    
+    public void setMinAge(Integer minAge) {
+        this.minAge = minAge;
+    }
+    
+    public Integer getMaxAge() {
+        return maxAge;
+    }
+    
+    public void setMaxAge(Integer maxAge) {
+        this.maxAge = maxAge;
+    }
+    
+    public String getState() {
+        return state;
+    }
+    
+    public void setState(String state) {
+        this.state = state;
+    }
+    
+    public List<String> getConditions() {
+        return conditions;
+    }
+    
+    public void setConditions(List<String> conditions) {
+        this.conditions = conditions;
+    }
+    
+    public List<String> getExcludedConditions() {
+        return excludedConditions;
+    }
+    
+    public void setExcludedConditions(List<String> excludedConditions) {
+        this.excludedConditions = excludedConditions;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CohortSpec)) {
+            return false;
+        }
+        CohortSpec other = (CohortSpec) o;
+        return getGeneratorKey().equals(other.getGeneratorKey())
+                && Objects.equals(conditions, other.conditions)
+                && Objects.equals(excludedConditions, other.excludedConditions);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(gender, minAge, maxAge, state, conditions, excludedConditions);
+    }
+}
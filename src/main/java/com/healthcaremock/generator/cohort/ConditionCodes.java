@@ -0,0 +1,112 @@
+package com.healthcaremock.generator.cohort;
+
+import org.mitre.synthea.world.agents.Person;
+import org.mitre.synthea.world.concepts.HealthRecord;
+import org.mitre.synthea.world.concepts.HealthRecord.Code;
+import org.mitre.synthea.world.concepts.HealthRecord.Encounter;
+import org.mitre.synthea.world.concepts.HealthRecord.Entry;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Helpers for reading condition codes from a simulated person's health record.
+ */
+public final class ConditionCodes {
+    
+    private ConditionCodes() {
+    }
+    
+    /**
+     * Collects the codes of all conditions that are still active at the end of the simulation.
+     * @param person The simulated person.
+     * @return The active condition codes.
+     */
+    public static Set<String> active(Person person) {
+        return collect(person, true);
+    }
+    
+    /**
+     * Collects the codes of all conditions diagnosed at any point of the simulation, whether
+     * or not they were resolved later.
+     * @param person The simulated person.
+     * @return The diagnosed condition codes.
+     */
+    public static Set<String> diagnosed(Person person) {
+        return collect(person, false);
+    }
+    
+    private static Set<String> collect(Person person, boolean activeOnly) {
+        Set<String> codes = new HashSet<>();
+        if (person.record == null || person.record.encounters == null) {
+            return codes;
+        }
+        for (Encounter encounter : person.record.encounters) {
+            if (encounter.conditions == null) {
+                continue;
+            }
+            for (Entry condition : encounter.conditions) {
+                // A stop time of 0 means the condition was never resolved
+                if ((activeOnly && condition.stop != 0L) || condition.codes == null) {
+                    continue;
+                }
+                for (Code code : condition.codes) {
+                    codes.add(code.code);
+                }
+            }
+        }
+        return codes;
+    }
+    
+    /**
+     * Follows a person's health record while it is being simulated and looks only at the
+     * conditions added since the last call, so checking at every time step does not rescan
+     * the whole record. Conditions are added to the latest encounter, so a tracker reads each
+     * encounter once and keeps its place in the last one. One tracker follows one person.
+     */
+    public static final class Tracker {
+        private HealthRecord record;
+        private int encounter;
+        private int condition;
+        
+        /**
+         * Checks whether any of the codes has been diagnosed since the last call.
+         * @param person The person being simulated.
+         * @param codes The codes to look for.
+         * @return true if a new condition has one of the codes.
+         */
+        public boolean diagnosedAny(Person person, Set<String> codes) {
+            if (person.record != record) {
+                record = person.record;
+                encounter = 0;
+                condition = 0;
+            }
+            if (record == null || record.encounters == null) {
+                return false;
+            }
+            List<Encounter> encounters = record.encounters;
+            while (encounter < encounters.size()) {
+                List<Entry> conditions = encounters.get(encounter).conditions;
+                for (; conditions != null && condition < conditions.size(); condition++) {
+                    List<Code> entryCodes = conditions.get(condition).codes;
+                    if (entryCodes == null) {
+                        continue;
+                    }
+                    for (Code code : entryCodes) {
+                        if (codes.contains(code.code)) {
+                            return true;
+                        }
+                    }
+                }
+                if (encounter == encounters.size() - 1) {
+                    // More conditions may still be added to the latest encounter
+                    break;
+                }
+                encounter++;
+                condition = 0;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.healthcaremock.generator.cohort;
+
+import com.healthcaremock.generator.config.ConfigManager;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Target prevalence of each stratum and the female share of the population.
+ */
+public class PrevalenceTargets {
+    private final Map<Stratum, Double> prevalence;
+    private final double femalePercentage;
+    
+    /**
+     * Constructor.
+     * @param prevalence The target prevalence (0.0-1.0) per stratum; missing strata are unconstrained.
+     * @param femalePercentage The target female share (0.0-1.0).
+     */
+    public PrevalenceTargets(Map<Stratum, Double> prevalence, double femalePercentage) {
+        // EnumMap's copy constructor rejects an empty map that is not an EnumMap
+        this.prevalence = new EnumMap<>(Stratum.class);
+        this.prevalence.putAll(prevalence);
+        this.femalePercentage = femalePercentage;
+    }
+    
+    /**
+     * Loads the targets from healthcare-generator.properties.
+     * @return The configured targets.
+     */
+    public static PrevalenceTargets fromConfig() {
+        Map<Stratum, Double> prevalence = new EnumMap<>(Stratum.class);
+        for (Stratum stratum : Stratum.values()) {
+            double target = ConfigManager.getAsDouble(stratum.getPrevalenceKey(), -1);
+            if (target >= 0) {
+                prevalence.put(stratum, target);
+            }
+        }
+        return new PrevalenceTargets(prevalence,
+                ConfigManager.getAsDouble("generator.female_percentage", 0.5));
+    }
+    
+    /**
+     * Gets the target prevalence of a stratum.
+     * @param stratum The stratum.
+     * @return The target, or null if the stratum is unconstrained.
+     */
+    public Double getPrevalence(Stratum stratum) {
+        return prevalence.get(stratum);
+    }
+    
+    public double getFemalePercentage() {
+        return femalePercentage;
+    }
+}
@@ -0,0 +1,304 @@
+package com.healthcaremock.generator.cohort;
+
+import com.healthcaremock.generator.EnhancedGenerator;
+import com.healthcaremock.generator.EnhancedPatientData;
+import com.healthcaremock.generator.config.ConfigManager;
+import com.healthcaremock.generator.enrichment.EnrichmentPipeline;
+import org.mitre.synthea.engine.Generator;
+import org.mitre.synthea.world.agents.Person;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates a population whose gender split and stratum prevalences match the targets in
+ * healthcare-generator.properties.
+ *
+ * <p>Gender and the configured age range are applied before simulation through per-gender
+ * generators, so they cost nothing. Clinical strata are outcomes of the simulation, so each
+ * finished candidate is checked against the {@link QuotaTracker}; candidates that would push a
+ * stratum over its quota are discarded and replaced by a candidate with a fresh derived seed.
+ * Over-generation is capped by {@code quota.max_overgeneration}.
+ *
+ * <p>Generation is steered toward the strata that are still short through age, which Synthea
+ * takes before simulation and which drives most strata. The age range is split into
+ * {@code quota.age_bands} bands, each with a generator per gender. For every band and gender
+ * the scheduler counts the strata of the candidates simulated so far, and picks the band of
+ * the next candidate in proportion to its width times the share of its candidates that
+ * would fit the quotas as they stand now. With no quota pressure every band fits equally and
+ * ages are uniform over the range, as without bands; as a stratum fills up, bands whose
+ * candidates would overshoot it are simulated less often.
+ */
+public class QuotaScheduler implements AutoCloseable {
+    private final List<Source> femaleSources;
+    private final List<Source> maleSources;
+    private final PrevalenceTargets targets;
+    private final StrataClassifier classifier;
+    private final double tolerance;
+    private final double maxOvergeneration;
+    private final long seed;
+    private volatile QuotaTracker lastTracker;
+    
+    /**
+     * Constructor.
+     * @param baseOptions The generator options shared by both genders.
+     * @param enrichmentPipeline The enrichers to run on admitted patients.
+     * @param targets The prevalence targets.
+     * @param classifier Assigns candidates to strata.
+     * @param tolerance The allowed absolute deviation from each target prevalence.
+     * @param maxOvergeneration The fraction of the population that may be rejected.
+     * @param ageBands The number of age bands to steer between; only used when the options
+     *     specify an age range.
+     * @throws Exception if a generator cannot be created.
+     */
+    public QuotaScheduler(Generator.GeneratorOptions baseOptions, EnrichmentPipeline enrichmentPipeline,
+            PrevalenceTargets targets, StrataClassifier classifier, double tolerance,
+            double maxOvergeneration, int ageBands) throws Exception {
+        this.femaleSources = createSources(baseOptions, "F", enrichmentPipeline, ageBands);
+        this.maleSources = createSources(baseOptions, "M", enrichmentPipeline, ageBands);
+        this.targets = targets;
+        this.classifier = classifier;
+        this.tolerance = tolerance;
+        this.maxOvergeneration = maxOvergeneration;
+        this.seed = baseOptions.seed;
+    }
+    
+    /**
+     * Creates a scheduler configured from healthcare-generator.properties.
+     * @param baseOptions The generator options shared by both genders.
+     * @return The scheduler.
+     * @throws Exception if a generator cannot be created.
+     */
+    public static QuotaScheduler fromConfig(Generator.GeneratorOptions baseOptions) throws Exception {
+        int minAge = ConfigManager.getAsInteger("generator.min_age", -1);
+        int maxAge = ConfigManager.getAsInteger("generator.max_age", -1);
+        if (minAge >= 0 && maxAge >= minAge) {
+            baseOptions.ageSpecified = true;
+            baseOptions.minAge = minAge;
+            baseOptions.maxAge = maxAge;
+        }
+        return new QuotaScheduler(baseOptions, EnrichmentPipeline.fromConfig(),
+                PrevalenceTargets.fromConfig(), StrataClassifier.fromConfig(),
+                ConfigManager.getAsDouble("quota.tolerance", 0.02),
+                ConfigManager.getAsDouble("quota.max_overgeneration", 0.05),
+                ConfigManager.getAsInteger("quota.age_bands", 4));
+    }
+    
+    /**
+     * Generates exactly the requested number of patients, steering toward unmet strata.
+     * A candidate whose enrichment fails gives its admission back and is replaced.
+     * @param count The number of patients.
+     * @return The admitted patients; fewer only if the run timed out or was interrupted.
+     */
+    public List<EnhancedPatientData> generatePatients(int count) {
+        QuotaTracker tracker = new QuotaTracker(count, targets, tolerance, maxOvergeneration);
+        lastTracker = tracker;
+        List<EnhancedPatientData> admitted = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong candidates = new AtomicLong();
+        
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        ExecutorService threadPool = Executors.newFixedThreadPool(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            threadPool.submit(() -> {
+                while (!tracker.isComplete() && !Thread.currentThread().isInterrupted()) {
+                    String gender;
+                    try {
+                        // Every slot may be held by in-flight candidates, one of which may
+                        // still be rejected
+                        gender = tracker.awaitGender();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    if (gender == null) {
+                        break;
+                    }
+                    int admittedStrata = -1;
+                    boolean kept = false;
+                    try {
+                        long candidate = candidates.getAndIncrement();
+                        Source source = chooseSource(gender.equals("F") ? femaleSources : maleSources,
+                                tracker);
+                        EnhancedGenerator generator = source.generator;
+                        generator.startPatient();
+                        Person person = generator.simulatePerson((int) candidate,
+                                EnhancedGenerator.derivePersonSeed(seed, (int) candidate));
+                        if (person == null) {
+                            continue;
+                        }
+                        int strata = classifier.classify(person);
+                        source.record(strata);
+                        // Only admitted candidates pay for enrichment
+                        if (tracker.tryAdmit(strata)) {
+                            admittedStrata = strata;
+                            EnhancedPatientData patient = generator.enhance(person);
+                            generator.keepPatient(patient);
+                            admitted.add(patient);
+                            kept = true;
+                        }
+                    } catch (Exception e) {
+                        System.err.println("Error generating candidate: " + e.getMessage());
+                    } finally {
+                        if (admittedStrata < 0) {
+                            tracker.releaseGender(gender);
+                        } else if (!kept) {
+                            // Enrichment failed; free the admission for a replacement
+                            tracker.withdraw(admittedStrata, gender);
+                        }
+                    }
+                }
+            });
+        }
+        
+        // Workers stop once the tracker is complete
+        threadPool.shutdown();
+        try {
+            if (!threadPool.awaitTermination(30, TimeUnit.MINUTES)) {
+                // Stop the workers before copying, so none admits a patient afterwards
+                threadPool.shutdownNow();
+                threadPool.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        } catch (InterruptedException e) {
+            System.err.println("Patient generation interrupted: " + e.getMessage());
+            threadPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        
+        List<EnhancedPatientData> patients = new ArrayList<>(admitted);
+        if (patients.size() < count) {
+            System.err.println("Warning: quota generation stopped after " + patients.size() + " of "
+                    + count + " patients");
+        }
+        return patients;
+    }
+    
+    /**
+     * Deletes the spill files of every generator.
+     */
+    @Override
+    public void close() {
+        for (Source source : femaleSources) {
+            source.generator.close();
+        }
+        for (Source source : maleSources) {
+            source.generator.close();
+        }
+    }
+    
+    /**
+     * Gets the quota counters of the most recent run.
+     * @return The tracker, or null if no run has started.
+     */
+    public QuotaTracker getLastTracker() {
+        return lastTracker;
+    }
+    
+    /**
+     * Picks the generator for the next candidate of a gender, weighting each age band by its
+     * width and by the share of its candidates so far that would fit the current quotas.
+     */
+    private static Source chooseSource(List<Source> sources, QuotaTracker tracker) {
+        if (sources.size() == 1) {
+            return sources.get(0);
+        }
+        double[] weights = new double[sources.size()];
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            Source source = sources.get(i);
+            weights[i] = source.width * source.fitShare(tracker);
+            total += weights[i];
+        }
+        double pick = ThreadLocalRandom.current().nextDouble(total);
+        for (int i = 0; i < weights.length - 1; i++) {
+            pick -= weights[i];
+            if (pick < 0) {
+                return sources.get(i);
+            }
+        }
+        return sources.get(weights.length - 1);
+    }
+    
+    /**
+     * Creates the generators of one gender: one per age band if the options specify an age
+     * range, or a single one otherwise.
+     */
+    private static List<Source> createSources(Generator.GeneratorOptions base, String gender,
+            EnrichmentPipeline enrichmentPipeline, int ageBands) throws Exception {
+        List<Source> sources = new ArrayList<>();
+        if (!base.ageSpecified || ageBands <= 1) {
+            sources.add(new Source(new EnhancedGenerator(withGender(base, gender), enrichmentPipeline), 1));
+            return sources;
+        }
+        int span = base.maxAge - base.minAge + 1;
+        int bands = Math.min(ageBands, span);
+        for (int band = 0; band < bands; band++) {
+            Generator.GeneratorOptions options = withGender(base, gender);
+            options.minAge = base.minAge + span * band / bands;
+            options.maxAge = base.minAge + span * (band + 1) / bands - 1;
+            sources.add(new Source(new EnhancedGenerator(options, enrichmentPipeline),
+                    options.maxAge - options.minAge + 1));
+        }
+        return sources;
+    }
+    
+    private static Generator.GeneratorOptions withGender(Generator.GeneratorOptions base, String gender) {
+        Generator.GeneratorOptions options = new Generator.GeneratorOptions();
+        options.population = base.population;
+        options.seed = base.seed;
+        options.clinicianSeed = base.clinicianSeed;
+        options.overflow = base.overflow;
+        options.state = base.state;
+        options.city = base.city;
+        options.ageSpecified = base.ageSpecified;
+        options.minAge = base.minAge;
+        options.maxAge = base.maxAge;
+        options.gender = gender;
+        return options;
+    }
+    
+    /**
+     * The generator of one gender and age band, and the strata of the candidates it has
+     * produced so far.
+     */
+    private static final class Source {
+        private final EnhancedGenerator generator;
+        private final int width;
+        // Candidates seen per strata mask
+        private final AtomicIntegerArray candidates = new AtomicIntegerArray(1 << Stratum.values().length);
+        
+        Source(EnhancedGenerator generator, int width) {
+            this.generator = generator;
+            this.width = width;
+        }
+        
+        void record(int strata) {
+            candidates.incrementAndGet(strata);
+        }
+        
+        /**
+         * Estimates the chance that this source's next candidate fits the quotas as they
+         * stand now. Each source starts with one fitting candidate, so every band is tried.
+         */
+        double fitShare(QuotaTracker tracker) {
+            long seen = 0;
+            long fitting = 0;
+            for (int mask = 0; mask < candidates.length(); mask++) {
+                int count = candidates.get(mask);
+                if (count > 0) {
+                    seen += count;
+                    if (tracker.wouldFit(mask)) {
+                        fitting += count;
+                    }
+                }
+            }
+            return (fitting + 1.0) / (seen + 1.0);
+        }
+    }
+}
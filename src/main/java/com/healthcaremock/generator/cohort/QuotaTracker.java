@@ -0,0 +1,282 @@
+package com.healthcaremock.generator.cohort;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock-free stratum counters shared by all generation workers.
+ *
+ * <p>Every stratum has a cap on members and on non-members derived from its target
+ * prevalence plus a tolerance. A candidate is admitted only if it fits under every cap;
+ * counters are reserved optimistically and rolled back on conflict, so concurrent workers
+ * never push a stratum past its cap. Gender is steered rather than filtered: workers
+ * reserve a gender slot before simulating and generate a patient of that gender. A worker
+ * that finds every slot held by an in-flight candidate blocks in {@link #awaitGender()}
+ * until a candidate is rejected or withdrawn, or the population is complete.
+ */
+public class QuotaTracker {
+    private final int population;
+    private final int femaleQuota;
+    private final double maxOvergeneration;
+    private final PrevalenceTargets targets;
+    private final int[] memberCaps;
+    private final int[] nonMemberCaps;
+    private final AtomicIntegerArray members;
+    private final AtomicIntegerArray nonMembers;
+    private final AtomicInteger femaleReserved;
+    private final AtomicInteger maleReserved;
+    private final AtomicInteger admitted;
+    private final AtomicInteger rejected;
+    private final AtomicInteger forced;
+    private final ReentrantLock slotLock;
+    private final Condition slotChanged;
+    
+    /**
+     * Constructor.
+     * @param population The number of patients to admit.
+     * @param targets The prevalence targets.
+     * @param tolerance The allowed absolute deviation from each target prevalence.
+     * @param maxOvergeneration The fraction of the population that may be simulated and
+     *     rejected; once spent, candidates are admitted regardless of quotas.
+     */
+    public QuotaTracker(int population, PrevalenceTargets targets, double tolerance,
+            double maxOvergeneration) {
+        int strata = Stratum.values().length;
+        this.population = population;
+        this.targets = targets;
+        this.maxOvergeneration = maxOvergeneration;
+        this.femaleQuota = (int) Math.round(population * targets.getFemalePercentage());
+        this.memberCaps = new int[strata];
+        this.nonMemberCaps = new int[strata];
+        for (Stratum stratum : Stratum.values()) {
+            Double target = targets.getPrevalence(stratum);
+            if (target == null) {
+                memberCaps[stratum.ordinal()] = population;
+                nonMemberCaps[stratum.ordinal()] = population;
+            } else {
+                memberCaps[stratum.ordinal()] = (int) Math.ceil(population * Math.min(1, target + tolerance));
+                nonMemberCaps[stratum.ordinal()] = (int) Math.ceil(population * Math.min(1, 1 - target + tolerance));
+            }
+        }
+        this.members = new AtomicIntegerArray(strata);
+        this.nonMembers = new AtomicIntegerArray(strata);
+        this.femaleReserved = new AtomicInteger();
+        this.maleReserved = new AtomicInteger();
+        this.admitted = new AtomicInteger();
+        this.rejected = new AtomicInteger();
+        this.forced = new AtomicInteger();
+        this.slotLock = new ReentrantLock();
+        this.slotChanged = slotLock.newCondition();
+    }
+    
+    /**
+     * Reserves a gender slot for the next candidate, preferring the gender furthest
+     * below its quota.
+     * @return "F" or "M", or null if every slot is reserved.
+     */
+    public String reserveGender() {
+        while (true) {
+            int female = femaleReserved.get();
+            int male = maleReserved.get();
+            int femaleDeficit = femaleQuota - female;
+            int maleDeficit = (population - femaleQuota) - male;
+            if (femaleDeficit <= 0 && maleDeficit <= 0) {
+                return null;
+            }
+            if (femaleDeficit >= maleDeficit) {
+                if (femaleReserved.compareAndSet(female, female + 1)) {
+                    return "F";
+                }
+            } else if (maleReserved.compareAndSet(male, male + 1)) {
+                return "M";
+            }
+        }
+    }
+    
+    /**
+     * Reserves a gender slot like {@link #reserveGender()}, waiting while every slot is held
+     * by a candidate that may still be rejected.
+     * @return "F" or "M", or null once the population is complete.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public String awaitGender() throws InterruptedException {
+        String gender = reserveGender();
+        if (gender != null || isComplete()) {
+            return gender;
+        }
+        slotLock.lock();
+        try {
+            // Releases and completion signal under the lock, so none is missed between
+            // the check and the wait
+            while ((gender = reserveGender()) == null && !isComplete()) {
+                slotChanged.await();
+            }
+            return gender;
+        } finally {
+            slotLock.unlock();
+        }
+    }
+    
+    /**
+     * Returns a gender slot whose candidate was not admitted.
+     * @param gender The reserved gender.
+     */
+    public void releaseGender(String gender) {
+        if ("F".equals(gender)) {
+            femaleReserved.decrementAndGet();
+        } else {
+            maleReserved.decrementAndGet();
+        }
+        signalSlotChanged();
+    }
+    
+    /**
+     * Tries to admit a candidate. If the over-generation budget is spent, the candidate is
+     * admitted even if it overshoots a quota.
+     * @param mask The candidate's strata, from {@link StrataClassifier#classify}.
+     * @return true if the candidate was admitted and holds its gender slot.
+     */
+    public boolean tryAdmit(int mask) {
+        if (fitsQuotas(mask)) {
+            admit();
+            return true;
+        }
+        if (rejected.get() >= maxOvergeneration * population) {
+            for (Stratum stratum : Stratum.values()) {
+                counterFor(stratum, mask).incrementAndGet(stratum.ordinal());
+            }
+            forced.incrementAndGet();
+            admit();
+            return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+    
+    /**
+     * Takes back the admission of a candidate that could not be finished, returning its
+     * strata and its gender slot so that another candidate can take its place. A forced
+     * admission stays counted in {@link #getForced()}.
+     * @param mask The strata the candidate was admitted with.
+     * @param gender The candidate's reserved gender.
+     */
+    public void withdraw(int mask, String gender) {
+        for (Stratum stratum : Stratum.values()) {
+            counterFor(stratum, mask).decrementAndGet(stratum.ordinal());
+        }
+        admitted.decrementAndGet();
+        releaseGender(gender);
+    }
+    
+    /**
+     * Checks, without reserving anything, whether a candidate with the given strata would
+     * currently fit under every cap.
+     * @param mask The candidate's strata, from {@link StrataClassifier#classify}.
+     * @return true if the candidate would be admitted now.
+     */
+    public boolean wouldFit(int mask) {
+        Stratum[] strata = Stratum.values();
+        for (int i = 0; i < strata.length; i++) {
+            AtomicIntegerArray counter = counterFor(strata[i], mask);
+            int cap = counter == members ? memberCaps[i] : nonMemberCaps[i];
+            if (counter.get(i) >= cap) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private void admit() {
+        if (admitted.incrementAndGet() >= population) {
+            // Wake workers waiting for a slot so they can stop
+            signalSlotChanged();
+        }
+    }
+    
+    private void signalSlotChanged() {
+        slotLock.lock();
+        try {
+            slotChanged.signalAll();
+        } finally {
+            slotLock.unlock();
+        }
+    }
+    
+    private boolean fitsQuotas(int mask) {
+        Stratum[] strata = Stratum.values();
+        for (int i = 0; i < strata.length; i++) {
+            AtomicIntegerArray counter = counterFor(strata[i], mask);
+            int cap = counter == members ? memberCaps[i] : nonMemberCaps[i];
+            if (counter.incrementAndGet(i) > cap) {
+                // Roll back this and every earlier reservation
+                for (int j = i; j >= 0; j--) {
+                    counterFor(strata[j], mask).decrementAndGet(j);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private AtomicIntegerArray counterFor(Stratum stratum, int mask) {
+        return stratum.isIn(mask) ? members : nonMembers;
+    }
+    
+    /**
+     * Checks whether the full population has been admitted.
+     * @return true if done.
+     */
+    public boolean isComplete() {
+        return admitted.get() >= population;
+    }
+    
+    public int getAdmitted() {
+        return admitted.get();
+    }
+    
+    public int getRejected() {
+        return rejected.get();
+    }
+    
+    /**
+     * Gets the number of candidates admitted past a quota after the over-generation
+     * budget was spent.
+     * @return The forced admission count.
+     */
+    public int getForced() {
+        return forced.get();
+    }
+    
+    /**
+     * Gets the observed prevalence of a stratum among admitted patients.
+     * @param stratum The stratum.
+     * @return The prevalence (0.0-1.0).
+     */
+    public double getObservedPrevalence(Stratum stratum) {
+        int total = admitted.get();
+        return total == 0 ? 0 : (double) members.get(stratum.ordinal()) / total;
+    }
+    
+    /**
+     * Builds a configured-versus-observed summary.
+     * @return The report text.
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        int total = Math.max(1, admitted.get());
+        report.append(String.format("Admitted %d patients, rejected %d (%.1f%% over-generation), forced %d%n",
+                admitted.get(), rejected.get(), 100.0 * rejected.get() / total, forced.get()));
+        report.append(String.format("  %-28s target %.3f observed %.3f%n", "female",
+                targets.getFemalePercentage(), (double) femaleReserved.get() / total));
+        for (Stratum stratum : Stratum.values()) {
+            Double target = targets.getPrevalence(stratum);
+            report.append(String.format("  %-28s target %s observed %.3f%n",
+                    stratum.name().toLowerCase(),
+                    target != null ? String.format("%.3f", target) : "  -  ",
+                    getObservedPrevalence(stratum)));
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,95 @@
+package com.healthcaremock.generator.cohort;
+
+import com.healthcaremock.generator.config.ConfigManager;
+import org.mitre.synthea.world.agents.Person;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Determines which strata a simulated person belongs to.
+ * Condition strata are based on SNOMED codes of conditions still active at the end of
+ * the simulation; the code lists can be overridden in healthcare-generator.properties.
+ */
+public class StrataClassifier {
+    // Diabetes, hypertension, CKD stages, COPD, asthma, heart failure, coronary heart disease,
+    // atrial fibrillation, hyperlipidemia, osteoarthritis, rheumatoid arthritis, Alzheimer's, epilepsy
+    private static final String DEFAULT_CHRONIC_CODES = "44054006,59621000,431855005,431856006,"
+            + "433144002,431857002,46177005,13645005,185086009,195967001,233678006,88805009,"
+            + "53741008,49436004,55822004,239873007,69896004,26929004,84757009";
+    // Major depression, generalized anxiety, PTSD, alcoholism, drug abuse, schizophrenia
+    private static final String DEFAULT_MENTAL_HEALTH_CODES = "370143000,36923009,21897009,"
+            + "47505003,7200002,361055000,55680006,58214004";
+    
+    private final Set<String> chronicCodes;
+    private final Set<String> mentalHealthCodes;
+    
+    /**
+     * Constructor.
+     * @param chronicCodes SNOMED codes of chronic conditions.
+     * @param mentalHealthCodes SNOMED codes of mental health conditions.
+     */
+    public StrataClassifier(Set<String> chronicCodes, Set<String> mentalHealthCodes) {
+        this.chronicCodes = new HashSet<>(chronicCodes);
+        this.mentalHealthCodes = new HashSet<>(mentalHealthCodes);
+    }
+    
+    /**
+     * Creates a classifier using the code lists from healthcare-generator.properties.
+     * @return The classifier.
+     */
+    public static StrataClassifier fromConfig() {
+        return new StrataClassifier(
+                parseCodes(ConfigManager.getAsString("quota.chronic_condition_codes", DEFAULT_CHRONIC_CODES)),
+                parseCodes(ConfigManager.getAsString("quota.mental_health_condition_codes",
+                        DEFAULT_MENTAL_HEALTH_CODES)));
+    }
+    
+    /**
+     * Classifies a person.
+     * @param person The simulated person.
+     * @return A mask of the strata the person belongs to, see {@link Stratum#isIn(int)}.
+     */
+    public int classify(Person person) {
+        int mask = 0;
+        
+        Set<String> chronic = new HashSet<>();
+        boolean mentalHealth = false;
+        for (String code : ConditionCodes.active(person)) {
+            if (chronicCodes.contains(code)) {
+                chronic.add(code);
+            }
+            if (mentalHealthCodes.contains(code)) {
+                mentalHealth = true;
+            }
+        }
+        
+        if (!chronic.isEmpty()) {
+            mask |= Stratum.CHRONIC_DISEASE.bit();
+        }
+        if (chronic.size() >= 2) {
+            mask |= Stratum.MULTIPLE_CHRONIC_CONDITIONS.bit();
+        }
+        if (mentalHealth) {
+            mask |= Stratum.MENTAL_HEALTH.bit();
+        }
+        if (Boolean.TRUE.equals(person.attributes.get(Person.SMOKER))) {
+            mask |= Stratum.SMOKER.bit();
+        }
+        if (Boolean.TRUE.equals(person.attributes.get(Person.ALCOHOLIC))) {
+            mask |= Stratum.ALCOHOLISM.bit();
+        }
+        return mask;
+    }
+    
+    private static Set<String> parseCodes(String codes) {
+        Set<String> result = new HashSet<>();
+        for (String code : Arrays.asList(codes.split(","))) {
+            if (!code.trim().isEmpty()) {
+                result.add(code.trim());
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,44 @@
+package com.healthcaremock.generator.cohort;
+
+/**
+ * A clinical population stratum with a configured prevalence target.
+ */
+public enum Stratum {
+    CHRONIC_DISEASE("chronic_disease.prevalence"),
+    MULTIPLE_CHRONIC_CONDITIONS("multiple_chronic_conditions.prevalence"),
+    MENTAL_HEALTH("mental_health.prevalence"),
+    SMOKER("smoker.prevalence"),
+    // Synthea's alcoholic attribute, i.e. alcoholism; regular drinking is not modelled
+    ALCOHOLISM("alcoholism.prevalence");
+    
+    private final String prevalenceKey;
+    
+    Stratum(String prevalenceKey) {
+        this.prevalenceKey = prevalenceKey;
+    }
+    
+    /**
+     * Gets the healthcare-generator.properties key holding this stratum's target prevalence.
+     * @return The property key.
+     */
+    public String getPrevalenceKey() {
+        return prevalenceKey;
+    }
+    
+    /**
+     * Gets this stratum's bit in a membership mask.
+     * @return The bit.
+     */
+    public int bit() {
+        return 1 << ordinal();
+    }
+    
+    /**
+     * Checks whether a membership mask includes this stratum.
+     * @param mask The mask.
+     * @return true if the mask has this stratum's bit set.
+     */
+    public boolean isIn(int mask) {
+        return (mask & bit()) != 0;
+    }
+}
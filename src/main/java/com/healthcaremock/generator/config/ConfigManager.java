@@ -42,6 +42,15 @@ public class ConfigManager {
         }
     }
     
+    /**
+     * Checks whether a property is defined in healthcare-generator.properties.
+     * @param key The property key.
+     * @return true if the property is defined.
+     */
+    public static boolean hasProperty(String key) {
+        return customProperties.containsKey(key);
+    }
+    
     /**
      * Gets a property as a String.
      * @param key The property key.
@@ -0,0 +1,39 @@
+package com.healthcaremock.generator.enrichment;
+
+import com.healthcaremock.generator.models.EnhancedPatientData;
+import org.mitre.synthea.helpers.RandomNumberGenerator;
+import org.mitre.synthea.world.agents.Person;
+
+/**
+ * A single step of the enrichment pipeline that adds data beyond what Synthea
+ * generates to a simulated patient.
+ */
+public interface Enricher {
+    
+    /**
+     * Gets the name of this enricher, used in logs and reports.
+     * @return The enricher name.
+     */
+    String getName();
+    
+    /**
+     * Adds enriched data for the given person.
+     * @param person The simulated Synthea person.
+     * @param data The enhanced data container to populate.
+     * @param random The random number generator to draw from.
+     */
+    void enrich(Person person, EnhancedPatientData data, RandomNumberGenerator random);
+    
+    /**
+     * Adds enriched data for the part of a resumed person's record simulated after a point
+     * in time, appending to the data added in earlier runs. By default nothing is added, which
+     * suits data that describes the person as a whole rather than their encounters.
+     * @param person The simulated Synthea person.
+     * @param data The enhanced data from earlier runs.
+     * @param random The random number generator to draw from.
+     * @param since The time the earlier simulation ended.
+     */
+    default void enrichSince(Person person, EnhancedPatientData data, RandomNumberGenerator random,
+            long since) {
+    }
+}
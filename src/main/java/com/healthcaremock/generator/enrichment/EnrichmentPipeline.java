@@ -0,0 +1,161 @@
+package com.healthcaremock.generator.enrichment;
+
+import com.healthcaremock.generator.config.ConfigManager;
+import com.healthcaremock.generator.export.ExportProfile;
+import com.healthcaremock.generator.metrics.PipelineMetrics;
+import com.healthcaremock.generator.models.EnhancedPatientData;
+import org.mitre.synthea.world.agents.Person;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Runs the configured enrichers over simulated patients.
+ * A pipeline is immutable and can be shared between worker threads.
+ */
+public class EnrichmentPipeline {
+    private final List<Enricher> enrichers;
+    private final String[] stageNames;
+    
+    /**
+     * Creates a pipeline that runs the given enrichers in order.
+     * @param enrichers The enrichers.
+     */
+    public EnrichmentPipeline(List<Enricher> enrichers) {
+        this.enrichers = Collections.unmodifiableList(new ArrayList<>(enrichers));
+        this.stageNames = new String[enrichers.size()];
+        for (int i = 0; i < stageNames.length; i++) {
+            stageNames[i] = "enrich." + this.enrichers.get(i).getName();
+        }
+    }
+    
+    /**
+     * Creates a pipeline from the extended data settings in healthcare-generator.properties,
+     * limited to the data selected by the active export profile.
+     * @return The configured pipeline.
+     */
+    public static EnrichmentPipeline fromConfig() {
+        return fromConfig(ExportProfile.fromConfig());
+    }
+    
+    /**
+     * Creates a pipeline from the extended data settings in healthcare-generator.properties.
+     * Enrichers whose data the export profile does not select are left out, as are wearable
+     * measurements it does not select and imaging report text it does not project.
+     * @param profile The export profile.
+     * @return The configured pipeline.
+     */
+    public static EnrichmentPipeline fromConfig(ExportProfile profile) {
+        List<Enricher> enrichers = new ArrayList<>();
+        
+        if (ConfigManager.getAsBoolean("extended_data.social_determinants", false)
+                && profile.includes("sdoh")) {
+            enrichers.add(new SocialDeterminantsEnricher());
+        }
+        
+        if (ConfigManager.getAsBoolean("extended_data.wearable_device_data", false)
+                && profile.includes("wearable")) {
+            enrichers.add(new WearableEnricher(
+                    ConfigManager.getAsInteger("wearable.days", 7),
+                    ConfigManager.getAsInteger("wearable.data_points_per_day", 24),
+                    ConfigManager.getAsBoolean("wearable.include_heart_rate", true)
+                            && profile.includes("wearable", "heart_rate"),
+                    ConfigManager.getAsBoolean("wearable.include_steps", true)
+                            && profile.includes("wearable", "steps"),
+                    ConfigManager.getAsBoolean("wearable.include_sleep", true)
+                            && profile.includes("wearable", "sleep_quality"),
+                    ConfigManager.getAsBoolean("wearable.include_blood_oxygen", false)
+                            && profile.includes("wearable", "blood_oxygen"),
+                    ConfigManager.getAsDouble("wearable.data_noise_factor", 0.05)));
+        }
+        
+        if (ConfigManager.getAsBoolean("custom_data.imaging_reports", false)
+                && profile.includes("imaging")) {
+            enrichers.add(new ImagingEnricher(
+                    ConfigManager.getAsDouble("imaging.encounter_probability", 0.05),
+                    ConfigManager.getAsDouble("imaging.ct_probability", 0.3),
+                    profile.includes("imaging", "reportText")));
+        }
+        
+        if (ConfigManager.getAsBoolean("extended_data.patient_reported_outcomes", false)
+                && profile.includes("pro")) {
+            enrichers.add(new PatientReportedOutcomeEnricher(
+                    ConfigManager.getAsDouble("pro.encounter_probability", 0.1)));
+        }
+        
+        return new EnrichmentPipeline(enrichers);
+    }
+    
+    /**
+     * Runs every enricher for the given person.
+     * The person's own random number generator is used so results are reproducible per seed.
+     * The interrupt flag is checked before each enricher so abandoned patients stop early.
+     * @param person The simulated person.
+     * @return The enhanced data.
+     * @throws CancellationException if the calling thread is interrupted.
+     */
+    public EnhancedPatientData enrich(Person person) {
+        EnhancedPatientData data = new EnhancedPatientData(person);
+        PipelineMetrics metrics = PipelineMetrics.active();
+        for (int i = 0; i < enrichers.size(); i++) {
+            Enricher enricher = enrichers.get(i);
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Enrichment cancelled before " + enricher.getName());
+            }
+            long start = metrics != null ? System.nanoTime() : 0;
+            enricher.enrich(person, data, person);
+            if (metrics != null) {
+                metrics.record(stageNames[i], start);
+            }
+        }
+        return data;
+    }
+    
+    /**
+     * Extends the data of a person resumed from a snapshot with data for the time simulated
+     * since, e.g. wearable readings, questionnaires and imaging for new encounters only.
+     * The person's random number generator continues from where the earlier run left it.
+     * @param person The resumed person.
+     * @param data The enhanced data from the earlier run, appended to; if null, the person
+     *             is enriched in full.
+     * @param since The time the earlier simulation ended.
+     * @return The enhanced data.
+     * @throws CancellationException if the calling thread is interrupted.
+     */
+    public EnhancedPatientData enrichSince(Person person, EnhancedPatientData data, long since) {
+        if (data == null) {
+            return enrich(person);
+        }
+        PipelineMetrics metrics = PipelineMetrics.active();
+        for (int i = 0; i < enrichers.size(); i++) {
+            Enricher enricher = enrichers.get(i);
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Enrichment cancelled before " + enricher.getName());
+            }
+            long start = metrics != null ? System.nanoTime() : 0;
+            enricher.enrichSince(person, data, person, since);
+            if (metrics != null) {
+                metrics.record(stageNames[i], start);
+            }
+        }
+        return data;
+    }
+    
+    /**
+     * Gets the enrichers in this pipeline.
+     * @return The enrichers.
+     */
+    public List<Enricher> getEnrichers() {
+        return enrichers;
+    }
+    
+    /**
+     * Checks whether the pipeline has any enrichers.
+     * @return true if no enrichers are configured.
+     */
+    public boolean isEmpty() {
+        return enrichers.isEmpty();
+    }
+}
@@ -0,0 +1,361 @@
+package com.healthcaremock.generator.enrichment;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.healthcaremock.generator.config.ConfigManager;
+import com.healthcaremock.generator.export.ExportProfile;
+import com.healthcaremock.generator.export.ExportRecord;
+import com.healthcaremock.generator.export.FhirFormatWriter;
+import org.mitre.synthea.world.agents.Person;
+import org.mitre.synthea.world.concepts.HealthRecord;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Enriches existing Synthea FHIR bundles without re-simulating the patients.
+ *
+ * <p>Each bundle is streamed from a {@link JsonReader} to a {@link JsonWriter}, one entry at
+ * a time. While copying, the few values the enrichers need are picked out of the Patient and
+ * Encounter resources; when the end of the entry array is reached, a {@link Person} is
+ * rebuilt from them, the enrichment pipeline runs, and the enriched resources are appended
+ * to the bundle before it is closed. Only the current entry is ever held in memory as a
+ * tree. Entries tagged by {@link FhirFormatWriter} are left out, so enriching a bundle again
+ * replaces the resources of the earlier run instead of duplicating them. Bundles are
+ * processed in parallel, one file per task.
+ */
+public class FhirBundleEnricher {
+    private static final TypeAdapter<JsonElement> ELEMENT = new Gson().getAdapter(JsonElement.class);
+    private static final Pattern SEED = Pattern.compile("Person seed: (-?\\d+)");
+    
+    private final EnrichmentPipeline pipeline;
+    private final ExportProfile profile;
+    private final int threads;
+    
+    /**
+     * Constructor.
+     * @param pipeline The enrichers to run.
+     * @param profile The export profile applied to the enriched resources.
+     * @param threads The number of bundles processed at once.
+     */
+    public FhirBundleEnricher(EnrichmentPipeline pipeline, ExportProfile profile, int threads) {
+        this.pipeline = pipeline;
+        this.profile = profile;
+        this.threads = Math.max(1, threads);
+    }
+    
+    /**
+     * Creates an enricher from the extended data settings and the active export profile.
+     * {@code enrich.threads} bundles are processed at once, by default one per processor.
+     * @return The enricher.
+     */
+    public static FhirBundleEnricher fromConfig() {
+        ExportProfile profile = ExportProfile.fromConfig();
+        int threads = ConfigManager.getAsInteger("enrich.threads", 0);
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        return new FhirBundleEnricher(EnrichmentPipeline.fromConfig(profile), profile, threads);
+    }
+    
+    /**
+     * Enriches every bundle in a directory.
+     * @param inputDir The directory of Synthea bundles.
+     * @param outputDir The directory for the enriched bundles, which may be the input directory.
+     * @return The number of bundles enriched.
+     * @throws IOException if the output directory cannot be created.
+     * @throws InterruptedException if interrupted while waiting for the bundles.
+     */
+    public int enrichDirectory(File inputDir, File outputDir) throws IOException, InterruptedException {
+        File[] files = inputDir.listFiles((dir, name) -> name.endsWith(".json"));
+        if (files == null) {
+            throw new IOException("Unable to list " + inputDir);
+        }
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Unable to create " + outputDir);
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (File file : files) {
+                File output = new File(outputDir, file.getName());
+                futures.add(executor.submit(() -> {
+                    enrichFile(file, output);
+                    return null;
+                }));
+            }
+            int enriched = 0;
+            for (int i = 0; i < files.length; i++) {
+                try {
+                    futures.get(i).get();
+                    enriched++;
+                } catch (ExecutionException e) {
+                    System.err.println("Error enriching " + files[i].getName() + ": "
+                            + e.getCause().getMessage());
+                    e.getCause().printStackTrace();
+                }
+            }
+            return enriched;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Enriches one bundle. The output is written beside its destination and then moved into
+     * place, so the input may be replaced.
+     * @param input The Synthea bundle.
+     * @param output The enriched bundle.
+     * @throws IOException if the bundle cannot be read or written.
+     */
+    public void enrichFile(File input, File output) throws IOException {
+        File temp = new File(output.getPath() + ".tmp");
+        try (JsonReader in = new JsonReader(new BufferedReader(new InputStreamReader(
+                    new FileInputStream(input), StandardCharsets.UTF_8), 256 * 1024));
+                JsonWriter out = new JsonWriter(new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(temp), StandardCharsets.UTF_8), 256 * 1024))) {
+            out.setIndent("  ");
+            in.beginObject();
+            out.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                out.name(name);
+                if (name.equals("entry")) {
+                    copyEntries(in, out, input.getName());
+                } else {
+                    copy(in, out);
+                }
+            }
+            in.endObject();
+            out.endObject();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+        Files.move(temp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    private void copyEntries(JsonReader in, JsonWriter out, String fileName) throws IOException {
+        Map<String, String> patient = null;
+        List<Map<String, String>> encounters = new ArrayList<>();
+        boolean transaction = false;
+        
+        in.beginArray();
+        out.beginArray();
+        while (in.hasNext()) {
+            JsonElement entry = ELEMENT.read(in);
+            JsonObject resource = entry.isJsonObject()
+                    ? object(entry.getAsJsonObject(), "resource") : null;
+            if (resource != null && isEnhanced(resource)) {
+                // Appended by an earlier enrichment; replaced by this one
+                continue;
+            }
+            ELEMENT.write(out, entry);
+            if (resource == null) {
+                continue;
+            }
+            JsonObject request = object(entry.getAsJsonObject(), "request");
+            transaction |= request != null && string(request, "method") != null;
+            String resourceType = string(resource, "resourceType");
+            if ("Patient".equals(resourceType) && patient == null) {
+                patient = capture(resource);
+            } else if ("Encounter".equals(resourceType)) {
+                encounters.add(capture(resource));
+            }
+        }
+        
+        if (patient == null || patient.get("resource.id") == null) {
+            System.err.println("No Patient resource in " + fileName + "; copied without enrichment");
+        } else {
+            Person person = toPerson(patient, encounters);
+            com.healthcaremock.generator.EnhancedPatientData enhanced =
+                    new com.healthcaremock.generator.EnhancedPatientData(person);
+            enhanced.setExtendedData(pipeline.enrich(person));
+            FhirFormatWriter.writeEnhancedResources(ExportRecord.of(enhanced, profile), out,
+                    transaction);
+        }
+        in.endArray();
+        out.endArray();
+    }
+    
+    /**
+     * Checks whether a resource carries the tag {@link FhirFormatWriter} puts on its resources.
+     */
+    private static boolean isEnhanced(JsonObject resource) {
+        JsonObject meta = object(resource, "meta");
+        JsonElement tags = meta != null ? meta.get("tag") : null;
+        if (tags == null || !tags.isJsonArray()) {
+            return false;
+        }
+        for (JsonElement tag : tags.getAsJsonArray()) {
+            if (tag.isJsonObject()
+                    && FhirFormatWriter.TAG_SYSTEM.equals(string(tag.getAsJsonObject(), "system"))
+                    && FhirFormatWriter.TAG_CODE.equals(string(tag.getAsJsonObject(), "code"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Picks out the values of a Patient or Encounter resource that {@link #toPerson} uses.
+     */
+    private static Map<String, String> capture(JsonObject resource) {
+        Map<String, String> captured = new HashMap<>();
+        captured.put("resource.resourceType", string(resource, "resourceType"));
+        captured.put("resource.id", string(resource, "id"));
+        captured.put("resource.gender", string(resource, "gender"));
+        captured.put("resource.birthDate", string(resource, "birthDate"));
+        JsonObject text = object(resource, "text");
+        captured.put("resource.text.div", text != null ? string(text, "div") : null);
+        JsonObject period = object(resource, "period");
+        captured.put("resource.period.start", period != null ? string(period, "start") : null);
+        JsonElement addresses = resource.get("address");
+        if (addresses != null && addresses.isJsonArray()) {
+            for (JsonElement address : addresses.getAsJsonArray()) {
+                String state = address.isJsonObject() ? string(address.getAsJsonObject(), "state") : null;
+                if (state != null) {
+                    captured.put("resource.address.state", state);
+                    break;
+                }
+            }
+        }
+        return captured;
+    }
+    
+    private static JsonObject object(JsonObject parent, String name) {
+        JsonElement child = parent.get(name);
+        return child != null && child.isJsonObject() ? child.getAsJsonObject() : null;
+    }
+    
+    private static String string(JsonObject parent, String name) {
+        JsonElement child = parent.get(name);
+        return child != null && child.isJsonPrimitive() ? child.getAsString() : null;
+    }
+    
+    /**
+     * Copies one JSON value token by token.
+     */
+    private static void copy(JsonReader in, JsonWriter out) throws IOException {
+        switch (in.peek()) {
+            case BEGIN_OBJECT:
+                in.beginObject();
+                out.beginObject();
+                while (in.hasNext()) {
+                    out.name(in.nextName());
+                    copy(in, out);
+                }
+                in.endObject();
+                out.endObject();
+                break;
+            case BEGIN_ARRAY:
+                in.beginArray();
+                out.beginArray();
+                while (in.hasNext()) {
+                    copy(in, out);
+                }
+                in.endArray();
+                out.endArray();
+                break;
+            case STRING:
+                out.value(in.nextString());
+                break;
+            case NUMBER:
+                // Keep the number exactly as written
+                out.jsonValue(in.nextString());
+                break;
+            case BOOLEAN:
+                out.value(in.nextBoolean());
+                break;
+            case NULL:
+                in.nextNull();
+                out.nullValue();
+                break;
+            default:
+                throw new IOException("Unexpected JSON token " + in.peek() + " at " + in.getPath());
+        }
+    }
+    
+    /**
+     * Rebuilds the parts of a Synthea person the enrichers use. The person is seeded with the
+     * seed recorded in the Patient narrative, when present, so enrichment is reproducible.
+     */
+    private static Person toPerson(Map<String, String> patient, List<Map<String, String>> encounters) {
+        String id = patient.get("resource.id");
+        long seed = id.hashCode();
+        String div = patient.get("resource.text.div");
+        if (div != null) {
+            Matcher matcher = SEED.matcher(div);
+            if (matcher.find()) {
+                seed = Long.parseLong(matcher.group(1));
+            }
+        }
+        
+        Person person = new Person(seed);
+        person.attributes.put(Person.ID, id);
+        String gender = patient.get("resource.gender");
+        person.attributes.put(Person.GENDER,
+                "male".equals(gender) ? "M" : "female".equals(gender) ? "F" : gender);
+        String state = patient.get("resource.address.state");
+        if (state != null) {
+            person.attributes.put(Person.STATE, state);
+        }
+        String birthDate = patient.get("resource.birthDate");
+        if (birthDate != null) {
+            try {
+                long birth = LocalDate.parse(birthDate).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+                person.attributes.put(Person.BIRTHDATE, birth);
+            } catch (DateTimeParseException e) {
+                // Leave the birth date unset
+            }
+        }
+        
+        person.record = new HealthRecord(person);
+        for (Map<String, String> resource : encounters) {
+            String start = resource.get("resource.period.start");
+            if (start == null || resource.get("resource.id") == null) {
+                continue;
+            }
+            try {
+                HealthRecord.Encounter encounter = person.record.new Encounter(
+                        OffsetDateTime.parse(start).toInstant().toEpochMilli(), "ambulatory");
+                encounter.uuid = resource.get("resource.id");
+                person.record.encounters.add(encounter);
+            } catch (DateTimeParseException e) {
+                // Skip encounters without a usable start time
+            }
+        }
+        // Synthea writes encounters in order, but the enrichers should not depend on it
+        Collections.sort(person.record.encounters, (a, b) -> Long.compare(a.start, b.start));
+        return person;
+    }
+}
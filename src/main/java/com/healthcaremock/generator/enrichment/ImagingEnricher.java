@@ -0,0 +1,74 @@
+package com.healthcaremock.generator.enrichment;
+
+import com.healthcaremock.generator.models.EnhancedPatientData;
+import com.healthcaremock.generator.models.ImagingReport;
+import org.mitre.synthea.helpers.RandomNumberGenerator;
+import org.mitre.synthea.world.agents.Person;
+import org.mitre.synthea.world.concepts.HealthRecord.Encounter;
+
+/**
+ * Adds X-ray and CT imaging reports to a sample of a patient's encounters.
+ */
+public class ImagingEnricher implements Enricher {
+    private final double encounterProbability;
+    private final double ctProbability;
+    private final boolean renderText;
+    
+    /**
+     * Constructor.
+     * @param encounterProbability The probability that an encounter includes an imaging study.
+     * @param ctProbability The probability that an imaging study is a CT rather than an X-ray.
+     */
+    public ImagingEnricher(double encounterProbability, double ctProbability) {
+        this(encounterProbability, ctProbability, true);
+    }
+    
+    /**
+     * Constructor.
+     * @param encounterProbability The probability that an encounter includes an imaging study.
+     * @param ctProbability The probability that an imaging study is a CT rather than an X-ray.
+     * @param renderText Whether to render the narrative report text.
+     */
+    public ImagingEnricher(double encounterProbability, double ctProbability, boolean renderText) {
+        this.encounterProbability = encounterProbability;
+        this.ctProbability = ctProbability;
+        this.renderText = renderText;
+    }
+    
+    @Override
+    public String getName() {
+        return "imaging";
+    }
+    
+    @Override
+    public void enrich(Person person, EnhancedPatientData data, RandomNumberGenerator random) {
+        enrichEncounters(person, data, random, Long.MIN_VALUE);
+    }
+    
+    @Override
+    public void enrichSince(Person person, EnhancedPatientData data, RandomNumberGenerator random,
+            long since) {
+        enrichEncounters(person, data, random, since);
+    }
+    
+    private void enrichEncounters(Person person, EnhancedPatientData data,
+            RandomNumberGenerator random, long since) {
+        if (person.record == null || person.record.encounters == null) {
+            return;
+        }
+        for (Encounter encounter : person.record.encounters) {
+            if (encounter.start < since) {
+                continue;
+            }
+            if (random.rand() >= encounterProbability) {
+                continue;
+            }
+            ImagingReport report = random.rand() < ctProbability
+                    ? ImagingReport.generateRandomCT(random, person, encounter, renderText)
+                    : ImagingReport.generateRandomXray(random, person, encounter, renderText);
+            // Draw the ID from the patient's generator so reruns with the same seed match
+            report.setId(random.randUUID().toString());
+            data.addImagingReport(report);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.healthcaremock.generator.enrichment;
+
+import com.healthcaremock.generator.models.EnhancedPatientData;
+import com.healthcaremock.generator.models.PatientReportedOutcome;
+import org.mitre.synthea.helpers.RandomNumberGenerator;
+import org.mitre.synthea.world.agents.Person;
+import org.mitre.synthea.world.concepts.HealthRecord.Encounter;
+
+/**
+ * Adds patient-reported outcome questionnaires (pain, PHQ-9, EQ-5D-5L) to a sample of a
+ * patient's encounters.
+ */
+public class PatientReportedOutcomeEnricher implements Enricher {
+    private final double encounterProbability;
+    
+    /**
+     * Constructor.
+     * @param encounterProbability The probability that an encounter includes a questionnaire.
+     */
+    public PatientReportedOutcomeEnricher(double encounterProbability) {
+        this.encounterProbability = encounterProbability;
+    }
+    
+    @Override
+    public String getName() {
+        return "patient_reported_outcomes";
+    }
+    
+    @Override
+    public void enrich(Person person, EnhancedPatientData data, RandomNumberGenerator random) {
+        enrichEncounters(person, data, random, Long.MIN_VALUE);
+    }
+    
+    @Override
+    public void enrichSince(Person person, EnhancedPatientData data, RandomNumberGenerator random,
+            long since) {
+        enrichEncounters(person, data, random, since);
+    }
+    
+    private void enrichEncounters(Person person, EnhancedPatientData data,
+            RandomNumberGenerator random, long since) {
+        if (person.record == null || person.record.encounters == null) {
+            return;
+        }
+        for (Encounter encounter : person.record.encounters) {
+            if (encounter.start < since) {
+                continue;
+            }
+            if (random.rand() >= encounterProbability) {
+                continue;
+            }
+            PatientReportedOutcome outcome;
+            double instrument = random.rand();
+            if (instrument < 0.4) {
+                outcome = PatientReportedOutcome.generatePainAssessment(random, person, encounter);
+            } else if (instrument < 0.7) {
+                outcome = PatientReportedOutcome.generatePHQ9(random, person, encounter);
+            } else {
+                outcome = PatientReportedOutcome.generateEQ5D5L(random, person, encounter);
+            }
+            // Draw the ID from the patient's generator so reruns with the same seed match
+            outcome.setId(random.randUUID().toString());
+            data.addPatientReportedOutcome(outcome);
+        }
+    }
+}
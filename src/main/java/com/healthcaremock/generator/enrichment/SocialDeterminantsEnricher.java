@@ -0,0 +1,22 @@
+package com.healthcaremock.generator.enrichment;
+
+import com.healthcaremock.generator.models.EnhancedPatientData;
+import com.healthcaremock.generator.models.SocialDeterminantsOfHealth;
+import org.mitre.synthea.helpers.RandomNumberGenerator;
+import org.mitre.synthea.world.agents.Person;
+
+/**
+ * Adds social determinants of health data to a patient.
+ */
+public class SocialDeterminantsEnricher implements Enricher {
+    
+    @Override
+    public String getName() {
+        return "social_determinants";
+    }
+    
+    @Override
+    public void enrich(Person person, EnhancedPatientData data, RandomNumberGenerator random) {
+        data.setSocialDeterminants(SocialDeterminantsOfHealth.generateRandom(random, person));
+    }
+}
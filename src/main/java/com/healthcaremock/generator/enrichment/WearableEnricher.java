@@ -0,0 +1,100 @@
+package com.healthcaremock.generator.enrichment;
+
+import com.healthcaremock.generator.models.EnhancedPatientData;
+import com.healthcaremock.generator.models.WearableData;
+import org.mitre.synthea.helpers.RandomNumberGenerator;
+import org.mitre.synthea.world.agents.Person;
+import org.mitre.synthea.world.concepts.HealthRecord.Encounter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds wearable device data covering the most recent days of a patient's record.
+ */
+public class WearableEnricher implements Enricher {
+    private final int days;
+    private final int dataPointsPerDay;
+    private final boolean includeHeartRate;
+    private final boolean includeSteps;
+    private final boolean includeSleep;
+    private final boolean includeBloodOxygen;
+    private final double noiseFactor;
+    
+    /**
+     * Constructor.
+     * @param days The number of days of data to generate.
+     * @param dataPointsPerDay The number of data points per day.
+     * @param includeHeartRate Whether to include heart rate measurements.
+     * @param includeSteps Whether to include step measurements.
+     * @param includeSleep Whether to include sleep measurements.
+     * @param includeBloodOxygen Whether to include blood oxygen measurements.
+     * @param noiseFactor The amount of random noise to add to the data (0.0-1.0).
+     */
+    public WearableEnricher(int days, int dataPointsPerDay, boolean includeHeartRate,
+            boolean includeSteps, boolean includeSleep, boolean includeBloodOxygen,
+            double noiseFactor) {
+        this.days = days;
+        this.dataPointsPerDay = Math.max(1, dataPointsPerDay);
+        this.includeHeartRate = includeHeartRate;
+        this.includeSteps = includeSteps;
+        this.includeSleep = includeSleep;
+        this.includeBloodOxygen = includeBloodOxygen;
+        this.noiseFactor = noiseFactor;
+    }
+    
+    @Override
+    public String getName() {
+        return "wearable";
+    }
+    
+    @Override
+    public void enrich(Person person, EnhancedPatientData data, RandomNumberGenerator random) {
+        long interval = TimeUnit.DAYS.toMillis(1) / dataPointsPerDay;
+        long end = referenceTime(person);
+        addReadings(data, random, end - TimeUnit.DAYS.toMillis(days), end, interval);
+    }
+    
+    /**
+     * Continues the wearable history from the last reading of an earlier run up to the new
+     * reference time, covering at most the configured number of days.
+     */
+    @Override
+    public void enrichSince(Person person, EnhancedPatientData data, RandomNumberGenerator random,
+            long since) {
+        long interval = TimeUnit.DAYS.toMillis(1) / dataPointsPerDay;
+        long end = referenceTime(person);
+        long start = end - TimeUnit.DAYS.toMillis(days);
+        for (WearableData reading : data.getWearableData()) {
+            start = Math.max(start, reading.getRecordedAt() + interval);
+        }
+        addReadings(data, random, start, end, interval);
+    }
+    
+    private void addReadings(EnhancedPatientData data, RandomNumberGenerator random, long start,
+            long end, long interval) {
+        String patientId = data.getPatientId();
+        for (long time = start; time < end; time += interval) {
+            data.addWearableData(WearableData.generateRandom(random, time, patientId,
+                    includeHeartRate, includeSteps, includeSleep, includeBloodOxygen, noiseFactor));
+        }
+    }
+    
+    /**
+     * Gets the time the wearable history should end at. Uses the start of the most recent
+     * encounter so that the same seed always produces the same data.
+     * @param person The person.
+     * @return The reference time in milliseconds.
+     */
+    static long referenceTime(Person person) {
+        long latest = 0;
+        if (person.record != null && person.record.encounters != null) {
+            for (Encounter encounter : person.record.encounters) {
+                latest = Math.max(latest, encounter.start);
+            }
+        }
+        if (latest == 0 && person.attributes.get(Person.BIRTHDATE) instanceof Long) {
+            latest = (Long) person.attributes.get(Person.BIRTHDATE);
+        }
+        return latest;
+    }
+}
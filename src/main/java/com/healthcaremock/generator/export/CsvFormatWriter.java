@@ -0,0 +1,128 @@
+package com.healthcaremock.generator.export;
+
+import com.healthcaremock.generator.models.EnhancedPatientData;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes one row per patient to patients.csv: demographics, the patient-reported values
+ * and counts of the enrichment records. Demographic and patient-reported columns are left
+ * out when the export profile does not select them. Rows are appended through the
+ * {@link OutputStage}, which batches them into large writes.
+ */
+public class CsvFormatWriter implements FormatWriter {
+    private static final String[] REPORTED_FIELDS = {
+        "painLevel", "sleepQuality", "stressLevel", "exerciseMinutesPerWeek", "dietQuality"
+    };
+    
+    private final OutputStage output;
+    private final File file;
+    private final boolean demographics;
+    private final boolean reported;
+    private final StringBuilder row = new StringBuilder(256);
+    
+    /**
+     * Creates a writer for every column.
+     * 
+     * @param output The I/O stage
+     * @param directory The output directory, relative to the stage's base directory
+     */
+    public CsvFormatWriter(OutputStage output, String directory) {
+        this(output, directory, ExportProfile.FULL);
+    }
+    
+    /**
+     * Creates a writer for the columns selected by an export profile.
+     * 
+     * @param output The I/O stage
+     * @param directory The output directory, relative to the stage's base directory
+     * @param profile The export profile
+     */
+    public CsvFormatWriter(OutputStage output, String directory, ExportProfile profile) {
+        this.output = output;
+        this.file = output.file(directory, "patients.csv");
+        this.demographics = profile.includes("patient", "demographics");
+        this.reported = profile.includes("patient", "reported");
+    }
+    
+    @Override
+    public String getName() {
+        return "enhanced_csv";
+    }
+    
+    @Override
+    public void open() throws IOException {
+        row.setLength(0);
+        row.append("Id");
+        if (demographics) {
+            row.append(",BirthDate,Gender,Race,Ethnicity,State,Age");
+        }
+        if (reported) {
+            for (String field : REPORTED_FIELDS) {
+                row.append(',').append(field);
+            }
+        }
+        row.append(",WearableRecords,ImagingReports,PatientReportedOutcomes\n");
+        flushRow();
+    }
+    
+    @Override
+    public void write(ExportRecord record) throws IOException {
+        row.setLength(0);
+        appendField(record.getPatientId(), false);
+        if (demographics) {
+            appendField(record.getBirthDate(), true);
+            appendField(record.getGender(), true);
+            appendField(record.getRace(), true);
+            appendField(record.getEthnicity(), true);
+            appendField(record.getState(), true);
+            appendField(record.getAge(), true);
+        }
+        
+        if (reported) {
+            Map<String, Object> values = record.getPatientReportedData();
+            for (String field : REPORTED_FIELDS) {
+                appendField(values.get(field), true);
+            }
+        }
+        
+        EnhancedPatientData extended = record.getExtendedData();
+        appendField(extended != null ? size(extended.getWearableData()) : 0, true);
+        appendField(extended != null ? size(extended.getImagingReports()) : 0, true);
+        appendField(extended != null ? size(extended.getPatientReportedOutcomes()) : 0, true);
+        row.append('\n');
+        flushRow();
+    }
+    
+    @Override
+    public void close() {
+    }
+    
+    private void flushRow() throws IOException {
+        output.append(file, row.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private void appendField(Object value, boolean separator) {
+        if (separator) {
+            row.append(',');
+        }
+        if (value == null) {
+            return;
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0
+                && text.indexOf('\r') < 0) {
+            row.append(text);
+        } else {
+            row.append('"').append(text.replace("\"", "\"\"")).append('"');
+        }
+    }
+    
+    private static int size(List<?> values) {
+        return values != null ? values.size() : 0;
+    }
+}
@@ -0,0 +1,274 @@
+package com.healthcaremock.generator.export;
+
+import com.healthcaremock.generator.EnhancedPatientData;
+import com.healthcaremock.generator.config.ConfigManager;
+import com.healthcaremock.generator.metrics.PipelineMetrics;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Exports patients to several formats in a single pass.
+ *
+ * <p>Each patient's shared export values are derived once, on the calling thread, and the
+ * resulting {@link ExportRecord} is handed to every format. Each format runs on its own
+ * I/O thread behind a bounded queue: a slow format fills its queue and then blocks
+ * {@link #accept(EnhancedPatientData)}, instead of the exporter buffering without limit.
+ * The format threads only render; the files themselves are written by a shared
+ * {@link OutputStage}, which the fan-out closes last. {@code accept} may be called from
+ * several threads at once.
+ */
+public class ExportFanout implements Closeable {
+    private static final Object END = new Object();
+    
+    private final List<Channel> channels;
+    private final ExportProfile profile;
+    private final OutputStage output;
+    private volatile boolean closed;
+    
+    /**
+     * Opens every writer and starts its I/O thread, exporting everything.
+     *
+     * @param writers The formats to write
+     * @param queueCapacity The number of patients each format may lag behind
+     * @throws IOException if a writer cannot be opened
+     */
+    public ExportFanout(List<FormatWriter> writers, int queueCapacity) throws IOException {
+        this(writers, queueCapacity, ExportProfile.FULL, null);
+    }
+    
+    /**
+     * Opens every writer and starts its I/O thread.
+     *
+     * @param writers The formats to write
+     * @param queueCapacity The number of patients each format may lag behind
+     * @param profile The export profile applied to every patient
+     * @param output The I/O stage the writers write through, closed with the fan-out; may be null
+     * @throws IOException if a writer cannot be opened
+     */
+    public ExportFanout(List<FormatWriter> writers, int queueCapacity, ExportProfile profile,
+            OutputStage output) throws IOException {
+        this.channels = new ArrayList<>();
+        this.profile = profile;
+        this.output = output;
+        try {
+            for (FormatWriter writer : writers) {
+                writer.open();
+                Channel channel = new Channel(writer, queueCapacity);
+                channels.add(channel);
+                channel.thread.start();
+                PipelineMetrics metrics = PipelineMetrics.active();
+                if (metrics != null) {
+                    metrics.registerQueue(writer.getName(), channel.queue);
+                }
+            }
+        } catch (IOException e) {
+            stopChannels();
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Creates a fan-out for the formats enabled by the {@code exporter.enhanced_*.export}
+     * flags. JSON is on unless disabled; CSV, FHIR and NDJSON are off unless enabled. Every
+     * format is limited to the {@code export.profile} profile and written through an
+     * {@link OutputStage} configured by the {@code exporter.*} I/O settings.
+     *
+     * @param baseDir The base output directory
+     * @return The fan-out
+     * @throws IOException if an output cannot be created
+     */
+    public static ExportFanout fromConfig(File baseDir) throws IOException {
+        ExportProfile profile = ExportProfile.fromConfig();
+        OutputStage output = OutputStage.fromConfig(baseDir);
+        List<FormatWriter> writers = new ArrayList<>();
+        if (ConfigManager.getAsBoolean("exporter.enhanced_json.export", true)) {
+            writers.add(new JsonFormatWriter(output, "enhanced"));
+        }
+        if (ConfigManager.getAsBoolean("exporter.enhanced_csv.export", false)) {
+            writers.add(new CsvFormatWriter(output, "enhanced_csv", profile));
+        }
+        if (ConfigManager.getAsBoolean("exporter.enhanced_fhir.export", false)) {
+            writers.add(new FhirFormatWriter(output, "enhanced_fhir"));
+        }
+        if (ConfigManager.getAsBoolean("exporter.enhanced_ndjson.export", false)) {
+            writers.add(new NdjsonFormatWriter(output, "enhanced_ndjson",
+                    ConfigManager.getAsInteger("exporter.enhanced_ndjson.shards", 1)));
+        }
+        return new ExportFanout(writers, ConfigManager.getAsInteger("exporter.queue_capacity", 256),
+                profile, output);
+    }
+    
+    public ExportProfile getProfile() {
+        return profile;
+    }
+    
+    /**
+     * Gets the names of the formats being written.
+     *
+     * @return The format names
+     */
+    public List<String> getFormatNames() {
+        List<String> names = new ArrayList<>();
+        for (Channel channel : channels) {
+            names.add(channel.writer.getName());
+        }
+        return Collections.unmodifiableList(names);
+    }
+    
+    /**
+     * Exports a patient to every format, blocking while any format's queue is full.
+     *
+     * @param patient The patient
+     * @throws InterruptedException if interrupted while waiting for queue space
+     * @throws IllegalStateException if the fan-out has been closed
+     */
+    public void accept(EnhancedPatientData patient) throws InterruptedException {
+        if (closed) {
+            // The format threads have stopped, so nothing would ever drain the queues
+            throw new IllegalStateException("Export fan-out is closed");
+        }
+        ExportRecord record = ExportRecord.of(patient, profile);
+        for (Channel channel : channels) {
+            channel.queue.put(record);
+        }
+    }
+    
+    /**
+     * Waits for every format to finish writing, closes the writers and then the I/O stage.
+     *
+     * @throws IOException the first error raised by any format
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        stopChannels();
+        
+        IOException failure = null;
+        if (output != null) {
+            for (Channel channel : channels) {
+                if (channel.failure != null) {
+                    output.markIncomplete();
+                }
+            }
+            try {
+                output.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        for (Channel channel : channels) {
+            if (channel.failure != null) {
+                if (failure == null) {
+                    failure = new IOException("Export to " + channel.writer.getName() + " failed",
+                            channel.failure);
+                } else {
+                    failure.addSuppressed(channel.failure);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+    
+    private void stopChannels() {
+        PipelineMetrics metrics = PipelineMetrics.active();
+        if (metrics != null) {
+            for (Channel channel : channels) {
+                metrics.unregisterQueue(channel.writer.getName());
+            }
+        }
+        boolean interrupted = false;
+        for (Channel channel : channels) {
+            while (true) {
+                try {
+                    channel.queue.put(END);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        for (Channel channel : channels) {
+            while (channel.thread.isAlive()) {
+                try {
+                    channel.thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * One format with its queue and I/O thread.
+     */
+    private static final class Channel implements Runnable {
+        private final FormatWriter writer;
+        private final BlockingQueue<Object> queue;
+        private final Thread thread;
+        private final String stageName;
+        private volatile Exception failure;
+        
+        Channel(FormatWriter writer, int queueCapacity) {
+            this.writer = writer;
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+            this.thread = new Thread(this, "export-" + writer.getName());
+            this.stageName = "serialize." + writer.getName();
+            thread.setDaemon(true);
+        }
+        
+        @Override
+        public void run() {
+            try {
+                Object record;
+                while ((record = queue.take()) != END) {
+                    // After a failure keep draining so producers never block on a dead format
+                    if (failure == null) {
+                        PipelineMetrics metrics = PipelineMetrics.active();
+                        long start = metrics != null ? System.nanoTime() : 0;
+                        try {
+                            writer.write((ExportRecord) record);
+                            if (metrics != null) {
+                                metrics.record(stageName, start);
+                            }
+                        } catch (Exception e) {
+                            failure = e;
+                            System.err.println("Error exporting to " + writer.getName() + ": " + e.getMessage());
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                failure = e;
+            } finally {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+        }
+    }
+}
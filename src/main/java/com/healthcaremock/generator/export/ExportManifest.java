@@ -0,0 +1,215 @@
+package com.healthcaremock.generator.export;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A content-hash manifest of the per-patient files of an export, used to export only what
+ * changed since the previous run.
+ *
+ * <p>Each file is recorded with its patient and the SHA-256 of its content. On a rerun,
+ * {@link #record} tells the caller whether a file's content differs from the previous run,
+ * so unchanged files are not rewritten. {@link #finish} then deletes the files of the
+ * previous run that were not produced again, writes the delta of added, changed and removed
+ * patients, and saves the manifest for the next run. {@code record} may be called from
+ * several threads at once.
+ */
+public class ExportManifest {
+    /** The manifest file name, inside the export's base directory. */
+    public static final String MANIFEST_FILE = ".export-manifest";
+    
+    /** The delta file name, inside the export's base directory. */
+    public static final String DELTA_FILE = "export-delta.json";
+    
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    });
+    
+    private final Map<String, Entry> previous;
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+    
+    private ExportManifest(Map<String, Entry> previous) {
+        this.previous = previous;
+    }
+    
+    /**
+     * Loads the manifest of the previous export to a directory.
+     *
+     * @param baseDir The export's base directory
+     * @return The manifest; empty if there was no previous export
+     * @throws IOException if the manifest exists but cannot be read
+     */
+    public static ExportManifest load(File baseDir) throws IOException {
+        Map<String, Entry> previous = new HashMap<>();
+        File file = new File(baseDir, MANIFEST_FILE);
+        if (file.isFile()) {
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // path <tab> patient ID <tab> hash
+                    String[] fields = line.split("\t");
+                    if (fields.length == 3) {
+                        previous.put(fields[0], new Entry(fields[1], fields[2]));
+                    }
+                }
+            }
+        }
+        return new ExportManifest(previous);
+    }
+    
+    /**
+     * Records a file of this export.
+     *
+     * @param path The file's path relative to the base directory
+     * @param patientId The patient the file belongs to
+     * @param content The file content
+     * @return true if the content differs from the previous export, or the file is new
+     */
+    public boolean record(String path, String patientId, byte[] content) {
+        Entry entry = new Entry(patientId, hash(content));
+        current.put(path, entry);
+        Entry before = previous.get(path);
+        return before == null || !before.hash.equals(entry.hash);
+    }
+    
+    /**
+     * Deletes the previous export's files that were not exported again, writes the delta of
+     * patients and saves the manifest.
+     *
+     * @param baseDir The export's base directory
+     * @return The number of added, changed and removed patients
+     * @throws IOException if the delta or manifest cannot be written
+     */
+    public int finish(File baseDir) throws IOException {
+        Set<String> added = new TreeSet<>();
+        Set<String> changed = new TreeSet<>();
+        Set<String> removed = new TreeSet<>();
+        Set<String> previousPatients = new TreeSet<>();
+        for (Entry entry : previous.values()) {
+            previousPatients.add(entry.patientId);
+        }
+        
+        Set<String> currentPatients = new TreeSet<>();
+        for (Map.Entry<String, Entry> file : current.entrySet()) {
+            String patientId = file.getValue().patientId;
+            currentPatients.add(patientId);
+            Entry before = previous.get(file.getKey());
+            if (!previousPatients.contains(patientId)) {
+                added.add(patientId);
+            } else if (before == null || !before.hash.equals(file.getValue().hash)) {
+                changed.add(patientId);
+            }
+        }
+        
+        for (Map.Entry<String, Entry> file : previous.entrySet()) {
+            if (current.containsKey(file.getKey())) {
+                continue;
+            }
+            String patientId = file.getValue().patientId;
+            if (currentPatients.contains(patientId)) {
+                // A format or file layout was dropped for a patient that is still exported
+                changed.add(patientId);
+            } else {
+                removed.add(patientId);
+            }
+            File stale = new File(baseDir, file.getKey());
+            if (stale.isFile() && !stale.delete()) {
+                System.err.println("Unable to delete " + stale);
+            }
+        }
+        
+        writeDelta(new File(baseDir, DELTA_FILE), added, changed, removed,
+                currentPatients.size() - added.size() - changed.size());
+        save(new File(baseDir, MANIFEST_FILE));
+        return added.size() + changed.size() + removed.size();
+    }
+    
+    private void writeDelta(File file, Set<String> added, Set<String> changed, Set<String> removed,
+            int unchanged) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            JsonWriter out = new JsonWriter(writer);
+            out.setIndent("  ");
+            out.beginObject();
+            out.name("unchanged").value(unchanged);
+            writeIds(out, "added", added);
+            writeIds(out, "changed", changed);
+            writeIds(out, "removed", removed);
+            out.endObject();
+            out.flush();
+        }
+    }
+    
+    private static void writeIds(JsonWriter out, String name, Set<String> ids) throws IOException {
+        out.name(name).beginArray();
+        for (String id : ids) {
+            out.value(id);
+        }
+        out.endArray();
+    }
+    
+    private void save(File file) throws IOException {
+        List<String> paths = new ArrayList<>(current.keySet());
+        Collections.sort(paths);
+        // Write beside the manifest and rename, so an interrupted save keeps the old one
+        File temp = new File(file.getPath() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+            for (String path : paths) {
+                Entry entry = current.get(path);
+                writer.write(path);
+                writer.write('\t');
+                writer.write(entry.patientId);
+                writer.write('\t');
+                writer.write(entry.hash);
+                writer.write('\n');
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    private static String hash(byte[] content) {
+        MessageDigest digest = SHA256.get();
+        byte[] bytes = digest.digest(content);
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xf, 16);
+            hex[i * 2 + 1] = Character.forDigit(bytes[i] & 0xf, 16);
+        }
+        return new String(hex);
+    }
+    
+    /**
+     * The patient and content hash of one file.
+     */
+    private static final class Entry {
+        private final String patientId;
+        private final String hash;
+        
+        Entry(String patientId, String hash) {
+            this.patientId = patientId;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.healthcaremock.generator.export;
+
+import com.healthcaremock.generator.config.ConfigManager;
+import com.healthcaremock.generator.models.EnhancedPatientData;
+import com.healthcaremock.generator.models.ImagingReport;
+import com.healthcaremock.generator.models.PatientReportedOutcome;
+import com.healthcaremock.generator.models.SocialDeterminantsOfHealth;
+import com.healthcaremock.generator.models.WearableData;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A named projection of the exported data: which entities and fields to emit.
+ *
+ * <p>A profile is a list of paths. {@code entity} or {@code entity.*} selects a whole entity;
+ * {@code entity.field} selects one field of it. The entities and their fields are:
+ * <ul>
+ *   <li>{@code patient}: {@code demographics}, {@code reported} (patient-reported data).
+ *       The patient ID is always exported.</li>
+ *   <li>{@code sdoh}: factor keys, e.g. {@code sdoh.income}</li>
+ *   <li>{@code wearable}: measurement types, e.g. {@code wearable.steps}</li>
+ *   <li>{@code imaging}: {@code reportText}, {@code findings}, {@code impression},
+ *       {@code conclusion}; the study header is always included with the entity</li>
+ *   <li>{@code pro}: instrument types, e.g. {@code pro.PHQ-9}, and {@code responses}; without
+ *       an instrument type, every instrument is selected</li>
+ *   <li>{@code additional}: the models' additional data</li>
+ * </ul>
+ * A single {@code *} selects everything. Enrichers consult the active profile to skip
+ * generating data that no export will contain.
+ */
+public class ExportProfile {
+    /** The profile that exports everything. */
+    public static final ExportProfile FULL = new ExportProfile("full", Collections.singleton("*"));
+    private static final String RESPONSES = "responses";
+    
+    private final String name;
+    private final Set<String> paths;
+    
+    /**
+     * Creates a profile.
+     * @param name The profile name.
+     * @param paths The selected paths.
+     */
+    public ExportProfile(String name, Set<String> paths) {
+        this.name = name;
+        this.paths = Collections.unmodifiableSet(new HashSet<>(paths));
+    }
+    
+    /**
+     * Gets the profile selected by {@code export.profile}, defined by
+     * {@code export.profile.<name>}. Defaults to {@link #FULL}.
+     * @return The active profile.
+     */
+    public static ExportProfile fromConfig() {
+        return named(ConfigManager.getAsString("export.profile", FULL.name).trim());
+    }
+    
+    /**
+     * Gets a profile defined in the configuration.
+     * @param name The profile name.
+     * @return The profile, or {@link #FULL} if it is not defined.
+     */
+    public static ExportProfile named(String name) {
+        if (name.isEmpty() || name.equals(FULL.name)) {
+            return FULL;
+        }
+        String definition = ConfigManager.getAsString("export.profile." + name, null);
+        if (definition == null) {
+            System.err.println("Export profile '" + name + "' is not defined; exporting everything");
+            return FULL;
+        }
+        return parse(name, definition);
+    }
+    
+    /**
+     * Parses a comma-separated list of paths.
+     * @param name The profile name.
+     * @param definition The paths, e.g. "patient, sdoh.income, pro.PHQ-9".
+     * @return The profile.
+     */
+    public static ExportProfile parse(String name, String definition) {
+        Set<String> paths = new HashSet<>();
+        for (String path : definition.split(",")) {
+            path = path.trim();
+            if (!path.isEmpty()) {
+                paths.add(path.endsWith(".*") ? path.substring(0, path.length() - 2) : path);
+            }
+        }
+        return new ExportProfile(name, paths);
+    }
+    
+    /**
+     * Checks whether any part of an entity is selected.
+     * @param entity The entity, e.g. "imaging".
+     * @return true if the entity or one of its fields is selected.
+     */
+    public boolean includes(String entity) {
+        if (paths.contains("*") || paths.contains(entity)) {
+            return true;
+        }
+        String prefix = entity + ".";
+        for (String path : paths) {
+            if (path.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Checks whether a field of an entity is selected.
+     * @param entity The entity, e.g. "imaging".
+     * @param field The field, e.g. "reportText".
+     * @return true if the field or the whole entity is selected.
+     */
+    public boolean includes(String entity, String field) {
+        return includesAll(entity) || paths.contains(entity + "." + field);
+    }
+    
+    /**
+     * Checks whether an entity is selected as a whole.
+     * @param entity The entity.
+     * @return true if every field of the entity is selected.
+     */
+    public boolean includesAll(String entity) {
+        return paths.contains("*") || paths.contains(entity);
+    }
+    
+    /**
+     * Projects enrichment data onto this profile. Unselected entities and fields are left
+     * out; wholly selected entities are shared with the source rather than copied.
+     * @param data The enrichment data.
+     * @return The projected data, or the source itself if everything is selected.
+     */
+    public EnhancedPatientData project(EnhancedPatientData data) {
+        if (paths.contains("*")) {
+            return data;
+        }
+        EnhancedPatientData projected = new EnhancedPatientData(data.getPatientId());
+        
+        SocialDeterminantsOfHealth sdoh = data.getSocialDeterminants();
+        if (sdoh != null && includes("sdoh")) {
+            if (includesAll("sdoh")) {
+                projected.setSocialDeterminants(sdoh);
+            } else {
+                SocialDeterminantsOfHealth selected = new SocialDeterminantsOfHealth(sdoh.getPatientId());
+                for (Map.Entry<String, Object> factor : sdoh.getFactors().entrySet()) {
+                    if (includes("sdoh", factor.getKey())) {
+                        selected.setFactor(factor.getKey(), factor.getValue());
+                    }
+                }
+                projected.setSocialDeterminants(selected);
+            }
+        }
+        
+        if (includesAll("wearable")) {
+            projected.setWearableData(data.getWearableData());
+        } else if (includes("wearable") && data.getWearableData() != null) {
+            for (WearableData wearable : data.getWearableData()) {
+                WearableData selected = new WearableData(wearable.getPatientId());
+                selected.setDeviceType(wearable.getDeviceType());
+                selected.setDeviceId(wearable.getDeviceId());
+                selected.setRecordedAt(wearable.getRecordedAt());
+                for (WearableData.Measurement measurement : wearable.getMeasurements()) {
+                    if (includes("wearable", measurement.getType())) {
+                        selected.addMeasurement(measurement.getType(), measurement.getUnit(),
+                                measurement.getValue());
+                    }
+                }
+                if (!selected.getMeasurements().isEmpty()) {
+                    projected.addWearableData(selected);
+                }
+            }
+        }
+        
+        if (includesAll("imaging")) {
+            projected.setImagingReports(data.getImagingReports());
+        } else if (includes("imaging") && data.getImagingReports() != null) {
+            for (ImagingReport report : data.getImagingReports()) {
+                projected.addImagingReport(projectImagingReport(report));
+            }
+        }
+        
+        if (includesAll("pro")) {
+            projected.setPatientReportedOutcomes(data.getPatientReportedOutcomes());
+        } else if (includes("pro") && data.getPatientReportedOutcomes() != null) {
+            boolean anyInstrument = !selectsInstrument();
+            for (PatientReportedOutcome outcome : data.getPatientReportedOutcomes()) {
+                if (anyInstrument || includes("pro", outcome.getInstrumentType())) {
+                    projected.addPatientReportedOutcome(projectOutcome(outcome));
+                }
+            }
+        }
+        
+        if (includes("additional")) {
+            projected.setAdditionalData(data.getAdditionalData());
+        }
+        return projected;
+    }
+    
+    /**
+     * Checks whether the profile names an instrument type, rather than only the responses field.
+     */
+    private boolean selectsInstrument() {
+        for (String path : paths) {
+            if (path.startsWith("pro.") && !path.equals("pro." + RESPONSES)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private ImagingReport projectImagingReport(ImagingReport report) {
+        ImagingReport selected = new ImagingReport(report.getPatientId(), report.getEncounterId());
+        selected.setId(report.getId());
+        selected.setTimestamp(report.getTimestamp());
+        selected.setModality(report.getModality());
+        selected.setBodyPart(report.getBodyPart());
+        selected.setProcedureCode(report.getProcedureCode());
+        selected.setProcedureDisplay(report.getProcedureDisplay());
+        if (includes("imaging", "reportText")) {
+            selected.setReportText(report.getReportText());
+        }
+        if (includes("imaging", "impression")) {
+            selected.setImpression(report.getImpression());
+        }
+        if (includes("imaging", "conclusion")) {
+            selected.setConclusion(report.getConclusion());
+        }
+        if (includes("imaging", "findings")) {
+            selected.setFindings(report.getFindings());
+        }
+        return selected;
+    }
+    
+    private PatientReportedOutcome projectOutcome(PatientReportedOutcome outcome) {
+        if (includes("pro", RESPONSES)) {
+            return outcome;
+        }
+        PatientReportedOutcome selected = new PatientReportedOutcome(outcome.getPatientId(),
+                outcome.getEncounterId());
+        selected.setId(outcome.getId());
+        selected.setTimestamp(outcome.getTimestamp());
+        selected.setInstrumentType(outcome.getInstrumentType());
+        selected.setInstrumentVersion(outcome.getInstrumentVersion());
+        selected.setCondition(outcome.getCondition());
+        selected.setTotalScore(outcome.getTotalScore());
+        selected.setInterpretation(outcome.getInterpretation());
+        return selected;
+    }
+    
+    // Getters
+    
+    public String getName() {
+        return name;
+    }
+    
+    public Set<String> getPaths() {
+        return paths;
+    }
+}
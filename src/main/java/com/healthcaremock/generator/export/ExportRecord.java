@@ -0,0 +1,131 @@
+package com.healthcaremock.generator.export;
+
+import com.healthcaremock.generator.EnhancedPatientData;
+import org.mitre.synthea.world.agents.Person;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Map;
+
+/**
+ * The values every export format needs from a patient, derived once per patient and shared
+ * by all format writers. Instances are immutable apart from the patient they wrap.
+ * The enrichment data is projected onto the export profile here, once for all formats.
+ */
+public class ExportRecord {
+    private final EnhancedPatientData patient;
+    private final ExportProfile profile;
+    private final com.healthcaremock.generator.models.EnhancedPatientData extendedData;
+    private final String patientId;
+    private final String gender;
+    private final String race;
+    private final String ethnicity;
+    private final String state;
+    private final Object age;
+    private final String birthDate;
+    
+    private ExportRecord(EnhancedPatientData patient, ExportProfile profile) {
+        Map<String, Object> attributes = patient.getPerson().attributes;
+        this.patient = patient;
+        this.profile = profile;
+        this.extendedData = patient.getExtendedData() != null
+                ? profile.project(patient.getExtendedData()) : null;
+        this.patientId = PatientJsonExporter.getPatientId(patient);
+        this.gender = String.valueOf(attributes.getOrDefault(Person.GENDER, ""));
+        this.race = String.valueOf(attributes.getOrDefault(Person.RACE, ""));
+        this.ethnicity = String.valueOf(attributes.getOrDefault(Person.ETHNICITY, ""));
+        Object stateValue = attributes.get(Person.STATE);
+        this.state = stateValue != null ? stateValue.toString() : null;
+        this.age = attributes.getOrDefault("age", 0);
+        Object birthdate = attributes.get(Person.BIRTHDATE);
+        this.birthDate = birthdate instanceof Number
+                ? LocalDate.ofInstant(Instant.ofEpochMilli(((Number) birthdate).longValue()), ZoneOffset.UTC).toString()
+                : null;
+    }
+    
+    /**
+     * Derives the export values of a patient.
+     * 
+     * @param patient The patient
+     * @return The record
+     */
+    public static ExportRecord of(EnhancedPatientData patient) {
+        return new ExportRecord(patient, ExportProfile.FULL);
+    }
+    
+    /**
+     * Derives the export values of a patient, limited to an export profile.
+     * 
+     * @param patient The patient
+     * @param profile The export profile
+     * @return The record
+     */
+    public static ExportRecord of(EnhancedPatientData patient, ExportProfile profile) {
+        return new ExportRecord(patient, profile);
+    }
+    
+    /**
+     * Formats a timestamp for export.
+     * 
+     * @param millis Milliseconds since the epoch
+     * @return The ISO-8601 instant
+     */
+    public static String formatInstant(long millis) {
+        return Instant.ofEpochMilli(millis).toString();
+    }
+    
+    // Getters
+    
+    public EnhancedPatientData getPatient() {
+        return patient;
+    }
+    
+    public ExportProfile getProfile() {
+        return profile;
+    }
+    
+    public boolean hasDemographics() {
+        return profile.includes("patient", "demographics");
+    }
+    
+    public boolean hasPatientReportedData() {
+        return profile.includes("patient", "reported");
+    }
+    
+    public String getPatientId() {
+        return patientId;
+    }
+    
+    public String getGender() {
+        return gender;
+    }
+    
+    public String getRace() {
+        return race;
+    }
+    
+    public String getEthnicity() {
+        return ethnicity;
+    }
+    
+    public String getState() {
+        return state;
+    }
+    
+    public Object getAge() {
+        return age;
+    }
+    
+    public String getBirthDate() {
+        return birthDate;
+    }
+    
+    public com.healthcaremock.generator.models.EnhancedPatientData getExtendedData() {
+        return extendedData;
+    }
+    
+    public Map<String, Object> getPatientReportedData() {
+        return patient.getPatientReportedData();
+    }
+}
@@ -0,0 +1,330 @@
+package com.healthcaremock.generator.export;
+
+import com.google.gson.stream.JsonWriter;
+import com.healthcaremock.generator.models.EnhancedPatientData;
+import com.healthcaremock.generator.models.ImagingReport;
+import com.healthcaremock.generator.models.PatientReportedOutcome;
+import com.healthcaremock.generator.models.WearableData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Writes each patient as a FHIR R4 collection Bundle, [UUID].json, holding a Patient and
+ * the enhanced data as Observations, DiagnosticReports and QuestionnaireResponses. Resources
+ * are streamed
+ * into a reused buffer that the {@link OutputStage} writes as one file; resource IDs are
+ * derived from the patient ID so re-exports are stable. Every resource carries a
+ * {@link #TAG_SYSTEM} meta tag, so the generator's resources can be told apart when they are
+ * appended to other bundles.
+ */
+public class FhirFormatWriter implements FormatWriter {
+    /** The system of the meta tag on every resource this writer produces. */
+    public static final String TAG_SYSTEM = "urn:healthcaremock:generator";
+    /** The code of the meta tag on every resource this writer produces. */
+    public static final String TAG_CODE = "enhanced";
+    
+    private final OutputStage output;
+    private final String directory;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+    private final Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+    
+    /**
+     * Creates a writer.
+     *
+     * @param output The I/O stage
+     * @param directory The output directory, relative to the stage's base directory
+     */
+    public FhirFormatWriter(OutputStage output, String directory) {
+        this.output = output;
+        this.directory = directory;
+    }
+    
+    @Override
+    public String getName() {
+        return "enhanced_fhir";
+    }
+    
+    @Override
+    public void open() {
+    }
+    
+    @Override
+    public void write(ExportRecord record) throws IOException {
+        buffer.reset();
+        JsonWriter out = new JsonWriter(writer);
+        out.beginObject();
+        out.name("resourceType").value("Bundle");
+        out.name("type").value("collection");
+        out.name("entry").beginArray();
+        writePatient(record, out);
+        writeEnhancedResources(record, out);
+        out.endArray();
+        out.endObject();
+        out.flush();
+        String patientId = record.getPatientId();
+        output.writePatient(output.patientFile(directory, patientId, patientId + ".json"), patientId,
+                buffer.toByteArray());
+    }
+    
+    @Override
+    public void close() {
+    }
+    
+    /**
+     * Writes the Patient resource as a bundle entry.
+     *
+     * @param record The patient's export values
+     * @param out The writer, positioned inside a Bundle's entry array
+     * @throws IOException if writing fails
+     */
+    public static void writePatient(ExportRecord record, JsonWriter out) throws IOException {
+        beginEntry(out, record.getPatientId(), "Patient");
+        if (!record.hasDemographics()) {
+            endEntry(out, "Patient", false);
+            return;
+        }
+        out.name("gender").value(fhirGender(record.getGender()));
+        if (record.getBirthDate() != null) {
+            out.name("birthDate").value(record.getBirthDate());
+        }
+        if (record.getState() != null) {
+            out.name("address").beginArray().beginObject()
+                    .name("state").value(record.getState())
+                    .endObject().endArray();
+        }
+        endEntry(out, "Patient", false);
+    }
+    
+    /**
+     * Writes the enhanced data of a patient as bundle entries that reference the patient.
+     *
+     * @param record The patient's export values
+     * @param out The writer, positioned inside a Bundle's entry array
+     * @throws IOException if writing fails
+     */
+    public static void writeEnhancedResources(ExportRecord record, JsonWriter out) throws IOException {
+        writeEnhancedResources(record, out, false);
+    }
+    
+    /**
+     * Writes the enhanced data of a patient as bundle entries that reference the patient.
+     *
+     * @param record The patient's export values
+     * @param out The writer, positioned inside a Bundle's entry array
+     * @param transaction Whether the Bundle is a transaction, whose entries need a request
+     * @throws IOException if writing fails
+     */
+    public static void writeEnhancedResources(ExportRecord record, JsonWriter out, boolean transaction)
+            throws IOException {
+        String patientId = record.getPatientId();
+        if (record.hasPatientReportedData()) {
+            for (Map.Entry<String, Object> entry : record.getPatientReportedData().entrySet()) {
+                writeObservation(out, transaction, resourceId(patientId, "reported", entry.getKey()),
+                        patientId, "survey", entry.getKey(), null, entry.getValue(), null);
+            }
+        }
+        
+        EnhancedPatientData extended = record.getExtendedData();
+        if (extended == null) {
+            return;
+        }
+        if (extended.getSocialDeterminants() != null) {
+            for (Map.Entry<String, Object> factor : extended.getSocialDeterminants().getFactors().entrySet()) {
+                writeObservation(out, transaction, resourceId(patientId, "sdoh", factor.getKey()),
+                        patientId, "social-history", factor.getKey(), null, factor.getValue(), null);
+            }
+        }
+        int index = 0;
+        for (WearableData wearable : extended.getWearableData()) {
+            String effective = ExportRecord.formatInstant(wearable.getRecordedAt());
+            for (WearableData.Measurement measurement : wearable.getMeasurements()) {
+                String id = resourceId(patientId, "wearable", Integer.toString(index++));
+                writeObservation(out, transaction, id, patientId, "activity", measurement.getType(),
+                        effective, measurement.getValue(), measurement.getUnit());
+            }
+        }
+        for (ImagingReport report : extended.getImagingReports()) {
+            writeImagingReport(out, transaction, patientId, report);
+        }
+        for (PatientReportedOutcome outcome : extended.getPatientReportedOutcomes()) {
+            writeOutcome(out, transaction, patientId, outcome);
+        }
+    }
+    
+    private static void writeObservation(JsonWriter out, boolean transaction, String id, String patientId,
+            String category, String code, String effective, Object value, String unit) throws IOException {
+        beginEntry(out, id, "Observation");
+        out.name("status").value("final");
+        out.name("category").beginArray().beginObject()
+                .name("coding").beginArray().beginObject()
+                .name("system").value("http://terminology.hl7.org/CodeSystem/observation-category")
+                .name("code").value(category)
+                .endObject().endArray()
+                .endObject().endArray();
+        out.name("code").beginObject().name("text").value(code).endObject();
+        out.name("subject").beginObject().name("reference").value("urn:uuid:" + patientId).endObject();
+        if (effective != null) {
+            out.name("effectiveDateTime").value(effective);
+        }
+        writeValue(out, value, unit);
+        endEntry(out, "Observation", transaction);
+    }
+    
+    private static void writeImagingReport(JsonWriter out, boolean transaction, String patientId,
+            ImagingReport report) throws IOException {
+        beginEntry(out, report.getId(), "DiagnosticReport");
+        out.name("status").value("final");
+        out.name("code").beginObject()
+                .name("coding").beginArray().beginObject()
+                .name("system").value("http://www.ama-assn.org/go/cpt")
+                .name("code").value(report.getProcedureCode())
+                .name("display").value(report.getProcedureDisplay())
+                .endObject().endArray()
+                .name("text").value(report.getProcedureDisplay())
+                .endObject();
+        out.name("subject").beginObject().name("reference").value("urn:uuid:" + patientId).endObject();
+        if (report.getEncounterId() != null) {
+            out.name("encounter").beginObject()
+                    .name("reference").value("urn:uuid:" + report.getEncounterId()).endObject();
+        }
+        out.name("effectiveDateTime").value(ExportRecord.formatInstant(report.getTimestamp()));
+        if (report.getConclusion() != null) {
+            out.name("conclusion").value(report.getConclusion());
+        }
+        if (report.getReportText() != null) {
+            out.name("presentedForm").beginArray().beginObject()
+                    .name("contentType").value("text/plain")
+                    .name("data").value(Base64.getEncoder().encodeToString(
+                            report.getReportText().getBytes(StandardCharsets.UTF_8)))
+                    .endObject().endArray();
+        }
+        endEntry(out, "DiagnosticReport", transaction);
+    }
+    
+    private static void writeOutcome(JsonWriter out, boolean transaction, String patientId,
+            PatientReportedOutcome outcome) throws IOException {
+        // The answers as a QuestionnaireResponse, and the score as an Observation derived from it
+        String responseId = null;
+        if (!outcome.getResponses().isEmpty()) {
+            responseId = resourceId(patientId, "questionnaire-response", outcome.getId());
+            beginEntry(out, responseId, "QuestionnaireResponse");
+            out.name("status").value("completed");
+            out.name("questionnaire").value("urn:instrument:" + outcome.getInstrumentType()
+                    + (outcome.getInstrumentVersion() > 0 ? "|" + outcome.getInstrumentVersion() : ""));
+            out.name("subject").beginObject().name("reference").value("urn:uuid:" + patientId).endObject();
+            if (outcome.getEncounterId() != null) {
+                out.name("encounter").beginObject()
+                        .name("reference").value("urn:uuid:" + outcome.getEncounterId()).endObject();
+            }
+            out.name("authored").value(ExportRecord.formatInstant(outcome.getTimestamp()));
+            out.name("item").beginArray();
+            for (Map.Entry<String, Object> response : outcome.getResponses().entrySet()) {
+                out.beginObject();
+                out.name("linkId").value(response.getKey());
+                out.name("answer").beginArray().beginObject();
+                writeAnswer(out, response.getValue());
+                out.endObject().endArray();
+                out.endObject();
+            }
+            out.endArray();
+            endEntry(out, "QuestionnaireResponse", transaction);
+        }
+        
+        beginEntry(out, outcome.getId(), "Observation");
+        out.name("status").value("final");
+        out.name("category").beginArray().beginObject()
+                .name("coding").beginArray().beginObject()
+                .name("system").value("http://terminology.hl7.org/CodeSystem/observation-category")
+                .name("code").value("survey")
+                .endObject().endArray()
+                .endObject().endArray();
+        out.name("code").beginObject().name("text").value(outcome.getInstrumentType()).endObject();
+        out.name("subject").beginObject().name("reference").value("urn:uuid:" + patientId).endObject();
+        out.name("effectiveDateTime").value(ExportRecord.formatInstant(outcome.getTimestamp()));
+        out.name("valueQuantity").beginObject().name("value").value(outcome.getTotalScore()).endObject();
+        if (outcome.getInterpretation() != null) {
+            out.name("interpretation").beginArray().beginObject()
+                    .name("text").value(outcome.getInterpretation())
+                    .endObject().endArray();
+        }
+        if (responseId != null) {
+            out.name("derivedFrom").beginArray().beginObject()
+                    .name("reference").value("urn:uuid:" + responseId)
+                    .endObject().endArray();
+        }
+        endEntry(out, "Observation", transaction);
+    }
+    
+    private static void writeAnswer(JsonWriter out, Object value) throws IOException {
+        if (value instanceof Integer || value instanceof Long) {
+            out.name("valueInteger").value((Number) value);
+        } else if (value instanceof Number) {
+            out.name("valueDecimal").value((Number) value);
+        } else if (value instanceof Boolean) {
+            out.name("valueBoolean").value((Boolean) value);
+        } else {
+            out.name("valueString").value(String.valueOf(value));
+        }
+    }
+    
+    private static void writeValue(JsonWriter out, Object value, String unit) throws IOException {
+        if (value instanceof Number) {
+            out.name("valueQuantity").beginObject().name("value").value((Number) value);
+            if (unit != null) {
+                out.name("unit").value(unit);
+            }
+            out.endObject();
+        } else if (value instanceof Boolean) {
+            out.name("valueBoolean").value((Boolean) value);
+        } else if (value != null) {
+            out.name("valueString").value(value.toString());
+        }
+    }
+    
+    private static void beginEntry(JsonWriter out, String id, String resourceType) throws IOException {
+        out.beginObject();
+        out.name("fullUrl").value("urn:uuid:" + id);
+        out.name("resource").beginObject();
+        out.name("resourceType").value(resourceType);
+        out.name("id").value(id);
+        out.name("meta").beginObject()
+                .name("tag").beginArray().beginObject()
+                .name("system").value(TAG_SYSTEM)
+                .name("code").value(TAG_CODE)
+                .endObject().endArray()
+                .endObject();
+    }
+    
+    private static void endEntry(JsonWriter out, String resourceType, boolean transaction)
+            throws IOException {
+        out.endObject();
+        if (transaction) {
+            out.name("request").beginObject()
+                    .name("method").value("POST")
+                    .name("url").value(resourceType)
+                    .endObject();
+        }
+        out.endObject();
+    }
+    
+    private static String resourceId(String patientId, String kind, String key) {
+        return UUID.nameUUIDFromBytes((patientId + '/' + kind + '/' + key)
+                .getBytes(StandardCharsets.UTF_8)).toString();
+    }
+    
+    private static String fhirGender(String gender) {
+        if ("M".equals(gender)) {
+            return "male";
+        } else if ("F".equals(gender)) {
+            return "female";
+        }
+        return "unknown";
+    }
+}
@@ -0,0 +1,39 @@
+package com.healthcaremock.generator.export;
+
+import java.io.IOException;
+
+/**
+ * An export format. The {@link ExportFanout} calls each writer from a single thread of its
+ * own: {@link #open()} once, {@link #write(ExportRecord)} for each patient, then
+ * {@link #close()}, so implementations need no synchronization.
+ */
+public interface FormatWriter {
+    /**
+     * Gets the name of the format, used in thread names and error messages.
+     * 
+     * @return The name
+     */
+    String getName();
+    
+    /**
+     * Prepares the output, e.g. creates directories or opens files.
+     * 
+     * @throws IOException if the output cannot be created
+     */
+    void open() throws IOException;
+    
+    /**
+     * Writes one patient.
+     * 
+     * @param record The patient's shared export values
+     * @throws IOException if writing fails
+     */
+    void write(ExportRecord record) throws IOException;
+    
+    /**
+     * Finishes and closes the output.
+     * 
+     * @throws IOException if writing fails
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,54 @@
+package com.healthcaremock.generator.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes each patient to its own patient_[UUID].json file, in the same layout as
+ * {@link PatientJsonExporter#exportToDirectory}. Files are rendered here and written by
+ * the {@link OutputStage}.
+ */
+public class JsonFormatWriter implements FormatWriter {
+    private final OutputStage output;
+    private final String directory;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(16 * 1024);
+    private final Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+    
+    /**
+     * Creates a writer.
+     * 
+     * @param output The I/O stage
+     * @param directory The output directory, relative to the stage's base directory
+     */
+    public JsonFormatWriter(OutputStage output, String directory) {
+        this.output = output;
+        this.directory = directory;
+    }
+    
+    @Override
+    public String getName() {
+        return "enhanced_json";
+    }
+    
+    @Override
+    public void open() {
+    }
+    
+    @Override
+    public void write(ExportRecord record) throws IOException {
+        buffer.reset();
+        PatientJsonExporter.writeTo(record, writer, true);
+        writer.write("\n");
+        writer.flush();
+        String patientId = record.getPatientId();
+        output.writePatient(output.patientFile(directory, patientId, "patient_" + patientId + ".json"),
+                patientId, buffer.toByteArray());
+    }
+    
+    @Override
+    public void close() {
+    }
+}
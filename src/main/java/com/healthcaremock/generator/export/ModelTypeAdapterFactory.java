@@ -0,0 +1,570 @@
+package com.healthcaremock.generator.export;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.healthcaremock.generator.models.EnhancedPatientData;
+import com.healthcaremock.generator.models.ImagingReport;
+import com.healthcaremock.generator.models.PatientReportedOutcome;
+import com.healthcaremock.generator.models.SocialDeterminantsOfHealth;
+import com.healthcaremock.generator.models.WearableData;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hand-written Gson adapters for the enrichment models.
+ *
+ * <p>Each adapter streams fields straight between the model's accessors and the JSON stream,
+ * with no reflection and no intermediate trees. Output matches Gson's reflective adapters
+ * field for field, including declaration order and omitted nulls, so switching is invisible
+ * to consumers. Values of {@code Map<String, Object>} fields are dispatched on the common
+ * types (strings, numbers, booleans, maps and collections) directly and fall back to Gson
+ * for anything else. When reading, integral numbers come back as {@code Long} and others
+ * as {@code Double}.
+ */
+public final class ModelTypeAdapterFactory implements TypeAdapterFactory {
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+            .create();
+    
+    /**
+     * Gets the shared Gson instance with the model adapters registered.
+     *
+     * @return The Gson instance
+     */
+    public static Gson gson() {
+        return GSON;
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> raw = type.getRawType();
+        TypeAdapter<?> adapter;
+        if (raw == EnhancedPatientData.class) {
+            adapter = new EnhancedPatientDataAdapter(gson);
+        } else if (raw == WearableData.class) {
+            adapter = new WearableDataAdapter();
+        } else if (raw == ImagingReport.class) {
+            adapter = new ImagingReportAdapter();
+        } else if (raw == PatientReportedOutcome.class) {
+            adapter = new PatientReportedOutcomeAdapter(gson);
+        } else if (raw == SocialDeterminantsOfHealth.class) {
+            adapter = new SocialDeterminantsAdapter(gson);
+        } else {
+            return null;
+        }
+        return (TypeAdapter<T>) adapter.nullSafe();
+    }
+    
+    private static final class EnhancedPatientDataAdapter extends TypeAdapter<EnhancedPatientData> {
+        private final Gson gson;
+        private final SocialDeterminantsAdapter socialDeterminants;
+        private final WearableDataAdapter wearableData;
+        private final ImagingReportAdapter imagingReports;
+        private final PatientReportedOutcomeAdapter patientReportedOutcomes;
+        
+        EnhancedPatientDataAdapter(Gson gson) {
+            this.gson = gson;
+            this.socialDeterminants = new SocialDeterminantsAdapter(gson);
+            this.wearableData = new WearableDataAdapter();
+            this.imagingReports = new ImagingReportAdapter();
+            this.patientReportedOutcomes = new PatientReportedOutcomeAdapter(gson);
+        }
+        
+        @Override
+        public void write(JsonWriter out, EnhancedPatientData data) throws IOException {
+            out.beginObject();
+            out.name("patientId").value(data.getPatientId());
+            if (data.getSocialDeterminants() != null) {
+                out.name("socialDeterminants");
+                socialDeterminants.write(out, data.getSocialDeterminants());
+            }
+            writeList(out, "wearableData", data.getWearableData(), wearableData);
+            writeList(out, "imagingReports", data.getImagingReports(), imagingReports);
+            writeList(out, "patientReportedOutcomes", data.getPatientReportedOutcomes(),
+                    patientReportedOutcomes);
+            writeMap(out, "additionalData", data.getAdditionalData(), gson);
+            out.endObject();
+        }
+        
+        @Override
+        public EnhancedPatientData read(JsonReader in) throws IOException {
+            EnhancedPatientData data = new EnhancedPatientData();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "patientId":
+                        data.setPatientId(in.nextString());
+                        break;
+                    case "socialDeterminants":
+                        data.setSocialDeterminants(socialDeterminants.read(in));
+                        break;
+                    case "wearableData":
+                        data.setWearableData(readList(in, wearableData));
+                        break;
+                    case "imagingReports":
+                        data.setImagingReports(readList(in, imagingReports));
+                        break;
+                    case "patientReportedOutcomes":
+                        data.setPatientReportedOutcomes(readList(in, patientReportedOutcomes));
+                        break;
+                    case "additionalData":
+                        data.setAdditionalData(readMap(in));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return data;
+        }
+    }
+    
+    private static final class WearableDataAdapter extends TypeAdapter<WearableData> {
+        @Override
+        public void write(JsonWriter out, WearableData data) throws IOException {
+            out.beginObject();
+            out.name("deviceType").value(data.getDeviceType());
+            out.name("deviceId").value(data.getDeviceId());
+            out.name("recordedAt").value(data.getRecordedAt());
+            out.name("patientId").value(data.getPatientId());
+            if (data.getMeasurements() != null) {
+                out.name("measurements").beginArray();
+                for (WearableData.Measurement measurement : data.getMeasurements()) {
+                    if (measurement == null) {
+                        out.nullValue();
+                        continue;
+                    }
+                    out.beginObject();
+                    out.name("type").value(measurement.getType());
+                    out.name("unit").value(measurement.getUnit());
+                    out.name("value").value(measurement.getValue());
+                    out.endObject();
+                }
+                out.endArray();
+            }
+            out.endObject();
+        }
+        
+        @Override
+        public WearableData read(JsonReader in) throws IOException {
+            WearableData data = new WearableData();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "deviceType":
+                        data.setDeviceType(in.nextString());
+                        break;
+                    case "deviceId":
+                        data.setDeviceId(in.nextString());
+                        break;
+                    case "recordedAt":
+                        data.setRecordedAt(in.nextLong());
+                        break;
+                    case "patientId":
+                        data.setPatientId(in.nextString());
+                        break;
+                    case "measurements":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            if (in.peek() == JsonToken.NULL) {
+                                in.nextNull();
+                                continue;
+                            }
+                            readMeasurement(in, data);
+                        }
+                        in.endArray();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return data;
+        }
+        
+        private static void readMeasurement(JsonReader in, WearableData data) throws IOException {
+            String type = null;
+            String unit = null;
+            double value = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "type":
+                        type = in.nextString();
+                        break;
+                    case "unit":
+                        unit = in.nextString();
+                        break;
+                    case "value":
+                        value = in.nextDouble();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            data.addMeasurement(type, unit, value);
+        }
+    }
+    
+    private static final class ImagingReportAdapter extends TypeAdapter<ImagingReport> {
+        @Override
+        public void write(JsonWriter out, ImagingReport report) throws IOException {
+            out.beginObject();
+            out.name("id").value(report.getId());
+            out.name("patientId").value(report.getPatientId());
+            out.name("encounterId").value(report.getEncounterId());
+            out.name("timestamp").value(report.getTimestamp());
+            out.name("modality").value(report.getModality());
+            out.name("bodyPart").value(report.getBodyPart());
+            out.name("procedureCode").value(report.getProcedureCode());
+            out.name("procedureDisplay").value(report.getProcedureDisplay());
+            out.name("reportText").value(report.getReportText());
+            out.name("impression").value(report.getImpression());
+            out.name("conclusion").value(report.getConclusion());
+            if (report.getFindings() != null) {
+                out.name("findings").beginArray();
+                for (ImagingReport.Finding finding : report.getFindings()) {
+                    if (finding == null) {
+                        out.nullValue();
+                        continue;
+                    }
+                    out.beginObject();
+                    out.name("text").value(finding.getText());
+                    out.name("significance").value(finding.getSignificance());
+                    out.endObject();
+                }
+                out.endArray();
+            }
+            out.endObject();
+        }
+        
+        @Override
+        public ImagingReport read(JsonReader in) throws IOException {
+            ImagingReport report = new ImagingReport();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "id":
+                        report.setId(in.nextString());
+                        break;
+                    case "patientId":
+                        report.setPatientId(in.nextString());
+                        break;
+                    case "encounterId":
+                        report.setEncounterId(in.nextString());
+                        break;
+                    case "timestamp":
+                        report.setTimestamp(in.nextLong());
+                        break;
+                    case "modality":
+                        report.setModality(in.nextString());
+                        break;
+                    case "bodyPart":
+                        report.setBodyPart(in.nextString());
+                        break;
+                    case "procedureCode":
+                        report.setProcedureCode(in.nextString());
+                        break;
+                    case "procedureDisplay":
+                        report.setProcedureDisplay(in.nextString());
+                        break;
+                    case "reportText":
+                        report.setReportText(in.nextString());
+                        break;
+                    case "impression":
+                        report.setImpression(in.nextString());
+                        break;
+                    case "conclusion":
+                        report.setConclusion(in.nextString());
+                        break;
+                    case "findings":
+                        report.setFindings(readFindings(in));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return report;
+        }
+        
+        private static List<ImagingReport.Finding> readFindings(JsonReader in) throws IOException {
+            List<ImagingReport.Finding> findings = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                ImagingReport.Finding finding = new ImagingReport.Finding();
+                in.beginObject();
+                while (in.hasNext()) {
+                    String name = in.nextName();
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                    } else if (name.equals("text")) {
+                        finding.setText(in.nextString());
+                    } else if (name.equals("significance")) {
+                        finding.setSignificance(in.nextString());
+                    } else {
+                        in.skipValue();
+                    }
+                }
+                in.endObject();
+                findings.add(finding);
+            }
+            in.endArray();
+            return findings;
+        }
+    }
+    
+    private static final class PatientReportedOutcomeAdapter extends TypeAdapter<PatientReportedOutcome> {
+        private final Gson gson;
+        
+        PatientReportedOutcomeAdapter(Gson gson) {
+            this.gson = gson;
+        }
+        
+        @Override
+        public void write(JsonWriter out, PatientReportedOutcome outcome) throws IOException {
+            out.beginObject();
+            out.name("id").value(outcome.getId());
+            out.name("patientId").value(outcome.getPatientId());
+            out.name("encounterId").value(outcome.getEncounterId());
+            out.name("timestamp").value(outcome.getTimestamp());
+            out.name("instrumentType").value(outcome.getInstrumentType());
+            out.name("instrumentVersion").value(outcome.getInstrumentVersion());
+            out.name("condition").value(outcome.getCondition());
+            writeMap(out, "responses", outcome.getResponses(), gson);
+            out.name("totalScore").value(outcome.getTotalScore());
+            out.name("interpretation").value(outcome.getInterpretation());
+            out.endObject();
+        }
+        
+        @Override
+        public PatientReportedOutcome read(JsonReader in) throws IOException {
+            PatientReportedOutcome outcome = new PatientReportedOutcome();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "id":
+                        outcome.setId(in.nextString());
+                        break;
+                    case "patientId":
+                        outcome.setPatientId(in.nextString());
+                        break;
+                    case "encounterId":
+                        outcome.setEncounterId(in.nextString());
+                        break;
+                    case "timestamp":
+                        outcome.setTimestamp(in.nextLong());
+                        break;
+                    case "instrumentType":
+                        outcome.setInstrumentType(in.nextString());
+                        break;
+                    case "instrumentVersion":
+                        outcome.setInstrumentVersion(in.nextInt());
+                        break;
+                    case "condition":
+                        outcome.setCondition(in.nextString());
+                        break;
+                    case "responses":
+                        outcome.setResponses(readMap(in));
+                        break;
+                    case "totalScore":
+                        outcome.setTotalScore(in.nextDouble());
+                        break;
+                    case "interpretation":
+                        outcome.setInterpretation(in.nextString());
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return outcome;
+        }
+    }
+    
+    private static final class SocialDeterminantsAdapter extends TypeAdapter<SocialDeterminantsOfHealth> {
+        private final Gson gson;
+        
+        SocialDeterminantsAdapter(Gson gson) {
+            this.gson = gson;
+        }
+        
+        @Override
+        public void write(JsonWriter out, SocialDeterminantsOfHealth sdoh) throws IOException {
+            out.beginObject();
+            out.name("patientId").value(sdoh.getPatientId());
+            writeMap(out, "factors", sdoh.getFactors(), gson);
+            out.endObject();
+        }
+        
+        @Override
+        public SocialDeterminantsOfHealth read(JsonReader in) throws IOException {
+            SocialDeterminantsOfHealth sdoh = new SocialDeterminantsOfHealth();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                } else if (name.equals("patientId")) {
+                    sdoh.setPatientId(in.nextString());
+                } else if (name.equals("factors")) {
+                    sdoh.setFactors(readMap(in));
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return sdoh;
+        }
+    }
+    
+    private static <T> void writeList(JsonWriter out, String name, List<T> values,
+            TypeAdapter<T> adapter) throws IOException {
+        if (values == null) {
+            return;
+        }
+        out.name(name).beginArray();
+        for (T value : values) {
+            if (value == null) {
+                out.nullValue();
+            } else {
+                adapter.write(out, value);
+            }
+        }
+        out.endArray();
+    }
+    
+    private static <T> List<T> readList(JsonReader in, TypeAdapter<T> adapter) throws IOException {
+        List<T> values = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                values.add(null);
+            } else {
+                values.add(adapter.read(in));
+            }
+        }
+        in.endArray();
+        return values;
+    }
+    
+    private static void writeMap(JsonWriter out, String name, Map<String, Object> values, Gson gson)
+            throws IOException {
+        if (values == null) {
+            return;
+        }
+        out.name(name);
+        writeValue(out, values, gson);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static void writeValue(JsonWriter out, Object value, Gson gson) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else if (value instanceof String) {
+            out.value((String) value);
+        } else if (value instanceof Number) {
+            out.value((Number) value);
+        } else if (value instanceof Boolean) {
+            out.value((Boolean) value);
+        } else if (value instanceof Map) {
+            out.beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                out.name(String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue(), gson);
+            }
+            out.endObject();
+        } else if (value instanceof Collection) {
+            out.beginArray();
+            for (Object element : (Collection<?>) value) {
+                writeValue(out, element, gson);
+            }
+            out.endArray();
+        } else {
+            TypeAdapter<Object> adapter = (TypeAdapter<Object>) gson.getAdapter(value.getClass());
+            adapter.write(out, value);
+        }
+    }
+    
+    private static Map<String, Object> readMap(JsonReader in) throws IOException {
+        Map<String, Object> values = new LinkedHashMap<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            values.put(in.nextName(), readValue(in));
+        }
+        in.endObject();
+        return values;
+    }
+    
+    private static Object readValue(JsonReader in) throws IOException {
+        switch (in.peek()) {
+            case STRING:
+                return in.nextString();
+            case NUMBER:
+                String number = in.nextString();
+                try {
+                    return Long.parseLong(number);
+                } catch (NumberFormatException e) {
+                    return Double.parseDouble(number);
+                }
+            case BOOLEAN:
+                return in.nextBoolean();
+            case BEGIN_OBJECT:
+                return readMap(in);
+            case BEGIN_ARRAY:
+                List<Object> values = new ArrayList<>();
+                in.beginArray();
+                while (in.hasNext()) {
+                    values.add(readValue(in));
+                }
+                in.endArray();
+                return values;
+            default:
+                in.nextNull();
+                return null;
+        }
+    }
+}
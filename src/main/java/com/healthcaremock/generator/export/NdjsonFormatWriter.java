@@ -0,0 +1,59 @@
+package com.healthcaremock.generator.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes each patient as one compact JSON line, in the same layout as the per-patient JSON
+ * files, to patients.ndjson or, with several shards, to patients-[N].ndjson. A patient's
+ * shard follows from a hash of its ID. Lines are appended through the {@link OutputStage}.
+ */
+public class NdjsonFormatWriter implements FormatWriter {
+    private final OutputStage output;
+    private final File[] files;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(16 * 1024);
+    private final Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+    
+    /**
+     * Creates a writer.
+     *
+     * @param output The I/O stage
+     * @param directory The output directory, relative to the stage's base directory
+     * @param shards The number of files patients are spread over
+     */
+    public NdjsonFormatWriter(OutputStage output, String directory, int shards) {
+        this.output = output;
+        this.files = new File[Math.max(1, shards)];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = output.file(directory, files.length == 1
+                    ? "patients.ndjson" : String.format("patients-%03d.ndjson", i));
+        }
+    }
+    
+    @Override
+    public String getName() {
+        return "enhanced_ndjson";
+    }
+    
+    @Override
+    public void open() {
+    }
+    
+    @Override
+    public void write(ExportRecord record) throws IOException {
+        buffer.reset();
+        PatientJsonExporter.writeTo(record, writer, false);
+        writer.write("\n");
+        writer.flush();
+        int shard = Math.floorMod(record.getPatientId().hashCode(), files.length);
+        output.append(files[shard], buffer.toByteArray());
+    }
+    
+    @Override
+    public void close() {
+    }
+}
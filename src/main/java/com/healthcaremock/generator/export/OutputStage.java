@@ -0,0 +1,456 @@
+package com.healthcaremock.generator.export;
+
+import com.healthcaremock.generator.config.ConfigManager;
+import com.healthcaremock.generator.metrics.PipelineMetrics;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * The I/O stage of the export: a single thread that performs every file operation.
+ *
+ * <p>Format writers render each patient to bytes on their own threads and hand the bytes to
+ * this stage, so no serialization thread waits on the disk and the disk sees one writer.
+ * Whole files are written with a single {@link FileChannel} write each; appended records are
+ * collected into a buffer per file and written in large sequential chunks. With
+ * {@code subfolders} set, per-patient files are spread over 256 subdirectories named by a
+ * hash of the patient ID, keeping directory sizes bounded.
+ *
+ * <p>With an {@link ExportManifest}, per-patient files whose content is unchanged since the
+ * previous export are not rewritten, and the manifest's delta is written on close.
+ *
+ * <p>Durability is deferred to checkpoints: files are not fsynced as they are written but
+ * every {@code fsyncInterval} files, and when the stage is closed. An interval of 0 leaves
+ * flushing to the operating system. Whole files are closed as soon as they are written and
+ * reopened at the checkpoint to be forced, so the interval does not bound the number of open
+ * files.
+ */
+public class OutputStage implements Closeable {
+    private static final Object END = new Object();
+    private static final Object CHECKPOINT = new Object();
+    
+    private final File baseDir;
+    private final boolean subfolders;
+    private final int batchBytes;
+    private final int fsyncInterval;
+    private final ExportManifest manifest;
+    private final BlockingQueue<Object> queue;
+    private final Thread thread;
+    
+    // Only touched by the I/O thread
+    private final Set<File> directories = new HashSet<>();
+    private final Map<File, Appender> appenders = new HashMap<>();
+    private final List<Path> unsynced = new ArrayList<>();
+    private int filesSinceCheckpoint;
+    
+    private volatile IOException failure;
+    private volatile boolean incomplete;
+    private boolean closed;
+    
+    /**
+     * Creates the stage and starts its thread.
+     *
+     * @param baseDir The base output directory
+     * @param subfolders Whether to spread per-patient files over hashed subdirectories
+     * @param batchBytes The size of the buffer collecting appended records for each file
+     * @param fsyncInterval The number of files between fsync checkpoints, or 0 for none
+     * @param queueCapacity The number of pending operations before writers wait
+     */
+    public OutputStage(File baseDir, boolean subfolders, int batchBytes, int fsyncInterval,
+            int queueCapacity) {
+        this(baseDir, subfolders, batchBytes, fsyncInterval, queueCapacity, null);
+    }
+    
+    /**
+     * Creates the stage and starts its thread.
+     *
+     * @param baseDir The base output directory
+     * @param subfolders Whether to spread per-patient files over hashed subdirectories
+     * @param batchBytes The size of the buffer collecting appended records for each file
+     * @param fsyncInterval The number of files between fsync checkpoints, or 0 for none
+     * @param queueCapacity The number of pending operations before writers wait
+     * @param manifest The manifest of the previous export, or null to write every file
+     */
+    public OutputStage(File baseDir, boolean subfolders, int batchBytes, int fsyncInterval,
+            int queueCapacity, ExportManifest manifest) {
+        this.baseDir = baseDir;
+        this.manifest = manifest;
+        this.subfolders = subfolders;
+        this.batchBytes = Math.max(4096, batchBytes);
+        this.fsyncInterval = Math.max(0, fsyncInterval);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.thread = new Thread(this::run, "export-io");
+        thread.setDaemon(true);
+        thread.start();
+        PipelineMetrics metrics = PipelineMetrics.active();
+        if (metrics != null) {
+            metrics.registerQueue("io", queue);
+        }
+    }
+    
+    /**
+     * Creates a stage from the {@code exporter.*} settings. With {@code exporter.delta_export}
+     * set, the manifest of the previous export to the directory is loaded.
+     *
+     * @param baseDir The base output directory
+     * @return The stage
+     * @throws IOException if the previous manifest cannot be read
+     */
+    public static OutputStage fromConfig(File baseDir) throws IOException {
+        ExportManifest manifest = ConfigManager.getAsBoolean("exporter.delta_export", false)
+                ? ExportManifest.load(baseDir) : null;
+        return new OutputStage(baseDir,
+                ConfigManager.getAsBoolean("exporter.subfolders_by_id_substring", false),
+                ConfigManager.getAsInteger("exporter.write_batch_kb", 1024) * 1024,
+                ConfigManager.getAsInteger("exporter.fsync_interval", 0),
+                ConfigManager.getAsInteger("exporter.io_queue_capacity", 1024),
+                manifest);
+    }
+    
+    /**
+     * Gets the file for a patient, inside the patient's hashed subdirectory when enabled.
+     *
+     * @param directory The format's directory, relative to the base directory
+     * @param patientId The patient ID
+     * @param fileName The file name
+     * @return The file
+     */
+    public File patientFile(String directory, String patientId, String fileName) {
+        File dir = new File(baseDir, directory);
+        if (subfolders) {
+            dir = new File(dir, shard(patientId));
+        }
+        return new File(dir, fileName);
+    }
+    
+    /**
+     * Gets a file directly inside a format's directory.
+     *
+     * @param directory The format's directory, relative to the base directory
+     * @param fileName The file name
+     * @return The file
+     */
+    public File file(String directory, String fileName) {
+        return new File(new File(baseDir, directory), fileName);
+    }
+    
+    /**
+     * Writes a whole file, replacing any existing content. Blocks while the queue is full.
+     *
+     * @param file The file; missing directories are created
+     * @param data The content, which must not be modified afterwards
+     * @throws IOException if the stage has failed or the caller is interrupted
+     */
+    public void write(File file, byte[] data) throws IOException {
+        enqueue(new Operation(file, data, false));
+    }
+    
+    /**
+     * Writes a patient's whole file. With a manifest, the file is skipped if it still exists
+     * and its content is unchanged since the previous export. The content is hashed on the
+     * calling thread. Blocks while the queue is full.
+     *
+     * @param file The file, from {@link #patientFile}
+     * @param patientId The patient the file belongs to
+     * @param data The content, which must not be modified afterwards
+     * @throws IOException if the stage has failed or the caller is interrupted
+     */
+    public void writePatient(File file, String patientId, byte[] data) throws IOException {
+        if (manifest != null) {
+            String path = baseDir.toPath().relativize(file.toPath()).toString()
+                    .replace(File.separatorChar, '/');
+            if (!manifest.record(path, patientId, data) && file.isFile()) {
+                return;
+            }
+        }
+        write(file, data);
+    }
+    
+    /**
+     * Appends to a file that is opened, truncated, on its first append and kept open until
+     * the stage is closed. Blocks while the queue is full.
+     *
+     * @param file The file; missing directories are created
+     * @param data The bytes to append, which must not be modified afterwards
+     * @throws IOException if the stage has failed or the caller is interrupted
+     */
+    public void append(File file, byte[] data) throws IOException {
+        enqueue(new Operation(file, data, true));
+    }
+    
+    /**
+     * Requests a checkpoint: everything written so far is flushed and, if fsync checkpoints
+     * are enabled, forced to disk.
+     *
+     * @throws IOException if the stage has failed or the caller is interrupted
+     */
+    public void checkpoint() throws IOException {
+        enqueue(CHECKPOINT);
+    }
+    
+    /**
+     * Marks the export as incomplete, e.g. because a format failed. The manifest is then
+     * neither applied nor saved, so no file is taken for removed and the next run compares
+     * against the last complete export.
+     */
+    void markIncomplete() {
+        incomplete = true;
+    }
+    
+    /**
+     * Writes everything still queued, checkpoints and closes all files. With a manifest, the
+     * previous export's stale patient files are then deleted and the delta is written.
+     *
+     * @throws IOException the first error raised by any operation
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        PipelineMetrics metrics = PipelineMetrics.active();
+        if (metrics != null) {
+            metrics.unregisterQueue("io");
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(END);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        if (manifest != null && !incomplete) {
+            manifest.finish(baseDir);
+        }
+    }
+    
+    private void enqueue(Object operation) throws IOException {
+        if (failure != null) {
+            throw new IOException("Export I/O failed", failure);
+        }
+        try {
+            queue.put(operation);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for export I/O", e);
+        }
+    }
+    
+    private void run() {
+        List<Object> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                for (Object operation : batch) {
+                    if (operation == END) {
+                        finish();
+                        return;
+                    }
+                    // After a failure keep draining so writers never block on a dead stage
+                    if (failure == null) {
+                        PipelineMetrics metrics = PipelineMetrics.active();
+                        long start = metrics != null ? System.nanoTime() : 0;
+                        try {
+                            perform(operation);
+                            if (metrics != null) {
+                                metrics.record("write", start);
+                                if (operation instanceof Operation) {
+                                    metrics.bytesWritten(((Operation) operation).data.length);
+                                }
+                            }
+                        } catch (IOException e) {
+                            failure = e;
+                            System.err.println("Error writing export output: " + e.getMessage());
+                        }
+                    }
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            failure = new IOException("Export I/O interrupted", e);
+        }
+    }
+    
+    private void perform(Object operation) throws IOException {
+        if (operation == CHECKPOINT) {
+            checkpointNow();
+            return;
+        }
+        Operation op = (Operation) operation;
+        if (op.append) {
+            Appender appender = appenders.get(op.file);
+            if (appender == null) {
+                appender = new Appender(open(op.file), batchBytes);
+                appenders.put(op.file, appender);
+            }
+            appender.append(op.data);
+            return;
+        }
+        try (FileChannel channel = open(op.file)) {
+            writeFully(channel, ByteBuffer.wrap(op.data));
+        }
+        if (fsyncInterval > 0) {
+            unsynced.add(op.file.toPath());
+            if (++filesSinceCheckpoint >= fsyncInterval) {
+                checkpointNow();
+            }
+        }
+    }
+    
+    private void checkpointNow() throws IOException {
+        filesSinceCheckpoint = 0;
+        for (Appender appender : appenders.values()) {
+            appender.flush();
+            if (fsyncInterval > 0) {
+                appender.channel.force(false);
+            }
+        }
+        IOException error = null;
+        for (Path file : unsynced) {
+            // Forcing any descriptor of a file flushes all of its written data
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.force(false);
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        unsynced.clear();
+        if (error != null) {
+            throw error;
+        }
+    }
+    
+    private void finish() {
+        try {
+            if (failure == null) {
+                checkpointNow();
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+        unsynced.clear();
+        for (Appender appender : appenders.values()) {
+            closeQuietly(appender.channel);
+        }
+        appenders.clear();
+    }
+    
+    private FileChannel open(File file) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && directories.add(dir) && !dir.isDirectory() && !dir.mkdirs()) {
+            directories.remove(dir);
+            throw new IOException("Unable to create " + dir);
+        }
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+    
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+    
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Already failing or finished; the first error is the one reported
+        }
+    }
+    
+    /**
+     * Gets the hashed subdirectory of a patient: two hex digits from a mix of the ID's hash,
+     * so sequential or shared-prefix IDs still spread evenly.
+     *
+     * @param patientId The patient ID
+     * @return The subdirectory name
+     */
+    static String shard(String patientId) {
+        int h = patientId.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        int bucket = (h >>> 24) & 0xff;
+        return new String(new char[] {
+            Character.forDigit(bucket >> 4, 16), Character.forDigit(bucket & 0xf, 16)
+        });
+    }
+    
+    /**
+     * A queued write or append.
+     */
+    private static final class Operation {
+        private final File file;
+        private final byte[] data;
+        private final boolean append;
+        
+        Operation(File file, byte[] data, boolean append) {
+            this.file = file;
+            this.data = data;
+            this.append = append;
+        }
+    }
+    
+    /**
+     * An open file whose appended records are collected into one large buffer.
+     */
+    private static final class Appender {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        
+        Appender(FileChannel channel, int capacity) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(capacity);
+        }
+        
+        void append(byte[] data) throws IOException {
+            if (data.length > buffer.remaining()) {
+                flush();
+                if (data.length > buffer.capacity()) {
+                    writeFully(channel, ByteBuffer.wrap(data));
+                    return;
+                }
+            }
+            buffer.put(data);
+        }
+        
+        void flush() throws IOException {
+            buffer.flip();
+            writeFully(channel, buffer);
+            buffer.clear();
+        }
+    }
+}
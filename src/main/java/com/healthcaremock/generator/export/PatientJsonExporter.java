@@ -0,0 +1,195 @@
+package com.healthcaremock.generator.export;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+import com.healthcaremock.generator.EnhancedPatientData;
+import org.mitre.synthea.world.agents.Person;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Writes enhanced patient data as JSON, either as one file per patient or to a stream.
+ */
+public class PatientJsonExporter {
+    private static final TypeAdapter<com.healthcaremock.generator.models.EnhancedPatientData> EXTENDED_DATA =
+            ModelTypeAdapterFactory.gson().getAdapter(com.healthcaremock.generator.models.EnhancedPatientData.class);
+    
+    private PatientJsonExporter() {
+    }
+    
+    /**
+     * Gets the identifier used for a patient in exported files.
+     * 
+     * @param patient The patient
+     * @return The patient's Synthea ID, or if the person has none, a UUID derived from the
+     *         person's seed, so that regenerating the patient gives the same ID
+     */
+    public static String getPatientId(EnhancedPatientData patient) {
+        Person person = patient.getPerson();
+        Object id = person.attributes.get(Person.ID);
+        if (id != null) {
+            return id.toString();
+        }
+        // Not randUUID(): that would draw from the person's random stream
+        return UUID.nameUUIDFromBytes(("person/" + person.seed).getBytes(StandardCharsets.UTF_8))
+                .toString();
+    }
+    
+    /**
+     * Writes a single patient as a JSON object.
+     * 
+     * @param patient The patient
+     * @param out The JSON writer
+     * @throws IOException if writing fails
+     */
+    public static void write(EnhancedPatientData patient, JsonWriter out) throws IOException {
+        write(ExportRecord.of(patient), out);
+    }
+    
+    /**
+     * Writes a single patient as a JSON object from its shared export values.
+     * 
+     * @param record The patient's export values
+     * @param out The JSON writer
+     * @throws IOException if writing fails
+     */
+    public static void write(ExportRecord record, JsonWriter out) throws IOException {
+        out.beginObject();
+        out.name("uuid").value(record.getPatientId());
+        
+        // Basic demographics
+        if (record.hasDemographics()) {
+            out.name("attributes").beginObject();
+            out.name("gender").value(record.getGender());
+            writeValue(out.name("age"), record.getAge());
+            out.name("race").value(record.getRace());
+            out.name("ethnicity").value(record.getEthnicity());
+            out.endObject();
+        }
+        
+        // Patient-reported data
+        if (record.hasPatientReportedData()) {
+            out.name("patientReportedData").beginObject();
+            for (Map.Entry<String, Object> entry : record.getPatientReportedData().entrySet()) {
+                writeValue(out.name(entry.getKey()), entry.getValue());
+            }
+            out.endObject();
+        }
+        
+        // Data added by the enrichment pipeline
+        if (record.getExtendedData() != null) {
+            // Omit null model fields, as Gson.toJson does for its own writers
+            boolean serializeNulls = out.getSerializeNulls();
+            out.setSerializeNulls(false);
+            try {
+                out.name("extendedData");
+                EXTENDED_DATA.write(out, record.getExtendedData());
+            } finally {
+                out.setSerializeNulls(serializeNulls);
+            }
+        }
+        
+        out.endObject();
+    }
+    
+    /**
+     * Converts a single patient to a JSON string.
+     * 
+     * @param patient The patient
+     * @param pretty Whether to indent the output; compact output has no line breaks
+     * @return The JSON representation
+     */
+    public static String toJson(EnhancedPatientData patient, boolean pretty) {
+        StringWriter buffer = new StringWriter();
+        try {
+            writeTo(patient, buffer, pretty);
+        } catch (IOException e) {
+            // StringWriter does not throw
+            throw new IllegalStateException(e);
+        }
+        return buffer.toString();
+    }
+    
+    /**
+     * Writes a single patient to a character stream.
+     * 
+     * @param patient The patient
+     * @param writer The destination, which is flushed but not closed
+     * @param pretty Whether to indent the output
+     * @throws IOException if writing fails
+     */
+    public static void writeTo(EnhancedPatientData patient, Writer writer, boolean pretty)
+            throws IOException {
+        writeTo(ExportRecord.of(patient), writer, pretty);
+    }
+    
+    /**
+     * Writes a single patient to a character stream from its shared export values.
+     * 
+     * @param record The patient's export values
+     * @param writer The destination, which is flushed but not closed
+     * @param pretty Whether to indent the output
+     * @throws IOException if writing fails
+     */
+    public static void writeTo(ExportRecord record, Writer writer, boolean pretty)
+            throws IOException {
+        JsonWriter out = new JsonWriter(writer);
+        if (pretty) {
+            out.setIndent("  ");
+        }
+        write(record, out);
+        out.flush();
+    }
+    
+    /**
+     * Exports each patient to its own file named patient_[UUID].json.
+     * 
+     * @param patients The patients to export
+     * @param outputDir The output directory, created if missing
+     * @return The number of patients exported
+     * @throws IOException if a file cannot be written
+     */
+    public static int exportToDirectory(List<EnhancedPatientData> patients, File outputDir)
+            throws IOException {
+        outputDir.mkdirs();
+        for (EnhancedPatientData patient : patients) {
+            writeFile(ExportRecord.of(patient), outputDir);
+        }
+        return patients.size();
+    }
+    
+    /**
+     * Exports a patient to its own file named patient_[UUID].json.
+     * 
+     * @param record The patient's export values
+     * @param outputDir The existing output directory
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeFile(ExportRecord record, File outputDir) throws IOException {
+        File file = new File(outputDir, "patient_" + record.getPatientId() + ".json");
+        try (Writer writer = new FileWriter(file)) {
+            writeTo(record, writer, true);
+            writer.write("\n");
+        }
+    }
+    
+    private static void writeValue(JsonWriter out, Object value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else if (value instanceof Number) {
+            out.value((Number) value);
+        } else if (value instanceof Boolean) {
+            out.value((Boolean) value);
+        } else {
+            out.value(value.toString());
+        }
+    }
+}
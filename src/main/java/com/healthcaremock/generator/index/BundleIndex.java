@@ -0,0 +1,283 @@
+package com.healthcaremock.generator.index;
+
+import com.healthcaremock.generator.codec.BinaryDecoder;
+import com.healthcaremock.generator.codec.BinaryEncoder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The byte offsets of the resources in one FHIR bundle, with lookups by resource type and ID,
+ * by patient and by date.
+ *
+ * <p>The index is built with one streaming pass of {@link BundleScanner} and saved beside the
+ * bundle as a compact sidecar file ({@code <bundle>.idx}). The sidecar records the size and
+ * modification time of the bundle it describes, so {@link #forBundle} only rebuilds it when
+ * the bundle has changed.
+ */
+public class BundleIndex {
+    /** The sidecar file suffix. */
+    public static final String SUFFIX = ".idx";
+    
+    private static final byte[] MAGIC = {'F', 'B', 'I', 'X'};
+    private static final int VERSION = 1;
+    
+    private final File bundle;
+    private final long bundleLength;
+    private final long bundleModified;
+    private final List<ResourceLocation> resources;
+    private final Map<String, ResourceLocation> byKey;
+    private final Map<String, List<ResourceLocation>> byType;
+    private final Map<String, List<ResourceLocation>> byPatient;
+    private final List<ResourceLocation> byDate;
+    
+    private BundleIndex(File bundle, long bundleLength, long bundleModified,
+            List<ResourceLocation> resources) {
+        this.bundle = bundle;
+        this.bundleLength = bundleLength;
+        this.bundleModified = bundleModified;
+        this.resources = Collections.unmodifiableList(resources);
+        this.byKey = new HashMap<>();
+        this.byType = new HashMap<>();
+        this.byPatient = new HashMap<>();
+        this.byDate = new ArrayList<>();
+        for (ResourceLocation resource : resources) {
+            byKey.put(key(resource.getResourceType(), resource.getId()), resource);
+            byType.computeIfAbsent(resource.getResourceType(), k -> new ArrayList<>()).add(resource);
+            if (resource.getPatientId() != null) {
+                byPatient.computeIfAbsent(resource.getPatientId(), k -> new ArrayList<>()).add(resource);
+            }
+            if (resource.getDate() != ResourceLocation.NO_DATE) {
+                byDate.add(resource);
+            }
+        }
+        byDate.sort(Comparator.comparingLong(ResourceLocation::getDate));
+    }
+    
+    /**
+     * Gets the index of a bundle, loading its sidecar if it is current and otherwise building
+     * the index and saving a new sidecar.
+     * @param bundle The bundle file.
+     * @return The index.
+     * @throws IOException if the bundle cannot be read.
+     */
+    public static BundleIndex forBundle(File bundle) throws IOException {
+        BundleIndex index = load(bundle);
+        if (index != null) {
+            return index;
+        }
+        index = build(bundle);
+        try {
+            index.save();
+        } catch (IOException e) {
+            // The index is still usable; it is rebuilt next time
+            System.err.println("Unable to save index for " + bundle.getName() + ": " + e.getMessage());
+        }
+        return index;
+    }
+    
+    /**
+     * Builds the index of a bundle by scanning it.
+     * @param bundle The bundle file.
+     * @return The index.
+     * @throws IOException if the bundle cannot be read or is not a JSON object.
+     */
+    public static BundleIndex build(File bundle) throws IOException {
+        long modified = bundle.lastModified();
+        MappedByteBuffer mapped = map(bundle);
+        List<ResourceLocation> resources;
+        try {
+            resources = new BundleScanner(mapped).scan();
+        } catch (IOException e) {
+            throw new IOException(e.getMessage() + " in " + bundle, e);
+        }
+        return new BundleIndex(bundle, mapped.limit(), modified, resources);
+    }
+    
+    /**
+     * Loads the sidecar of a bundle.
+     * @param bundle The bundle file.
+     * @return The index, or null if there is no sidecar or it does not match the bundle.
+     * @throws IOException if the sidecar exists but cannot be read.
+     */
+    public static BundleIndex load(File bundle) throws IOException {
+        File sidecar = sidecar(bundle);
+        if (!sidecar.isFile()) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(sidecar.toPath()));
+        for (byte b : MAGIC) {
+            if (!buffer.hasRemaining() || buffer.get() != b) {
+                return null;
+            }
+        }
+        BinaryDecoder in = new BinaryDecoder(buffer);
+        if (in.readByte() != VERSION) {
+            return null;
+        }
+        long length = in.readVarLong();
+        long modified = in.readVarLong();
+        if (length != bundle.length() || modified != bundle.lastModified()) {
+            return null;
+        }
+        
+        int count = in.readVarInt();
+        List<ResourceLocation> resources = new ArrayList<>(count);
+        long offset = 0;
+        for (int i = 0; i < count; i++) {
+            String type = in.readString();
+            String id = in.readString();
+            String patientId = in.readString();
+            long date = in.readSignedVarLong();
+            offset += in.readVarLong();
+            int entryLength = in.readVarInt();
+            resources.add(new ResourceLocation(type, id, patientId, date, offset, entryLength));
+        }
+        return new BundleIndex(bundle, length, modified, resources);
+    }
+    
+    /**
+     * Saves the index as the bundle's sidecar.
+     * @throws IOException if the sidecar cannot be written.
+     */
+    public void save() throws IOException {
+        BinaryEncoder out = new BinaryEncoder(64 * resources.size());
+        out.writeByte(VERSION);
+        out.writeVarLong(bundleLength);
+        out.writeVarLong(bundleModified);
+        out.writeVarInt(resources.size());
+        long previous = 0;
+        for (ResourceLocation resource : resources) {
+            // Types and patient IDs repeat, so the encoder writes them once and then by reference
+            out.writeString(resource.getResourceType());
+            out.writeString(resource.getId());
+            out.writeString(resource.getPatientId());
+            out.writeSignedVarLong(resource.getDate());
+            // Entries are in file order, so offsets are stored as small deltas
+            out.writeVarLong(resource.getOffset() - previous);
+            out.writeVarInt(resource.getLength());
+            previous = resource.getOffset();
+        }
+        
+        File sidecar = sidecar(bundle);
+        File temp = new File(sidecar.getPath() + ".tmp");
+        try (OutputStream stream = new FileOutputStream(temp)) {
+            stream.write(MAGIC);
+            out.writeTo(stream);
+        }
+        Files.move(temp.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    /**
+     * Finds a resource by type and ID.
+     * @param resourceType The resource type, e.g. "Observation".
+     * @param id The resource ID.
+     * @return The resource's location, or null if it is not in the bundle.
+     */
+    public ResourceLocation find(String resourceType, String id) {
+        return byKey.get(key(resourceType, id));
+    }
+    
+    /**
+     * Gets the resources of one type.
+     * @param resourceType The resource type.
+     * @return The resources in file order.
+     */
+    public List<ResourceLocation> byType(String resourceType) {
+        return Collections.unmodifiableList(byType.getOrDefault(resourceType, Collections.emptyList()));
+    }
+    
+    /**
+     * Gets the resources that belong to a patient, including the Patient resource itself.
+     * @param patientId The patient ID.
+     * @return The resources in file order.
+     */
+    public List<ResourceLocation> byPatient(String patientId) {
+        return Collections.unmodifiableList(byPatient.getOrDefault(patientId, Collections.emptyList()));
+    }
+    
+    /**
+     * Gets the resources dated within a time range.
+     * @param resourceType The resource type, or null for all types.
+     * @param from The start of the range in epoch milliseconds, inclusive.
+     * @param to The end of the range in epoch milliseconds, exclusive.
+     * @return The resources in date order.
+     */
+    public List<ResourceLocation> between(String resourceType, long from, long to) {
+        List<ResourceLocation> result = new ArrayList<>();
+        for (int i = lowerBound(from); i < byDate.size(); i++) {
+            ResourceLocation resource = byDate.get(i);
+            if (resource.getDate() >= to) {
+                break;
+            }
+            if (resourceType == null || resourceType.equals(resource.getResourceType())) {
+                result.add(resource);
+            }
+        }
+        return result;
+    }
+    
+    private int lowerBound(long date) {
+        int low = 0;
+        int high = byDate.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (byDate.get(middle).getDate() < date) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Gets the sidecar file of a bundle.
+     * @param bundle The bundle file.
+     * @return The sidecar file.
+     */
+    public static File sidecar(File bundle) {
+        return new File(bundle.getPath() + SUFFIX);
+    }
+    
+    static MappedByteBuffer map(File bundle) throws IOException {
+        try (FileChannel channel = FileChannel.open(bundle.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Bundle too large to map: " + bundle);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+    
+    private static String key(String resourceType, String id) {
+        return resourceType + "/" + id;
+    }
+    
+    // Getters
+    
+    public File getBundle() {
+        return bundle;
+    }
+    
+    public List<ResourceLocation> getResources() {
+        return resources;
+    }
+    
+    public int size() {
+        return resources.size();
+    }
+}
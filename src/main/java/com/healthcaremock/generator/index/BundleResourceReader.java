@@ -0,0 +1,102 @@
+package com.healthcaremock.generator.index;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads single resources from a FHIR bundle without parsing the rest of it.
+ *
+ * <p>The bundle is memory-mapped once. Each read copies only the bytes of the requested
+ * entry, found through the bundle's {@link BundleIndex}, and parses them. Reads may be
+ * made from several threads at once.
+ */
+public class BundleResourceReader {
+    private final BundleIndex index;
+    private final MappedByteBuffer mapped;
+    
+    /**
+     * Constructor.
+     * @param index The index of the bundle.
+     * @throws IOException if the bundle cannot be mapped.
+     */
+    public BundleResourceReader(BundleIndex index) throws IOException {
+        this.index = index;
+        this.mapped = BundleIndex.map(index.getBundle());
+        if (mapped.limit() != index.getBundle().length()) {
+            throw new IOException("Index is out of date: " + index.getBundle());
+        }
+    }
+    
+    /**
+     * Opens a bundle, loading or building its index.
+     * @param bundle The bundle file.
+     * @return The reader.
+     * @throws IOException if the bundle cannot be read.
+     */
+    public static BundleResourceReader open(File bundle) throws IOException {
+        return new BundleResourceReader(BundleIndex.forBundle(bundle));
+    }
+    
+    /**
+     * Reads a resource by type and ID.
+     * @param resourceType The resource type, e.g. "Observation".
+     * @param id The resource ID.
+     * @return The resource, or null if it is not in the bundle.
+     */
+    public JsonObject find(String resourceType, String id) {
+        ResourceLocation location = index.find(resourceType, id);
+        return location != null ? read(location) : null;
+    }
+    
+    /**
+     * Reads the resources at a list of locations, e.g. one of the index's lookups.
+     * @param locations The locations.
+     * @return The resources, in the same order.
+     */
+    public List<JsonObject> readAll(List<ResourceLocation> locations) {
+        List<JsonObject> resources = new ArrayList<>(locations.size());
+        for (ResourceLocation location : locations) {
+            resources.add(read(location));
+        }
+        return resources;
+    }
+    
+    /**
+     * Reads a resource.
+     * @param location The resource's location.
+     * @return The resource.
+     */
+    public JsonObject read(ResourceLocation location) {
+        JsonElement entry = JsonParser.parseString(readEntryJson(location));
+        return entry.getAsJsonObject().getAsJsonObject("resource");
+    }
+    
+    /**
+     * Reads the JSON text of a resource's bundle entry, without parsing it.
+     * @param location The resource's location.
+     * @return The entry, including its fullUrl and request.
+     */
+    public String readEntryJson(ResourceLocation location) {
+        byte[] bytes = new byte[location.getLength()];
+        // A duplicate has its own position, so concurrent reads do not interfere
+        ByteBuffer entry = mapped.duplicate();
+        entry.position((int) location.getOffset());
+        entry.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    // Getters
+    
+    public BundleIndex getIndex() {
+        return index;
+    }
+}
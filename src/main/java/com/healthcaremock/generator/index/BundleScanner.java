@@ -0,0 +1,301 @@
+package com.healthcaremock.generator.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A single-pass tokenizer that finds the resources of a FHIR bundle in its raw UTF-8 bytes.
+ *
+ * <p>The scanner walks the bytes directly, so it knows the exact byte range of every entry
+ * in the bundle's entry array. Within an entry it only decodes the few strings it indexes
+ * by: the resource type and ID, the patient reference and the clinical date. Everything
+ * else is skipped without creating objects.
+ */
+final class BundleScanner {
+    // Only keys below these nodes are tracked; everything else is skipped without a path
+    private static final Set<String> TRACKED_NODES = new HashSet<>(Arrays.asList(
+            "", "resource", "resource.subject", "resource.patient", "resource.beneficiary",
+            "resource.period", "resource.effectivePeriod", "resource.performedPeriod",
+            "resource.billablePeriod"));
+    
+    private static final String[] PATIENT_PATHS = {
+        "resource.subject.reference", "resource.patient.reference", "resource.beneficiary.reference"
+    };
+    
+    // In order of preference when a resource has several
+    private static final String[] DATE_PATHS = {
+        "resource.effectiveDateTime", "resource.effectivePeriod.start", "resource.period.start",
+        "resource.performedDateTime", "resource.performedPeriod.start", "resource.onsetDateTime",
+        "resource.occurrenceDateTime", "resource.started", "resource.authoredOn", "resource.authored",
+        "resource.recordedDate", "resource.issued", "resource.billablePeriod.start",
+        "resource.recorded", "resource.date", "resource.birthDate"
+    };
+    
+    private static final Set<String> CAPTURED = new HashSet<>();
+    
+    static {
+        CAPTURED.add("resource.resourceType");
+        CAPTURED.add("resource.id");
+        CAPTURED.addAll(Arrays.asList(PATIENT_PATHS));
+        CAPTURED.addAll(Arrays.asList(DATE_PATHS));
+    }
+    
+    private final ByteBuffer buffer;
+    private final int limit;
+    private int position;
+    
+    /**
+     * Constructor.
+     * @param buffer The bundle's bytes, from position 0 to the limit.
+     */
+    BundleScanner(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.limit = buffer.limit();
+    }
+    
+    /**
+     * Finds every resource in the bundle.
+     * @return The resources in file order.
+     * @throws IOException if the bytes are not a JSON object.
+     */
+    List<ResourceLocation> scan() throws IOException {
+        List<ResourceLocation> resources = new ArrayList<>();
+        expect('{');
+        if (peek() == '}') {
+            return resources;
+        }
+        do {
+            String key = readString();
+            expect(':');
+            if (key.equals("entry") && peek() == '[') {
+                scanEntries(resources);
+            } else {
+                skipValue(null, null);
+            }
+        } while (next(',', '}') == ',');
+        return resources;
+    }
+    
+    private void scanEntries(List<ResourceLocation> resources) throws IOException {
+        expect('[');
+        if (peek() == ']') {
+            position++;
+            return;
+        }
+        Map<String, String> captured = new HashMap<>();
+        do {
+            captured.clear();
+            skipWhitespace();
+            int start = position;
+            skipValue("", captured);
+            String type = captured.get("resource.resourceType");
+            String id = captured.get("resource.id");
+            if (type != null && id != null) {
+                resources.add(new ResourceLocation(type, id, patientId(type, id, captured),
+                        date(captured), start, position - start));
+            }
+        } while (next(',', ']') == ',');
+    }
+    
+    /**
+     * Skips one value, recording the strings found at {@link #CAPTURED} paths.
+     * @param path The path of the value within the entry, or null if it is not tracked.
+     * @param captured The recorded strings.
+     */
+    private void skipValue(String path, Map<String, String> captured) throws IOException {
+        int c = peek();
+        if (c == '{') {
+            position++;
+            boolean tracked = path != null && TRACKED_NODES.contains(path);
+            if (peek() == '}') {
+                position++;
+                return;
+            }
+            do {
+                String key = tracked ? readString() : null;
+                if (!tracked) {
+                    skipString();
+                }
+                expect(':');
+                skipValue(tracked ? (path.isEmpty() ? key : path + "." + key) : null, captured);
+            } while (next(',', '}') == ',');
+        } else if (c == '[') {
+            position++;
+            if (peek() == ']') {
+                position++;
+                return;
+            }
+            do {
+                skipValue(path, captured);
+            } while (next(',', ']') == ',');
+        } else if (c == '"') {
+            if (path != null && CAPTURED.contains(path)) {
+                String value = readString();
+                captured.putIfAbsent(path, value);
+            } else {
+                skipString();
+            }
+        } else {
+            // Number, true, false or null
+            while (position < limit) {
+                byte b = buffer.get(position);
+                if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                    break;
+                }
+                position++;
+            }
+        }
+    }
+    
+    private String readString() throws IOException {
+        expect('"');
+        int start = position;
+        boolean escaped = false;
+        while (true) {
+            byte b = byteAt(position++);
+            if (b == '"') {
+                break;
+            } else if (b == '\\') {
+                escaped = true;
+                position++;
+            }
+        }
+        byte[] bytes = new byte[position - 1 - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        String raw = new String(bytes, StandardCharsets.UTF_8);
+        return escaped ? unescape(raw) : raw;
+    }
+    
+    private void skipString() throws IOException {
+        expect('"');
+        while (true) {
+            byte b = byteAt(position++);
+            if (b == '"') {
+                return;
+            } else if (b == '\\') {
+                position++;
+            }
+        }
+    }
+    
+    private static String unescape(String raw) {
+        StringBuilder result = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c != '\\' || i + 1 >= raw.length()) {
+                result.append(c);
+                continue;
+            }
+            char escape = raw.charAt(++i);
+            switch (escape) {
+                case 'b': result.append('\b'); break;
+                case 'f': result.append('\f'); break;
+                case 'n': result.append('\n'); break;
+                case 'r': result.append('\r'); break;
+                case 't': result.append('\t'); break;
+                case 'u':
+                    result.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    break;
+                default: result.append(escape);
+            }
+        }
+        return result.toString();
+    }
+    
+    private void expect(char expected) throws IOException {
+        if (peek() != expected) {
+            throw new IOException("Expected '" + expected + "' at byte " + position);
+        }
+        position++;
+    }
+    
+    private int next(char first, char second) throws IOException {
+        int c = peek();
+        if (c != first && c != second) {
+            throw new IOException("Expected '" + first + "' or '" + second + "' at byte " + position);
+        }
+        position++;
+        return c;
+    }
+    
+    private int peek() throws IOException {
+        skipWhitespace();
+        return byteAt(position);
+    }
+    
+    private void skipWhitespace() {
+        while (position < limit) {
+            byte b = buffer.get(position);
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return;
+            }
+            position++;
+        }
+    }
+    
+    private byte byteAt(int index) throws IOException {
+        if (index >= limit) {
+            throw new IOException("Unexpected end of bundle");
+        }
+        return buffer.get(index);
+    }
+    
+    private static String patientId(String type, String id, Map<String, String> captured) {
+        if (type.equals("Patient")) {
+            return id;
+        }
+        for (String path : PATIENT_PATHS) {
+            String reference = captured.get(path);
+            if (reference != null) {
+                // Synthea references patients as urn:uuid:<id>; servers use Patient/<id>
+                int separator = Math.max(reference.lastIndexOf(':'), reference.lastIndexOf('/'));
+                return reference.substring(separator + 1);
+            }
+        }
+        return null;
+    }
+    
+    private static long date(Map<String, String> captured) {
+        for (String path : DATE_PATHS) {
+            String value = captured.get(path);
+            if (value != null) {
+                long date = parseDate(value);
+                if (date != ResourceLocation.NO_DATE) {
+                    return date;
+                }
+            }
+        }
+        return ResourceLocation.NO_DATE;
+    }
+    
+    /**
+     * Parses a FHIR date or dateTime.
+     * @param value The value, e.g. "2017-01-25" or "2017-01-25T18:52:06-05:00".
+     * @return The time in epoch milliseconds, or {@link ResourceLocation#NO_DATE}.
+     */
+    static long parseDate(String value) {
+        try {
+            if (value.length() <= 10) {
+                return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            }
+            return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return ResourceLocation.NO_DATE;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.healthcaremock.generator.index;
+
+import com.healthcaremock.generator.EnhancedPatientData;
+import com.healthcaremock.generator.cohort.ConditionCodes;
+import org.mitre.synthea.world.agents.Person;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory indexes over a generated population, built incrementally as patients arrive.
+ *
+ * <p>Categorical fields (gender, race, ethnicity, state and active condition codes) are
+ * indexed as one bitmap per value. Age and income are kept in primitive columns with a
+ * sorted view for range lookups. Queries combine bitmaps and never touch patient objects
+ * until results are materialized.
+ *
+ * <p>The index appends each patient to a row store as it indexes it. The store may be
+ * any list, including one that spills to disk; the index keeps no other patient references.
+ */
+public class PopulationIndex {
+    /** Indexed categorical fields. */
+    public enum Field {
+        GENDER,
+        RACE,
+        ETHNICITY,
+        STATE,
+        CONDITION
+    }
+    
+    private final Map<Field, Map<String, BitSet>> bitmaps;
+    private final SortedIntColumn ages;
+    private final SortedIntColumn incomes;
+    private final List<EnhancedPatientData> rows;
+    private final long referenceTime;
+    private final ReadWriteLock lock;
+    
+    /**
+     * Creates an empty index that computes ages as of now.
+     */
+    public PopulationIndex() {
+        this(System.currentTimeMillis());
+    }
+    
+    /**
+     * Creates an empty index.
+     * @param referenceTime The time at which patient ages are computed.
+     */
+    public PopulationIndex(long referenceTime) {
+        this(new ArrayList<>(), referenceTime);
+    }
+    
+    /**
+     * Creates an empty index over a row store.
+     * @param rows The empty list that indexed patients are appended to.
+     * @param referenceTime The time at which patient ages are computed.
+     */
+    public PopulationIndex(List<EnhancedPatientData> rows, long referenceTime) {
+        this.bitmaps = new HashMap<>();
+        for (Field field : Field.values()) {
+            bitmaps.put(field, new HashMap<>());
+        }
+        this.ages = new SortedIntColumn();
+        this.incomes = new SortedIntColumn();
+        this.rows = rows;
+        this.referenceTime = referenceTime;
+        this.lock = new ReentrantReadWriteLock();
+    }
+    
+    /**
+     * Indexes a patient and appends it to the row store. Field values are extracted once here.
+     * @param patient The patient.
+     */
+    public void add(EnhancedPatientData patient) {
+        Person person = patient.getPerson();
+        Map<String, Object> attributes = person.attributes;
+        int age = attributes.get(Person.BIRTHDATE) != null
+                ? person.ageInYears(referenceTime) : SortedIntColumn.MISSING;
+        Object income = attributes.get(Person.INCOME);
+        
+        lock.writeLock().lock();
+        try {
+            int row = rows.size();
+            rows.add(patient);
+            setBit(Field.GENDER, attributes.get(Person.GENDER), row);
+            setBit(Field.RACE, attributes.get(Person.RACE), row);
+            setBit(Field.ETHNICITY, attributes.get(Person.ETHNICITY), row);
+            setBit(Field.STATE, attributes.get(Person.STATE), row);
+            for (String code : ConditionCodes.active(person)) {
+                setBit(Field.CONDITION, code, row);
+            }
+            ages.add(age);
+            incomes.add(income instanceof Number ? ((Number) income).intValue() : SortedIntColumn.MISSING);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Gets the number of indexed patients.
+     * @return The size.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rows.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Gets the rows with a given categorical value.
+     * @param field The field.
+     * @param value The value.
+     * @return A copy of the matching rows.
+     */
+    BitSet rowsWith(Field field, String value) {
+        lock.readLock().lock();
+        try {
+            BitSet bitmap = bitmaps.get(field).get(value);
+            return bitmap != null ? (BitSet) bitmap.clone() : new BitSet();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Gets the rows whose age lies within a range.
+     * @param min The inclusive minimum age.
+     * @param max The inclusive maximum age.
+     * @return The matching rows.
+     */
+    BitSet rowsWithAge(int min, int max) {
+        // Building the sorted view mutates the column, so take the write lock
+        lock.writeLock().lock();
+        try {
+            return ages.range(min, max);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Gets the rows whose income lies within a range.
+     * @param min The inclusive minimum income.
+     * @param max The inclusive maximum income.
+     * @return The matching rows.
+     */
+    BitSet rowsWithIncome(int min, int max) {
+        lock.writeLock().lock();
+        try {
+            return incomes.range(min, max);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Gets all indexed rows.
+     * @return A bitmap with every row set.
+     */
+    BitSet allRows() {
+        BitSet all = new BitSet();
+        all.set(0, size());
+        return all;
+    }
+    
+    /**
+     * Gets the distinct indexed values of a field with their counts.
+     * @param field The field.
+     * @return The value counts.
+     */
+    public Map<String, Integer> valueCounts(Field field) {
+        Map<String, Integer> counts = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, BitSet> entry : bitmaps.get(field).entrySet()) {
+                counts.put(entry.getKey(), entry.getValue().cardinality());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return counts;
+    }
+    
+    /**
+     * Materializes the patients in a set of rows.
+     * @param matches The rows.
+     * @return The patients in row order.
+     */
+    public List<EnhancedPatientData> patients(BitSet matches) {
+        List<EnhancedPatientData> result = new ArrayList<>(matches.cardinality());
+        lock.readLock().lock();
+        try {
+            for (int row = matches.nextSetBit(0); row >= 0; row = matches.nextSetBit(row + 1)) {
+                result.add(rows.get(row));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+    
+    private void setBit(Field field, Object value, int row) {
+        if (value == null) {
+            return;
+        }
+        bitmaps.get(field).computeIfAbsent(value.toString(), k -> new BitSet()).set(row);
+    }
+}
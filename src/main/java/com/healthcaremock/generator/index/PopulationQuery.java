@@ -0,0 +1,160 @@
+package com.healthcaremock.generator.index;
+
+import com.healthcaremock.generator.EnhancedPatientData;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A conjunctive query over a {@link PopulationIndex}.
+ *
+ * <pre>
+ * List&lt;EnhancedPatientData&gt; cohort = new PopulationQuery()
+ *         .gender("F")
+ *         .ageBetween(40, 65)
+ *         .hasCondition("44054006")
+ *         .list(index);
+ * </pre>
+ */
+public class PopulationQuery {
+    private final List<Function<PopulationIndex, BitSet>> clauses = new ArrayList<>();
+    
+    /**
+     * Restricts to a gender ("M" or "F").
+     * @param gender The gender.
+     * @return This query.
+     */
+    public PopulationQuery gender(String gender) {
+        return anyOf(PopulationIndex.Field.GENDER, gender);
+    }
+    
+    /**
+     * Restricts to one or more races.
+     * @param races The races.
+     * @return This query.
+     */
+    public PopulationQuery race(String... races) {
+        return anyOf(PopulationIndex.Field.RACE, races);
+    }
+    
+    /**
+     * Restricts to one or more ethnicities.
+     * @param ethnicities The ethnicities.
+     * @return This query.
+     */
+    public PopulationQuery ethnicity(String... ethnicities) {
+        return anyOf(PopulationIndex.Field.ETHNICITY, ethnicities);
+    }
+    
+    /**
+     * Restricts to one or more states.
+     * @param states The states.
+     * @return This query.
+     */
+    public PopulationQuery state(String... states) {
+        return anyOf(PopulationIndex.Field.STATE, states);
+    }
+    
+    /**
+     * Restricts to patients with an active condition.
+     * @param code The condition code.
+     * @return This query.
+     */
+    public PopulationQuery hasCondition(String code) {
+        return anyOf(PopulationIndex.Field.CONDITION, code);
+    }
+    
+    /**
+     * Restricts to patients without an active condition.
+     * @param code The condition code.
+     * @return This query.
+     */
+    public PopulationQuery lacksCondition(String code) {
+        clauses.add(index -> {
+            BitSet rows = index.allRows();
+            rows.andNot(index.rowsWith(PopulationIndex.Field.CONDITION, code));
+            return rows;
+        });
+        return this;
+    }
+    
+    /**
+     * Restricts to an age range in years.
+     * @param min The inclusive minimum age.
+     * @param max The inclusive maximum age.
+     * @return This query.
+     */
+    public PopulationQuery ageBetween(int min, int max) {
+        clauses.add(index -> index.rowsWithAge(min, max));
+        return this;
+    }
+    
+    /**
+     * Restricts to an income range.
+     * @param min The inclusive minimum income.
+     * @param max The inclusive maximum income.
+     * @return This query.
+     */
+    public PopulationQuery incomeBetween(int min, int max) {
+        clauses.add(index -> index.rowsWithIncome(min, max));
+        return this;
+    }
+    
+    /**
+     * Restricts a field to any of the given values.
+     * @param field The field.
+     * @param values The accepted values.
+     * @return This query.
+     */
+    public PopulationQuery anyOf(PopulationIndex.Field field, String... values) {
+        clauses.add(index -> {
+            BitSet rows = new BitSet();
+            for (String value : values) {
+                rows.or(index.rowsWith(field, value));
+            }
+            return rows;
+        });
+        return this;
+    }
+    
+    /**
+     * Evaluates the query.
+     * @param index The index.
+     * @return The matching rows.
+     */
+    public BitSet evaluate(PopulationIndex index) {
+        BitSet result = null;
+        for (Function<PopulationIndex, BitSet> clause : clauses) {
+            BitSet rows = clause.apply(index);
+            if (result == null) {
+                result = rows;
+            } else {
+                result.and(rows);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result != null ? result : index.allRows();
+    }
+    
+    /**
+     * Counts the matching patients without materializing them.
+     * @param index The index.
+     * @return The count.
+     */
+    public int count(PopulationIndex index) {
+        return evaluate(index).cardinality();
+    }
+    
+    /**
+     * Gets the matching patients.
+     * @param index The index.
+     * @return The patients in the order they were indexed.
+     */
+    public List<EnhancedPatientData> list(PopulationIndex index) {
+        return index.patients(evaluate(index));
+    }
+}
@@ -0,0 +1,67 @@
+package com.healthcaremock.generator.index;
+
+/**
+ * The position of one resource in a FHIR bundle file: the byte range of its bundle entry,
+ * with the values it is looked up by.
+ */
+public final class ResourceLocation {
+    /** The date of a resource that has none. */
+    public static final long NO_DATE = Long.MIN_VALUE;
+    
+    private final String resourceType;
+    private final String id;
+    private final String patientId;
+    private final long date;
+    private final long offset;
+    private final int length;
+    
+    /**
+     * Constructor.
+     * @param resourceType The resource type, e.g. "Observation".
+     * @param id The resource ID.
+     * @param patientId The ID of the patient the resource belongs to, or null.
+     * @param date The resource's clinical date in epoch milliseconds, or {@link #NO_DATE}.
+     * @param offset The byte offset of the bundle entry.
+     * @param length The length of the bundle entry in bytes.
+     */
+    public ResourceLocation(String resourceType, String id, String patientId, long date,
+            long offset, int length) {
+        this.resourceType = resourceType;
+        this.id = id;
+        this.patientId = patientId;
+        this.date = date;
+        this.offset = offset;
+        this.length = length;
+    }
+    
+    @Override
+    public String toString() {
+        return resourceType + "/" + id + " @" + offset + "+" + length;
+    }
+    
+    // Getters
+    
+    public String getResourceType() {
+        return resourceType;
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public String getPatientId() {
+        return patientId;
+    }
+    
+    public long getDate() {
+        return date;
+    }
+    
+    public long getOffset() {
+        return offset;
+    }
+    
+    public int getLength() {
+        return length;
+    }
+}
@@ -0,0 +1,86 @@
+package com.healthcaremock.generator.index;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * An int column stored as primitive arrays with a lazily built sorted view for range queries.
+ * Each sorted entry packs the value into the high 32 bits and the row into the low 32 bits,
+ * so sorting is a single primitive {@link Arrays#sort(long[])} and no boxing is needed.
+ * Not thread-safe; {@link PopulationIndex} guards access.
+ */
+class SortedIntColumn {
+    // Marks rows with no value
+    static final int MISSING = Integer.MIN_VALUE;
+    
+    private int[] values = new int[1024];
+    private int size;
+    private long[] sorted;
+    private int sortedSize = -1;
+    
+    void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+    
+    int get(int row) {
+        return values[row];
+    }
+    
+    /**
+     * Finds rows whose value lies within [min, max].
+     * @param min The inclusive lower bound.
+     * @param max The inclusive upper bound.
+     * @return The matching rows.
+     */
+    BitSet range(int min, int max) {
+        ensureSorted();
+        BitSet rows = new BitSet(size);
+        int from = lowerBound(pack(min, 0));
+        // Rows with no value are not in the sorted view, so it may be shorter than the column
+        for (int i = from; i < sorted.length; i++) {
+            long entry = sorted[i];
+            if ((int) (entry >> 32) > max) {
+                break;
+            }
+            rows.set((int) entry);
+        }
+        return rows;
+    }
+    
+    private void ensureSorted() {
+        if (sortedSize == size) {
+            return;
+        }
+        long[] packed = new long[size];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (values[row] != MISSING) {
+                packed[count++] = pack(values[row], row);
+            }
+        }
+        sorted = Arrays.copyOf(packed, count);
+        Arrays.sort(sorted);
+        sortedSize = size;
+    }
+    
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    private static long pack(int value, int row) {
+        return ((long) value << 32) | (row & 0xFFFFFFFFL);
+    }
+}
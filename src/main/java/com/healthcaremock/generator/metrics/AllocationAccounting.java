@@ -0,0 +1,341 @@
+package com.healthcaremock.generator.metrics;
+
+import com.healthcaremock.generator.EnhancedPatientData;
+import com.healthcaremock.generator.config.ConfigManager;
+import com.healthcaremock.generator.export.PatientJsonExporter;
+import org.mitre.synthea.world.agents.Person;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Accounts for the memory each patient costs, to size heaps for large populations.
+ *
+ * <p>For every patient, the bytes its worker thread allocated from the start of the
+ * simulation to the end of enrichment are read from the JVM's per-thread allocation counter,
+ * and the heap its finished graph retains is estimated with a {@link RetainedSizeEstimator}.
+ * The distribution is reported overall, by age band and by the enriched data the patient
+ * received, and patients whose retained size exceeds the outlier threshold are listed.
+ *
+ * <p>Like {@link PipelineMetrics}, accounting is off unless a run activates it, and
+ * instrumented code skips it when {@link #active()} returns null. One small record per
+ * patient is kept until the report is written.
+ */
+public class AllocationAccounting {
+    private static final String[] AGE_BANDS = {"0-17", "18-34", "35-49", "50-64", "65-79", "80+"};
+    private static final int[] AGE_BAND_STARTS = {0, 18, 35, 50, 65, 80};
+    private static volatile AllocationAccounting active;
+    
+    private final com.sun.management.ThreadMXBean threads;
+    private final RetainedSizeEstimator estimator;
+    private final List<String> enrichers;
+    private final long outlierBytes;
+    private final double outlierFactor;
+    private final List<Sample> samples = new ArrayList<>();
+    
+    /**
+     * Creates the accounting of a run without activating it.
+     * @param enrichers The names of the enrichers the run uses, for the report.
+     * @param estimator The retained size estimator.
+     * @param outlierBytes The retained size above which a patient is an outlier, or 0 to use
+     *                     a multiple of the median instead.
+     * @param outlierFactor The multiple of the median retained size above which a patient is
+     *                      an outlier, when no absolute threshold is given.
+     */
+    public AllocationAccounting(List<String> enrichers, RetainedSizeEstimator estimator,
+            long outlierBytes, double outlierFactor) {
+        this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        this.estimator = estimator;
+        this.enrichers = new ArrayList<>(enrichers);
+        this.outlierBytes = outlierBytes;
+        this.outlierFactor = outlierFactor;
+    }
+    
+    /**
+     * Activates accounting for a run if {@code accounting.enabled} is set. Outliers are
+     * patients retaining more than {@code accounting.outlier_mb}, or when that is 0, more than
+     * {@code accounting.outlier_factor} times the median. Objects whose class names start
+     * with a prefix in {@code accounting.shared_types} are shared between patients and not
+     * counted toward any.
+     * @param enrichers The names of the enrichers the run uses.
+     * @return The active accounting, or null if accounting is disabled or the JVM cannot
+     *         measure per-thread allocation.
+     */
+    public static AllocationAccounting fromConfig(List<String> enrichers) {
+        if (!ConfigManager.getAsBoolean("accounting.enabled", false)) {
+            return null;
+        }
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            System.err.println("Allocation accounting is not supported by this JVM");
+            return null;
+        }
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.err.println("Allocation accounting is not supported by this JVM");
+            return null;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        
+        List<String> sharedPrefixes = new ArrayList<>();
+        for (String prefix : ConfigManager.getAsString("accounting.shared_types", "").split(",")) {
+            if (!prefix.trim().isEmpty()) {
+                sharedPrefixes.add(prefix.trim());
+            }
+        }
+        AllocationAccounting accounting = new AllocationAccounting(enrichers,
+                new RetainedSizeEstimator(sharedPrefixes),
+                (long) (ConfigManager.getAsDouble("accounting.outlier_mb", 0) * 1024 * 1024),
+                ConfigManager.getAsDouble("accounting.outlier_factor", 5.0));
+        active = accounting;
+        return accounting;
+    }
+    
+    /**
+     * Gets the accounting of the current run.
+     * @return The active accounting, or null if accounting is off.
+     */
+    public static AllocationAccounting active() {
+        return active;
+    }
+    
+    /**
+     * Deactivates this accounting. The samples stay available for the report.
+     */
+    public void stop() {
+        if (active == this) {
+            active = null;
+        }
+    }
+    
+    /**
+     * Reads the calling thread's allocation counter, to pass to {@link #record}.
+     * @return The bytes the thread has allocated so far.
+     */
+    public long threadAllocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    
+    /**
+     * Records a finished patient. Must be called on the thread that generated the patient.
+     * @param patient The patient.
+     * @param allocatedAtStart The thread's allocation counter when the patient was started.
+     */
+    public void record(EnhancedPatientData patient, long allocatedAtStart) {
+        long allocated = threadAllocatedBytes() - allocatedAtStart;
+        long retained = estimator.estimate(patient);
+        Person person = patient.getPerson();
+        int age = person.attributes.get(Person.BIRTHDATE) instanceof Number
+                ? person.ageInYears(person.lastUpdated > 0 ? person.lastUpdated : System.currentTimeMillis())
+                : -1;
+        Sample sample = new Sample(PatientJsonExporter.getPatientId(patient), age,
+                enrichedData(patient.getExtendedData()), allocated, retained);
+        synchronized (samples) {
+            samples.add(sample);
+        }
+    }
+    
+    /**
+     * Writes the per-patient samples as CSV and the distribution report as text.
+     * @param directory The directory to write patients.csv and report.txt to.
+     * @return The report.
+     * @throws IOException if the files cannot be written.
+     */
+    public String writeReport(File directory) throws IOException {
+        List<Sample> all = getSamples();
+        long threshold = outlierThreshold(all);
+        directory.mkdirs();
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(
+                new File(directory, "patients.csv").toPath(), StandardCharsets.UTF_8))) {
+            csv.println("patient_id,age,enriched_data,allocated_bytes,retained_bytes,outlier");
+            for (Sample sample : all) {
+                csv.println(sample.patientId + "," + sample.age + "," + sample.enrichedData + ","
+                        + sample.allocatedBytes + "," + sample.retainedBytes + ","
+                        + (sample.retainedBytes > threshold));
+            }
+        }
+        String report = report(all, threshold);
+        Files.write(new File(directory, "report.txt").toPath(), report.getBytes(StandardCharsets.UTF_8));
+        return report;
+    }
+    
+    /**
+     * Formats the distribution report.
+     * @return The report.
+     */
+    public String report() {
+        List<Sample> all = getSamples();
+        return report(all, outlierThreshold(all));
+    }
+    
+    private String report(List<Sample> all, long threshold) {
+        Map<String, List<Sample>> groups = new LinkedHashMap<>();
+        groups.put("All patients", all);
+        for (int band = 0; band < AGE_BANDS.length; band++) {
+            List<Sample> members = new ArrayList<>();
+            for (Sample sample : all) {
+                if (ageBand(sample.age) == band) {
+                    members.add(sample);
+                }
+            }
+            if (!members.isEmpty()) {
+                groups.put("Age " + AGE_BANDS[band], members);
+            }
+        }
+        Map<String, List<Sample>> byData = new TreeMap<>();
+        for (Sample sample : all) {
+            byData.computeIfAbsent(sample.enrichedData, key -> new ArrayList<>()).add(sample);
+        }
+        for (Map.Entry<String, List<Sample>> entry : byData.entrySet()) {
+            groups.put("Data " + entry.getKey(), entry.getValue());
+        }
+        
+        StringBuilder report = new StringBuilder();
+        report.append("Per-patient memory, ").append(all.size()).append(" patients, enrichers: ")
+                .append(enrichers.isEmpty() ? "none" : String.join(", ", enrichers)).append('\n');
+        report.append(String.format(Locale.ROOT, "%-24s %8s | %-29s | %-29s%n", "",
+                "", "Allocated MB", "Retained MB"));
+        report.append(String.format(Locale.ROOT, "%-24s %8s | %9s %9s %9s | %9s %9s %9s%n", "Group",
+                "Patients", "p50", "p99", "max", "p50", "p99", "max"));
+        for (Map.Entry<String, List<Sample>> group : groups.entrySet()) {
+            long[] allocated = group.getValue().stream().mapToLong(s -> s.allocatedBytes).sorted().toArray();
+            long[] retained = group.getValue().stream().mapToLong(s -> s.retainedBytes).sorted().toArray();
+            report.append(String.format(Locale.ROOT, "%-24s %8d | %9.2f %9.2f %9.2f | %9.2f %9.2f %9.2f%n",
+                    group.getKey(), allocated.length, mb(percentile(allocated, 0.50)),
+                    mb(percentile(allocated, 0.99)), mb(percentile(allocated, 1.0)),
+                    mb(percentile(retained, 0.50)), mb(percentile(retained, 0.99)),
+                    mb(percentile(retained, 1.0))));
+        }
+        
+        List<Sample> outliers = new ArrayList<>();
+        for (Sample sample : all) {
+            if (sample.retainedBytes > threshold) {
+                outliers.add(sample);
+            }
+        }
+        outliers.sort(Comparator.comparingLong((Sample s) -> s.retainedBytes).reversed());
+        report.append(String.format(Locale.ROOT, "%nOutliers retaining more than %.2f MB: %d%n",
+                mb(threshold), outliers.size()));
+        for (Sample sample : outliers.subList(0, Math.min(outliers.size(), 20))) {
+            report.append(String.format(Locale.ROOT, "  %-38s age %3d  %-24s retained %8.2f MB  allocated %9.2f MB%n",
+                    sample.patientId, sample.age, sample.enrichedData, mb(sample.retainedBytes),
+                    mb(sample.allocatedBytes)));
+        }
+        if (outliers.size() > 20) {
+            report.append("  ... ").append(outliers.size() - 20).append(" more in patients.csv\n");
+        }
+        return report.toString();
+    }
+    
+    private long outlierThreshold(List<Sample> all) {
+        if (outlierBytes > 0) {
+            return outlierBytes;
+        }
+        long[] retained = all.stream().mapToLong(s -> s.retainedBytes).sorted().toArray();
+        return (long) (percentile(retained, 0.50) * outlierFactor);
+    }
+    
+    /**
+     * Names the kinds of enriched data a patient received, e.g. "sdoh+wearable".
+     */
+    private static String enrichedData(com.healthcaremock.generator.models.EnhancedPatientData data) {
+        if (data == null) {
+            return "none";
+        }
+        List<String> kinds = new ArrayList<>();
+        if (data.getSocialDeterminants() != null) {
+            kinds.add("sdoh");
+        }
+        if (data.getWearableData() != null && !data.getWearableData().isEmpty()) {
+            kinds.add("wearable");
+        }
+        if (data.getImagingReports() != null && !data.getImagingReports().isEmpty()) {
+            kinds.add("imaging");
+        }
+        if (data.getPatientReportedOutcomes() != null && !data.getPatientReportedOutcomes().isEmpty()) {
+            kinds.add("pro");
+        }
+        return kinds.isEmpty() ? "none" : String.join("+", kinds);
+    }
+    
+    private static int ageBand(int age) {
+        if (age < 0) {
+            return -1;
+        }
+        int band = Arrays.binarySearch(AGE_BAND_STARTS, age);
+        return band >= 0 ? band : -band - 2;
+    }
+    
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+    
+    private static double mb(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+    
+    // Getters
+    
+    public List<Sample> getSamples() {
+        synchronized (samples) {
+            return new ArrayList<>(samples);
+        }
+    }
+    
+    /**
+     * The memory accounted to one patient.
+     */
+    public static final class Sample {
+        private final String patientId;
+        private final int age;
+        private final String enrichedData;
+        private final long allocatedBytes;
+        private final long retainedBytes;
+        
+        Sample(String patientId, int age, String enrichedData, long allocatedBytes, long retainedBytes) {
+            this.patientId = patientId;
+            this.age = age;
+            this.enrichedData = enrichedData;
+            this.allocatedBytes = allocatedBytes;
+            this.retainedBytes = retainedBytes;
+        }
+        
+        // Getters
+        
+        public String getPatientId() {
+            return patientId;
+        }
+        
+        public int getAge() {
+            return age;
+        }
+        
+        public String getEnrichedData() {
+            return enrichedData;
+        }
+        
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+        
+        public long getRetainedBytes() {
+            return retainedBytes;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.healthcaremock.generator.metrics;
+
+/**
+ * The JMX view of one pipeline stage's latency histogram, registered as
+ * {@code com.healthcaremock.generator:type=Stage,name=<stage>}.
+ */
+public interface LatencyHistogramMXBean {
+    
+    String getName();
+    
+    long getCount();
+    
+    double getTotalMillis();
+    
+    double getMeanMillis();
+    
+    double getP50Millis();
+    
+    double getP90Millis();
+    
+    double getP99Millis();
+    
+    double getMaxMillis();
+}
@@ -0,0 +1,313 @@
+package com.healthcaremock.generator.metrics;
+
+import com.healthcaremock.generator.config.ConfigManager;
+import org.mitre.synthea.engine.Module;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Attributes Synthea simulation time and state transitions to modules and states, to find the
+ * modules worth disabling or simplifying for throughput-oriented runs.
+ *
+ * <p>Synthea has no hook into its state machine, so the profiler wraps every loaded module in
+ * a {@link ProfiledModule} inside Synthea's module registry, and restores the originals when
+ * uninstalled. It must be installed before the generators whose simulations it profiles are
+ * created. Counters are {@link LongAdder}s, which stripe updates across cells so worker
+ * threads do not contend, and are summed only for the report.
+ */
+public class ModuleProfiler {
+    private static final ThreadLocal<CallStack> CALLS = ThreadLocal.withInitial(CallStack::new);
+    
+    private final Map<String, ModuleStats> modules = new ConcurrentHashMap<>();
+    private final Map<Object, Module> originals = new IdentityHashMap<>();
+    private Field moduleField;
+    
+    /**
+     * Installs a profiler if {@code profiler.enabled} is set.
+     * @return The installed profiler, or null if profiling is disabled or Synthea's module
+     *         registry could not be instrumented.
+     */
+    public static ModuleProfiler fromConfig() {
+        if (!ConfigManager.getAsBoolean("profiler.enabled", false)) {
+            return null;
+        }
+        ModuleProfiler profiler = new ModuleProfiler();
+        return profiler.install() ? profiler : null;
+    }
+    
+    /**
+     * Wraps every module in Synthea's registry, loading any not loaded yet.
+     * @return true if the modules were wrapped.
+     */
+    public synchronized boolean install() {
+        try {
+            Map<?, ?> registry = registry();
+            for (Object supplier : registry.values()) {
+                if (!(supplier instanceof Supplier)) {
+                    continue;
+                }
+                Object loaded = ((Supplier<?>) supplier).get();
+                if (!(loaded instanceof Module) || loaded instanceof ProfiledModule) {
+                    continue;
+                }
+                Module module = (Module) loaded;
+                Field field = moduleField(supplier.getClass());
+                ModuleStats stats = modules.computeIfAbsent(module.name,
+                        name -> new ModuleStats(name, module.submodule));
+                field.set(supplier, new ProfiledModule(module, stats));
+                originals.put(supplier, module);
+            }
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            System.err.println("Unable to profile Synthea modules: " + e);
+            uninstall();
+            return false;
+        }
+    }
+    
+    /**
+     * Puts the original modules back into Synthea's registry. The figures stay readable.
+     */
+    public synchronized void uninstall() {
+        for (Map.Entry<Object, Module> original : originals.entrySet()) {
+            try {
+                moduleField.set(original.getKey(), original.getValue());
+            } catch (IllegalAccessException e) {
+                System.err.println("Unable to restore Synthea module " + original.getValue().name);
+            }
+        }
+        originals.clear();
+    }
+    
+    /**
+     * Formats the modules ranked by self time, followed by the states that took the most
+     * self time.
+     * @param topStates The number of states to list.
+     * @return The report.
+     */
+    public String report(int topStates) {
+        List<ModuleStats> ranked = getModules();
+        long totalSelf = 0;
+        for (ModuleStats module : ranked) {
+            totalSelf += module.selfNanos.sum();
+        }
+        
+        StringBuilder report = new StringBuilder(String.format(Locale.ROOT,
+                "Synthea module profile: %.1f s of module self time%n", totalSelf / 1e9));
+        report.append(String.format(Locale.ROOT, "%4s  %-40s %10s %7s %10s %12s %12s%n", "Rank",
+                "Module", "Self s", "Self %", "Total s", "Calls", "Transitions"));
+        int rank = 0;
+        for (ModuleStats module : ranked) {
+            report.append(String.format(Locale.ROOT, "%4d  %-40s %10.2f %6.1f%% %10.2f %12d %12d%n",
+                    ++rank, module.getName() + (module.isSubmodule() ? " (submodule)" : ""),
+                    module.selfNanos.sum() / 1e9, percent(module.selfNanos.sum(), totalSelf),
+                    module.totalNanos.sum() / 1e9, module.calls.sum(), module.transitions.sum()));
+        }
+        
+        List<StateStats> states = new ArrayList<>();
+        for (ModuleStats module : ranked) {
+            states.addAll(module.states.values());
+        }
+        states.sort(Comparator.comparingLong((StateStats s) -> s.nanos.sum()).reversed());
+        report.append(String.format(Locale.ROOT, "%nTop states by self time%n%4s  %-60s %10s %7s %12s%n",
+                "Rank", "Module / State", "Self s", "Self %", "Entries"));
+        rank = 0;
+        for (StateStats state : states.subList(0, Math.min(topStates, states.size()))) {
+            report.append(String.format(Locale.ROOT, "%4d  %-60s %10.2f %6.1f%% %12d%n", ++rank,
+                    state.module + " / " + state.name, state.nanos.sum() / 1e9,
+                    percent(state.nanos.sum(), totalSelf), state.entries.sum()));
+        }
+        return report.toString();
+    }
+    
+    /**
+     * Writes the report to a file.
+     * @param file The file to write.
+     * @param topStates The number of states to list.
+     * @return The report.
+     * @throws IOException If the file cannot be written.
+     */
+    public String writeReport(File file, int topStates) throws IOException {
+        String report = report(topStates);
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        Files.write(file.toPath(), report.getBytes(StandardCharsets.UTF_8));
+        return report;
+    }
+    
+    static CallStack enter() {
+        CallStack calls = CALLS.get();
+        calls.enter();
+        return calls;
+    }
+    
+    /**
+     * Finds Synthea's registry of module suppliers: the static map in {@link Module}.
+     */
+    private static Map<?, ?> registry() throws ReflectiveOperationException {
+        for (Field field : Module.class.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && Map.class.isAssignableFrom(field.getType())) {
+                field.setAccessible(true);
+                return (Map<?, ?>) field.get(null);
+            }
+        }
+        throw new NoSuchFieldException("Module registry");
+    }
+    
+    /**
+     * Finds the field of a module supplier that holds its loaded module.
+     */
+    private Field moduleField(Class<?> supplierClass) throws NoSuchFieldException {
+        if (moduleField == null) {
+            for (Field field : supplierClass.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) && field.getType() == Module.class) {
+                    field.setAccessible(true);
+                    moduleField = field;
+                }
+            }
+            if (moduleField == null) {
+                throw new NoSuchFieldException("Module supplier's module");
+            }
+        }
+        return moduleField;
+    }
+    
+    private static double percent(long part, long total) {
+        return total == 0 ? 0 : 100.0 * part / total;
+    }
+    
+    // Getters
+    
+    /**
+     * Gets the figures of every module that was called.
+     * @return The modules, ranked by self time.
+     */
+    public List<ModuleStats> getModules() {
+        List<ModuleStats> ranked = new ArrayList<>();
+        for (ModuleStats module : modules.values()) {
+            if (module.calls.sum() > 0) {
+                ranked.add(module);
+            }
+        }
+        ranked.sort(Comparator.comparingLong((ModuleStats m) -> m.selfNanos.sum()).reversed());
+        return ranked;
+    }
+    
+    /**
+     * The time, calls and transitions of one module, and its states.
+     */
+    public static final class ModuleStats {
+        private final String name;
+        private final boolean submodule;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder selfNanos = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder transitions = new LongAdder();
+        private final Map<String, StateStats> states = new ConcurrentHashMap<>();
+        
+        ModuleStats(String name, boolean submodule) {
+            this.name = name;
+            this.submodule = submodule;
+        }
+        
+        void recordCall(long total, long self) {
+            calls.increment();
+            totalNanos.add(total);
+            selfNanos.add(self);
+        }
+        
+        void recordState(String state, long nanos, int entries) {
+            StateStats stats = states.get(state);
+            if (stats == null) {
+                stats = states.computeIfAbsent(state, key -> new StateStats(name, key));
+            }
+            stats.nanos.add(nanos);
+            if (entries > 0) {
+                stats.entries.add(entries);
+                transitions.add(entries);
+            }
+        }
+        
+        // Getters
+        
+        public String getName() {
+            return name;
+        }
+        
+        public boolean isSubmodule() {
+            return submodule;
+        }
+        
+        public long getCalls() {
+            return calls.sum();
+        }
+        
+        public long getSelfNanos() {
+            return selfNanos.sum();
+        }
+        
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+        
+        public long getTransitions() {
+            return transitions.sum();
+        }
+    }
+    
+    /**
+     * The self time and entries of one state of a module.
+     */
+    static final class StateStats {
+        private final String module;
+        private final String name;
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder entries = new LongAdder();
+        
+        StateStats(String module, String name) {
+            this.module = module;
+            this.name = name;
+        }
+    }
+    
+    /**
+     * The nesting of profiled module calls on one thread, so a module running a submodule
+     * is not charged for the submodule's time.
+     */
+    static final class CallStack {
+        private long[] childNanos = new long[16];
+        private int depth;
+        
+        void enter() {
+            if (++depth == childNanos.length) {
+                childNanos = Arrays.copyOf(childNanos, depth * 2);
+            }
+            childNanos[depth] = 0;
+        }
+        
+        long exit(long elapsed) {
+            long self = elapsed - childNanos[depth];
+            depth--;
+            if (depth > 0) {
+                childNanos[depth] += elapsed;
+            }
+            return self;
+        }
+    }
+}
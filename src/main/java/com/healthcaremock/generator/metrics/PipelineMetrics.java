@@ -0,0 +1,336 @@
+package com.healthcaremock.generator.metrics;
+
+import com.healthcaremock.generator.config.ConfigManager;
+import jdk.jfr.FlightRecorder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Instrumentation of the generation and export pipeline: a latency histogram per stage,
+ * patients and bytes completed, and the depths of the export queues.
+ *
+ * <p>Stages are named by the code that times them: {@code simulate} for Synthea,
+ * {@code enrich.<enricher>} for each enricher, {@code serialize.<format>} for each export
+ * format rendering a patient, and {@code write} for each file operation of the I/O stage.
+ *
+ * <p>At most one run is instrumented at a time. Instrumented code asks {@link #active()} for
+ * the current run and skips all timing when it returns null, so with metrics disabled the
+ * cost of a stage is a single volatile read. While a run is active its figures are exposed
+ * as MXBeans (see {@link PipelineMetricsMXBean} and {@link LatencyHistogramMXBean}), each
+ * stage is reported as a {@code com.healthcaremock.generator.Stage} Flight Recorder event
+ * and progress with an ETA is printed periodically.
+ */
+public class PipelineMetrics implements PipelineMetricsMXBean {
+    private static final String DOMAIN = "com.healthcaremock.generator";
+    private static volatile PipelineMetrics active;
+    
+    private final long expectedPatients;
+    private final boolean jfr;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, LatencyHistogram> stages = new ConcurrentHashMap<>();
+    private final Map<String, Collection<?>> queues = new ConcurrentHashMap<>();
+    private final LongAdder patientsCompleted = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final MBeanServer mbeanServer;
+    private final List<ObjectName> registered = new ArrayList<>();
+    private final Runnable throughputHook = this::emitThroughput;
+    private ScheduledExecutorService progressReporter;
+    
+    /**
+     * Creates the metrics of a run without activating them.
+     * @param expectedPatients The number of patients the run will produce, or 0 if open-ended.
+     * @param jmx Whether to register the MXBeans.
+     * @param jfr Whether to emit Flight Recorder events.
+     */
+    public PipelineMetrics(long expectedPatients, boolean jmx, boolean jfr) {
+        this.expectedPatients = expectedPatients;
+        this.jfr = jfr;
+        this.mbeanServer = jmx ? ManagementFactory.getPlatformMBeanServer() : null;
+    }
+    
+    /**
+     * Starts instrumenting a run if {@code metrics.enabled} is set. {@code metrics.jmx} and
+     * {@code metrics.jfr} select the outputs, and {@code metrics.progress_interval_seconds}
+     * the period of the progress line (0 for none).
+     * @param expectedPatients The number of patients the run will produce, or 0 if open-ended.
+     * @return The active metrics, or null if metrics are disabled.
+     */
+    public static PipelineMetrics fromConfig(long expectedPatients) {
+        if (!ConfigManager.getAsBoolean("metrics.enabled", false)) {
+            return null;
+        }
+        PipelineMetrics metrics = new PipelineMetrics(expectedPatients,
+                ConfigManager.getAsBoolean("metrics.jmx", true),
+                ConfigManager.getAsBoolean("metrics.jfr", true));
+        metrics.start(ConfigManager.getAsInteger("metrics.progress_interval_seconds", 10));
+        return metrics;
+    }
+    
+    /**
+     * Gets the metrics of the run being instrumented.
+     * @return The active metrics, or null if no run is instrumented.
+     */
+    public static PipelineMetrics active() {
+        return active;
+    }
+    
+    /**
+     * Makes these the active metrics, stopping any that were active, registers the MXBeans
+     * and starts the progress line.
+     * @param progressIntervalSeconds The seconds between progress lines, or 0 for none.
+     */
+    public synchronized void start(int progressIntervalSeconds) {
+        PipelineMetrics previous = active;
+        if (previous != null && previous != this) {
+            previous.stop();
+        }
+        register(this, "type=Pipeline");
+        if (jfr) {
+            FlightRecorder.addPeriodicEvent(ThroughputEvent.class, throughputHook);
+        }
+        if (progressIntervalSeconds > 0) {
+            progressReporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-progress");
+                thread.setDaemon(true);
+                return thread;
+            });
+            progressReporter.scheduleAtFixedRate(() -> System.out.println(progressLine()),
+                    progressIntervalSeconds, progressIntervalSeconds, TimeUnit.SECONDS);
+        }
+        active = this;
+    }
+    
+    /**
+     * Deactivates these metrics, unregisters the MXBeans and stops the progress line. The
+     * figures stay readable.
+     */
+    public synchronized void stop() {
+        if (active == this) {
+            active = null;
+        }
+        if (progressReporter != null) {
+            progressReporter.shutdownNow();
+            progressReporter = null;
+        }
+        if (jfr) {
+            FlightRecorder.removePeriodicEvent(throughputHook);
+        }
+        synchronized (registered) {
+            for (ObjectName name : registered) {
+                try {
+                    mbeanServer.unregisterMBean(name);
+                } catch (JMException e) {
+                    // Already unregistered, e.g. replaced by a later run
+                }
+            }
+            registered.clear();
+        }
+    }
+    
+    /**
+     * Records the end of a stage.
+     * @param stage The stage name.
+     * @param startNanos The {@link System#nanoTime()} the stage started at.
+     */
+    public void record(String stage, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        LatencyHistogram histogram = stages.get(stage);
+        if (histogram == null) {
+            histogram = stages.computeIfAbsent(stage, this::createStage);
+        }
+        histogram.record(nanos);
+        if (jfr) {
+            StageEvent event = new StageEvent();
+            if (event.isEnabled()) {
+                event.stage = stage;
+                event.latency = nanos;
+                event.commit();
+            }
+        }
+    }
+    
+    /**
+     * Counts a patient that has been simulated and enriched.
+     */
+    public void patientCompleted() {
+        patientsCompleted.increment();
+    }
+    
+    /**
+     * Counts bytes written to the output files.
+     * @param bytes The number of bytes.
+     */
+    public void bytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+    
+    /**
+     * Reports the depth of a queue until it is unregistered.
+     * @param name The queue name, e.g. the export format.
+     * @param queue The queue.
+     */
+    public void registerQueue(String name, Collection<?> queue) {
+        queues.put(name, queue);
+    }
+    
+    /**
+     * Stops reporting the depth of a queue.
+     * @param name The queue name.
+     */
+    public void unregisterQueue(String name) {
+        queues.remove(name);
+    }
+    
+    /**
+     * Formats the progress of the run on one line.
+     * @return The progress line.
+     */
+    public String progressLine() {
+        StringBuilder line = new StringBuilder("Progress: ").append(getPatientsCompleted());
+        if (expectedPatients > 0) {
+            line.append('/').append(expectedPatients).append(String.format(Locale.ROOT, " (%.1f%%)",
+                    100.0 * getPatientsCompleted() / expectedPatients));
+        }
+        line.append(String.format(Locale.ROOT, " patients, %.1f patients/s, %.1f MB/s",
+                getPatientsPerSecond(), getBytesPerSecond() / (1024 * 1024)));
+        long eta = getEtaSeconds();
+        if (eta >= 0) {
+            line.append(String.format(Locale.ROOT, ", ETA %d:%02d:%02d", eta / 3600, eta / 60 % 60, eta % 60));
+        }
+        Map<String, Integer> depths = getQueueDepths();
+        if (!depths.isEmpty()) {
+            line.append(", queues ").append(depths);
+        }
+        return line.toString();
+    }
+    
+    /**
+     * Formats a table of every stage's latency percentiles.
+     * @return The table, one stage per line.
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder(String.format(Locale.ROOT,
+                "%-24s %10s %12s %10s %10s %10s %10s%n", "Stage", "Count", "Total s", "Mean ms",
+                "p50 ms", "p99 ms", "Max ms"));
+        for (LatencyHistogram stage : getStages().values()) {
+            report.append(String.format(Locale.ROOT, "%-24s %10d %12.1f %10.2f %10.2f %10.2f %10.2f%n",
+                    stage.getName(), stage.getCount(), stage.getTotalMillis() / 1000, stage.getMeanMillis(),
+                    stage.getP50Millis(), stage.getP99Millis(), stage.getMaxMillis()));
+        }
+        report.append(String.format(Locale.ROOT, "%d patients in %.1f s, %.1f patients/s, %.1f MB written%n",
+                getPatientsCompleted(), getElapsedSeconds(), getPatientsPerSecond(),
+                getBytesWritten() / (1024.0 * 1024.0)));
+        return report.toString();
+    }
+    
+    private LatencyHistogram createStage(String stage) {
+        LatencyHistogram histogram = new LatencyHistogram(stage);
+        register(histogram, "type=Stage,name=" + ObjectName.quote(stage));
+        return histogram;
+    }
+    
+    private void register(Object bean, String properties) {
+        if (mbeanServer == null) {
+            return;
+        }
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":" + properties);
+            if (mbeanServer.isRegistered(objectName)) {
+                mbeanServer.unregisterMBean(objectName);
+            }
+            mbeanServer.registerMBean(bean, objectName);
+            synchronized (registered) {
+                registered.add(objectName);
+            }
+        } catch (JMException e) {
+            System.err.println("Unable to register metrics MXBean: " + e.getMessage());
+        }
+    }
+    
+    private void emitThroughput() {
+        ThroughputEvent event = new ThroughputEvent();
+        event.patientsCompleted = getPatientsCompleted();
+        event.patientsPerSecond = getPatientsPerSecond();
+        event.bytesWritten = getBytesWritten();
+        event.bytesPerSecond = getBytesPerSecond();
+        event.commit();
+    }
+    
+    // Getters
+    
+    /**
+     * Gets the latency histogram of every stage timed so far.
+     * @return The histograms by stage name, sorted by name.
+     */
+    public Map<String, LatencyHistogram> getStages() {
+        return new TreeMap<>(stages);
+    }
+    
+    @Override
+    public long getExpectedPatients() {
+        return expectedPatients;
+    }
+    
+    @Override
+    public long getPatientsCompleted() {
+        return patientsCompleted.sum();
+    }
+    
+    @Override
+    public double getPatientsPerSecond() {
+        double seconds = getElapsedSeconds();
+        return seconds > 0 ? getPatientsCompleted() / seconds : 0;
+    }
+    
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+    
+    @Override
+    public double getBytesPerSecond() {
+        double seconds = getElapsedSeconds();
+        return seconds > 0 ? getBytesWritten() / seconds : 0;
+    }
+    
+    @Override
+    public double getElapsedSeconds() {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+    
+    /**
+     * Estimates the seconds left at the average rate so far.
+     * @return The estimate, or -1 if the run is open-ended or nothing has completed yet.
+     */
+    @Override
+    public long getEtaSeconds() {
+        long completed = getPatientsCompleted();
+        if (expectedPatients <= 0 || completed == 0) {
+            return -1;
+        }
+        return (long) Math.max(0, (expectedPatients - completed) / getPatientsPerSecond());
+    }
+    
+    @Override
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new TreeMap<>();
+        for (Map.Entry<String, Collection<?>> queue : queues.entrySet()) {
+            depths.put(queue.getKey(), queue.getValue().size());
+        }
+        return depths;
+    }
+}
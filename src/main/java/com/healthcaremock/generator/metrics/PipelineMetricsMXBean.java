@@ -0,0 +1,26 @@
+package com.healthcaremock.generator.metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX view of a run's throughput and queue depths, registered as
+ * {@code com.healthcaremock.generator:type=Pipeline}.
+ */
+public interface PipelineMetricsMXBean {
+    
+    long getExpectedPatients();
+    
+    long getPatientsCompleted();
+    
+    double getPatientsPerSecond();
+    
+    long getBytesWritten();
+    
+    double getBytesPerSecond();
+    
+    double getElapsedSeconds();
+    
+    long getEtaSeconds();
+    
+    Map<String, Integer> getQueueDepths();
+}
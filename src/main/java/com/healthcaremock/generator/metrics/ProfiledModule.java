@@ -0,0 +1,95 @@
+package com.healthcaremock.generator.metrics;
+
+import org.mitre.synthea.engine.Module;
+import org.mitre.synthea.engine.State;
+import org.mitre.synthea.world.agents.Person;
+
+import java.util.List;
+
+/**
+ * A Synthea module that runs another module and reports each call to a {@link ModuleProfiler}.
+ *
+ * <p>Each call's time is split into self time and the time spent in submodules the call ran,
+ * which are profiled modules themselves. Self time is attributed to the states the call
+ * entered, read from the module's history in the person's attributes (most recent first),
+ * in equal shares; a call that entered no state is attributed to the state it stayed in.
+ * Modules implemented in Java keep no history, so their time is attributed to the module only.
+ */
+class ProfiledModule extends Module {
+    private static final long serialVersionUID = 1L;
+    
+    private final Module delegate;
+    private final ModuleProfiler.ModuleStats stats;
+    
+    ProfiledModule(Module delegate, ModuleProfiler.ModuleStats stats) {
+        this.delegate = delegate;
+        this.stats = stats;
+        this.name = delegate.name;
+        this.submodule = delegate.submodule;
+    }
+    
+    @Override
+    public boolean process(Person person, long time) {
+        int before = historySize(person);
+        ModuleProfiler.CallStack calls = ModuleProfiler.enter();
+        long start = System.nanoTime();
+        try {
+            return delegate.process(person, time);
+        } finally {
+            record(person, calls, System.nanoTime() - start, before);
+        }
+    }
+    
+    @Override
+    public boolean process(Person person, long time, boolean terminateOnDeath) {
+        int before = historySize(person);
+        ModuleProfiler.CallStack calls = ModuleProfiler.enter();
+        long start = System.nanoTime();
+        try {
+            return delegate.process(person, time, terminateOnDeath);
+        } finally {
+            record(person, calls, System.nanoTime() - start, before);
+        }
+    }
+    
+    @Override
+    public Module clone() {
+        return new ProfiledModule(delegate.clone(), stats);
+    }
+    
+    Module getDelegate() {
+        return delegate;
+    }
+    
+    private void record(Person person, ModuleProfiler.CallStack calls, long elapsed, int before) {
+        long self = calls.exit(elapsed);
+        stats.recordCall(elapsed, self);
+        List<?> history = history(person);
+        if (history == null || history.isEmpty()) {
+            return;
+        }
+        int entered = Math.min(history.size() - before, history.size());
+        if (entered <= 0) {
+            stats.recordState(stateName(history.get(0)), self, 0);
+            return;
+        }
+        long share = self / entered;
+        for (int i = 0; i < entered; i++) {
+            stats.recordState(stateName(history.get(i)), share, 1);
+        }
+    }
+    
+    private int historySize(Person person) {
+        List<?> history = history(person);
+        return history == null ? 0 : history.size();
+    }
+    
+    private List<?> history(Person person) {
+        Object value = person.attributes.get(delegate.name);
+        return value instanceof List ? (List<?>) value : null;
+    }
+    
+    private static String stateName(Object state) {
+        return state instanceof State ? ((State) state).name : String.valueOf(state);
+    }
+}
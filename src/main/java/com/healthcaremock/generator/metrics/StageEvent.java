@@ -0,0 +1,28 @@
+package com.healthcaremock.generator.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A Flight Recorder event for one pass through a pipeline stage, e.g. one Synthea
+ * simulation or one enricher run. The event is committed when the stage ends; its latency
+ * field holds the time the stage took.
+ */
+@Name("com.healthcaremock.generator.Stage")
+@Label("Pipeline Stage")
+@Category("Healthcare Generator")
+@Description("One patient passing through a generation or export stage")
+@StackTrace(false)
+class StageEvent extends Event {
+    @Label("Stage")
+    String stage;
+    
+    @Label("Latency")
+    @Timespan(Timespan.NANOSECONDS)
+    long latency;
+}
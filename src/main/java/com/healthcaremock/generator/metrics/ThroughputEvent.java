@@ -0,0 +1,34 @@
+package com.healthcaremock.generator.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/**
+ * A periodic Flight Recorder event with the run's progress and throughput.
+ */
+@Name("com.healthcaremock.generator.Throughput")
+@Label("Pipeline Throughput")
+@Category("Healthcare Generator")
+@Description("Patients and bytes completed so far, and the rates since the run started")
+@Period("1 s")
+@StackTrace(false)
+class ThroughputEvent extends Event {
+    @Label("Patients Completed")
+    long patientsCompleted;
+    
+    @Label("Patients per Second")
+    double patientsPerSecond;
+    
+    @Label("Bytes Written")
+    @DataAmount
+    long bytesWritten;
+    
+    @Label("Bytes per Second")
+    double bytesPerSecond;
+}
@@ -1,5 +1,6 @@
 package com.healthcaremock.generator.models;
 
+import com.healthcaremock.generator.codec.ModelCodec;
 import org.mitre.synthea.world.agents.Person;
 
 import java.io.Serializable;
@@ -81,6 +82,14 @@ public class EnhancedPatientData implements Serializable {
         this.additionalData.put(key, value);
     }
     
+    /**
+     * Serializes through the compact binary codec instead of default Java serialization.
+     * @return The serialization proxy.
+     */
+    private Object writeReplace() {
+        return new ModelCodec.SerializedForm(this);
+    }
+    
     // Getters and setters
     
     public String getPatientId() {
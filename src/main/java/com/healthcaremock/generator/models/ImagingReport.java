@@ -4,6 +4,8 @@ import org.mitre.synthea.helpers.RandomNumberGenerator;
 import org.mitre.synthea.world.agents.Person;
 import org.mitre.synthea.world.concepts.HealthRecord.Encounter;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
@@ -19,6 +21,7 @@ public class ImagingReport implements Serializable {
     private String patientId;
     private String encounterId;
     private long timestamp;
+    // Categorical fields hold the global SymbolTable's shared instances
     private String modality;
     private String bodyPart;
     private String procedureCode;
@@ -56,56 +59,60 @@ public class ImagingReport implements Serializable {
      */
     public static ImagingReport generateRandomXray(
             RandomNumberGenerator random, Person person, Encounter encounter) {
+        return generateRandomXray(random, person, encounter, true);
+    }
+    
+    /**
+     * Generates a random X-ray report, optionally without its narrative text.
+     * The same random values are drawn either way, so the structured fields do not
+     * depend on whether the text is rendered.
+     * @param random The random number generator.
+     * @param person The person.
+     * @param encounter The encounter.
+     * @param renderText Whether to render the full report text.
+     * @return The generated report.
+     */
+    public static ImagingReport generateRandomXray(
+            RandomNumberGenerator random, Person person, Encounter encounter, boolean renderText) {
         
         ImagingReport report = new ImagingReport(
                 person.attributes.get(Person.ID).toString(),
                 encounter.uuid);
         
         report.timestamp = encounter.start;
-        report.modality = "X-ray";
+        report.setModality("X-ray");
         
         // Pick a random body part for the X-ray
         String[] bodyParts = {"Chest", "Abdomen", "Skull", "Thoracic Spine", "Lumbar Spine", 
                 "Cervical Spine", "Pelvis", "Hip", "Knee", "Ankle", "Foot", "Shoulder", 
                 "Elbow", "Wrist", "Hand"};
-        report.bodyPart = bodyParts[(int) (random.rand() * bodyParts.length)];
+        String bodyPart = bodyParts[(int) (random.rand() * bodyParts.length)];
+        report.setBodyPart(bodyPart);
         
         // Set procedure code and display based on body part
-        if (report.bodyPart.equals("Chest")) {
-            report.procedureCode = "71045";
-            report.procedureDisplay = "X-ray Chest, single view";
-        } else if (report.bodyPart.equals("Abdomen")) {
-            report.procedureCode = "74019";
-            report.procedureDisplay = "X-ray Abdomen, multiple views";
+        if (bodyPart.equals("Chest")) {
+            report.setProcedureCode("71045");
+            report.setProcedureDisplay("X-ray Chest, single view");
+        } else if (bodyPart.equals("Abdomen")) {
+            report.setProcedureCode("74019");
+            report.setProcedureDisplay("X-ray Abdomen, multiple views");
         } else {
             // Generic code for other body parts
-            report.procedureCode = "70000";
-            report.procedureDisplay = "X-ray " + report.bodyPart;
+            report.setProcedureCode("70000");
+            report.setProcedureDisplay("X-ray " + bodyPart);
         }
         
-        // Generate a full report text with realistic formatting
-        StringBuilder reportTextBuilder = new StringBuilder();
-        reportTextBuilder.append("EXAMINATION: ").append(report.procedureDisplay).append("\n\n");
-        reportTextBuilder.append("CLINICAL INDICATION: ");
-        
         String[] indications = {"Pain", "Trauma", "Follow-up", "Rule out fracture", 
                 "Rule out pneumonia", "Shortness of breath", "Cough", "Post-operative evaluation"};
-        reportTextBuilder.append(indications[(int) (random.rand() * indications.length)])
-                .append(" in ").append(report.bodyPart.toLowerCase()).append("\n\n");
-        
-        reportTextBuilder.append("TECHNIQUE: Standard ").append(report.modality)
-                .append(" views of the ").append(report.bodyPart.toLowerCase()).append(".\n\n");
-        
-        reportTextBuilder.append("FINDINGS:\n");
+        String indication = indications[(int) (random.rand() * indications.length)];
         
         // Generate 2-4 findings
         int numFindings = (int) (random.rand(2, 4));
         List<String> findingTexts = new ArrayList<>();
         
         for (int i = 0; i < numFindings; i++) {
-            String findingText = generateRandomFinding(random, report.bodyPart);
+            String findingText = generateRandomFinding(random, bodyPart);
             findingTexts.add(findingText);
-            reportTextBuilder.append("- ").append(findingText).append("\n");
             
             // Add to the findings list
             Finding finding = new Finding();
@@ -115,13 +122,8 @@ public class ImagingReport implements Serializable {
             report.findings.add(finding);
         }
         
-        reportTextBuilder.append("\n");
-        
         // Generate impression
-        reportTextBuilder.append("IMPRESSION:\n");
-        String impression = generateImpression(random, findingTexts);
-        reportTextBuilder.append(impression).append("\n\n");
-        report.impression = impression;
+        report.impression = generateImpression(random, findingTexts);
         
         // Generate conclusion
         String[] conclusions = {
@@ -132,11 +134,14 @@ public class ImagingReport implements Serializable {
             "Correlation with clinical findings is recommended.",
             "Consider further evaluation with MRI if clinically indicated."
         };
-        String conclusion = conclusions[(int) (random.rand() * conclusions.length)];
-        reportTextBuilder.append("CONCLUSION: ").append(conclusion);
-        report.conclusion = conclusion;
+        report.conclusion = conclusions[(int) (random.rand() * conclusions.length)];
         
-        report.reportText = reportTextBuilder.toString();
+        // Render the full report text with realistic formatting
+        if (renderText) {
+            report.reportText = report.renderReportText(
+                    indication + " in " + bodyPart.toLowerCase(),
+                    "Standard " + report.getModality() + " views of the " + bodyPart.toLowerCase() + ".");
+        }
         
         return report;
     }
@@ -150,59 +155,63 @@ public class ImagingReport implements Serializable {
      */
     public static ImagingReport generateRandomCT(
             RandomNumberGenerator random, Person person, Encounter encounter) {
+        return generateRandomCT(random, person, encounter, true);
+    }
+    
+    /**
+     * Generates a random CT scan report, optionally without its narrative text.
+     * The same random values are drawn either way, so the structured fields do not
+     * depend on whether the text is rendered.
+     * @param random The random number generator.
+     * @param person The person.
+     * @param encounter The encounter.
+     * @param renderText Whether to render the full report text.
+     * @return The generated report.
+     */
+    public static ImagingReport generateRandomCT(
+            RandomNumberGenerator random, Person person, Encounter encounter, boolean renderText) {
         
         ImagingReport report = new ImagingReport(
                 person.attributes.get(Person.ID).toString(),
                 encounter.uuid);
         
         report.timestamp = encounter.start;
-        report.modality = "CT";
+        report.setModality("CT");
         
         // Pick a random body part for the CT
         String[] bodyParts = {"Head", "Neck", "Chest", "Abdomen", "Pelvis", "Spine", 
                 "Abdomen and Pelvis", "Chest/Abdomen/Pelvis"};
-        report.bodyPart = bodyParts[(int) (random.rand() * bodyParts.length)];
+        String bodyPart = bodyParts[(int) (random.rand() * bodyParts.length)];
+        report.setBodyPart(bodyPart);
         
         // Set procedure code and display based on body part
-        if (report.bodyPart.equals("Head")) {
-            report.procedureCode = "70450";
-            report.procedureDisplay = "CT Head without contrast";
-        } else if (report.bodyPart.equals("Chest")) {
-            report.procedureCode = "71250";
-            report.procedureDisplay = "CT Chest without contrast";
-        } else if (report.bodyPart.equals("Abdomen")) {
-            report.procedureCode = "74176";
-            report.procedureDisplay = "CT Abdomen without contrast";
+        if (bodyPart.equals("Head")) {
+            report.setProcedureCode("70450");
+            report.setProcedureDisplay("CT Head without contrast");
+        } else if (bodyPart.equals("Chest")) {
+            report.setProcedureCode("71250");
+            report.setProcedureDisplay("CT Chest without contrast");
+        } else if (bodyPart.equals("Abdomen")) {
+            report.setProcedureCode("74176");
+            report.setProcedureDisplay("CT Abdomen without contrast");
         } else {
             // Generic code for other body parts
-            report.procedureCode = "70000";
-            report.procedureDisplay = "CT " + report.bodyPart;
+            report.setProcedureCode("70000");
+            report.setProcedureDisplay("CT " + bodyPart);
         }
         
-        // Generate a full report text with realistic formatting
-        StringBuilder reportTextBuilder = new StringBuilder();
-        reportTextBuilder.append("EXAMINATION: ").append(report.procedureDisplay).append("\n\n");
-        reportTextBuilder.append("CLINICAL INDICATION: ");
-        
         String[] indications = {"Abdominal pain", "Headache", "Trauma", "Follow-up", 
                 "Rule out malignancy", "Shortness of breath", "Unexplained weight loss", 
                 "Surveillance"};
-        reportTextBuilder.append(indications[(int) (random.rand() * indications.length)])
-                .append("\n\n");
-        
-        reportTextBuilder.append("TECHNIQUE: Helical CT of the ").append(report.bodyPart.toLowerCase())
-                .append(" was performed without intravenous contrast.\n\n");
-        
-        reportTextBuilder.append("FINDINGS:\n");
+        String indication = indications[(int) (random.rand() * indications.length)];
         
         // Generate 3-5 findings
         int numFindings = (int) (random.rand(3, 5));
         List<String> findingTexts = new ArrayList<>();
         
         for (int i = 0; i < numFindings; i++) {
-            String findingText = generateRandomCTFinding(random, report.bodyPart);
+            String findingText = generateRandomCTFinding(random, bodyPart);
             findingTexts.add(findingText);
-            reportTextBuilder.append("- ").append(findingText).append("\n");
             
             // Add to the findings list
             Finding finding = new Finding();
@@ -212,13 +221,8 @@ public class ImagingReport implements Serializable {
             report.findings.add(finding);
         }
         
-        reportTextBuilder.append("\n");
-        
         // Generate impression
-        reportTextBuilder.append("IMPRESSION:\n");
-        String impression = generateImpression(random, findingTexts);
-        reportTextBuilder.append(impression).append("\n\n");
-        report.impression = impression;
+        report.impression = generateImpression(random, findingTexts);
         
         // Generate conclusion
         String[] conclusions = {
@@ -229,15 +233,39 @@ public class ImagingReport implements Serializable {
             "Consider MRI for further evaluation.",
             "Findings consistent with patient's clinical presentation."
         };
-        String conclusion = conclusions[(int) (random.rand() * conclusions.length)];
-        reportTextBuilder.append("CONCLUSION: ").append(conclusion);
-        report.conclusion = conclusion;
+        report.conclusion = conclusions[(int) (random.rand() * conclusions.length)];
         
-        report.reportText = reportTextBuilder.toString();
+        // Render the full report text with realistic formatting
+        if (renderText) {
+            report.reportText = report.renderReportText(indication,
+                    "Helical CT of the " + bodyPart.toLowerCase()
+                            + " was performed without intravenous contrast.");
+        }
         
         return report;
     }
     
+    /**
+     * Renders the narrative report from the structured fields.
+     * @param indication The clinical indication.
+     * @param technique The technique description.
+     * @return The report text.
+     */
+    private String renderReportText(String indication, String technique) {
+        StringBuilder text = new StringBuilder(512);
+        text.append("EXAMINATION: ").append(getProcedureDisplay()).append("\n\n");
+        text.append("CLINICAL INDICATION: ").append(indication).append("\n\n");
+        text.append("TECHNIQUE: ").append(technique).append("\n\n");
+        text.append("FINDINGS:\n");
+        for (Finding finding : findings) {
+            text.append("- ").append(finding.getText()).append("\n");
+        }
+        text.append("\n");
+        text.append("IMPRESSION:\n").append(impression).append("\n\n");
+        text.append("CONCLUSION: ").append(conclusion);
+        return text.toString();
+    }
+    
     private static String generateRandomFinding(RandomNumberGenerator random, String bodyPart) {
         if (bodyPart.equals("Chest")) {
             String[] findings = {
@@ -355,6 +383,15 @@ public class ImagingReport implements Serializable {
         }
     }
     
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // Strings come back as fresh copies; swap in the shared instances
+        modality = SymbolTable.global().intern(modality);
+        bodyPart = SymbolTable.global().intern(bodyPart);
+        procedureCode = SymbolTable.global().intern(procedureCode);
+        procedureDisplay = SymbolTable.global().intern(procedureDisplay);
+    }
+    
     // Getters and setters
     
     public String getId() {
@@ -394,7 +431,7 @@ public class ImagingReport implements Serializable {
     }
     
     public void setModality(String modality) {
-        this.modality = modality;
+        this.modality = SymbolTable.global().intern(modality);
     }
     
     public String getBodyPart() {
@@ -402,7 +439,7 @@ public class ImagingReport implements Serializable {
     }
     
     public void setBodyPart(String bodyPart) {
-        this.bodyPart = bodyPart;
+        this.bodyPart = SymbolTable.global().intern(bodyPart);
     }
     
     public String getProcedureCode() {
@@ -410,7 +447,7 @@ public class ImagingReport implements Serializable {
     }
     
     public void setProcedureCode(String procedureCode) {
-        this.procedureCode = procedureCode;
+        this.procedureCode = SymbolTable.global().intern(procedureCode);
     }
     
     public String getProcedureDisplay() {
@@ -418,7 +455,7 @@ public class ImagingReport implements Serializable {
     }
     
     public void setProcedureDisplay(String procedureDisplay) {
-        this.procedureDisplay = procedureDisplay;
+        this.procedureDisplay = SymbolTable.global().intern(procedureDisplay);
     }
     
     public String getReportText() {
@@ -475,7 +512,13 @@ public class ImagingReport implements Serializable {
         }
         
         public void setSignificance(String significance) {
-            this.significance = significance;
+            this.significance = SymbolTable.global().intern(significance);
+        }
+        
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            // Strings come back as fresh copies; swap in the shared instances
+            significance = SymbolTable.global().intern(significance);
         }
     }
 } 
\ No newline at end of file
@@ -4,6 +4,8 @@ import org.mitre.synthea.helpers.RandomNumberGenerator;
 import org.mitre.synthea.world.agents.Person;
 import org.mitre.synthea.world.concepts.HealthRecord.Encounter;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
@@ -21,6 +23,7 @@ public class PatientReportedOutcome implements Serializable {
     private String patientId;
     private String encounterId;
     private long timestamp;
+    // Categorical fields hold the global SymbolTable's shared instances
     private String instrumentType;
     private int instrumentVersion;
     private String condition;
@@ -62,9 +65,9 @@ public class PatientReportedOutcome implements Serializable {
                 encounter.uuid);
         
         pro.timestamp = encounter.start;
-        pro.instrumentType = "Visual Analog Scale for Pain";
+        pro.setInstrumentType("Visual Analog Scale for Pain");
         pro.instrumentVersion = 1;
-        pro.condition = "Pain";
+        pro.setCondition("Pain");
         
         // Generate a random pain score (0-10)
         int painScore = (int) Math.round(random.rand(0, 10));
@@ -98,9 +101,9 @@ public class PatientReportedOutcome implements Serializable {
                 encounter.uuid);
         
         pro.timestamp = encounter.start;
-        pro.instrumentType = "PHQ-9";
+        pro.setInstrumentType("PHQ-9");
         pro.instrumentVersion = 1;
-        pro.condition = "Depression";
+        pro.setCondition("Depression");
         
         // PHQ-9 has 9 questions, each scored 0-3
         String[] questions = {
@@ -159,9 +162,9 @@ public class PatientReportedOutcome implements Serializable {
                 encounter.uuid);
         
         pro.timestamp = encounter.start;
-        pro.instrumentType = "EQ-5D-5L";
+        pro.setInstrumentType("EQ-5D-5L");
         pro.instrumentVersion = 1;
-        pro.condition = "Quality of Life";
+        pro.setCondition("Quality of Life");
         
         // EQ-5D-5L has 5 dimensions, each scored 1-5
         String[] dimensions = {
@@ -205,6 +208,13 @@ public class PatientReportedOutcome implements Serializable {
         return pro;
     }
     
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // Strings come back as fresh copies; swap in the shared instances
+        instrumentType = SymbolTable.global().intern(instrumentType);
+        condition = SymbolTable.global().intern(condition);
+    }
+    
     // Getters and setters
     
     public String getId() {
@@ -244,7 +254,7 @@ public class PatientReportedOutcome implements Serializable {
     }
     
     public void setInstrumentType(String instrumentType) {
-        this.instrumentType = instrumentType;
+        this.instrumentType = SymbolTable.global().intern(instrumentType);
     }
     
     public int getInstrumentVersion() {
@@ -260,7 +270,7 @@ public class PatientReportedOutcome implements Serializable {
     }
     
     public void setCondition(String condition) {
-        this.condition = condition;
+        this.condition = SymbolTable.global().intern(condition);
     }
     
     public Map<String, Object> getResponses() {
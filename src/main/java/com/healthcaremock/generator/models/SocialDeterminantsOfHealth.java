@@ -114,7 +114,8 @@ public class SocialDeterminantsOfHealth implements Serializable {
      * @param value The factor value.
      */
     public void setFactor(String key, Object value) {
-        factors.put(key, value);
+        // Factor keys are a fixed vocabulary; share one instance of each across patients
+        factors.put(SymbolTable.global().intern(key), value);
     }
     
     /**
@@ -0,0 +1,42 @@
+package com.healthcaremock.generator.models;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A thread-safe interner for categorical strings.
+ *
+ * <p>Models keep vocabularies such as modalities, measurement units and instrument types as
+ * the {@link #global()} table's shared instances, so each distinct string exists once per
+ * process however many patients carry it. Lookups are lock-free.
+ */
+public final class SymbolTable {
+    private static final SymbolTable GLOBAL = new SymbolTable();
+    
+    private final ConcurrentMap<String, String> symbols = new ConcurrentHashMap<>();
+    
+    /**
+     * Gets the process-wide table shared by all models.
+     * @return The global table.
+     */
+    public static SymbolTable global() {
+        return GLOBAL;
+    }
+    
+    /**
+     * Gets the canonical instance of a string, adding it to the table if it is new.
+     * @param symbol The string, or null.
+     * @return The shared instance equal to the string, or null.
+     */
+    public String intern(String symbol) {
+        if (symbol == null) {
+            return null;
+        }
+        String existing = symbols.get(symbol);
+        if (existing != null) {
+            return existing;
+        }
+        existing = symbols.putIfAbsent(symbol, symbol);
+        return existing != null ? existing : symbol;
+    }
+}
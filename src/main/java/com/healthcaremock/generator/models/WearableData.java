@@ -2,6 +2,8 @@ package com.healthcaremock.generator.models;
 
 import org.mitre.synthea.helpers.RandomNumberGenerator;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.time.Instant;
 import java.util.ArrayList;
@@ -13,6 +15,7 @@ import java.util.List;
 public class WearableData implements Serializable {
     private static final long serialVersionUID = 1L;
     
+    // Categorical fields hold the global SymbolTable's shared instances
     private String deviceType;
     private String deviceId;
     private long recordedAt;
@@ -57,7 +60,7 @@ public class WearableData implements Serializable {
             double noiseFactor) {
         
         WearableData data = new WearableData(patientId);
-        data.deviceType = "SmartWatch";
+        data.setDeviceType("SmartWatch");
         data.deviceId = "WD-" + Math.abs(random.randInt());
         data.recordedAt = time;
         
@@ -106,6 +109,12 @@ public class WearableData implements Serializable {
         measurements.add(new Measurement(type, unit, value));
     }
     
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // Strings come back as fresh copies; swap in the shared instances
+        deviceType = SymbolTable.global().intern(deviceType);
+    }
+    
     // Getters and setters
     
     public String getDeviceType() {
@@ -113,7 +122,7 @@ public class WearableData implements Serializable {
     }
     
     public void setDeviceType(String deviceType) {
-        this.deviceType = deviceType;
+        this.deviceType = SymbolTable.global().intern(deviceType);
     }
     
     public String getDeviceId() {
@@ -165,8 +174,8 @@ public class WearableData implements Serializable {
          * @param value The measurement value.
          */
         public Measurement(String type, String unit, double value) {
-            this.type = type;
-            this.unit = unit;
+            this.type = SymbolTable.global().intern(type);
+            this.unit = SymbolTable.global().intern(unit);
             this.value = value;
         }
         
@@ -177,7 +186,7 @@ public class WearableData implements Serializable {
         }
         
         public void setType(String type) {
-            this.type = type;
+            this.type = SymbolTable.global().intern(type);
         }
         
         public String getUnit() {
@@ -185,7 +194,7 @@ public class WearableData implements Serializable {
         }
         
         public void setUnit(String unit) {
-            this.unit = unit;
+            this.unit = SymbolTable.global().intern(unit);
         }
         
         public double getValue() {
@@ -195,5 +204,12 @@ public class WearableData implements Serializable {
         public void setValue(double value) {
             this.value = value;
         }
+        
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            // Strings come back as fresh copies; swap in the shared instances
+            type = SymbolTable.global().intern(type);
+            unit = SymbolTable.global().intern(unit);
+        }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,213 @@
+package com.healthcaremock.generator.perf;
+
+import com.healthcaremock.generator.config.ConfigManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A local throughput regression harness for whole generator runs.
+ *
+ * <p>The harness generates the same fixed-seed population once for every combination of
+ * export format ({@code perf.formats}) and thread count ({@code perf.threads}). Each
+ * combination runs in a fresh JVM ({@link PerfRun}), so heap state, JIT warm-up and peak RSS
+ * do not carry over from one run to the next. The results are collected into a
+ * {@link PerfReport} and compared with a stored baseline. A run regresses if its throughput
+ * falls, or its latency, GC pause time or peak RSS rises, by more than the configured
+ * tolerance ({@code perf.tolerance.*}, as fractions of the baseline value).
+ */
+public class PerfHarness {
+    private final int population;
+    private final long seed;
+    private final List<Integer> threadCounts;
+    private final List<String> formats;
+    private final File workDirectory;
+    private final List<String> jvmArgs;
+    private final long runTimeoutMinutes;
+    private final double throughputTolerance;
+    private final double latencyTolerance;
+    private final double gcTolerance;
+    private final double rssTolerance;
+    
+    /**
+     * Creates a harness from the {@code perf.*} settings in healthcare-generator.properties.
+     */
+    public PerfHarness() {
+        this.population = ConfigManager.getAsInteger("perf.population", 200);
+        this.seed = Long.parseLong(ConfigManager.getAsString("perf.seed", "12345"));
+        this.threadCounts = parseThreadCounts(ConfigManager.getAsString("perf.threads", ""));
+        this.formats = new ArrayList<>();
+        for (String format : ConfigManager.getAsString("perf.formats", "json,ndjson,csv").split(",")) {
+            if (!format.trim().isEmpty()) {
+                formats.add(format.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        this.workDirectory = new File(ConfigManager.getAsString("perf.work_directory", "build/perf"));
+        this.jvmArgs = new ArrayList<>();
+        for (String arg : ConfigManager.getAsString("perf.jvm_args", "").trim().split("\\s+")) {
+            if (!arg.isEmpty()) {
+                jvmArgs.add(arg);
+            }
+        }
+        this.runTimeoutMinutes = ConfigManager.getAsInteger("perf.run_timeout_minutes", 60);
+        this.throughputTolerance = ConfigManager.getAsDouble("perf.tolerance.throughput", 0.10);
+        this.latencyTolerance = ConfigManager.getAsDouble("perf.tolerance.latency", 0.20);
+        this.gcTolerance = ConfigManager.getAsDouble("perf.tolerance.gc_pause", 0.50);
+        this.rssTolerance = ConfigManager.getAsDouble("perf.tolerance.peak_rss", 0.20);
+    }
+    
+    /**
+     * Runs every format and thread count.
+     * @return The report, without a baseline comparison.
+     * @throws IOException if a run cannot be started or its result read.
+     * @throws InterruptedException if interrupted while waiting for a run.
+     */
+    public PerfReport run() throws IOException, InterruptedException {
+        PerfReport report = new PerfReport(population, seed);
+        File logs = new File(workDirectory, "logs");
+        logs.mkdirs();
+        for (String format : formats) {
+            for (int threads : threadCounts) {
+                String name = format + "-" + threads + "t";
+                System.out.println("Running " + population + " patients, " + format + ", "
+                        + threads + " threads...");
+                File resultFile = new File(workDirectory, "runs/" + name + ".json");
+                resultFile.delete();
+                
+                List<String> command = new ArrayList<>();
+                command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+                command.addAll(jvmArgs);
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add(PerfRun.class.getName());
+                command.add(String.valueOf(population));
+                command.add(String.valueOf(seed));
+                command.add(String.valueOf(threads));
+                command.add(format);
+                command.add(new File(workDirectory, "output/" + name).getPath());
+                command.add(resultFile.getPath());
+                
+                Process process = new ProcessBuilder(command)
+                        .redirectErrorStream(true)
+                        .redirectOutput(new File(logs, name + ".log"))
+                        .start();
+                if (!process.waitFor(runTimeoutMinutes, TimeUnit.MINUTES)) {
+                    process.destroyForcibly();
+                    throw new IOException("Run " + name + " exceeded " + runTimeoutMinutes + " minutes");
+                }
+                if (process.exitValue() != 0 || !resultFile.isFile()) {
+                    throw new IOException("Run " + name + " failed; see " + new File(logs, name + ".log"));
+                }
+                PerfResult result = PerfReport.read(resultFile).getResults().get(0);
+                report.getResults().add(result);
+                System.out.println("  " + describe(result));
+            }
+        }
+        return report;
+    }
+    
+    /**
+     * Compares a report with a baseline and records the regressions in the report. Runs
+     * missing from the baseline, and values either side could not measure, are not compared.
+     * @param report The new report.
+     * @param baseline The baseline report.
+     * @return The regressions, one line each; empty if there are none.
+     */
+    public List<String> compare(PerfReport report, PerfReport baseline) {
+        List<String> regressions = report.getRegressions();
+        regressions.clear();
+        if (baseline.getPopulation() != report.getPopulation() || baseline.getSeed() != report.getSeed()) {
+            System.err.println("Warning: the baseline was recorded with population "
+                    + baseline.getPopulation() + " and seed " + baseline.getSeed());
+        }
+        for (PerfResult result : report.getResults()) {
+            PerfResult before = baseline.find(result.key());
+            if (before == null) {
+                continue;
+            }
+            lower(regressions, result.key(), "patients/sec", result.getPatientsPerSecond(),
+                    before.getPatientsPerSecond(), throughputTolerance);
+            lower(regressions, result.key(), "MB/sec", result.getMegabytesPerSecond(),
+                    before.getMegabytesPerSecond(), throughputTolerance);
+            higher(regressions, result.key(), "p50 latency ms", result.getP50LatencyMillis(),
+                    before.getP50LatencyMillis(), latencyTolerance);
+            higher(regressions, result.key(), "p99 latency ms", result.getP99LatencyMillis(),
+                    before.getP99LatencyMillis(), latencyTolerance);
+            higher(regressions, result.key(), "GC pause ms", result.getGcPauseMillis(),
+                    before.getGcPauseMillis(), gcTolerance);
+            higher(regressions, result.key(), "peak RSS MB", result.getPeakRssMegabytes(),
+                    before.getPeakRssMegabytes(), rssTolerance);
+        }
+        return regressions;
+    }
+    
+    /**
+     * Formats a result on one line.
+     * @param result The result.
+     * @return The summary.
+     */
+    public static String describe(PerfResult result) {
+        return String.format(Locale.ROOT, "%-12s %8.2f patients/s %8.2f MB/s  p50 %8.1f ms  p99 %8.1f ms"
+                + "  GC %6d ms  RSS %7.1f MB", result.key(), result.getPatientsPerSecond(),
+                result.getMegabytesPerSecond(), result.getP50LatencyMillis(), result.getP99LatencyMillis(),
+                result.getGcPauseMillis(), result.getPeakRssMegabytes());
+    }
+    
+    private static void lower(List<String> regressions, String key, String metric, double value,
+            double baseline, double tolerance) {
+        if (value >= 0 && baseline > 0 && value < baseline * (1 - tolerance)) {
+            regressions.add(String.format(Locale.ROOT, "%s: %s fell from %.2f to %.2f (%+.1f%%)",
+                    key, metric, baseline, value, 100 * (value / baseline - 1)));
+        }
+    }
+    
+    private static void higher(List<String> regressions, String key, String metric, double value,
+            double baseline, double tolerance) {
+        if (value >= 0 && baseline > 0 && value > baseline * (1 + tolerance)) {
+            regressions.add(String.format(Locale.ROOT, "%s: %s rose from %.2f to %.2f (%+.1f%%)",
+                    key, metric, baseline, value, 100 * (value / baseline - 1)));
+        }
+    }
+    
+    /**
+     * Parses a comma-separated list of thread counts. When empty, doubles from 1 up to the
+     * number of processors, which is always included.
+     */
+    private static List<Integer> parseThreadCounts(String value) {
+        List<Integer> counts = new ArrayList<>();
+        if (!value.trim().isEmpty()) {
+            for (String count : value.split(",")) {
+                counts.add(Math.max(1, Integer.parseInt(count.trim())));
+            }
+            return counts;
+        }
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads < processors; threads *= 2) {
+            counts.add(threads);
+        }
+        counts.add(processors);
+        return counts;
+    }
+    
+    // Getters
+    
+    public int getPopulation() {
+        return population;
+    }
+    
+    public List<Integer> getThreadCounts() {
+        return threadCounts;
+    }
+    
+    public List<String> getFormats() {
+        return formats;
+    }
+    
+    public File getWorkDirectory() {
+        return workDirectory;
+    }
+}
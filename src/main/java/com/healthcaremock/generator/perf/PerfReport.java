@@ -0,0 +1,127 @@
+package com.healthcaremock.generator.perf;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The machine-readable report of a harness run, also used as the stored baseline: the
+ * environment it ran in, the population settings, and one {@link PerfResult} per format and
+ * thread count.
+ */
+public class PerfReport {
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    
+    private String createdAt;
+    private String javaVersion;
+    private String os;
+    private int processors;
+    private int population;
+    private long seed;
+    private List<PerfResult> results = new ArrayList<>();
+    private List<String> regressions = new ArrayList<>();
+    
+    /**
+     * Constructor, for deserialization.
+     */
+    public PerfReport() {
+    }
+    
+    /**
+     * Creates an empty report for the current environment.
+     * @param population The number of patients per run.
+     * @param seed The population seed.
+     */
+    public PerfReport(int population, long seed) {
+        this.createdAt = Instant.now().toString();
+        this.javaVersion = System.getProperty("java.version");
+        this.os = System.getProperty("os.name") + " " + System.getProperty("os.arch");
+        this.processors = Runtime.getRuntime().availableProcessors();
+        this.population = population;
+        this.seed = seed;
+    }
+    
+    /**
+     * Reads a report.
+     * @param file The report file.
+     * @return The report.
+     * @throws IOException if the file cannot be read.
+     */
+    public static PerfReport read(File file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            return GSON.fromJson(reader, PerfReport.class);
+        }
+    }
+    
+    /**
+     * Writes the report as JSON, creating the parent directory if needed.
+     * @param file The report file.
+     * @throws IOException if the file cannot be written.
+     */
+    public void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            GSON.toJson(this, writer);
+        }
+    }
+    
+    /**
+     * Finds the result of a run.
+     * @param key The run's {@link PerfResult#key()}.
+     * @return The result, or null if the report has no such run.
+     */
+    public PerfResult find(String key) {
+        for (PerfResult result : results) {
+            if (result.key().equals(key)) {
+                return result;
+            }
+        }
+        return null;
+    }
+    
+    // Getters
+    
+    public String getCreatedAt() {
+        return createdAt;
+    }
+    
+    public String getJavaVersion() {
+        return javaVersion;
+    }
+    
+    public String getOs() {
+        return os;
+    }
+    
+    public int getProcessors() {
+        return processors;
+    }
+    
+    public int getPopulation() {
+        return population;
+    }
+    
+    public long getSeed() {
+        return seed;
+    }
+    
+    public List<PerfResult> getResults() {
+        return results;
+    }
+    
+    public List<String> getRegressions() {
+        return regressions;
+    }
+}
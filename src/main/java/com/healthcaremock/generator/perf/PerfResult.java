@@ -0,0 +1,141 @@
+package com.healthcaremock.generator.perf;
+
+/**
+ * The measurements of one harness run: a fixed-seed population generated with one thread
+ * count and exported in one format. Values that could not be measured are -1.
+ */
+public class PerfResult {
+    private String format;
+    private int threads;
+    private int population;
+    private int generated;
+    private double elapsedSeconds;
+    private double patientsPerSecond;
+    private double megabytesWritten;
+    private double megabytesPerSecond;
+    private double p50LatencyMillis;
+    private double p99LatencyMillis;
+    private long gcPauseMillis;
+    private long gcCount;
+    private double peakRssMegabytes;
+    
+    /**
+     * Constructor, for deserialization.
+     */
+    public PerfResult() {
+    }
+    
+    /**
+     * Constructor.
+     * @param format The export format.
+     * @param threads The number of generation threads.
+     * @param population The number of patients requested.
+     */
+    public PerfResult(String format, int threads, int population) {
+        this.format = format;
+        this.threads = threads;
+        this.population = population;
+    }
+    
+    /**
+     * Gets the key that matches this run with the same run of another report.
+     * @return The format and thread count.
+     */
+    public String key() {
+        return format + "/" + threads + "t";
+    }
+    
+    // Getters and setters
+    
+    public String getFormat() {
+        return format;
+    }
+    
+    public int getThreads() {
+        return threads;
+    }
+    
+    public int getPopulation() {
+        return population;
+    }
+    
+    public int getGenerated() {
+        return generated;
+    }
+    
+    public void setGenerated(int generated) {
+        this.generated = generated;
+    }
+    
+    public double getElapsedSeconds() {
+        return elapsedSeconds;
+    }
+    
+    public void setElapsedSeconds(double elapsedSeconds) {
+        this.elapsedSeconds = elapsedSeconds;
+    }
+    
+    public double getPatientsPerSecond() {
+        return patientsPerSecond;
+    }
+    
+    public void setPatientsPerSecond(double patientsPerSecond) {
+        this.patientsPerSecond = patientsPerSecond;
+    }
+    
+    public double getMegabytesWritten() {
+        return megabytesWritten;
+    }
+    
+    public void setMegabytesWritten(double megabytesWritten) {
+        this.megabytesWritten = megabytesWritten;
+    }
+    
+    public double getMegabytesPerSecond() {
+        return megabytesPerSecond;
+    }
+    
+    public void setMegabytesPerSecond(double megabytesPerSecond) {
+        this.megabytesPerSecond = megabytesPerSecond;
+    }
+    
+    public double getP50LatencyMillis() {
+        return p50LatencyMillis;
+    }
+    
+    public void setP50LatencyMillis(double p50LatencyMillis) {
+        this.p50LatencyMillis = p50LatencyMillis;
+    }
+    
+    public double getP99LatencyMillis() {
+        return p99LatencyMillis;
+    }
+    
+    public void setP99LatencyMillis(double p99LatencyMillis) {
+        this.p99LatencyMillis = p99LatencyMillis;
+    }
+    
+    public long getGcPauseMillis() {
+        return gcPauseMillis;
+    }
+    
+    public void setGcPauseMillis(long gcPauseMillis) {
+        this.gcPauseMillis = gcPauseMillis;
+    }
+    
+    public long getGcCount() {
+        return gcCount;
+    }
+    
+    public void setGcCount(long gcCount) {
+        this.gcCount = gcCount;
+    }
+    
+    public double getPeakRssMegabytes() {
+        return peakRssMegabytes;
+    }
+    
+    public void setPeakRssMegabytes(double peakRssMegabytes) {
+        this.peakRssMegabytes = peakRssMegabytes;
+    }
+}
@@ -0,0 +1,242 @@
+package com.healthcaremock.generator.perf;
+
+import com.healthcaremock.generator.EnhancedGenerator;
+import com.healthcaremock.generator.EnhancedPatientData;
+import com.healthcaremock.generator.config.ConfigManager;
+import com.healthcaremock.generator.export.CsvFormatWriter;
+import com.healthcaremock.generator.export.ExportFanout;
+import com.healthcaremock.generator.export.ExportProfile;
+import com.healthcaremock.generator.export.FormatWriter;
+import com.healthcaremock.generator.export.JsonFormatWriter;
+import com.healthcaremock.generator.export.NdjsonFormatWriter;
+import com.healthcaremock.generator.export.OutputStage;
+import org.mitre.synthea.engine.Generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * One harness run, in its own JVM: generates a fixed-seed population on a given number of
+ * threads, exports it in one format, and measures the run.
+ *
+ * <p>Every patient is generated from a seed derived from the population seed and its index,
+ * so each run produces the same population whatever its thread count. A patient's latency
+ * covers its simulation and enrichment; export runs behind the fan-out's queues as in a
+ * normal run, and counts toward the run's elapsed time.
+ */
+public class PerfRun {
+    
+    private PerfRun() {
+    }
+    
+    /**
+     * Runs one configuration and writes its result as JSON.
+     * @param args The population, seed, thread count, format (json, ndjson or csv), output
+     *             directory and result file.
+     */
+    public static void main(String[] args) {
+        if (args.length != 6) {
+            System.err.println("Usage: PerfRun <population> <seed> <threads> <format> <output dir> <result file>");
+            System.exit(1);
+        }
+        try {
+            ConfigManager.initialize();
+            PerfResult result = run(Integer.parseInt(args[0]), Long.parseLong(args[1]),
+                    Integer.parseInt(args[2]), args[3], new File(args[4]));
+            PerfReport report = new PerfReport(result.getPopulation(), Long.parseLong(args[1]));
+            report.getResults().add(result);
+            report.write(new File(args[5]));
+        } catch (Exception e) {
+            System.err.println("Error in harness run: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Runs one configuration in this JVM.
+     * @param population The number of patients.
+     * @param seed The population seed.
+     * @param threads The number of generation threads.
+     * @param format The export format: json, ndjson or csv.
+     * @param outputDir The export directory, emptied first.
+     * @return The measurements.
+     * @throws Exception if generation or export fails.
+     */
+    public static PerfResult run(int population, long seed, int threads, String format, File outputDir)
+            throws Exception {
+        deleteRecursively(outputDir.toPath());
+        Generator.GeneratorOptions options = new Generator.GeneratorOptions();
+        options.population = population;
+        options.seed = seed;
+        options.overflow = false;
+        EnhancedGenerator generator = new EnhancedGenerator(options);
+        
+        PerfResult result = new PerfResult(format, threads, population);
+        long[] latencies = new long[population];
+        AtomicInteger generated = new AtomicInteger();
+        long gcMillisBefore = gcPauseMillis();
+        long gcCountBefore = gcCount();
+        long start = System.nanoTime();
+        
+        ExecutorService threadPool = Executors.newFixedThreadPool(threads);
+        try (ExportFanout exporter = createExporter(format, outputDir)) {
+            Future<?>[] futures = new Future<?>[population];
+            for (int i = 0; i < population; i++) {
+                int index = i;
+                futures[i] = threadPool.submit(() -> {
+                    long patientStart = System.nanoTime();
+                    EnhancedPatientData patient = generator.generatePatient(index,
+                            EnhancedGenerator.derivePersonSeed(seed, index));
+                    latencies[index] = System.nanoTime() - patientStart;
+                    if (patient != null) {
+                        generator.keepPatient(patient);
+                        generated.incrementAndGet();
+                        exporter.accept(patient);
+                    }
+                    return null;
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            threadPool.shutdownNow();
+            generator.close();
+        }
+        
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double megabytes = directorySize(outputDir.toPath()) / (1024.0 * 1024.0);
+        Arrays.sort(latencies);
+        result.setGenerated(generated.get());
+        result.setElapsedSeconds(seconds);
+        result.setPatientsPerSecond(generated.get() / seconds);
+        result.setMegabytesWritten(megabytes);
+        result.setMegabytesPerSecond(megabytes / seconds);
+        result.setP50LatencyMillis(percentile(latencies, 0.50) / 1e6);
+        result.setP99LatencyMillis(percentile(latencies, 0.99) / 1e6);
+        result.setGcPauseMillis(gcPauseMillis() - gcMillisBefore);
+        result.setGcCount(gcCount() - gcCountBefore);
+        result.setPeakRssMegabytes(peakRssMegabytes());
+        return result;
+    }
+    
+    private static ExportFanout createExporter(String format, File outputDir) throws IOException {
+        ExportProfile profile = ExportProfile.fromConfig();
+        OutputStage output = OutputStage.fromConfig(outputDir);
+        FormatWriter writer;
+        switch (format) {
+            case "json":
+                writer = new JsonFormatWriter(output, "enhanced");
+                break;
+            case "ndjson":
+                writer = new NdjsonFormatWriter(output, "enhanced_ndjson",
+                        ConfigManager.getAsInteger("exporter.enhanced_ndjson.shards", 1));
+                break;
+            case "csv":
+                writer = new CsvFormatWriter(output, "enhanced_csv", profile);
+                break;
+            default:
+                output.close();
+                throw new IllegalArgumentException("Unknown format: " + format);
+        }
+        List<FormatWriter> writers = Collections.singletonList(writer);
+        return new ExportFanout(writers, ConfigManager.getAsInteger("exporter.queue_capacity", 256),
+                profile, output);
+    }
+    
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+    
+    /**
+     * Sums the collection time of the stop-the-world collectors. Collectors that also report
+     * their concurrent cycles (G1's "Concurrent GC", ZGC's and Shenandoah's "Cycles") are
+     * left out, so the total approximates time spent in pauses.
+     */
+    private static long gcPauseMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (isPauseCollector(collector) && collector.getCollectionTime() > 0) {
+                total += collector.getCollectionTime();
+            }
+        }
+        return total;
+    }
+    
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (isPauseCollector(collector) && collector.getCollectionCount() > 0) {
+                total += collector.getCollectionCount();
+            }
+        }
+        return total;
+    }
+    
+    private static boolean isPauseCollector(GarbageCollectorMXBean collector) {
+        String name = collector.getName();
+        return !name.contains("Concurrent") && !name.contains("Cycles");
+    }
+    
+    /**
+     * Reads the peak resident set size of this process from /proc/self/status (VmHWM).
+     * @return The peak in megabytes, or -1 where /proc is not available.
+     */
+    private static double peakRssMegabytes() {
+        Path status = Paths.get("/proc/self/status");
+        if (!Files.isReadable(status)) {
+            return -1;
+        }
+        try {
+            for (String line : Files.readAllLines(status, StandardCharsets.UTF_8)) {
+                if (line.startsWith("VmHWM:")) {
+                    String[] fields = line.substring("VmHWM:".length()).trim().split("\\s+");
+                    return Long.parseLong(fields[0]) / 1024.0;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Unable to read peak RSS: " + e.getMessage());
+        }
+        return -1;
+    }
+    
+    private static long directorySize(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+    
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Collections.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
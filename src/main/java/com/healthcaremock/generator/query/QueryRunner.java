@@ -0,0 +1,384 @@
+package com.healthcaremock.generator.query;
+
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import com.healthcaremock.generator.config.ConfigManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a {@link ScanQuery} over exported patient records on all cores.
+ *
+ * <p>Inputs are NDJSON shards ({@code .ndjson} or {@code .jsonl}, one patient per line) and
+ * per-patient JSON files ({@code .json}, one patient per file). NDJSON shards are split into
+ * chunks at line boundaries, and each chunk is memory-mapped and scanned by one task; JSON
+ * files are grouped into tasks of several files. Matching records, or their projected values,
+ * are written as NDJSON in input order.
+ */
+public class QueryRunner {
+    private static final long CHUNK_BYTES = 64L * 1024 * 1024;
+    private static final long MIN_CHUNK_BYTES = 1024 * 1024;
+    private static final int FILES_PER_TASK = 64;
+    private static final int WINDOW_BYTES = 1024 * 1024;
+    
+    private final ScanQuery query;
+    private final int threads;
+    
+    /**
+     * Constructor.
+     * @param query The query.
+     * @param threads The number of chunks scanned at once.
+     */
+    public QueryRunner(ScanQuery query, int threads) {
+        this.query = query;
+        this.threads = Math.max(1, threads);
+    }
+    
+    /**
+     * Creates a runner that scans {@code query.threads} chunks at once, by default one per
+     * processor.
+     * @param query The query.
+     * @return The runner.
+     */
+    public static QueryRunner fromConfig(ScanQuery query) {
+        int threads = ConfigManager.getAsInteger("query.threads", 0);
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        return new QueryRunner(query, threads);
+    }
+    
+    /**
+     * Finds the record files under a path.
+     * @param path An NDJSON or JSON file, or a directory searched recursively.
+     * @return The files, sorted by path.
+     */
+    public static List<File> findInputs(File path) {
+        List<File> inputs = new ArrayList<>();
+        if (path.isDirectory()) {
+            File[] children = path.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    inputs.addAll(findInputs(child));
+                }
+            }
+        } else if (isLines(path) || path.getName().endsWith(".json")) {
+            inputs.add(path);
+        }
+        return inputs;
+    }
+    
+    /**
+     * Scans files and writes the matching records.
+     * @param inputs The NDJSON and JSON files.
+     * @param out The destination for the matches, or null to only count them.
+     * @return The counts of the scan.
+     * @throws IOException if a file cannot be read or the output cannot be written.
+     * @throws InterruptedException if interrupted while waiting for the scan.
+     */
+    public Summary run(List<File> inputs, OutputStream out) throws IOException, InterruptedException {
+        List<Callable<Summary>> tasks = new ArrayList<>();
+        List<ByteArrayOutputStream> outputs = new ArrayList<>();
+        List<File> jsonFiles = new ArrayList<>();
+        for (File input : inputs) {
+            if (isLines(input)) {
+                for (long[] chunk : split(input)) {
+                    ByteArrayOutputStream output = out != null ? new ByteArrayOutputStream() : null;
+                    outputs.add(output);
+                    tasks.add(() -> scanLines(input, chunk[0], chunk[1], output));
+                }
+            } else {
+                jsonFiles.add(input);
+            }
+        }
+        for (int i = 0; i < jsonFiles.size(); i += FILES_PER_TASK) {
+            List<File> group = jsonFiles.subList(i, Math.min(jsonFiles.size(), i + FILES_PER_TASK));
+            ByteArrayOutputStream output = out != null ? new ByteArrayOutputStream() : null;
+            outputs.add(output);
+            tasks.add(() -> scanFiles(group, output));
+        }
+        
+        Summary total = new Summary();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // Tasks are submitted a few at a time ahead of the one being written, so the
+            // buffered output of finished tasks stays bounded
+            List<Future<Summary>> futures = new ArrayList<>();
+            int window = threads * 2;
+            for (int i = 0; i < Math.min(window, tasks.size()); i++) {
+                futures.add(executor.submit(tasks.get(i)));
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                try {
+                    total.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException(e.getCause());
+                }
+                if (i + window < tasks.size()) {
+                    futures.add(executor.submit(tasks.get(i + window)));
+                }
+                if (out != null) {
+                    // Written in task order, so the output follows the input order
+                    outputs.get(i).writeTo(out);
+                    outputs.set(i, null);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        if (out != null) {
+            out.flush();
+        }
+        return total;
+    }
+    
+    /**
+     * Splits an NDJSON file into chunks that start and end at line boundaries.
+     * @return The start and end offsets of each chunk.
+     */
+    private List<long[]> split(File file) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            // Several chunks per thread, so an uneven chunk does not leave cores idle
+            long target = Math.min(CHUNK_BYTES, Math.max(MIN_CHUNK_BYTES, size / (threads * 4L)));
+            ByteBuffer probe = ByteBuffer.allocate(64 * 1024);
+            long start = 0;
+            while (start < size) {
+                long end = start + target >= size ? size : lineEnd(channel, start + target, size, probe);
+                if (end - start > Integer.MAX_VALUE) {
+                    throw new IOException("Line too long to map in " + file);
+                }
+                chunks.add(new long[] {start, end});
+                start = end;
+            }
+        }
+        return chunks;
+    }
+    
+    /**
+     * Finds the offset just past the first line break at or after a position.
+     */
+    private static long lineEnd(FileChannel channel, long from, long size, ByteBuffer probe)
+            throws IOException {
+        long position = from;
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+    
+    private Summary scanLines(File file, long start, long end, ByteArrayOutputStream output)
+            throws IOException {
+        Summary summary = new Summary();
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        }
+        RecordMatcher matcher = new RecordMatcher(query);
+        Writer writer = output != null ? new OutputStreamWriter(output, StandardCharsets.UTF_8) : null;
+        // The mapping is copied through a window in bulk; scanning a heap array byte by byte
+        // is several times faster than reading the mapping one byte at a time
+        byte[] window = new byte[WINDOW_BYTES];
+        int filled = 0;
+        while (true) {
+            if (filled == window.length) {
+                // A line longer than the window
+                window = Arrays.copyOf(window, window.length * 2);
+            }
+            // The bytes carried over from the last window hold no line break
+            int carried = filled;
+            int read = Math.min(window.length - filled, mapped.remaining());
+            mapped.get(window, filled, read);
+            filled += read;
+            boolean last = !mapped.hasRemaining();
+            
+            int lineStart = 0;
+            for (int i = carried; i < filled; i++) {
+                if (window[i] == '\n') {
+                    scanLine(matcher, window, lineStart, i, writer, summary);
+                    lineStart = i + 1;
+                }
+            }
+            if (last && lineStart < filled) {
+                scanLine(matcher, window, lineStart, filled, writer, summary);
+                lineStart = filled;
+            }
+            System.arraycopy(window, lineStart, window, 0, filled - lineStart);
+            filled -= lineStart;
+            if (last) {
+                break;
+            }
+        }
+        summary.bytes = end - start;
+        if (writer != null) {
+            writer.flush();
+        }
+        return summary;
+    }
+    
+    private void scanLine(RecordMatcher matcher, byte[] bytes, int start, int end, Writer writer,
+            Summary summary) throws IOException {
+        while (end > start && isWhitespace(bytes[end - 1])) {
+            end--;
+        }
+        if (end > start) {
+            scan(matcher, bytes, start, end, writer, true, summary);
+        }
+    }
+    
+    private Summary scanFiles(List<File> files, ByteArrayOutputStream output) throws IOException {
+        Summary summary = new Summary();
+        RecordMatcher matcher = new RecordMatcher(query);
+        Writer writer = output != null ? new OutputStreamWriter(output, StandardCharsets.UTF_8) : null;
+        byte[] bytes = new byte[WINDOW_BYTES];
+        for (File file : files) {
+            MappedByteBuffer mapped;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("File too large to map: " + file);
+                }
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            int length = mapped.limit();
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            mapped.get(bytes, 0, length);
+            scan(matcher, bytes, 0, length, writer, false, summary);
+            summary.bytes += length;
+        }
+        if (writer != null) {
+            writer.flush();
+        }
+        return summary;
+    }
+    
+    private void scan(RecordMatcher matcher, byte[] bytes, int start, int end, Writer writer,
+            boolean compact, Summary summary) throws IOException {
+        summary.records++;
+        try {
+            if (!matcher.match(bytes, start, end)) {
+                return;
+            }
+        } catch (IOException e) {
+            summary.malformed++;
+            return;
+        }
+        summary.matched++;
+        if (writer == null) {
+            return;
+        }
+        if (query.hasProjection()) {
+            writeProjection(matcher, writer);
+        } else {
+            String record = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+            // Per-patient files are indented; matches are re-serialized onto one line
+            writer.write(compact ? record : JsonParser.parseString(record).toString());
+        }
+        writer.write('\n');
+    }
+    
+    private void writeProjection(RecordMatcher matcher, Writer writer) throws IOException {
+        JsonWriter out = new JsonWriter(writer);
+        out.beginObject();
+        List<String> selected = query.getSelected();
+        for (int i = 0; i < selected.size(); i++) {
+            out.name(selected.get(i));
+            List<String> values = matcher.getProjected(i);
+            if (values.isEmpty()) {
+                out.nullValue();
+            } else if (values.size() == 1) {
+                out.jsonValue(compact(values.get(0)));
+            } else {
+                out.beginArray();
+                for (String value : values) {
+                    out.jsonValue(compact(value));
+                }
+                out.endArray();
+            }
+        }
+        out.endObject();
+        out.flush();
+    }
+    
+    private static String compact(String json) {
+        char first = json.charAt(0);
+        return first == '{' || first == '[' ? JsonParser.parseString(json).toString() : json;
+    }
+    
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\r' || b == '\t';
+    }
+    
+    private static boolean isLines(File file) {
+        return file.getName().endsWith(".ndjson") || file.getName().endsWith(".jsonl");
+    }
+    
+    /**
+     * The counts of a scan.
+     */
+    public static class Summary {
+        private long records;
+        private long matched;
+        private long malformed;
+        private long bytes;
+        
+        private void add(Summary other) {
+            records += other.records;
+            matched += other.matched;
+            malformed += other.malformed;
+            bytes += other.bytes;
+        }
+        
+        // Getters
+        
+        public long getRecords() {
+            return records;
+        }
+        
+        public long getMatched() {
+            return matched;
+        }
+        
+        public long getMalformed() {
+            return malformed;
+        }
+        
+        public long getBytes() {
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.healthcaremock.generator.query;
+
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Evaluates a {@link ScanQuery} against JSON records in raw UTF-8 bytes, without parsing them.
+ *
+ * <p>The matcher walks a record once, following the query's path tree. Values under keys no
+ * path leads into are skipped by matching brackets and quotes only; strings are decoded just
+ * where a predicate or projection needs them. When the query has no projection, the walk
+ * stops at the first top-level key after which every clause holds. A matcher is used by one
+ * thread at a time.
+ */
+final class RecordMatcher {
+    // Non-zero for the bytes that open or close strings, objects and arrays
+    private static final byte[] STRUCTURAL = new byte[256];
+    
+    static {
+        for (char c : new char[] {'"', '{', '}', '[', ']'}) {
+            STRUCTURAL[c] = 1;
+        }
+    }
+    
+    private final ScanQuery query;
+    private final Scope root;
+    private final boolean stopEarly;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    
+    /**
+     * Constructor.
+     * @param query The query.
+     */
+    RecordMatcher(ScanQuery query) {
+        this.query = query;
+        this.root = new Scope(query);
+        this.stopEarly = !query.hasProjection();
+    }
+    
+    /**
+     * Tests one record.
+     * @param buffer The bytes holding the record.
+     * @param start The offset of the record.
+     * @param end The offset just past the record.
+     * @return Whether every clause holds.
+     * @throws IOException if the record is not a JSON object.
+     */
+    boolean match(byte[] buffer, int start, int end) throws IOException {
+        this.buffer = buffer;
+        this.position = start;
+        this.limit = end;
+        root.clear();
+        if (peek() != '{') {
+            throw new IOException("Record is not a JSON object at byte " + position);
+        }
+        walkObject(query.getRoot(), root, true);
+        return root.matches();
+    }
+    
+    /**
+     * Gets the values projected from the last record matched.
+     * @param index The index of the projected path.
+     * @return The values as JSON text, in record order.
+     */
+    List<String> getProjected(int index) {
+        return root.values(index);
+    }
+    
+    private void walk(ScanQuery.Node node, Scope scope) throws IOException {
+        if (peek() != '[') {
+            walkValue(node, scope);
+            return;
+        }
+        // Arrays are searched: the node applies to each element
+        position++;
+        if (peek() == ']') {
+            position++;
+            return;
+        }
+        do {
+            walk(node, scope);
+        } while (next(',', ']') == ',');
+    }
+    
+    private void walkValue(ScanQuery.Node node, Scope scope) throws IOException {
+        // A filtered node collects its results apart and keeps them only if the filter holds
+        Scope target = node.filter != null ? new Scope(query) : scope;
+        int c = peek();
+        int start = position;
+        if (c == '{') {
+            if (node.children.isEmpty()) {
+                skipValue();
+            } else {
+                walkObject(node, target, false);
+            }
+        } else if (c == '"') {
+            if (node.predicates.isEmpty()) {
+                skipString();
+            } else {
+                test(node, target, ScanQuery.Predicate.STRING, readString());
+            }
+        } else {
+            skipScalar();
+            if (!node.predicates.isEmpty()) {
+                String text = decode(start, position);
+                test(node, target, c == '-' || (c >= '0' && c <= '9')
+                        ? ScanQuery.Predicate.NUMBER : ScanQuery.Predicate.KEYWORD, text);
+            }
+        }
+        for (int index : node.projections) {
+            target.project(index, decode(start, position));
+        }
+        if (target != scope && target.satisfied[node.filter.id]) {
+            scope.merge(target);
+        }
+    }
+    
+    private void walkObject(ScanQuery.Node node, Scope scope, boolean top) throws IOException {
+        position++;
+        if (peek() == '}') {
+            position++;
+            return;
+        }
+        do {
+            expect('"');
+            int keyStart = position;
+            boolean escaped = skipStringBody();
+            int keyEnd = position - 1;
+            expect(':');
+            skipWhitespace();
+            int valueStart = position;
+            boolean walked = false;
+            for (ScanQuery.Node child : node.children) {
+                if (keyMatches(child, keyStart, keyEnd, escaped)) {
+                    // Several filters may apply to the same key; each walks the value again
+                    position = valueStart;
+                    walk(child, scope);
+                    walked = true;
+                }
+            }
+            if (!walked) {
+                skipValue();
+            }
+            if (top && stopEarly && scope.matches()) {
+                return;
+            }
+        } while (next(',', '}') == ',');
+    }
+    
+    private void test(ScanQuery.Node node, Scope scope, int kind, String text) {
+        for (ScanQuery.Predicate predicate : node.predicates) {
+            if (!scope.satisfied[predicate.id] && predicate.test(kind, text)) {
+                scope.satisfied[predicate.id] = true;
+            }
+        }
+    }
+    
+    private boolean keyMatches(ScanQuery.Node child, int start, int end, boolean escaped) {
+        if (escaped) {
+            return child.name.equals(JsonParser.parseString(decode(start - 1, end + 1)).getAsString());
+        }
+        byte[] name = child.nameBytes;
+        if (name.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (buffer[start + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private void skipValue() throws IOException {
+        int c = peek();
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            skipContainer();
+        } else {
+            skipScalar();
+        }
+    }
+    
+    /**
+     * Skips an object or array. Most of a record is skipped here, so the loop works on locals
+     * and only looks closer at the few byte values that matter.
+     */
+    private void skipContainer() throws IOException {
+        byte[] bytes = buffer;
+        int end = limit;
+        int p = position;
+        int depth = 0;
+        while (p < end) {
+            byte b = bytes[p++];
+            if (STRUCTURAL[b & 0xFF] == 0) {
+                continue;
+            }
+            if (b == '"') {
+                while (p < end) {
+                    byte s = bytes[p++];
+                    if (s == '"') {
+                        break;
+                    } else if (s == '\\') {
+                        p++;
+                    }
+                }
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (--depth == 0) {
+                position = p;
+                return;
+            }
+        }
+        position = end;
+        throw new IOException("Unexpected end of record");
+    }
+    
+    private void skipScalar() {
+        while (position < limit) {
+            byte b = buffer[position];
+            if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                return;
+            }
+            position++;
+        }
+    }
+    
+    private String readString() throws IOException {
+        int start = position;
+        expect('"');
+        boolean escaped = skipStringBody();
+        String raw = decode(start, position);
+        return escaped ? JsonParser.parseString(raw).getAsString() : raw.substring(1, raw.length() - 1);
+    }
+    
+    private void skipString() throws IOException {
+        expect('"');
+        skipStringBody();
+    }
+    
+    /**
+     * Skips to just past the closing quote of a string whose opening quote has been read.
+     * @return Whether the string contains escapes.
+     */
+    private boolean skipStringBody() throws IOException {
+        boolean escaped = false;
+        while (true) {
+            byte b = byteAt(position++);
+            if (b == '"') {
+                return escaped;
+            } else if (b == '\\') {
+                escaped = true;
+                position++;
+            }
+        }
+    }
+    
+    private String decode(int start, int end) {
+        return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+    }
+    
+    private void expect(char expected) throws IOException {
+        if (peek() != expected) {
+            throw new IOException("Expected '" + expected + "' at byte " + position);
+        }
+        position++;
+    }
+    
+    private int next(char first, char second) throws IOException {
+        int c = peek();
+        if (c != first && c != second) {
+            throw new IOException("Expected '" + first + "' or '" + second + "' at byte " + position);
+        }
+        position++;
+        return c;
+    }
+    
+    private int peek() throws IOException {
+        skipWhitespace();
+        return byteAt(position);
+    }
+    
+    private void skipWhitespace() {
+        while (position < limit) {
+            byte b = buffer[position];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return;
+            }
+            position++;
+        }
+    }
+    
+    private byte byteAt(int index) throws IOException {
+        if (index >= limit) {
+            throw new IOException("Unexpected end of record");
+        }
+        return buffer[index];
+    }
+    
+    /**
+     * The predicates satisfied and the values projected within a record, or within one
+     * element of a filtered path.
+     */
+    private static final class Scope {
+        private final ScanQuery query;
+        private final boolean[] satisfied;
+        private List<List<String>> values;
+        
+        Scope(ScanQuery query) {
+            this.query = query;
+            this.satisfied = new boolean[query.getPredicateCount()];
+        }
+        
+        void clear() {
+            Arrays.fill(satisfied, false);
+            if (values != null) {
+                for (List<String> list : values) {
+                    list.clear();
+                }
+            }
+        }
+        
+        boolean matches() {
+            for (ScanQuery.Predicate clause : query.getClauses()) {
+                if (!satisfied[clause.id]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        void project(int index, String value) {
+            if (values == null) {
+                values = new ArrayList<>();
+                for (int i = 0; i < query.getSelected().size(); i++) {
+                    values.add(new ArrayList<>());
+                }
+            }
+            values.get(index).add(value);
+        }
+        
+        List<String> values(int index) {
+            return values != null ? values.get(index) : new ArrayList<>();
+        }
+        
+        void merge(Scope other) {
+            for (int i = 0; i < satisfied.length; i++) {
+                satisfied[i] |= other.satisfied[i];
+            }
+            if (other.values != null) {
+                for (int i = 0; i < other.values.size(); i++) {
+                    for (String value : other.values.get(i)) {
+                        project(i, value);
+                    }
+                }
+            }
+        }
+    }
+}
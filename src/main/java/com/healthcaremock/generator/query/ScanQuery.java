@@ -0,0 +1,364 @@
+package com.healthcaremock.generator.query;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A filter and projection over exported patient records, parsed from a small text syntax.
+ *
+ * <p>The filter is a list of clauses joined by {@code and}. A clause compares the values at
+ * a dotted path with a literal using {@code =}, {@code !=}, {@code <}, {@code <=}, {@code >}
+ * or {@code >=}. Arrays along a path are searched, so a clause holds if any value at the path
+ * satisfies it. A path segment may restrict array elements with a condition on one of their
+ * fields in brackets:
+ *
+ * <pre>
+ * extendedData.patientReportedOutcomes[instrumentType=PHQ-9].totalScore &gt;= 15
+ *     and extendedData.socialDeterminants.factors.food_insecurity = true
+ * </pre>
+ *
+ * <p>Literals are numbers, {@code true}, {@code false}, {@code null}, or strings, which may be
+ * quoted. Numbers compare numerically with numbers, strings compare lexicographically, so
+ * ISO dates can be compared as well. The projection is a comma-separated list of paths in the
+ * same syntax.
+ *
+ * <p>All paths are compiled into one tree, so {@link RecordMatcher} evaluates every clause and
+ * projection in a single pass over a record and skips every branch no path leads into.
+ */
+public class ScanQuery {
+    private static final String[] OPERATORS = {"<=", ">=", "!=", "=", "<", ">"};
+    
+    private final Node root = new Node(null, null, null);
+    private final List<Predicate> clauses = new ArrayList<>();
+    private final List<String> selected = new ArrayList<>();
+    private int predicates;
+    
+    private ScanQuery() {
+    }
+    
+    /**
+     * Parses a query.
+     * @param where The filter, or null or empty to match every record.
+     * @param select The comma-separated paths to project, or null or empty for whole records.
+     * @return The query.
+     * @throws IllegalArgumentException if the filter or projection is malformed.
+     */
+    public static ScanQuery parse(String where, String select) {
+        ScanQuery query = new ScanQuery();
+        if (where != null && !where.trim().isEmpty()) {
+            Parser parser = new Parser(where);
+            do {
+                Node node = query.path(parser);
+                Predicate clause = query.predicate(parser);
+                query.register(clause);
+                node.predicates.add(clause);
+                query.clauses.add(clause);
+            } while (parser.keyword("and") || parser.keyword("&&"));
+            parser.end();
+        }
+        if (select != null) {
+            for (String path : select.split(",")) {
+                if (path.trim().isEmpty()) {
+                    continue;
+                }
+                Parser parser = new Parser(path);
+                Node node = query.path(parser);
+                parser.end();
+                node.projections.add(query.selected.size());
+                query.selected.add(path.trim());
+            }
+        }
+        return query;
+    }
+    
+    private Node path(Parser parser) {
+        Node node = root;
+        do {
+            String name = parser.name();
+            String filterField = null;
+            Predicate filter = null;
+            if (parser.accept('[')) {
+                filterField = parser.name();
+                filter = predicate(parser);
+                parser.expect(']');
+            }
+            Node child = node.child(name, filterField, filter);
+            if (child == null) {
+                child = new Node(name, filterField, filter);
+                node.children.add(child);
+                if (filter != null) {
+                    // The condition is tested on the element's own field, within the element
+                    register(filter);
+                    Node field = new Node(filterField, null, null);
+                    field.predicates.add(filter);
+                    child.children.add(field);
+                }
+            }
+            node = child;
+        } while (parser.accept('.'));
+        return node;
+    }
+    
+    private Predicate predicate(Parser parser) {
+        String operator = parser.operator();
+        boolean quoted = parser.peekQuote();
+        String literal = parser.literal();
+        return new Predicate(operator, literal, quoted);
+    }
+    
+    private void register(Predicate predicate) {
+        predicate.id = predicates++;
+    }
+    
+    /**
+     * Gets the projected paths.
+     * @return The paths, in output order; empty if whole records are returned.
+     */
+    public List<String> getSelected() {
+        return Collections.unmodifiableList(selected);
+    }
+    
+    boolean hasProjection() {
+        return !selected.isEmpty();
+    }
+    
+    Node getRoot() {
+        return root;
+    }
+    
+    List<Predicate> getClauses() {
+        return clauses;
+    }
+    
+    int getPredicateCount() {
+        return predicates;
+    }
+    
+    /**
+     * A node of the compiled path tree: an object key, with the predicates and projections
+     * that apply to the values found there.
+     */
+    static final class Node {
+        final String name;
+        final byte[] nameBytes;
+        final String filterField;
+        final Predicate filter;
+        final List<Node> children = new ArrayList<>();
+        final List<Predicate> predicates = new ArrayList<>();
+        final List<Integer> projections = new ArrayList<>();
+        
+        Node(String name, String filterField, Predicate filter) {
+            this.name = name;
+            this.nameBytes = name != null ? name.getBytes(StandardCharsets.UTF_8) : null;
+            this.filterField = filterField;
+            this.filter = filter;
+        }
+        
+        /**
+         * Finds the child for a key and element filter.
+         * @return The child, or null if there is none.
+         */
+        Node child(String childName, String childFilterField, Predicate childFilter) {
+            for (Node child : children) {
+                if (!child.name.equals(childName)) {
+                    continue;
+                }
+                if (child.filter == null ? childFilter == null
+                        : child.filterField.equals(childFilterField) && child.filter.sameCondition(childFilter)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * A comparison of a value with a literal.
+     */
+    static final class Predicate {
+        static final int STRING = 0;
+        static final int NUMBER = 1;
+        static final int KEYWORD = 2;
+        
+        int id;
+        private final String operator;
+        private final String literal;
+        private final double number;
+        
+        Predicate(String operator, String literal, boolean quoted) {
+            this.operator = operator;
+            this.literal = literal;
+            double parsed = Double.NaN;
+            if (!quoted) {
+                try {
+                    parsed = Double.parseDouble(literal);
+                } catch (NumberFormatException e) {
+                    // Compared as a string
+                }
+            }
+            this.number = parsed;
+        }
+        
+        /**
+         * Tests a value.
+         * @param kind The JSON kind of the value: {@link #STRING}, {@link #NUMBER} or
+         *             {@link #KEYWORD} (true, false or null).
+         * @param text The string's content, or the number or keyword as written.
+         * @return Whether the value satisfies the predicate.
+         */
+        boolean test(int kind, String text) {
+            switch (operator) {
+                case "=":
+                    return matches(kind, text);
+                case "!=":
+                    return !matches(kind, text);
+                default:
+                    break;
+            }
+            int comparison;
+            if (kind == NUMBER && !Double.isNaN(number)) {
+                comparison = Double.compare(Double.parseDouble(text), number);
+            } else if (kind == STRING && Double.isNaN(number)) {
+                comparison = text.compareTo(literal);
+            } else {
+                return false;
+            }
+            switch (operator) {
+                case "<":
+                    return comparison < 0;
+                case "<=":
+                    return comparison <= 0;
+                case ">":
+                    return comparison > 0;
+                default:
+                    return comparison >= 0;
+            }
+        }
+        
+        private boolean matches(int kind, String text) {
+            if (kind == NUMBER && !Double.isNaN(number)) {
+                return Double.parseDouble(text) == number;
+            }
+            return text.equals(literal);
+        }
+        
+        boolean sameCondition(Predicate other) {
+            return other != null && operator.equals(other.operator) && literal.equals(other.literal)
+                    && Double.compare(number, other.number) == 0;
+        }
+    }
+    
+    /**
+     * A cursor over the query text.
+     */
+    private static final class Parser {
+        private final String text;
+        private int position;
+        
+        Parser(String text) {
+            this.text = text;
+        }
+        
+        String name() {
+            skipWhitespace();
+            int start = position;
+            while (position < text.length() && isNameChar(text.charAt(position))) {
+                position++;
+            }
+            if (position == start) {
+                throw error("Expected a field name");
+            }
+            return text.substring(start, position);
+        }
+        
+        String operator() {
+            skipWhitespace();
+            for (String operator : OPERATORS) {
+                if (text.startsWith(operator, position)) {
+                    position += operator.length();
+                    return operator;
+                }
+            }
+            throw error("Expected a comparison");
+        }
+        
+        boolean peekQuote() {
+            skipWhitespace();
+            return position < text.length()
+                    && (text.charAt(position) == '"' || text.charAt(position) == '\'');
+        }
+        
+        String literal() {
+            skipWhitespace();
+            if (peekQuote()) {
+                char quote = text.charAt(position++);
+                int end = text.indexOf(quote, position);
+                if (end < 0) {
+                    throw error("Unterminated string");
+                }
+                String value = text.substring(position, end);
+                position = end + 1;
+                return value;
+            }
+            int start = position;
+            while (position < text.length() && !Character.isWhitespace(text.charAt(position))
+                    && text.charAt(position) != ']') {
+                position++;
+            }
+            if (position == start) {
+                throw error("Expected a value");
+            }
+            return text.substring(start, position);
+        }
+        
+        boolean accept(char c) {
+            skipWhitespace();
+            if (position < text.length() && text.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+        
+        void expect(char c) {
+            if (!accept(c)) {
+                throw error("Expected '" + c + "'");
+            }
+        }
+        
+        boolean keyword(String keyword) {
+            skipWhitespace();
+            if (text.regionMatches(true, position, keyword, 0, keyword.length())
+                    && (position + keyword.length() == text.length()
+                        || Character.isWhitespace(text.charAt(position + keyword.length())))) {
+                position += keyword.length();
+                return true;
+            }
+            return false;
+        }
+        
+        void end() {
+            skipWhitespace();
+            if (position < text.length()) {
+                throw error("Unexpected text");
+            }
+        }
+        
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+        
+        private static boolean isNameChar(char c) {
+            return !Character.isWhitespace(c) && c != '.' && c != '[' && c != ']'
+                    && c != '=' && c != '!' && c != '<' && c != '>' && c != ',';
+        }
+        
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + position + " in: " + text);
+        }
+    }
+}
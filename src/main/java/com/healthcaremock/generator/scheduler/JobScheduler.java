@@ -0,0 +1,308 @@
+package com.healthcaremock.generator.scheduler;
+
+import com.healthcaremock.generator.EnhancedPatientData;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Multiplexes concurrent generation jobs onto one shared pool of worker threads.
+ *
+ * <p>Jobs are scheduled one patient at a time using stride scheduling: each job advances
+ * a virtual "pass" by 1/weight per patient handed out, and free workers always take from
+ * the job with the lowest pass. An interactive job therefore receives most free slots as
+ * soon as it arrives, while a large batch job keeps running with whatever remains. A job
+ * whose submitter falls behind stops receiving workers until its results are taken.
+ */
+public class JobScheduler {
+    // Number of finished jobs kept for status queries
+    private static final int RETAINED_JOBS = 256;
+    // Results buffered per job for each worker thread, unless set explicitly
+    private static final int RESULTS_PER_WORKER = 4;
+    
+    private final List<Thread> workers;
+    private final List<ScheduledJob> active;
+    private final Map<Long, ScheduledJob> jobs;
+    private final ReentrantLock lock;
+    private final Condition workAvailable;
+    private final ScheduledExecutorService watchdog;
+    private final AtomicLong jobCounter;
+    private final int resultCapacity;
+    private volatile boolean running;
+    
+    /**
+     * Generates one patient of a job.
+     */
+    public interface PatientTask {
+        /**
+         * Generates the patient at the given index.
+         * @param index The patient index within the job.
+         * @param attempt The attempt number; retries after a failure or timeout start at 1
+         *     and should use a different seed.
+         * @return The patient, or null if none was produced.
+         * @throws Exception if generation fails.
+         */
+        EnhancedPatientData generate(int index, int attempt) throws Exception;
+        
+        /**
+         * Called on the worker thread that generated a patient once the job has kept it.
+         * Attempts that expired, were cancelled or failed are never passed here, so this is
+         * the place to count a patient exactly once.
+         * @param patient The kept patient.
+         */
+        default void accepted(EnhancedPatientData patient) {
+        }
+    }
+    
+    /**
+     * Creates a scheduler and starts its workers.
+     * @param threadCount The number of shared worker threads.
+     */
+    public JobScheduler(int threadCount) {
+        this(threadCount, threadCount * RESULTS_PER_WORKER);
+    }
+    
+    /**
+     * Creates a scheduler and starts its workers.
+     * @param threadCount The number of shared worker threads.
+     * @param resultCapacity The number of patients a job may buffer or have in flight before
+     *     it waits for its submitter to take them.
+     */
+    public JobScheduler(int threadCount, int resultCapacity) {
+        this.resultCapacity = Math.max(1, resultCapacity);
+        this.active = new ArrayList<>();
+        this.jobs = new LinkedHashMap<>();
+        this.lock = new ReentrantLock();
+        this.workAvailable = lock.newCondition();
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "job-deadline-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.jobCounter = new AtomicLong();
+        this.running = true;
+        this.workers = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread worker = new Thread(this::workLoop, "generation-worker-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+    
+    /**
+     * Submits a job.
+     * @param name A descriptive name for status reports.
+     * @param count The number of patients to generate.
+     * @param priority The job priority.
+     * @param patientDeadlineMillis The time budget per patient attempt, or 0 for none.
+     * @param maxAttempts The number of attempts per patient before it counts as lost.
+     * @param task Generates a single patient.
+     * @return The scheduled job.
+     */
+    public ScheduledJob submit(String name, int count, Priority priority,
+            long patientDeadlineMillis, int maxAttempts, PatientTask task) {
+        ScheduledJob job = new ScheduledJob(jobCounter.incrementAndGet(), name, priority, count,
+                patientDeadlineMillis, Math.max(1, maxAttempts), task, resultCapacity,
+                this::signalWork);
+        lock.lock();
+        try {
+            // Join at the current minimum pass so that the new job neither starves
+            // nor is starved by jobs that have been running for a while
+            double minPass = Double.MAX_VALUE;
+            for (ScheduledJob other : active) {
+                minPass = Math.min(minPass, other.pass);
+            }
+            job.pass = active.isEmpty() ? 0 : minPass;
+            active.add(job);
+            jobs.put(job.getId(), job);
+            pruneFinishedJobs();
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        return job;
+    }
+    
+    /**
+     * Cancels a job. Patients already generated remain available to the submitter.
+     * @param jobId The job ID.
+     * @return true if the job was found and still active.
+     */
+    public boolean cancel(long jobId) {
+        ScheduledJob job = getJob(jobId);
+        return job != null && job.cancel();
+    }
+    
+    /**
+     * Gets the progress of a job.
+     * @param jobId The job ID.
+     * @return The status, or null if the job is unknown.
+     */
+    public JobStatus getStatus(long jobId) {
+        ScheduledJob job = getJob(jobId);
+        return job != null ? job.getStatus() : null;
+    }
+    
+    /**
+     * Gets the progress of all active and recently finished jobs.
+     * @return The statuses in submission order.
+     */
+    public List<JobStatus> getStatuses() {
+        List<JobStatus> statuses = new ArrayList<>();
+        lock.lock();
+        try {
+            for (ScheduledJob job : jobs.values()) {
+                statuses.add(job.getStatus());
+            }
+        } finally {
+            lock.unlock();
+        }
+        return statuses;
+    }
+    
+    /**
+     * Gets the number of shared worker threads.
+     * @return The thread count.
+     */
+    public int getThreadCount() {
+        return workers.size();
+    }
+    
+    /**
+     * Cancels all jobs and stops the workers.
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            running = false;
+            for (ScheduledJob job : active) {
+                job.cancel();
+            }
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        watchdog.shutdownNow();
+    }
+    
+    private ScheduledJob getJob(long jobId) {
+        lock.lock();
+        try {
+            return jobs.get(jobId);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void workLoop() {
+        while (running) {
+            ScheduledJob job;
+            ScheduledJob.Claim claim;
+            lock.lock();
+            try {
+                job = nextJob();
+                while (job == null && running) {
+                    workAvailable.awaitUninterruptibly();
+                    job = nextJob();
+                }
+                if (job == null) {
+                    return;
+                }
+                claim = job.claim();
+                job.pass += 1.0 / job.getPriority().getWeight();
+            } finally {
+                lock.unlock();
+            }
+            if (claim != null) {
+                runPatient(job, claim);
+            }
+        }
+    }
+    
+    /**
+     * Picks the runnable job with the lowest pass, dropping finished jobs.
+     * Jobs with patients still running stay in the list because a failure or timeout may
+     * queue a retry. Must be called with the lock held.
+     */
+    private ScheduledJob nextJob() {
+        ScheduledJob best = null;
+        Iterator<ScheduledJob> iterator = active.iterator();
+        while (iterator.hasNext()) {
+            ScheduledJob job = iterator.next();
+            if (job.isDone()) {
+                iterator.remove();
+            } else if (job.hasPendingWork() && (best == null || job.pass < best.pass)) {
+                best = job;
+            }
+        }
+        return best;
+    }
+    
+    private void runPatient(ScheduledJob job, ScheduledJob.Claim claim) {
+        ScheduledFuture<?> deadline = null;
+        if (job.getPatientDeadlineMillis() > 0) {
+            deadline = watchdog.schedule(() -> {
+                if (job.expire(claim)) {
+                    signalWork();
+                }
+            }, job.getPatientDeadlineMillis(), TimeUnit.MILLISECONDS);
+        }
+        
+        EnhancedPatientData patient = null;
+        Throwable error = null;
+        try {
+            patient = job.getTask().generate(claim.index, claim.attempt);
+        } catch (Throwable t) {
+            error = t;
+        } finally {
+            if (deadline != null) {
+                deadline.cancel(false);
+            }
+        }
+        ScheduledJob.Outcome outcome = job.complete(claim, patient, error);
+        // Clear any interrupt aimed at the finished patient before taking more work
+        Thread.interrupted();
+        if (outcome == ScheduledJob.Outcome.ACCEPTED) {
+            try {
+                job.getTask().accepted(patient);
+            } catch (RuntimeException e) {
+                System.err.println("Error recording patient " + claim.index + ": " + e);
+            }
+        } else if (outcome == ScheduledJob.Outcome.RETRY) {
+            signalWork();
+        }
+    }
+    
+    private void signalWork() {
+        lock.lock();
+        try {
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Drops the oldest finished jobs beyond the retention limit.
+     * Must be called with the lock held.
+     */
+    private void pruneFinishedJobs() {
+        Iterator<ScheduledJob> iterator = jobs.values().iterator();
+        while (jobs.size() > RETAINED_JOBS && iterator.hasNext()) {
+            if (iterator.next().isDone()) {
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.healthcaremock.generator.scheduler;
+
+/**
+ * Point-in-time progress snapshot of a scheduled job.
+ */
+public class JobStatus {
+    /** Lifecycle states of a job. */
+    public enum State {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        CANCELLED
+    }
+    
+    private final long id;
+    private final String name;
+    private final Priority priority;
+    private final State state;
+    private final int requested;
+    private final int completed;
+    private final int retried;
+    private final int failed;
+    private final int timedOut;
+    private final int inFlight;
+    private final long elapsedMillis;
+    
+    /**
+     * Constructor.
+     * @param id The job ID.
+     * @param name The job name.
+     * @param priority The job priority.
+     * @param state The job state.
+     * @param requested The number of patients requested.
+     * @param completed The number of patients generated.
+     * @param retried The number of attempts retried with a new seed.
+     * @param failed The number of attempts that failed.
+     * @param timedOut The number of attempts that exceeded their deadline.
+     * @param inFlight The number of patients currently being generated.
+     * @param elapsedMillis The time since the job was submitted.
+     */
+    public JobStatus(long id, String name, Priority priority, State state, int requested,
+            int completed, int retried, int failed, int timedOut, int inFlight, long elapsedMillis) {
+        this.id = id;
+        this.name = name;
+        this.priority = priority;
+        this.state = state;
+        this.requested = requested;
+        this.completed = completed;
+        this.retried = retried;
+        this.failed = failed;
+        this.timedOut = timedOut;
+        this.inFlight = inFlight;
+        this.elapsedMillis = elapsedMillis;
+    }
+    
+    // Getters
+    
+    public long getId() {
+        return id;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public Priority getPriority() {
+        return priority;
+    }
+    
+    public State getState() {
+        return state;
+    }
+    
+    public int getRequested() {
+        return requested;
+    }
+    
+    public int getCompleted() {
+        return completed;
+    }
+    
+    public int getRetried() {
+        return retried;
+    }
+    
+    public int getFailed() {
+        return failed;
+    }
+    
+    public int getTimedOut() {
+        return timedOut;
+    }
+    
+    public int getInFlight() {
+        return inFlight;
+    }
+    
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+}
@@ -0,0 +1,25 @@
+package com.healthcaremock.generator.scheduler;
+
+/**
+ * Scheduling priority of a generation job. The weight is the job's relative share of
+ * worker slots while it competes with other jobs.
+ */
+public enum Priority {
+    INTERACTIVE(16),
+    NORMAL(4),
+    BATCH(1);
+    
+    private final int weight;
+    
+    Priority(int weight) {
+        this.weight = weight;
+    }
+    
+    /**
+     * Gets the fair-share weight of this priority.
+     * @return The weight.
+     */
+    public int getWeight() {
+        return weight;
+    }
+}
@@ -0,0 +1,264 @@
+package com.healthcaremock.generator.scheduler;
+
+import com.healthcaremock.generator.EnhancedPatientData;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A generation job submitted to a {@link JobScheduler}.
+ * Patients are handed out to shared workers one index at a time and collected in
+ * completion order; the submitter drains them with {@link #take()}.
+ *
+ * <p>An attempt that fails or overruns the patient deadline is retried with the next attempt
+ * number until {@code maxAttempts} is reached, so the job delivers its full population unless
+ * a patient fails repeatedly. A timed-out attempt is retried as soon as it expires; the
+ * straggling worker's eventual result is discarded.
+ *
+ * <p>Results wait in a bounded buffer. Once the buffered and in-flight patients fill it, no
+ * more attempts are handed out until the submitter takes some, so a slow consumer holds back
+ * its own job instead of letting results pile up in memory.
+ */
+public class ScheduledJob {
+    // Marks the end of the result stream
+    private static final Object END = new Object();
+    
+    private final long id;
+    private final String name;
+    private final Priority priority;
+    private final int requested;
+    private final long patientDeadlineMillis;
+    private final int maxAttempts;
+    private final JobScheduler.PatientTask task;
+    private final long submittedAt;
+    private final int resultCapacity;
+    private final BlockingQueue<Object> results;
+    private final Runnable onTaken;
+    
+    // Guarded by this
+    private final Map<Claim, Thread> running;
+    private final Set<Claim> expired;
+    private final Deque<Claim> retries;
+    private int nextIndex;
+    private int completed;
+    private int retried;
+    private int failed;
+    private int timedOut;
+    private boolean cancelled;
+    private boolean finished;
+    
+    // Guarded by the scheduler lock
+    double pass;
+    
+    /**
+     * What became of a completed attempt.
+     */
+    enum Outcome {
+        /** The patient was kept and handed to the submitter. */
+        ACCEPTED,
+        /** The attempt failed and a retry was queued. */
+        RETRY,
+        /** The result was discarded, or the patient failed for good. */
+        DROPPED
+    }
+    
+    /**
+     * One attempt at generating the patient at an index.
+     */
+    static final class Claim {
+        final int index;
+        final int attempt;
+        
+        Claim(int index, int attempt) {
+            this.index = index;
+            this.attempt = attempt;
+        }
+    }
+    
+    ScheduledJob(long id, String name, Priority priority, int requested,
+            long patientDeadlineMillis, int maxAttempts, JobScheduler.PatientTask task,
+            int resultCapacity, Runnable onTaken) {
+        this.id = id;
+        this.name = name;
+        this.priority = priority;
+        this.requested = requested;
+        this.patientDeadlineMillis = patientDeadlineMillis;
+        this.maxAttempts = maxAttempts;
+        this.task = task;
+        this.submittedAt = System.currentTimeMillis();
+        this.resultCapacity = resultCapacity;
+        // One extra slot for the end marker
+        this.results = new LinkedBlockingQueue<>(resultCapacity + 1);
+        this.onTaken = onTaken;
+        this.running = new HashMap<>();
+        this.expired = new HashSet<>();
+        this.retries = new ArrayDeque<>();
+    }
+    
+    /**
+     * Waits for the next generated patient.
+     * @return The next patient, or null once every patient has been generated,
+     *     has failed or the job was cancelled.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public EnhancedPatientData take() throws InterruptedException {
+        Object result = results.take();
+        if (result == END) {
+            // Leave the marker for any other waiting consumer
+            results.add(END);
+            return null;
+        }
+        // A slot is free again; the job may be runnable once more
+        onTaken.run();
+        return (EnhancedPatientData) result;
+    }
+    
+    /**
+     * Gets a progress snapshot of this job.
+     * @return The status.
+     */
+    public synchronized JobStatus getStatus() {
+        JobStatus.State state;
+        if (cancelled) {
+            state = JobStatus.State.CANCELLED;
+        } else if (finished) {
+            state = JobStatus.State.COMPLETED;
+        } else if (nextIndex == 0) {
+            state = JobStatus.State.QUEUED;
+        } else {
+            state = JobStatus.State.RUNNING;
+        }
+        return new JobStatus(id, name, priority, state, requested, completed, retried, failed,
+                timedOut, running.size() - expired.size(), System.currentTimeMillis() - submittedAt);
+    }
+    
+    public long getId() {
+        return id;
+    }
+    
+    public Priority getPriority() {
+        return priority;
+    }
+    
+    long getPatientDeadlineMillis() {
+        return patientDeadlineMillis;
+    }
+    
+    JobScheduler.PatientTask getTask() {
+        return task;
+    }
+    
+    /**
+     * Checks whether more attempts remain to be handed out and the result buffer has room
+     * for them.
+     */
+    synchronized boolean hasPendingWork() {
+        return !cancelled && (nextIndex < requested || !retries.isEmpty())
+                && results.size() + running.size() - expired.size() < resultCapacity;
+    }
+    
+    /**
+     * Claims the next attempt for the calling worker thread. Retries go first.
+     * @return The claim, or null if no work remains.
+     */
+    synchronized Claim claim() {
+        if (!hasPendingWork()) {
+            return null;
+        }
+        Claim claim = !retries.isEmpty() ? retries.poll() : new Claim(nextIndex++, 0);
+        running.put(claim, Thread.currentThread());
+        return claim;
+    }
+    
+    /**
+     * Abandons an attempt that is past its deadline, interrupts its worker and queues a retry.
+     * @return true if a retry was queued.
+     */
+    synchronized boolean expire(Claim claim) {
+        Thread worker = running.get(claim);
+        if (worker == null || !expired.add(claim)) {
+            return false;
+        }
+        worker.interrupt();
+        timedOut++;
+        boolean retry = retryOrGiveUp(claim);
+        finishIfDone();
+        return retry;
+    }
+    
+    /**
+     * Records the outcome of an attempt claimed with {@link #claim()}.
+     * @param claim The attempt.
+     * @param patient The patient, or null if generation failed or produced no one.
+     * @param error The failure, or null on success.
+     * @return Whether the patient was kept, a retry was queued or the result was dropped.
+     */
+    synchronized Outcome complete(Claim claim, EnhancedPatientData patient, Throwable error) {
+        running.remove(claim);
+        Outcome outcome = Outcome.DROPPED;
+        if (expired.remove(claim)) {
+            // Already counted and retried when it expired
+        } else if (cancelled) {
+            // Interrupted by the cancellation; the result is no longer wanted
+        } else if (error != null || patient == null) {
+            failed++;
+            if (retryOrGiveUp(claim)) {
+                outcome = Outcome.RETRY;
+            }
+        } else {
+            completed++;
+            results.add(patient);
+            outcome = Outcome.ACCEPTED;
+        }
+        finishIfDone();
+        return outcome;
+    }
+    
+    /**
+     * Cancels the job, interrupting any patients still being generated.
+     * @return true if the job was still active.
+     */
+    synchronized boolean cancel() {
+        if (cancelled || finished) {
+            return false;
+        }
+        cancelled = true;
+        retries.clear();
+        for (Thread worker : running.values()) {
+            worker.interrupt();
+        }
+        finishIfDone();
+        return true;
+    }
+    
+    synchronized boolean isDone() {
+        return finished;
+    }
+    
+    private boolean retryOrGiveUp(Claim claim) {
+        if (cancelled || claim.attempt + 1 >= maxAttempts) {
+            return false;
+        }
+        retries.add(new Claim(claim.index, claim.attempt + 1));
+        retried++;
+        return true;
+    }
+    
+    private void finishIfDone() {
+        if (finished) {
+            return;
+        }
+        boolean allHandedOut = cancelled || (nextIndex >= requested && retries.isEmpty());
+        // Expired attempts no longer count: their results are discarded when they return
+        if (allHandedOut && (cancelled || running.size() == expired.size())) {
+            finished = true;
+            results.add(END);
+        }
+    }
+}
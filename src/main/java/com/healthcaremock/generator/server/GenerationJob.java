@@ -0,0 +1,148 @@
+package com.healthcaremock.generator.server;
+
+import com.healthcaremock.generator.cohort.CohortSpec;
+import com.healthcaremock.generator.scheduler.Priority;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A generation request submitted to the daemon.
+ * Instances are deserialized from the JSON body of a job request.
+ */
+public class GenerationJob {
+    /** Output formats accepted by the daemon. */
+    public static final String FORMAT_NDJSON = "ndjson";
+    public static final String FORMAT_JSON = "json";
+    
+    private int population = 1;
+    private Long seed;
+    private CohortSpec cohort;
+    private String format = FORMAT_NDJSON;
+    private String outputPath;
+    private Priority priority = Priority.BATCH;
+    private long patientDeadlineMillis;
+    private int maxAttemptsPerPatient = 5;
+    private boolean async;
+    
+    /**
+     * Checks that the job is well formed.
+     * @param maxPopulation The largest population a job may request.
+     * @throws IllegalArgumentException if a field is invalid.
+     */
+    public void validate(int maxPopulation) {
+        if (population < 1) {
+            throw new IllegalArgumentException("population must be at least 1");
+        }
+        if (population > maxPopulation) {
+            throw new IllegalArgumentException("population must be at most " + maxPopulation);
+        }
+        if (!FORMAT_NDJSON.equals(format) && !FORMAT_JSON.equals(format)) {
+            throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+        if (patientDeadlineMillis < 0) {
+            throw new IllegalArgumentException("patientDeadlineMillis must not be negative");
+        }
+        if (maxAttemptsPerPatient < 1) {
+            throw new IllegalArgumentException("maxAttemptsPerPatient must be at least 1");
+        }
+        if (async && outputPath == null) {
+            throw new IllegalArgumentException("async jobs require an outputPath");
+        }
+    }
+    
+    /**
+     * Resolves the output path, which must lie within the output root. A relative path is
+     * resolved against the working directory, as on the command line.
+     * @param outputRoot The directory that jobs may write under.
+     * @return The output directory.
+     * @throws IllegalArgumentException if the path lies outside the output root.
+     */
+    public File resolveOutputDirectory(File outputRoot) {
+        try {
+            File root = outputRoot.getCanonicalFile();
+            // Canonical paths have no ".." segments or symbolic links left to escape through
+            File directory = new File(outputPath).getCanonicalFile();
+            if (!directory.toPath().startsWith(root.toPath())) {
+                throw new IllegalArgumentException("outputPath must be within " + root);
+            }
+            return directory;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid outputPath: " + outputPath, e);
+        }
+    }
+    
+    // Getters and setters
+    
+    public int getPopulation() {
+        return population;
+    }
+    
+    public void setPopulation(int population) {
+        this.population = population;
+    }
+    
+    public Long getSeed() {
+        return seed;
+    }
+    
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+    
+    public CohortSpec getCohort() {
+        return cohort != null ? cohort : new CohortSpec();
+    }
+    
+    public void setCohort(CohortSpec cohort) {
+        this.cohort = cohort;
+    }
+    
+    public String getFormat() {
+        return format;
+    }
+    
+    public void setFormat(String format) {
+        this.format = format;
+    }
+    
+    public String getOutputPath() {
+        return outputPath;
+    }
+    
+    public void setOutputPath(String outputPath) {
+        this.outputPath = outputPath;
+    }
+    
+    public Priority getPriority() {
+        return priority != null ? priority : Priority.BATCH;
+    }
+    
+    public void setPriority(Priority priority) {
+        this.priority = priority;
+    }
+    
+    public long getPatientDeadlineMillis() {
+        return patientDeadlineMillis;
+    }
+    
+    public void setPatientDeadlineMillis(long patientDeadlineMillis) {
+        this.patientDeadlineMillis = patientDeadlineMillis;
+    }
+    
+    public int getMaxAttemptsPerPatient() {
+        return maxAttemptsPerPatient;
+    }
+    
+    public void setMaxAttemptsPerPatient(int maxAttemptsPerPatient) {
+        this.maxAttemptsPerPatient = maxAttemptsPerPatient;
+    }
+    
+    public boolean isAsync() {
+        return async;
+    }
+    
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+}
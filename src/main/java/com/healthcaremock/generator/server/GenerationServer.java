@@ -0,0 +1,323 @@
+package com.healthcaremock.generator.server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonWriter;
+import com.healthcaremock.generator.EnhancedPatientData;
+import com.healthcaremock.generator.cohort.CohortSearch;
+import com.healthcaremock.generator.config.ConfigManager;
+import com.healthcaremock.generator.enrichment.EnrichmentPipeline;
+import com.healthcaremock.generator.export.PatientJsonExporter;
+import com.healthcaremock.generator.metrics.PipelineMetrics;
+import com.healthcaremock.generator.scheduler.JobStatus;
+import com.healthcaremock.generator.scheduler.ScheduledJob;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-lived generation daemon exposing a JSON job API on localhost.
+ *
+ * <p>Endpoints:
+ * <ul>
+ *   <li>{@code GET /health} - liveness and the number of warmed generators.</li>
+ *   <li>{@code POST /jobs} - runs a {@link GenerationJob}. Patients are streamed back as
+ *       NDJSON or a JSON array, or written to {@code outputPath} with a summary returned.
+ *       The job ID is returned in the {@code X-Job-Id} header.</li>
+ *   <li>{@code GET /jobs} and {@code GET /jobs/{id}} - progress of scheduled jobs.</li>
+ *   <li>{@code DELETE /jobs/{id}} - cancels a job.</li>
+ * </ul>
+ *
+ * <p>Jobs are limited to {@code server.max_population} patients and may only write under
+ * {@code server.output_root}. Requests carrying an {@code Origin} header from anywhere but
+ * the local host are refused, so web pages open in a browser cannot submit jobs.
+ */
+public class GenerationServer {
+    public static final int DEFAULT_PORT = 8085;
+    
+    private static final Gson GSON = new Gson();
+    
+    private final HttpServer httpServer;
+    private final ExecutorService requestExecutor;
+    private final GenerationService service;
+    private final int maxPopulation;
+    private final File outputRoot;
+    private PipelineMetrics metrics;
+    
+    private GenerationServer(HttpServer httpServer, GenerationService service, int maxPopulation,
+            File outputRoot) {
+        this.httpServer = httpServer;
+        this.service = service;
+        this.maxPopulation = maxPopulation;
+        this.outputRoot = outputRoot;
+        this.requestExecutor = Executors.newCachedThreadPool();
+        httpServer.setExecutor(requestExecutor);
+        httpServer.createContext("/health", localOnly(this::handleHealth));
+        httpServer.createContext("/jobs", localOnly(this::handleJobs));
+    }
+    
+    /**
+     * Loads configuration, warms a generator and starts serving on the loopback interface.
+     * @param port The port to listen on.
+     * @return The running server.
+     * @throws Exception if the server cannot start.
+     */
+    public static GenerationServer start(int port) throws Exception {
+        ConfigManager.initialize();
+        
+        GenerationService service = new GenerationService(EnrichmentPipeline.fromConfig(),
+                Runtime.getRuntime().availableProcessors(),
+                ConfigManager.getAsInteger("server.max_generators", 8));
+        System.out.println("Warming up generator...");
+        service.warmUp();
+        
+        HttpServer httpServer = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        GenerationServer server = new GenerationServer(httpServer, service,
+                ConfigManager.getAsInteger("server.max_population", 100000),
+                new File(ConfigManager.getAsString("server.output_root", "output")));
+        // Open-ended, so no ETA; started after warm-up so only served patients are counted
+        server.metrics = PipelineMetrics.fromConfig(0);
+        httpServer.start();
+        System.out.println("Generation daemon listening on http://localhost:" + port);
+        return server;
+    }
+    
+    /**
+     * Stops accepting requests and shuts down the worker pool.
+     */
+    public void stop() {
+        httpServer.stop(1);
+        requestExecutor.shutdown();
+        service.shutdown();
+        if (metrics != null) {
+            metrics.stop();
+        }
+    }
+    
+    /**
+     * Wraps a handler so that it refuses cross-origin requests from non-local pages.
+     * @param handler The handler.
+     * @return The guarded handler.
+     */
+    private static HttpHandler localOnly(HttpHandler handler) {
+        return exchange -> {
+            String origin = exchange.getRequestHeaders().getFirst("Origin");
+            if (origin != null && !isLocalOrigin(origin)) {
+                try {
+                    sendError(exchange, 403, "Cross-origin requests are not allowed");
+                } finally {
+                    exchange.close();
+                }
+                return;
+            }
+            handler.handle(exchange);
+        };
+    }
+    
+    /**
+     * Checks whether an Origin header names a page served from the local host.
+     * @param origin The header value, e.g. "http://localhost:3000".
+     * @return true for localhost and loopback addresses.
+     */
+    static boolean isLocalOrigin(String origin) {
+        String host;
+        try {
+            host = URI.create(origin).getHost();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (host == null) {
+            // Includes "null", sent by sandboxed frames and file:// pages
+            return false;
+        }
+        return host.equalsIgnoreCase("localhost") || host.equals("127.0.0.1")
+                || host.equals("[::1]");
+    }
+    
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        JsonObject body = new JsonObject();
+        body.addProperty("status", "ok");
+        body.addProperty("warmGenerators", service.getGeneratorCount());
+        sendJson(exchange, 200, body);
+    }
+    
+    private void handleJobs(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        if (path.equals("/jobs") || path.equals("/jobs/")) {
+            if ("POST".equals(method)) {
+                handleSubmit(exchange);
+            } else if ("GET".equals(method)) {
+                sendJson(exchange, 200, GSON.toJsonTree(service.getScheduler().getStatuses()));
+            } else {
+                sendError(exchange, 405, "Use POST to submit a job");
+            }
+            return;
+        }
+        
+        long jobId;
+        try {
+            jobId = Long.parseLong(path.substring("/jobs/".length()));
+        } catch (NumberFormatException e) {
+            sendError(exchange, 404, "Unknown job: " + path);
+            return;
+        }
+        
+        if ("DELETE".equals(method) && service.getScheduler().cancel(jobId)) {
+            sendJson(exchange, 200, GSON.toJsonTree(service.getScheduler().getStatus(jobId)));
+        } else if ("GET".equals(method) || "DELETE".equals(method)) {
+            JobStatus status = service.getScheduler().getStatus(jobId);
+            if (status == null) {
+                sendError(exchange, 404, "Unknown job: " + jobId);
+                return;
+            }
+            JsonObject body = GSON.toJsonTree(status).getAsJsonObject();
+            CohortSearch search = service.getCohortSearch(jobId);
+            if (search != null) {
+                body.addProperty("candidates", search.getCandidates());
+                body.addProperty("acceptanceRate", search.getAcceptanceRate());
+            }
+            sendJson(exchange, "DELETE".equals(method) ? 409 : 200, body);
+        } else {
+            sendError(exchange, 405, "Use GET to query or DELETE to cancel a job");
+        }
+    }
+    
+    private void handleSubmit(HttpExchange exchange) throws IOException {
+        GenerationJob job;
+        try (Reader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            job = GSON.fromJson(reader, GenerationJob.class);
+            if (job == null) {
+                job = new GenerationJob();
+            }
+            job.validate(maxPopulation);
+            if (job.getOutputPath() != null) {
+                job.resolveOutputDirectory(outputRoot);
+            }
+        } catch (JsonParseException | IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+            return;
+        }
+        
+        long started = System.nanoTime();
+        ScheduledJob scheduled = null;
+        try {
+            scheduled = service.submit(job);
+            exchange.getResponseHeaders().set("X-Job-Id", Long.toString(scheduled.getId()));
+            if (job.isAsync()) {
+                runInBackground(exchange, job, scheduled);
+            } else if (job.getOutputPath() != null) {
+                runToDirectory(exchange, job, scheduled, started);
+            } else {
+                runStreaming(exchange, job, scheduled);
+            }
+        } catch (Exception e) {
+            System.err.println("Job " + (scheduled != null ? scheduled.getId() : "?")
+                    + " failed: " + e.getMessage());
+            // Headers are already sent for streamed jobs; closing the exchange truncates the body
+            if (exchange.getResponseCode() == -1) {
+                sendError(exchange, 500, e.getMessage());
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    private void runInBackground(HttpExchange exchange, GenerationJob job, ScheduledJob scheduled)
+            throws IOException {
+        File outputDir = job.resolveOutputDirectory(outputRoot);
+        requestExecutor.execute(() -> {
+            try {
+                service.drain(scheduled, patient -> writeFile(patient, outputDir));
+            } catch (Exception e) {
+                System.err.println("Job " + scheduled.getId() + " failed: " + e.getMessage());
+            }
+        });
+        sendJson(exchange, 202, GSON.toJsonTree(scheduled.getStatus()));
+    }
+    
+    private void runToDirectory(HttpExchange exchange, GenerationJob job, ScheduledJob scheduled,
+            long started) throws Exception {
+        File outputDir = job.resolveOutputDirectory(outputRoot);
+        CohortSearch search = service.getCohortSearch(scheduled.getId());
+        int generated = service.drain(scheduled, patient -> writeFile(patient, outputDir));
+        
+        JsonObject body = new JsonObject();
+        body.addProperty("jobId", scheduled.getId());
+        body.addProperty("population", job.getPopulation());
+        body.addProperty("generated", generated);
+        body.addProperty("outputPath", outputDir.getAbsolutePath());
+        if (search != null) {
+            body.addProperty("candidates", search.getCandidates());
+            body.addProperty("acceptanceRate", search.getAcceptanceRate());
+        }
+        body.addProperty("elapsedMillis", (System.nanoTime() - started) / 1_000_000);
+        sendJson(exchange, 200, body);
+    }
+    
+    private void runStreaming(HttpExchange exchange, GenerationJob job, ScheduledJob scheduled)
+            throws Exception {
+        boolean array = GenerationJob.FORMAT_JSON.equals(job.getFormat());
+        exchange.getResponseHeaders().set("Content-Type",
+                array ? "application/json" : "application/x-ndjson");
+        // Length 0 selects chunked encoding so patients reach the client as they finish
+        exchange.sendResponseHeaders(200, 0);
+        
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+            if (array) {
+                JsonWriter out = new JsonWriter(writer);
+                out.beginArray();
+                service.drain(scheduled, patient -> PatientJsonExporter.write(patient, out));
+                out.endArray();
+                out.flush();
+            } else {
+                service.drain(scheduled, patient -> writeLine(writer, patient));
+            }
+        }
+    }
+    
+    private static void writeFile(EnhancedPatientData patient, File outputDir) throws IOException {
+        PatientJsonExporter.exportToDirectory(Collections.singletonList(patient), outputDir);
+    }
+    
+    private static void writeLine(Writer writer, EnhancedPatientData patient) throws IOException {
+        PatientJsonExporter.writeTo(patient, writer, false);
+        writer.write('\n');
+        writer.flush();
+    }
+    
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        JsonObject body = new JsonObject();
+        body.addProperty("error", message != null ? message : "Internal error");
+        sendJson(exchange, status, body);
+    }
+    
+    private static void sendJson(HttpExchange exchange, int status, JsonElement body) throws IOException {
+        byte[] bytes = GSON.toJson(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
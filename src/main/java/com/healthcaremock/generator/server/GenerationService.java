@@ -0,0 +1,210 @@
+package com.healthcaremock.generator.server;
+
+import com.healthcaremock.generator.EnhancedGenerator;
+import com.healthcaremock.generator.EnhancedPatientData;
+import com.healthcaremock.generator.cohort.CohortSearch;
+import com.healthcaremock.generator.cohort.CohortSpec;
+import com.healthcaremock.generator.config.ConfigManager;
+import com.healthcaremock.generator.enrichment.EnrichmentPipeline;
+import com.healthcaremock.generator.scheduler.JobScheduler;
+import com.healthcaremock.generator.scheduler.ScheduledJob;
+import org.mitre.synthea.engine.Generator;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps warmed generators and a shared job scheduler in memory so that jobs only pay
+ * for simulating their own patients.
+ *
+ * <p>A generator is warmed per cohort demographics (state, ages and gender). At most
+ * {@code maxGenerators} are kept; the least recently used one is closed when another is
+ * needed. Jobs already running on a closed generator finish on it.
+ */
+public class GenerationService {
+    private final EnrichmentPipeline enrichmentPipeline;
+    private final LinkedHashMap<String, EnhancedGenerator> generators;
+    private final int maxGenerators;
+    private final JobScheduler scheduler;
+    // Cohort searches of jobs with clinical constraints, kept for acceptance rate reporting
+    private final Map<Long, CohortSearch> cohortSearches;
+    
+    /**
+     * Receives patients as a job produces them.
+     */
+    public interface PatientSink {
+        /**
+         * Accepts a generated patient. Called from a single thread per job.
+         * @param patient The patient.
+         * @throws IOException if the patient cannot be written.
+         */
+        void accept(EnhancedPatientData patient) throws IOException;
+    }
+    
+    /**
+     * Constructor.
+     * @param enrichmentPipeline The enrichers to run on every patient.
+     * @param threadCount The number of worker threads shared by all jobs.
+     * @param maxGenerators The number of warmed generators to keep.
+     */
+    public GenerationService(EnrichmentPipeline enrichmentPipeline, int threadCount, int maxGenerators) {
+        this.enrichmentPipeline = enrichmentPipeline;
+        // Access order, so the eldest entry is the least recently used
+        this.generators = new LinkedHashMap<>(16, 0.75f, true);
+        this.maxGenerators = Math.max(1, maxGenerators);
+        this.scheduler = new JobScheduler(threadCount);
+        this.cohortSearches = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Generates one patient with the default cohort so that Synthea's modules, demographics
+     * and the JIT are warm before the first job arrives.
+     * @throws Exception if the generator cannot be created.
+     */
+    public void warmUp() throws Exception {
+        generatorFor(new CohortSpec()).generatePatient(0, System.currentTimeMillis());
+    }
+    
+    /**
+     * Submits a job to the shared scheduler.
+     * @param job The job.
+     * @return The scheduled job, from which patients are drained in completion order.
+     * @throws Exception if the generator for the job's cohort cannot be created.
+     */
+    public ScheduledJob submit(GenerationJob job) throws Exception {
+        CohortSpec cohort = job.getCohort();
+        EnhancedGenerator generator = generatorFor(cohort);
+        long seed = job.getSeed() != null ? job.getSeed() : System.currentTimeMillis();
+        
+        if (cohort.hasClinicalConstraints()) {
+            CohortSearch search = new CohortSearch(generator, cohort, seed,
+                    ConfigManager.getAsInteger("cohort.max_candidates_per_patient", 200));
+            ScheduledJob scheduled = scheduler.submit("cohort seed " + seed, job.getPopulation(),
+                    job.getPriority(), job.getPatientDeadlineMillis(), job.getMaxAttemptsPerPatient(), search);
+            cohortSearches.put(scheduled.getId(), search);
+            return scheduled;
+        }
+        
+        return scheduler.submit("seed " + seed, job.getPopulation(), job.getPriority(),
+                job.getPatientDeadlineMillis(), job.getMaxAttemptsPerPatient(),
+                new JobScheduler.PatientTask() {
+                    @Override
+                    public EnhancedPatientData generate(int index, int attempt) {
+                        return generator.generatePatient(index, attempt == 0
+                                ? EnhancedGenerator.derivePersonSeed(seed, index)
+                                : EnhancedGenerator.deriveRetrySeed(seed, index, attempt));
+                    }
+                    
+                    @Override
+                    public void accepted(EnhancedPatientData patient) {
+                        generator.keepPatient(patient);
+                    }
+                });
+    }
+    
+    /**
+     * Gets the cohort search of a job with clinical constraints that is still being drained.
+     * @param jobId The job ID.
+     * @return The search, or null if the job has no clinical constraints or has been drained.
+     */
+    public CohortSearch getCohortSearch(long jobId) {
+        return cohortSearches.get(jobId);
+    }
+    
+    /**
+     * Passes each patient of a scheduled job to the sink as soon as it is complete.
+     * If the sink fails, for example because the client disconnected, the job is cancelled.
+     * @param scheduled The scheduled job.
+     * @param sink The destination for generated patients.
+     * @return The number of patients delivered.
+     * @throws Exception if writing fails or the thread is interrupted.
+     */
+    public int drain(ScheduledJob scheduled, PatientSink sink) throws Exception {
+        int delivered = 0;
+        try {
+            EnhancedPatientData patient;
+            while ((patient = scheduled.take()) != null) {
+                sink.accept(patient);
+                delivered++;
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            // Don't keep simulating for nobody
+            scheduler.cancel(scheduled.getId());
+            throw e;
+        } finally {
+            cohortSearches.remove(scheduled.getId());
+        }
+        return delivered;
+    }
+    
+    /**
+     * Runs a job to completion.
+     * @param job The job.
+     * @param sink The destination for generated patients.
+     * @return The number of patients delivered.
+     * @throws Exception if generation or writing fails.
+     */
+    public int run(GenerationJob job, PatientSink sink) throws Exception {
+        return drain(submit(job), sink);
+    }
+    
+    /**
+     * Gets the scheduler shared by all jobs.
+     * @return The scheduler.
+     */
+    public JobScheduler getScheduler() {
+        return scheduler;
+    }
+    
+    /**
+     * Gets the warmed generator for a cohort, creating it on first use and closing the least
+     * recently used generator if the limit is reached.
+     * @param cohort The cohort.
+     * @return The generator.
+     * @throws Exception if the generator cannot be created.
+     */
+    private EnhancedGenerator generatorFor(CohortSpec cohort) throws Exception {
+        String key = cohort.getGeneratorKey();
+        synchronized (generators) {
+            EnhancedGenerator generator = generators.get(key);
+            if (generator == null) {
+                Generator.GeneratorOptions options = new Generator.GeneratorOptions();
+                options.overflow = false;
+                cohort.applyTo(options);
+                generator = new EnhancedGenerator(options, enrichmentPipeline);
+                while (generators.size() >= maxGenerators) {
+                    Map.Entry<String, EnhancedGenerator> eldest = generators.entrySet().iterator().next();
+                    generators.remove(eldest.getKey());
+                    eldest.getValue().close();
+                }
+                generators.put(key, generator);
+            }
+            return generator;
+        }
+    }
+    
+    /**
+     * Gets the number of warmed generators.
+     * @return The generator count.
+     */
+    public int getGeneratorCount() {
+        synchronized (generators) {
+            return generators.size();
+        }
+    }
+    
+    /**
+     * Cancels all jobs, stops the shared workers and closes the warmed generators.
+     */
+    public void shutdown() {
+        scheduler.shutdown();
+        synchronized (generators) {
+            for (EnhancedGenerator generator : generators.values()) {
+                generator.close();
+            }
+            generators.clear();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.healthcaremock.generator.stats;
+
+import com.healthcaremock.generator.cohort.Stratum;
+
+/**
+ * The counts and distributions of part of a population, e.g. the patients one worker
+ * generated. Sketches merge exactly, and their size does not depend on the number of
+ * patients. A sketch is not thread-safe.
+ */
+public class PopulationSketch {
+    private final long[] strataMembers = new long[Stratum.values().length];
+    private final QuantileSketch age;
+    private final QuantileSketch income;
+    private final QuantileSketch phq9;
+    private final QuantileSketch heartRate;
+    private long patients;
+    private long female;
+    private long male;
+    private long belowMinAge;
+    private long aboveMaxAge;
+    
+    /**
+     * Creates an empty sketch.
+     * @param relativeAccuracy The relative accuracy of the quantile sketches.
+     */
+    public PopulationSketch(double relativeAccuracy) {
+        this.age = new QuantileSketch(relativeAccuracy);
+        this.income = new QuantileSketch(relativeAccuracy);
+        this.phq9 = new QuantileSketch(relativeAccuracy);
+        this.heartRate = new QuantileSketch(relativeAccuracy);
+    }
+    
+    /**
+     * Counts one patient.
+     * @param gender The patient's gender, "F" or "M".
+     * @param strata The patient's strata, from {@link com.healthcaremock.generator.cohort.StrataClassifier#classify}.
+     */
+    void addPatient(String gender, int strata) {
+        patients++;
+        if ("F".equals(gender)) {
+            female++;
+        } else if ("M".equals(gender)) {
+            male++;
+        }
+        for (Stratum stratum : Stratum.values()) {
+            if (stratum.isIn(strata)) {
+                strataMembers[stratum.ordinal()]++;
+            }
+        }
+    }
+    
+    /**
+     * Records a patient's age and whether it lies outside the configured range.
+     * @param years The age in years.
+     * @param minAge The configured minimum age.
+     * @param maxAge The configured maximum age.
+     */
+    void addAge(int years, int minAge, int maxAge) {
+        age.add(years);
+        if (years < minAge) {
+            belowMinAge++;
+        } else if (years > maxAge) {
+            aboveMaxAge++;
+        }
+    }
+    
+    /**
+     * Adds another sketch's patients to this one.
+     * @param other The sketch to add.
+     */
+    public void merge(PopulationSketch other) {
+        for (int i = 0; i < strataMembers.length; i++) {
+            strataMembers[i] += other.strataMembers[i];
+        }
+        age.merge(other.age);
+        income.merge(other.income);
+        phq9.merge(other.phq9);
+        heartRate.merge(other.heartRate);
+        patients += other.patients;
+        female += other.female;
+        male += other.male;
+        belowMinAge += other.belowMinAge;
+        aboveMaxAge += other.aboveMaxAge;
+    }
+    
+    /**
+     * Gets the number of patients in a stratum.
+     * @param stratum The stratum.
+     * @return The member count.
+     */
+    public long getMembers(Stratum stratum) {
+        return strataMembers[stratum.ordinal()];
+    }
+    
+    // Getters
+    
+    public long getPatients() {
+        return patients;
+    }
+    
+    public long getFemale() {
+        return female;
+    }
+    
+    public long getMale() {
+        return male;
+    }
+    
+    public long getBelowMinAge() {
+        return belowMinAge;
+    }
+    
+    public long getAboveMaxAge() {
+        return aboveMaxAge;
+    }
+    
+    public QuantileSketch getAge() {
+        return age;
+    }
+    
+    public QuantileSketch getIncome() {
+        return income;
+    }
+    
+    /**
+     * Gets the distribution of PHQ-9 total scores, one per assessment.
+     * @return The sketch.
+     */
+    public QuantileSketch getPhq9() {
+        return phq9;
+    }
+    
+    /**
+     * Gets the distribution of wearable heart rate measurements in bpm.
+     * @return The sketch.
+     */
+    public QuantileSketch getHeartRate() {
+        return heartRate;
+    }
+}
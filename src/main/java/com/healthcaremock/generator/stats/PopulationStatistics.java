@@ -0,0 +1,225 @@
+package com.healthcaremock.generator.stats;
+
+import com.healthcaremock.generator.EnhancedPatientData;
+import com.healthcaremock.generator.cohort.PrevalenceTargets;
+import com.healthcaremock.generator.cohort.StrataClassifier;
+import com.healthcaremock.generator.cohort.Stratum;
+import com.healthcaremock.generator.config.ConfigManager;
+import com.healthcaremock.generator.models.PatientReportedOutcome;
+import com.healthcaremock.generator.models.WearableData;
+import org.mitre.synthea.world.agents.Person;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Collects statistics of a generated population as it streams past, and reports them against
+ * the settings in healthcare-generator.properties: the gender split, the age range and the
+ * prevalence targets.
+ *
+ * <p>Each worker thread records into a {@link PopulationSketch} of its own, without locks;
+ * the sketches are merged when the report is built, after the workers have finished. Memory
+ * depends on the number of workers, not on the population size. Like
+ * {@link com.healthcaremock.generator.metrics.PipelineMetrics}, the statistics are off unless
+ * a run activates them, and instrumented code skips them when {@link #active()} returns null.
+ */
+public class PopulationStatistics {
+    private static final double Z_95 = 1.96;
+    private static volatile PopulationStatistics active;
+    
+    private final PrevalenceTargets targets;
+    private final StrataClassifier classifier;
+    private final int minAge;
+    private final int maxAge;
+    private final double relativeAccuracy;
+    private final List<PopulationSketch> sketches = new ArrayList<>();
+    private final ThreadLocal<PopulationSketch> workerSketch = ThreadLocal.withInitial(this::newSketch);
+    
+    /**
+     * Creates the statistics of a run without activating them.
+     * @param targets The configured gender split and prevalence targets.
+     * @param classifier Assigns patients to strata.
+     * @param minAge The configured minimum age.
+     * @param maxAge The configured maximum age.
+     * @param relativeAccuracy The relative accuracy of the reported quantiles.
+     */
+    public PopulationStatistics(PrevalenceTargets targets, StrataClassifier classifier,
+            int minAge, int maxAge, double relativeAccuracy) {
+        this.targets = targets;
+        this.classifier = classifier;
+        this.minAge = minAge;
+        this.maxAge = maxAge;
+        this.relativeAccuracy = relativeAccuracy;
+    }
+    
+    /**
+     * Activates the statistics for a run if {@code stats.enabled} is set.
+     * @return The active statistics, or null if disabled.
+     */
+    public static PopulationStatistics fromConfig() {
+        if (!ConfigManager.getAsBoolean("stats.enabled", false)) {
+            return null;
+        }
+        PopulationStatistics statistics = new PopulationStatistics(PrevalenceTargets.fromConfig(),
+                StrataClassifier.fromConfig(),
+                ConfigManager.getAsInteger("generator.min_age", 0),
+                ConfigManager.getAsInteger("generator.max_age", 140),
+                ConfigManager.getAsDouble("stats.relative_accuracy", 0.01));
+        active = statistics;
+        return statistics;
+    }
+    
+    /**
+     * Gets the statistics of the current run.
+     * @return The active statistics, or null if disabled.
+     */
+    public static PopulationStatistics active() {
+        return active;
+    }
+    
+    /**
+     * Deactivates these statistics. The figures stay readable.
+     */
+    public void stop() {
+        if (active == this) {
+            active = null;
+        }
+    }
+    
+    /**
+     * Records a finished patient into the calling thread's sketch.
+     * @param patient The patient.
+     */
+    public void record(EnhancedPatientData patient) {
+        PopulationSketch sketch = workerSketch.get();
+        Person person = patient.getPerson();
+        Object gender = person.attributes.get(Person.GENDER);
+        sketch.addPatient(gender == null ? null : gender.toString(), classifier.classify(person));
+        if (person.attributes.get(Person.BIRTHDATE) instanceof Number) {
+            sketch.addAge(person.ageInYears(person.lastUpdated > 0 ? person.lastUpdated
+                    : System.currentTimeMillis()), minAge, maxAge);
+        }
+        Object income = person.attributes.get(Person.INCOME);
+        if (income instanceof Number) {
+            sketch.getIncome().add(((Number) income).doubleValue());
+        }
+        
+        com.healthcaremock.generator.models.EnhancedPatientData extended = patient.getExtendedData();
+        if (extended == null) {
+            return;
+        }
+        for (PatientReportedOutcome outcome : extended.getPatientReportedOutcomes()) {
+            if ("PHQ-9".equals(outcome.getInstrumentType())) {
+                sketch.getPhq9().add(outcome.getTotalScore());
+            }
+        }
+        for (WearableData data : extended.getWearableData()) {
+            for (WearableData.Measurement measurement : data.getMeasurements()) {
+                if ("heart_rate".equals(measurement.getType())) {
+                    sketch.getHeartRate().add(measurement.getValue());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Merges the sketches of every worker. Call once the workers have finished.
+     * @return The statistics of the whole population.
+     */
+    public PopulationSketch merge() {
+        PopulationSketch merged = new PopulationSketch(relativeAccuracy);
+        synchronized (sketches) {
+            for (PopulationSketch sketch : sketches) {
+                merged.merge(sketch);
+            }
+        }
+        return merged;
+    }
+    
+    /**
+     * Formats the configured-versus-observed report. An observed share is flagged with *
+     * when its 95% confidence interval does not include the configured value.
+     * @return The report.
+     */
+    public String report() {
+        PopulationSketch population = merge();
+        long patients = population.getPatients();
+        StringBuilder report = new StringBuilder(String.format(Locale.ROOT,
+                "Population statistics: %d patients%n", patients));
+        report.append(String.format(Locale.ROOT, "  %-28s %10s %10s %10s%n",
+                "Setting", "Configured", "Observed", "95% +/-"));
+        appendShare(report, "female", targets.getFemalePercentage(), population.getFemale(), patients);
+        appendShare(report, "male", 1 - targets.getFemalePercentage(), population.getMale(), patients);
+        appendAgeLimit(report, "min_age", minAge, population.getAge().getMin(),
+                population.getBelowMinAge(), "below");
+        appendAgeLimit(report, "max_age", maxAge, population.getAge().getMax(),
+                population.getAboveMaxAge(), "above");
+        for (Stratum stratum : Stratum.values()) {
+            appendShare(report, stratum.name().toLowerCase(Locale.ROOT), targets.getPrevalence(stratum),
+                    population.getMembers(stratum), patients);
+        }
+        
+        report.append(String.format(Locale.ROOT, "%n  %-28s %10s %10s %10s %10s %10s %10s %10s%n",
+                "Distribution", "Count", "Mean", "Min", "P5", "P50", "P95", "Max"));
+        appendDistribution(report, "age (years)", population.getAge());
+        appendDistribution(report, "income", population.getIncome());
+        appendDistribution(report, "phq9 (score)", population.getPhq9());
+        appendDistribution(report, "heart_rate (bpm)", population.getHeartRate());
+        return report.toString();
+    }
+    
+    /**
+     * Writes the report to a file.
+     * @param file The file to write.
+     * @return The report.
+     * @throws IOException If the file cannot be written.
+     */
+    public String writeReport(File file) throws IOException {
+        String report = report();
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        Files.write(file.toPath(), report.getBytes(StandardCharsets.UTF_8));
+        return report;
+    }
+    
+    private PopulationSketch newSketch() {
+        PopulationSketch sketch = new PopulationSketch(relativeAccuracy);
+        synchronized (sketches) {
+            sketches.add(sketch);
+        }
+        return sketch;
+    }
+    
+    private static void appendShare(StringBuilder report, String name, Double target, long count,
+            long total) {
+        double observed = total == 0 ? 0 : (double) count / total;
+        double margin = total == 0 ? 0 : Z_95 * Math.sqrt(observed * (1 - observed) / total);
+        boolean off = target != null && total > 0 && Math.abs(observed - target) > margin;
+        report.append(String.format(Locale.ROOT, "  %-28s %10s %10.3f %10.3f%s%n", name,
+                target != null ? String.format(Locale.ROOT, "%.3f", target) : "-",
+                observed, margin, off ? " *" : ""));
+    }
+    
+    private static void appendAgeLimit(StringBuilder report, String name, int limit, double observed,
+            long outside, String direction) {
+        report.append(String.format(Locale.ROOT, "  %-28s %10d %10s%s%n", name, limit,
+                format(observed, "%.0f"), outside > 0 ? " " + outside + " " + direction + " *" : ""));
+    }
+    
+    private static void appendDistribution(StringBuilder report, String name, QuantileSketch sketch) {
+        report.append(String.format(Locale.ROOT, "  %-28s %10d %10s %10s %10s %10s %10s %10s%n", name,
+                sketch.getCount(), format(sketch.getMean(), "%.1f"), format(sketch.getMin(), "%.1f"),
+                format(sketch.quantile(0.05), "%.1f"), format(sketch.quantile(0.5), "%.1f"),
+                format(sketch.quantile(0.95), "%.1f"), format(sketch.getMax(), "%.1f")));
+    }
+    
+    private static String format(double value, String pattern) {
+        return Double.isNaN(value) ? "-" : String.format(Locale.ROOT, pattern, value);
+    }
+}
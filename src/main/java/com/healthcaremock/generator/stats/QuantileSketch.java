@@ -0,0 +1,179 @@
+package com.healthcaremock.generator.stats;
+
+/**
+ * A mergeable sketch of the distribution of non-negative values, for quantiles over
+ * populations of any size in constant memory.
+ *
+ * <p>Values are counted in logarithmic buckets, each covering a range whose bounds differ by
+ * a factor of (1 + a) / (1 - a) for a relative accuracy a, so every reported quantile is
+ * within a of a value at that rank. The bucket array spans only the buckets between the
+ * smallest and largest value seen: about 115 counters per decade at 1% accuracy, however many
+ * values are recorded. Values below {@link #MIN_VALUE}, including 0, share one bucket and are
+ * reported as 0. Sketches with the same accuracy merge exactly, so each worker can keep its
+ * own and the results can be combined at the end. A sketch is not thread-safe.
+ */
+public class QuantileSketch {
+    /** The smallest value with a bucket of its own. */
+    public static final double MIN_VALUE = 1e-3;
+    private static final int INITIAL_BUCKETS = 64;
+    
+    private final double relativeAccuracy;
+    private final double logGamma;
+    private long[] counts = new long[0];
+    private int offset;
+    private long zeroCount;
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    
+    /**
+     * Creates an empty sketch.
+     * @param relativeAccuracy The relative accuracy of quantiles, e.g. 0.01 for 1%.
+     */
+    public QuantileSketch(double relativeAccuracy) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new IllegalArgumentException("Relative accuracy must be between 0 and 1: "
+                    + relativeAccuracy);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.logGamma = Math.log((1 + relativeAccuracy) / (1 - relativeAccuracy));
+    }
+    
+    /**
+     * Records one value.
+     * @param value The value; negative values count as 0, NaN is ignored.
+     */
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        value = Math.max(0, value);
+        if (value < MIN_VALUE) {
+            zeroCount++;
+        } else {
+            int index = index(value);
+            grow(index, index);
+            counts[index - offset]++;
+        }
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+    
+    /**
+     * Adds another sketch's values to this one.
+     * @param other A sketch with the same relative accuracy.
+     */
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Cannot merge sketches of different accuracy");
+        }
+        if (other.count == 0) {
+            return;
+        }
+        if (other.counts.length > 0) {
+            grow(other.offset, other.offset + other.counts.length - 1);
+            for (int i = 0; i < other.counts.length; i++) {
+                counts[other.offset + i - offset] += other.counts[i];
+            }
+        }
+        zeroCount += other.zeroCount;
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+    
+    /**
+     * Gets a quantile of the recorded values.
+     * @param fraction The quantile as a fraction, e.g. 0.5 for the median.
+     * @return The quantile, or NaN if nothing has been recorded.
+     */
+    public double quantile(double fraction) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = zeroCount;
+        if (seen >= rank) {
+            return min;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // The value within the relative accuracy of every value in the bucket
+                double value = 2 * Math.exp((offset + i) * logGamma) / (1 + Math.exp(logGamma));
+                return Math.max(min, Math.min(max, value));
+            }
+        }
+        return max;
+    }
+    
+    private int index(double value) {
+        return (int) Math.ceil(Math.log(value) / logGamma);
+    }
+    
+    /**
+     * Widens the bucket array to cover the buckets from first to last.
+     */
+    private void grow(int first, int last) {
+        if (counts.length == 0) {
+            counts = new long[Math.max(INITIAL_BUCKETS, last - first + 1)];
+            offset = first;
+            return;
+        }
+        int end = offset + counts.length;
+        if (first >= offset && last < end) {
+            return;
+        }
+        int newOffset = Math.min(first, offset);
+        int newEnd = Math.max(last + 1, end);
+        // Leave room to grow further in the direction of this change
+        int slack = Math.max(INITIAL_BUCKETS, (newEnd - newOffset) / 2);
+        if (first < offset) {
+            newOffset -= slack;
+        } else {
+            newEnd += slack;
+        }
+        long[] grown = new long[newEnd - newOffset];
+        System.arraycopy(counts, 0, grown, offset - newOffset, counts.length);
+        counts = grown;
+        offset = newOffset;
+    }
+    
+    // Getters
+    
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+    
+    public long getCount() {
+        return count;
+    }
+    
+    /**
+     * Gets the mean of the recorded values.
+     * @return The mean, or NaN if nothing has been recorded.
+     */
+    public double getMean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+    
+    /**
+     * Gets the smallest recorded value.
+     * @return The minimum, or NaN if nothing has been recorded.
+     */
+    public double getMin() {
+        return count == 0 ? Double.NaN : min;
+    }
+    
+    /**
+     * Gets the largest recorded value.
+     * @return The maximum, or NaN if nothing has been recorded.
+     */
+    public double getMax() {
+        return count == 0 ? Double.NaN : max;
+    }
+}
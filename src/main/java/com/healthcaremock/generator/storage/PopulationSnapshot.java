@@ -0,0 +1,243 @@
+package com.healthcaremock.generator.storage;
+
+import com.healthcaremock.generator.EnhancedPatientData;
+import com.healthcaremock.generator.codec.ModelCodec;
+import org.mitre.synthea.world.agents.Person;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A population saved at the end of its simulation, so a later run can resume each person
+ * and simulate only the time since.
+ *
+ * <p>The population is split into shard files of a fixed number of patients, each a
+ * compressed stream:
+ *
+ * <pre>
+ * header:   "PSNP" version(int) simulatedUntil(long) count(int)
+ * patients: index(int) person(Java-serialized) extendedLength(int) extendedData(ModelCodec) ...
+ * </pre>
+ *
+ * <p>The person is written with Java serialization, like Synthea's own population
+ * snapshots, so its record, attributes and the state of each module it is in come back
+ * intact, along with its random number generator. The enrichment data is written with
+ * {@link ModelCodec}; an extended length of -1 means the patient had none. Shards are read
+ * independently, so a resumed population can be processed one shard per thread.
+ */
+public class PopulationSnapshot {
+    private static final String MAGIC = "PSNP";
+    private static final int VERSION = 1;
+    private static final String PREFIX = "population-";
+    private static final String SUFFIX = ".snap";
+    
+    private final File directory;
+    private final List<File> shards;
+    private final long simulatedUntil;
+    private final int size;
+    
+    private PopulationSnapshot(File directory, List<File> shards, long simulatedUntil, int size) {
+        this.directory = directory;
+        this.shards = shards;
+        this.simulatedUntil = simulatedUntil;
+        this.size = size;
+    }
+    
+    /**
+     * Writes a population to a directory, replacing any snapshot already there.
+     * @param directory The snapshot directory, created if needed.
+     * @param patients The patients, in population order.
+     * @param simulatedUntil The time the patients were simulated up to.
+     * @param shardSize The number of patients per shard file.
+     * @return The number of shard files written.
+     * @throws IOException if a shard cannot be written.
+     */
+    public static int write(File directory, List<EnhancedPatientData> patients, long simulatedUntil,
+            int shardSize) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create snapshot directory " + directory);
+        }
+        for (File stale : listShards(directory)) {
+            Files.delete(stale.toPath());
+        }
+        int perShard = Math.max(1, shardSize);
+        int shardCount = 0;
+        for (int start = 0; start < patients.size(); start += perShard) {
+            int end = Math.min(patients.size(), start + perShard);
+            writeShard(new File(directory, String.format(PREFIX + "%05d" + SUFFIX, shardCount)),
+                    patients, start, end, simulatedUntil);
+            shardCount++;
+        }
+        return shardCount;
+    }
+    
+    /**
+     * Opens the snapshot in a directory, reading only the shard headers.
+     * @param directory The snapshot directory.
+     * @return The snapshot.
+     * @throws IOException if there is no snapshot, or its shards disagree on when they end.
+     */
+    public static PopulationSnapshot open(File directory) throws IOException {
+        List<File> shards = listShards(directory);
+        if (shards.isEmpty()) {
+            throw new IOException("No population snapshot in " + directory);
+        }
+        long simulatedUntil = 0;
+        int size = 0;
+        for (int i = 0; i < shards.size(); i++) {
+            try (ObjectInputStream in = openShard(shards.get(i))) {
+                long until = in.readLong();
+                if (i > 0 && until != simulatedUntil) {
+                    throw new IOException("Snapshot shards end at different times: " + shards.get(i));
+                }
+                simulatedUntil = until;
+                size += in.readInt();
+            }
+        }
+        return new PopulationSnapshot(directory, shards, simulatedUntil, size);
+    }
+    
+    /**
+     * Reads every patient in one shard.
+     * @param shard One of {@link #getShards()}.
+     * @return The patients, in population order.
+     * @throws IOException if the shard cannot be read.
+     */
+    public static List<Entry> readShard(File shard) throws IOException {
+        try (ObjectInputStream in = openShard(shard)) {
+            in.readLong();
+            int count = in.readInt();
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int index = in.readInt();
+                Person person = (Person) in.readObject();
+                int length = in.readInt();
+                com.healthcaremock.generator.models.EnhancedPatientData extendedData = null;
+                if (length >= 0) {
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    extendedData = ModelCodec.decode(payload);
+                }
+                entries.add(new Entry(index, person, extendedData));
+            }
+            return entries;
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Snapshot was written by an incompatible version: " + shard, e);
+        }
+    }
+    
+    private static void writeShard(File shard, List<EnhancedPatientData> patients, int start, int end,
+            long simulatedUntil) throws IOException {
+        File temp = new File(shard.getPath() + ".tmp");
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(temp), 64 * 1024)))) {
+            out.writeUTF(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(simulatedUntil);
+            out.writeInt(end - start);
+            for (int i = start; i < end; i++) {
+                EnhancedPatientData patient = patients.get(i);
+                out.writeInt(i);
+                out.writeObject(patient.getPerson());
+                if (patient.getExtendedData() == null) {
+                    out.writeInt(-1);
+                } else {
+                    byte[] payload = ModelCodec.encode(patient.getExtendedData());
+                    out.writeInt(payload.length);
+                    out.write(payload);
+                }
+                // Each person is read back on their own, so objects they share with others,
+                // such as providers, are written again rather than referenced
+                out.reset();
+            }
+        }
+        Files.move(temp.toPath(), shard.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    /**
+     * Opens a shard and reads past its magic and version.
+     */
+    private static ObjectInputStream openShard(File shard) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(shard), 64 * 1024)));
+        try {
+            if (!MAGIC.equals(in.readUTF()) || in.readInt() != VERSION) {
+                throw new IOException("Not a supported population snapshot: " + shard);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+    
+    private static List<File> listShards(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(files);
+        return new ArrayList<>(Arrays.asList(files));
+    }
+    
+    // Getters
+    
+    public File getDirectory() {
+        return directory;
+    }
+    
+    public List<File> getShards() {
+        return shards;
+    }
+    
+    public long getSimulatedUntil() {
+        return simulatedUntil;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * One saved patient.
+     */
+    public static final class Entry {
+        private final int index;
+        private final Person person;
+        private final com.healthcaremock.generator.models.EnhancedPatientData extendedData;
+        
+        Entry(int index, Person person,
+                com.healthcaremock.generator.models.EnhancedPatientData extendedData) {
+            this.index = index;
+            this.person = person;
+            this.extendedData = extendedData;
+        }
+        
+        // Getters
+        
+        public int getIndex() {
+            return index;
+        }
+        
+        public Person getPerson() {
+            return person;
+        }
+        
+        public com.healthcaremock.generator.models.EnhancedPatientData getExtendedData() {
+            return extendedData;
+        }
+    }
+}
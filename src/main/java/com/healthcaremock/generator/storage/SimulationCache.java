@@ -0,0 +1,336 @@
+package com.healthcaremock.generator.storage;
+
+import com.healthcaremock.generator.config.ConfigManager;
+import org.mitre.synthea.engine.Generator;
+import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.world.agents.Person;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * An on-disk cache of simulated Synthea people, so runs that change only the enrichment layer
+ * skip the simulation of patients an earlier run already produced.
+ *
+ * <p>Entries are keyed by a caller-chosen person key (the seed and patient index) within a
+ * fingerprint of everything else that shapes a simulation: a hash of the Synthea modules,
+ * Synthea's configuration other than exporter settings and this project's own properties, and
+ * the generator options. An entry holds the person exactly as the simulation left it,
+ * including its random number generator, so enriching a cached person gives the same result
+ * as enriching a freshly simulated one.
+ *
+ * <p>The cache is bounded in bytes. The least recently used entries are deleted once it
+ * grows past its bound; file modification times carry the recency across runs. Entries
+ * that cannot be read are treated as misses. The cache can be used from several threads.
+ */
+public class SimulationCache {
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".sim";
+    private static volatile String moduleHash;
+    
+    private final File directory;
+    private final long maxBytes;
+    private final String fingerprint;
+    private final Map<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    
+    /**
+     * Opens a cache directory, indexing the entries already in it.
+     * @param directory The cache directory, created if needed.
+     * @param maxBytes The most bytes of entries to keep.
+     * @param fingerprint The fingerprint of the simulation settings, from
+     *                    {@link #fingerprint(Generator.GeneratorOptions, long)}.
+     */
+    public SimulationCache(File directory, long maxBytes, String fingerprint) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.fingerprint = fingerprint;
+        directory.mkdirs();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files != null) {
+            // Oldest first, so the map's iteration order starts with the least recently used
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (File file : files) {
+                entries.put(file.getName(), file.length());
+                totalBytes += file.length();
+            }
+        }
+        evict();
+    }
+    
+    /**
+     * Opens the cache configured by {@code cache.enabled}, {@code cache.directory} and
+     * {@code cache.max_mb}.
+     * @param options The options of the generator whose people are cached.
+     * @param stop The time the generator simulates people up to.
+     * @return The cache, or null if caching is disabled.
+     */
+    public static SimulationCache fromConfig(Generator.GeneratorOptions options, long stop) {
+        if (!ConfigManager.getAsBoolean("cache.enabled", false)) {
+            return null;
+        }
+        File directory = new File(ConfigManager.getAsString("cache.directory", "build/simulation-cache"));
+        long maxBytes = ConfigManager.getAsInteger("cache.max_mb", 2048) * 1024L * 1024L;
+        return new SimulationCache(directory, maxBytes, fingerprint(options, stop));
+    }
+    
+    /**
+     * Computes the fingerprint of the settings that shape a simulation. Without an explicit
+     * reference or end time, Synthea simulates up to the present, so the day of the stop
+     * time is part of the fingerprint and entries from earlier days are not reused.
+     * @param options The generator options.
+     * @param stop The time the generator simulates people up to.
+     * @return The fingerprint, as hex.
+     */
+    public static String fingerprint(Generator.GeneratorOptions options, long stop) {
+        StringBuilder settings = new StringBuilder();
+        settings.append("version=").append(VERSION).append('\n');
+        settings.append("modules=").append(moduleHash()).append('\n');
+        settings.append("enabledModules=").append(options.enabledModules).append('\n');
+        settings.append("gender=").append(options.gender).append('\n');
+        settings.append("ages=").append(options.ageSpecified).append(':').append(options.minAge)
+                .append('-').append(options.maxAge).append('\n');
+        settings.append("location=").append(options.state).append('/').append(options.city).append('\n');
+        settings.append("clinicianSeed=").append(options.clinicianSeed).append('\n');
+        if (options.referenceTime != null || options.endTime != null) {
+            settings.append("time=").append(options.referenceTime).append('/').append(options.endTime);
+        } else {
+            settings.append("day=").append(TimeUnit.MILLISECONDS.toDays(stop));
+        }
+        settings.append('\n');
+        for (String name : new TreeSet<>(Config.allPropertyNames())) {
+            if (!name.startsWith("exporter.") && !ConfigManager.hasProperty(name)) {
+                settings.append(name).append('=').append(Config.get(name)).append('\n');
+            }
+        }
+        return hex(sha256().digest(settings.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    /**
+     * Reads a cached person.
+     * @param key The person key, e.g. the person seed and patient index.
+     * @return The person as its simulation left it, or null on a miss.
+     */
+    public Person get(String key) {
+        String name = fileName(key);
+        synchronized (this) {
+            if (entries.get(name) == null) {
+                misses++;
+                return null;
+            }
+        }
+        File file = new File(directory, name);
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+                new InflaterInputStream(new FileInputStream(file)), 64 * 1024))) {
+            if (in.readInt() != VERSION || !fingerprint.equals(in.readUTF()) || !key.equals(in.readUTF())) {
+                throw new IOException("Cache entry does not match its key");
+            }
+            Person person = (Person) in.readObject();
+            file.setLastModified(System.currentTimeMillis());
+            synchronized (this) {
+                hits++;
+            }
+            return person;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // Evicted meanwhile, or written by another version; simulate again
+            synchronized (this) {
+                misses++;
+                remove(name);
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * Stores a simulated person. Must be called before the person is enriched, so the entry
+     * holds the random number generator as the simulation left it.
+     * @param key The person key.
+     * @param person The person.
+     */
+    public void put(String key, Person person) {
+        String name = fileName(key);
+        File file = new File(directory, name);
+        File temp = new File(directory, name + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(
+                    new DeflaterOutputStream(new FileOutputStream(temp), new Deflater(Deflater.BEST_SPEED)),
+                    64 * 1024))) {
+                out.writeInt(VERSION);
+                out.writeUTF(fingerprint);
+                out.writeUTF(key);
+                out.writeObject(person);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // The cache is an optimization; a person that cannot be stored is simulated next time
+            System.err.println("Unable to cache simulated person " + key + ": " + e.getMessage());
+            temp.delete();
+            return;
+        }
+        synchronized (this) {
+            Long previous = entries.put(name, file.length());
+            totalBytes += file.length() - (previous != null ? previous : 0);
+            evict();
+        }
+    }
+    
+    private void evict() {
+        while (totalBytes > maxBytes && !entries.isEmpty()) {
+            remove(entries.keySet().iterator().next());
+            evictions++;
+        }
+    }
+    
+    private void remove(String name) {
+        Long length = entries.remove(name);
+        if (length != null) {
+            totalBytes -= length;
+            new File(directory, name).delete();
+        }
+    }
+    
+    private String fileName(String key) {
+        byte[] digest = sha256().digest((fingerprint + '\n' + key).getBytes(StandardCharsets.UTF_8));
+        return hex(Arrays.copyOf(digest, 16)) + SUFFIX;
+    }
+    
+    /**
+     * Hashes the Synthea module definitions (modules/**.json) in the jar or directory that
+     * Synthea was loaded from. Computed once per JVM.
+     * @return The hash, as hex, or "unknown" if the modules cannot be located.
+     */
+    static String moduleHash() {
+        String hash = moduleHash;
+        if (hash == null) {
+            hash = computeModuleHash();
+            moduleHash = hash;
+        }
+        return hash;
+    }
+    
+    private static String computeModuleHash() {
+        CodeSource source = Generator.class.getProtectionDomain().getCodeSource();
+        if (source == null || source.getLocation() == null) {
+            return "unknown";
+        }
+        MessageDigest digest = sha256();
+        try {
+            File location = new File(source.getLocation().toURI());
+            if (location.isDirectory()) {
+                Path modules = location.toPath().resolve("modules");
+                if (Files.isDirectory(modules)) {
+                    List<Path> files = new ArrayList<>();
+                    try (Stream<Path> walk = Files.walk(modules)) {
+                        walk.filter(path -> path.toString().endsWith(".json")).sorted().forEach(files::add);
+                    }
+                    for (Path file : files) {
+                        digest.update(modules.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                        digest.update(Files.readAllBytes(file));
+                    }
+                }
+            } else {
+                try (JarFile jar = new JarFile(location)) {
+                    TreeSet<String> names = new TreeSet<>();
+                    Enumeration<JarEntry> jarEntries = jar.entries();
+                    while (jarEntries.hasMoreElements()) {
+                        String name = jarEntries.nextElement().getName();
+                        if (name.startsWith("modules/") && name.endsWith(".json")) {
+                            names.add(name);
+                        }
+                    }
+                    byte[] buffer = new byte[64 * 1024];
+                    for (String name : names) {
+                        digest.update(name.getBytes(StandardCharsets.UTF_8));
+                        try (InputStream in = jar.getInputStream(jar.getEntry(name))) {
+                            int read;
+                            while ((read = in.read(buffer)) > 0) {
+                                digest.update(buffer, 0, read);
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            System.err.println("Unable to hash Synthea modules: " + e.getMessage());
+            return "unknown";
+        }
+        return hex(digest.digest());
+    }
+    
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static String hex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xf, 16);
+            hex[i * 2 + 1] = Character.forDigit(bytes[i] & 0xf, 16);
+        }
+        return new String(hex);
+    }
+    
+    // Getters
+    
+    public String getFingerprint() {
+        return fingerprint;
+    }
+    
+    public synchronized long getHits() {
+        return hits;
+    }
+    
+    public synchronized long getMisses() {
+        return misses;
+    }
+    
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+    
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    public synchronized long getBytes() {
+        return totalBytes;
+    }
+}
@@ -0,0 +1,277 @@
+package com.healthcaremock.generator.storage;
+
+import com.healthcaremock.generator.EnhancedPatientData;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An append-only patient list that keeps at most a configured number of bytes of patients
+ * on the heap and spills the rest to disk.
+ *
+ * <p>Once the estimated size of resident patients exceeds the budget, the oldest resident
+ * patients are serialized into segment files. Full segments are memory-mapped for reading;
+ * {@link #get(int)} deserializes spilled patients on demand and keeps the most recently read
+ * ones in a small LRU cache. Callers that iterate a {@code List<EnhancedPatientData>} keep
+ * working for populations larger than the heap.
+ *
+ * <p>Patient sizes are estimated from a running average of serialized sizes, sampled
+ * rather than measured for every patient. All methods are synchronized.
+ */
+public class SpillingPatientList extends AbstractList<EnhancedPatientData> implements Closeable {
+    private static final long SEGMENT_BYTES = 256L * 1024 * 1024;
+    // Serialize every Nth patient to refresh the size estimate while nothing is spilling
+    private static final int SIZE_SAMPLE_INTERVAL = 64;
+    
+    private final long heapBudgetBytes;
+    private final File spillDirectory;
+    private final Map<Integer, EnhancedPatientData> cache;
+    private final List<EnhancedPatientData> resident;
+    private final List<Segment> segments;
+    
+    private int[] segmentOf = new int[1024];
+    private long[] offsetOf = new long[1024];
+    private int[] lengthOf = new int[1024];
+    private int size;
+    private int spilledCount;
+    private long residentBytes;
+    private long sampledBytes;
+    private int sampledCount;
+    
+    /**
+     * Creates a list that never spills.
+     */
+    public SpillingPatientList() {
+        this(Long.MAX_VALUE, new File(System.getProperty("java.io.tmpdir")), 0);
+    }
+    
+    /**
+     * Creates a list with a heap budget.
+     * @param heapBudgetBytes The estimated bytes of patients to keep on the heap.
+     * @param spillDirectory Where segment files are created.
+     * @param cacheSize The number of spilled patients to keep after reading them back.
+     */
+    public SpillingPatientList(long heapBudgetBytes, File spillDirectory, int cacheSize) {
+        this.heapBudgetBytes = heapBudgetBytes;
+        this.spillDirectory = spillDirectory;
+        this.resident = new ArrayList<>();
+        this.segments = new ArrayList<>();
+        this.cache = new LinkedHashMap<Integer, EnhancedPatientData>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, EnhancedPatientData> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+    
+    @Override
+    public synchronized boolean add(EnhancedPatientData patient) {
+        if (size == segmentOf.length) {
+            int capacity = size * 2;
+            segmentOf = Arrays.copyOf(segmentOf, capacity);
+            offsetOf = Arrays.copyOf(offsetOf, capacity);
+            lengthOf = Arrays.copyOf(lengthOf, capacity);
+        }
+        segmentOf[size] = -1;
+        resident.add(patient);
+        size++;
+        modCount++;
+        
+        if (heapBudgetBytes != Long.MAX_VALUE) {
+            if (sampledCount == 0 || size % SIZE_SAMPLE_INTERVAL == 0) {
+                recordSample(serialize(patient).length);
+            }
+            residentBytes += estimatedSize();
+            while (residentBytes > heapBudgetBytes && spilledCount < size - 1) {
+                spillOldest();
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public synchronized EnhancedPatientData get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        EnhancedPatientData patient = resident.get(index);
+        if (patient != null) {
+            return patient;
+        }
+        patient = cache.get(index);
+        if (patient == null) {
+            patient = deserialize(segments.get(segmentOf[index]).read(offsetOf[index], lengthOf[index]));
+            cache.put(index, patient);
+        }
+        return patient;
+    }
+    
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+    
+    /**
+     * Gets the number of patients currently spilled to disk.
+     * @return The spilled count.
+     */
+    public synchronized int getSpilledCount() {
+        return spilledCount;
+    }
+    
+    /**
+     * Deletes the segment files. The list must not be used afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            segment.delete();
+        }
+        segments.clear();
+        cache.clear();
+    }
+    
+    private void spillOldest() {
+        int index = spilledCount;
+        EnhancedPatientData patient = resident.get(index);
+        byte[] bytes = serialize(patient);
+        recordSample(bytes.length);
+        
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.length + bytes.length > SEGMENT_BYTES) {
+            if (segment != null) {
+                segment.seal();
+            }
+            segment = new Segment(spillDirectory);
+            segments.add(segment);
+        }
+        
+        offsetOf[index] = segment.append(bytes);
+        lengthOf[index] = bytes.length;
+        segmentOf[index] = segments.size() - 1;
+        resident.set(index, null);
+        spilledCount++;
+        residentBytes = Math.max(0, residentBytes - estimatedSize());
+    }
+    
+    private long estimatedSize() {
+        return sampledCount == 0 ? 0 : sampledBytes / sampledCount;
+    }
+    
+    private void recordSample(int bytes) {
+        sampledBytes += bytes;
+        sampledCount++;
+    }
+    
+    private static byte[] serialize(EnhancedPatientData patient) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+            out.writeObject(patient);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to spill patient", e);
+        }
+        return buffer.toByteArray();
+    }
+    
+    private static EnhancedPatientData deserialize(byte[] bytes) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (EnhancedPatientData) in.readObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read spilled patient", e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Unable to read spilled patient", e);
+        }
+    }
+    
+    /**
+     * A spill file. Appended to through its channel while active, then memory-mapped once full.
+     */
+    private static final class Segment {
+        private final File file;
+        private final FileChannel channel;
+        private MappedByteBuffer mapped;
+        private long length;
+        
+        Segment(File directory) {
+            try {
+                directory.mkdirs();
+                this.file = File.createTempFile("patients-", ".seg", directory);
+                this.file.deleteOnExit();
+                this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to create spill segment", e);
+            }
+        }
+        
+        long append(byte[] bytes) {
+            long offset = length;
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, offset + buffer.position());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to spill patient to " + file, e);
+            }
+            length += bytes.length;
+            return offset;
+        }
+        
+        void seal() {
+            try {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to map spill segment " + file, e);
+            }
+        }
+        
+        byte[] read(long offset, int count) {
+            byte[] bytes = new byte[count];
+            if (mapped != null) {
+                ByteBuffer view = mapped.duplicate();
+                view.position((int) offset);
+                view.get(bytes);
+                return bytes;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            try {
+                while (buffer.hasRemaining()) {
+                    int read = channel.read(buffer, offset + buffer.position());
+                    if (read < 0) {
+                        throw new IOException("Unexpected end of spill segment");
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read spill segment " + file, e);
+            }
+            return bytes;
+        }
+        
+        void delete() {
+            mapped = null;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Best effort; the file is also deleted on exit
+            }
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.healthcaremock.generator;
+
+import org.junit.jupiter.api.Test;
+import org.mitre.synthea.engine.Module;
+import org.mitre.synthea.world.agents.Person;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SimulationGuardTest {
+    
+    @Test
+    void abandonedSimulationStopsRunningModules() {
+        assertTrue(SimulationGuard.install());
+        Module module = Module.getModuleByPath("a");
+        assertTrue(module instanceof GuardedModule);
+        
+        AtomicInteger checks = new AtomicInteger();
+        Person person = new Person(1);
+        Person result = SimulationGuard.run(p -> checks.incrementAndGet() > 1, () -> {
+            assertFalse(module.process(person, 1));
+            assertFalse(module.process(person, 1));
+            assertTrue(module.process(person, 2));
+            assertTrue(module.process(person, 3));
+            return person;
+        });
+        assertNull(result);
+        // Checked once per time step, and not after the simulation was abandoned
+        assertEquals(2, checks.get());
+    }
+    
+    @Test
+    void interruptAbandonsTheSimulation() {
+        SimulationGuard.install();
+        Module module = Module.getModuleByPath("a");
+        Person person = new Person(2);
+        try {
+            Person result = SimulationGuard.run(null, () -> {
+                assertFalse(module.process(person, 1));
+                Thread.currentThread().interrupt();
+                assertTrue(module.process(person, 1));
+                return person;
+            });
+            assertNull(result);
+        } finally {
+            Thread.interrupted();
+        }
+        
+        // A run that is not abandoned returns its person, and outside a run modules run as usual
+        assertSame(person, SimulationGuard.run(null, () -> person));
+        assertFalse(module.process(person, 4));
+    }
+}
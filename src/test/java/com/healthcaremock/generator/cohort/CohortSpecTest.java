@@ -0,0 +1,86 @@
+package com.healthcaremock.generator.cohort;
+
+import org.junit.jupiter.api.Test;
+import org.mitre.synthea.world.agents.Person;
+import org.mitre.synthea.world.concepts.HealthRecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CohortSpecTest {
+    
+    private static HealthRecord.Encounter encounter(Person person) {
+        HealthRecord.Encounter encounter = person.record.new Encounter(0, "wellness");
+        encounter.conditions = new ArrayList<>();
+        person.record.encounters.add(encounter);
+        return encounter;
+    }
+    
+    private static HealthRecord.Entry diagnose(Person person, HealthRecord.Encounter encounter,
+            String code) {
+        HealthRecord.Code coded = new HealthRecord.Code();
+        coded.code = code;
+        HealthRecord.Entry condition = person.record.new Entry(0, "condition");
+        condition.codes = Collections.singletonList(coded);
+        encounter.conditions.add(condition);
+        return condition;
+    }
+    
+    private static Person person() {
+        Person person = new Person(1);
+        person.record = new HealthRecord(person);
+        return person;
+    }
+    
+    @Test
+    void codeListsAreTrimmedAndSkipEmptyEntries() {
+        CohortSpec cohort = CohortSpec.parse("conditions= 44054006, ,38341003,;excludedConditions=,");
+        assertEquals(Arrays.asList("44054006", "38341003"), cohort.getConditions());
+        assertEquals(Collections.emptyList(), cohort.getExcludedConditions());
+    }
+    
+    @Test
+    void exclusionCheckFiresOnceAnExcludedConditionIsDiagnosed() {
+        CohortSpec cohort = CohortSpec.parse("excludedConditions=44054006");
+        Predicate<Person> check = cohort.exclusionCheck();
+        Person person = person();
+        assertFalse(check.test(person));
+        
+        HealthRecord.Encounter first = encounter(person);
+        diagnose(person, first, "38341003");
+        assertFalse(check.test(person));
+        
+        // Added to the encounter the check has already read
+        HealthRecord.Entry diabetes = diagnose(person, first, "44054006");
+        assertTrue(check.test(person));
+        
+        // Resolved later, the person still never matches
+        diabetes.stop = 1;
+        assertFalse(cohort.matchesClinical(person));
+    }
+    
+    @Test
+    void exclusionCheckSeesConditionsInLaterEncounters() {
+        CohortSpec cohort = CohortSpec.parse("excludedConditions=44054006");
+        Predicate<Person> check = cohort.exclusionCheck();
+        Person person = person();
+        diagnose(person, encounter(person), "38341003");
+        assertFalse(check.test(person));
+        encounter(person);
+        assertFalse(check.test(person));
+        diagnose(person, encounter(person), "44054006");
+        assertTrue(check.test(person));
+    }
+    
+    @Test
+    void noExclusionCheckWithoutExcludedConditions() {
+        assertNull(CohortSpec.parse("conditions=44054006").exclusionCheck());
+    }
+}
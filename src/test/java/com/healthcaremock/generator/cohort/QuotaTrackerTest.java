@@ -0,0 +1,85 @@
+package com.healthcaremock.generator.cohort;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuotaTrackerTest {
+    
+    private static CompletableFuture<String> awaitGender(QuotaTracker tracker) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return tracker.awaitGender();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+    
+    @Test
+    void waitingWorkerGetsTheSlotOfARejectedCandidate() throws Exception {
+        QuotaTracker tracker = new QuotaTracker(1,
+                new PrevalenceTargets(Collections.emptyMap(), 1.0), 0, 0);
+        assertEquals("F", tracker.awaitGender());
+        
+        CompletableFuture<String> waiting = awaitGender(tracker);
+        Thread.sleep(100);
+        assertFalse(waiting.isDone());
+        
+        tracker.releaseGender("F");
+        assertEquals("F", waiting.get(5, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    void waitingWorkerStopsOnceThePopulationIsComplete() throws Exception {
+        QuotaTracker tracker = new QuotaTracker(1,
+                new PrevalenceTargets(Collections.emptyMap(), 1.0), 0, 0);
+        assertEquals("F", tracker.awaitGender());
+        
+        CompletableFuture<String> waiting = awaitGender(tracker);
+        Thread.sleep(100);
+        assertTrue(tracker.tryAdmit(0));
+        assertNull(waiting.get(5, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    void wouldFitReservesNothing() {
+        Map<Stratum, Double> prevalence = new EnumMap<>(Stratum.class);
+        prevalence.put(Stratum.SMOKER, 0.5);
+        QuotaTracker tracker = new QuotaTracker(2, new PrevalenceTargets(prevalence, 0.5), 0, 0);
+        int smoker = Stratum.SMOKER.bit();
+        
+        assertTrue(tracker.wouldFit(smoker));
+        assertTrue(tracker.wouldFit(smoker));
+        assertTrue(tracker.tryAdmit(smoker));
+        assertFalse(tracker.wouldFit(smoker));
+        assertTrue(tracker.wouldFit(0));
+    }
+    
+    @Test
+    void withdrawnAdmissionFreesItsStrataAndSlot() throws Exception {
+        Map<Stratum, Double> prevalence = new EnumMap<>(Stratum.class);
+        prevalence.put(Stratum.SMOKER, 0.0);
+        QuotaTracker tracker = new QuotaTracker(1, new PrevalenceTargets(prevalence, 1.0), 0, 0);
+        int smoker = Stratum.SMOKER.bit();
+        assertEquals("F", tracker.awaitGender());
+        assertTrue(tracker.tryAdmit(0));
+        assertTrue(tracker.isComplete());
+        
+        tracker.withdraw(0, "F");
+        assertFalse(tracker.isComplete());
+        assertEquals(0, tracker.getAdmitted());
+        assertFalse(tracker.wouldFit(smoker));
+        assertTrue(tracker.wouldFit(0));
+        assertEquals("F", tracker.reserveGender());
+    }
+}
@@ -0,0 +1,66 @@
+package com.healthcaremock.generator.enrichment;
+
+import com.healthcaremock.generator.export.ExportProfile;
+import com.healthcaremock.generator.models.EnhancedPatientData;
+import com.healthcaremock.generator.models.SocialDeterminantsOfHealth;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mitre.synthea.helpers.RandomNumberGenerator;
+import org.mitre.synthea.world.agents.Person;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FhirBundleEnricherTest {
+    private static final String BUNDLE = "{\"resourceType\": \"Bundle\", \"type\": \"collection\", \"entry\": ["
+            + "{\"fullUrl\": \"urn:uuid:p1\", \"resource\": {\"resourceType\": \"Patient\", \"id\": \"p1\","
+            + " \"gender\": \"female\", \"birthDate\": \"1980-02-03\", \"address\": [{\"state\": \"Ohio\"}]}},"
+            + "{\"fullUrl\": \"urn:uuid:e1\", \"resource\": {\"resourceType\": \"Encounter\", \"id\": \"e1\","
+            + " \"period\": {\"start\": \"2020-01-01T10:00:00+00:00\"}, \"length\": 1.50}}]}";
+    
+    @TempDir
+    File dir;
+    
+    private static FhirBundleEnricher enricher() {
+        Enricher sdoh = new Enricher() {
+            @Override
+            public String getName() {
+                return "sdoh";
+            }
+            
+            @Override
+            public void enrich(Person person, EnhancedPatientData data, RandomNumberGenerator random) {
+                SocialDeterminantsOfHealth factors = new SocialDeterminantsOfHealth(data.getPatientId());
+                factors.setFactor("income", 42000L);
+                factors.setFactor("food_insecurity", false);
+                data.setSocialDeterminants(factors);
+            }
+        };
+        return new FhirBundleEnricher(new EnrichmentPipeline(Collections.singletonList(sdoh)),
+                ExportProfile.FULL, 1);
+    }
+    
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+    
+    @Test
+    void enrichingTwiceReplacesTheEarlierResources() throws IOException {
+        File bundle = new File(dir, "p1.json");
+        Files.write(bundle.toPath(), BUNDLE.getBytes(StandardCharsets.UTF_8));
+        
+        enricher().enrichFile(bundle, bundle);
+        String once = read(bundle);
+        assertTrue(once.contains("\"income\""), once);
+        assertTrue(once.contains("1.50"), "numbers are copied as written");
+        
+        enricher().enrichFile(bundle, bundle);
+        assertEquals(once, read(bundle));
+    }
+}
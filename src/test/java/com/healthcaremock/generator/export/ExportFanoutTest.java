@@ -0,0 +1,58 @@
+package com.healthcaremock.generator.export;
+
+import com.healthcaremock.generator.EnhancedPatientData;
+import org.junit.jupiter.api.Test;
+import org.mitre.synthea.world.agents.Person;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ExportFanoutTest {
+    
+    /**
+     * Collects the IDs of the patients it is given.
+     */
+    private static final class CollectingWriter implements FormatWriter {
+        private final List<String> ids = Collections.synchronizedList(new ArrayList<>());
+        
+        @Override
+        public String getName() {
+            return "collect";
+        }
+        
+        @Override
+        public void open() {
+        }
+        
+        @Override
+        public void write(ExportRecord record) {
+            ids.add(record.getPatientId());
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
+    
+    @Test
+    void acceptAfterCloseFails() throws Exception {
+        CollectingWriter writer = new CollectingWriter();
+        ExportFanout fanout = new ExportFanout(Collections.singletonList(writer), 1);
+        fanout.accept(new EnhancedPatientData(new Person(1L)));
+        fanout.close();
+        assertEquals(1, writer.ids.size());
+        assertThrows(IllegalStateException.class,
+                () -> fanout.accept(new EnhancedPatientData(new Person(2L))));
+    }
+    
+    @Test
+    void patientWithoutIdGetsOneFromItsSeed() {
+        String id = PatientJsonExporter.getPatientId(new EnhancedPatientData(new Person(7L)));
+        assertEquals(id, PatientJsonExporter.getPatientId(new EnhancedPatientData(new Person(7L))));
+        assertEquals(36, id.length());
+    }
+}
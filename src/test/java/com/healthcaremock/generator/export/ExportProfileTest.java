@@ -0,0 +1,57 @@
+package com.healthcaremock.generator.export;
+
+import com.healthcaremock.generator.models.EnhancedPatientData;
+import com.healthcaremock.generator.models.PatientReportedOutcome;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExportProfileTest {
+    
+    private static EnhancedPatientData withOutcomes(String... instruments) {
+        EnhancedPatientData data = new EnhancedPatientData("patient-1");
+        for (String instrument : instruments) {
+            PatientReportedOutcome outcome = new PatientReportedOutcome("patient-1", "encounter-1");
+            outcome.setInstrumentType(instrument);
+            outcome.addResponse("q1", 1L);
+            outcome.setTotalScore(1);
+            data.addPatientReportedOutcome(outcome);
+        }
+        return data;
+    }
+    
+    @Test
+    void responsesAloneSelectEveryInstrument() {
+        ExportProfile profile = ExportProfile.parse("responses", "pro.responses");
+        List<PatientReportedOutcome> outcomes =
+                profile.project(withOutcomes("PHQ-9", "GAD-7")).getPatientReportedOutcomes();
+        assertEquals(2, outcomes.size());
+        assertEquals(1L, outcomes.get(0).getResponses().get("q1"));
+    }
+    
+    @Test
+    void instrumentSelectionLeavesOutResponses() {
+        ExportProfile profile = ExportProfile.parse("phq", "pro.PHQ-9");
+        List<PatientReportedOutcome> outcomes =
+                profile.project(withOutcomes("PHQ-9", "GAD-7")).getPatientReportedOutcomes();
+        assertEquals(1, outcomes.size());
+        assertEquals("PHQ-9", outcomes.get(0).getInstrumentType());
+        assertTrue(outcomes.get(0).getResponses().isEmpty());
+    }
+    
+    @Test
+    void projectsDataWithoutEntityLists() {
+        EnhancedPatientData data = new EnhancedPatientData("patient-1");
+        data.setWearableData(null);
+        data.setImagingReports(null);
+        data.setPatientReportedOutcomes(null);
+        ExportProfile profile = ExportProfile.parse("partial", "wearable.steps, imaging.findings, pro.PHQ-9");
+        EnhancedPatientData projected = profile.project(data);
+        assertTrue(projected.getWearableData().isEmpty());
+        assertTrue(projected.getImagingReports().isEmpty());
+        assertTrue(projected.getPatientReportedOutcomes().isEmpty());
+    }
+}
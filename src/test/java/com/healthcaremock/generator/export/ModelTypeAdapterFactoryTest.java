@@ -0,0 +1,118 @@
+package com.healthcaremock.generator.export;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.healthcaremock.generator.models.EnhancedPatientData;
+import com.healthcaremock.generator.models.ImagingReport;
+import com.healthcaremock.generator.models.PatientReportedOutcome;
+import com.healthcaremock.generator.models.SocialDeterminantsOfHealth;
+import com.healthcaremock.generator.models.WearableData;
+import org.junit.jupiter.api.Test;
+import org.mitre.synthea.world.agents.Person;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class ModelTypeAdapterFactoryTest {
+    
+    private final Gson adapters = ModelTypeAdapterFactory.gson();
+    private final Gson reflective = new Gson();
+    
+    /**
+     * A model with every kind of field populated, and some left null.
+     */
+    private static EnhancedPatientData model() {
+        EnhancedPatientData data = new EnhancedPatientData("patient-1");
+        
+        SocialDeterminantsOfHealth sdoh = new SocialDeterminantsOfHealth("patient-1");
+        sdoh.setFactor("income", 52000L);
+        sdoh.setFactor("food_insecurity", true);
+        sdoh.setFactor("housing_stability", 7.25);
+        sdoh.setFactor("education", "bachelors");
+        data.setSocialDeterminants(sdoh);
+        
+        WearableData wearable = new WearableData("patient-1");
+        wearable.setDeviceType("SmartWatch");
+        wearable.setDeviceId("WD-42");
+        wearable.setRecordedAt(1700000000000L);
+        wearable.addMeasurement("heart_rate", "bpm", 72);
+        wearable.addMeasurement("blood_oxygen", "percent", 97.5);
+        data.addWearableData(wearable);
+        
+        ImagingReport report = new ImagingReport("patient-1", "encounter-1");
+        report.setTimestamp(1700000000000L);
+        report.setModality("X-ray");
+        report.setBodyPart("Chest");
+        report.setProcedureCode("71045");
+        report.setProcedureDisplay("X-ray Chest, single view");
+        report.setImpression("No acute findings.");
+        ImagingReport.Finding finding = new ImagingReport.Finding();
+        finding.setText("Clear lungs");
+        finding.setSignificance("Normal");
+        report.getFindings().add(finding);
+        data.addImagingReport(report);
+        
+        PatientReportedOutcome outcome = new PatientReportedOutcome("patient-1", "encounter-2");
+        outcome.setInstrumentType("PHQ-9");
+        outcome.setInstrumentVersion(1);
+        outcome.setCondition("Depression");
+        outcome.addResponse("q1", 2L);
+        outcome.addResponse("q1_text", "Little interest or pleasure in doing things");
+        outcome.setTotalScore(11);
+        outcome.setInterpretation("Moderate depression");
+        data.addPatientReportedOutcome(outcome);
+        
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("steps", Arrays.asList(100L, 250L));
+        nested.put("source", "manual");
+        data.addAdditionalData("activity", nested);
+        return data;
+    }
+    
+    @Test
+    void writesTheSameJsonAsReflectiveGson() {
+        EnhancedPatientData data = model();
+        assertEquals(reflective.toJson(data), adapters.toJson(data));
+        
+        EnhancedPatientData empty = new EnhancedPatientData("patient-2");
+        assertEquals(reflective.toJson(empty), adapters.toJson(empty));
+    }
+    
+    @Test
+    void readsBackWhatItWrites() {
+        String json = adapters.toJson(model());
+        EnhancedPatientData read = adapters.fromJson(json, EnhancedPatientData.class);
+        assertEquals(json, adapters.toJson(read));
+        
+        ImagingReport report = read.getImagingReports().get(0);
+        assertEquals("Chest", report.getBodyPart());
+        assertEquals("Normal", report.getFindings().get(0).getSignificance());
+        assertEquals(97.5, read.getWearableData().get(0).getMeasurements().get(1).getValue());
+    }
+    
+    @Test
+    void readsWhatReflectiveGsonWrites() {
+        String json = reflective.toJson(model());
+        assertEquals(json, adapters.toJson(adapters.fromJson(json, EnhancedPatientData.class)));
+    }
+    
+    @Test
+    void patientExportOmitsNullModelFields() {
+        Person person = new Person(1L);
+        person.attributes.put(Person.ID, "patient-1");
+        com.healthcaremock.generator.EnhancedPatientData patient =
+                new com.healthcaremock.generator.EnhancedPatientData(person);
+        EnhancedPatientData data = model();
+        patient.setExtendedData(data);
+        
+        String json = PatientJsonExporter.toJson(patient, false);
+        JsonObject extended = JsonParser.parseString(json).getAsJsonObject().getAsJsonObject("extendedData");
+        assertFalse(extended.toString().contains("null"), extended.toString());
+        assertEquals(JsonParser.parseString(reflective.toJson(data)), extended);
+    }
+}
@@ -0,0 +1,43 @@
+package com.healthcaremock.generator.export;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class OutputStageTest {
+    private static final File OPEN_FILES = new File("/proc/self/fd");
+    
+    @TempDir
+    File baseDir;
+    
+    @Test
+    void filesWaitingForACheckpointAreNotKeptOpen() throws Exception {
+        assumeTrue(OPEN_FILES.isDirectory(), "needs /proc/self/fd");
+        int files = 500;
+        int openBefore = OPEN_FILES.list().length;
+        OutputStage stage = new OutputStage(baseDir, false, 4096, files * 2, 16);
+        try {
+            for (int i = 0; i < files; i++) {
+                stage.write(stage.file("json", "patient_" + i + ".json"), ("patient " + i).getBytes(StandardCharsets.UTF_8));
+            }
+            File last = stage.file("json", "patient_" + (files - 1) + ".json");
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (!(last.isFile() && last.length() > 0) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(OPEN_FILES.list().length < openBefore + 50,
+                    OPEN_FILES.list().length - openBefore + " more files open");
+        } finally {
+            stage.close();
+        }
+        assertEquals("patient 7", new String(Files.readAllBytes(
+                stage.file("json", "patient_7.json").toPath()), StandardCharsets.UTF_8));
+    }
+}
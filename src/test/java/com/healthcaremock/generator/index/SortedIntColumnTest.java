@@ -0,0 +1,47 @@
+package com.healthcaremock.generator.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SortedIntColumnTest {
+    
+    private static SortedIntColumn column(int... values) {
+        SortedIntColumn column = new SortedIntColumn();
+        for (int value : values) {
+            column.add(value);
+        }
+        return column;
+    }
+    
+    private static BitSet rows(int... rows) {
+        BitSet set = new BitSet();
+        for (int row : rows) {
+            set.set(row);
+        }
+        return set;
+    }
+    
+    @Test
+    void rangeIsInclusive() {
+        SortedIntColumn column = column(30, 10, 20, 40);
+        assertEquals(rows(0, 2), column.range(20, 30));
+    }
+    
+    @Test
+    void openEndedRangeSkipsMissingValues() {
+        SortedIntColumn column = column(30, SortedIntColumn.MISSING, 10, SortedIntColumn.MISSING, 50);
+        assertEquals(rows(0, 4), column.range(25, Integer.MAX_VALUE));
+        assertEquals(rows(0, 2, 4), column.range(Integer.MIN_VALUE + 1, Integer.MAX_VALUE));
+    }
+    
+    @Test
+    void rangeSeesRowsAddedAfterAQuery() {
+        SortedIntColumn column = column(5, SortedIntColumn.MISSING);
+        assertEquals(rows(0), column.range(0, 10));
+        column.add(7);
+        assertEquals(rows(0, 2), column.range(0, 10));
+    }
+}
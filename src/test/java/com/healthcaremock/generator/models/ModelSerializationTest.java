@@ -0,0 +1,83 @@
+package com.healthcaremock.generator.models;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ModelSerializationTest {
+    
+    @SuppressWarnings("unchecked")
+    private static <T> T roundTrip(T value) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (T) in.readObject();
+        }
+    }
+    
+    private static ImagingReport report() {
+        ImagingReport report = new ImagingReport("patient-1", "encounter-1");
+        report.setModality("X-ray");
+        report.setBodyPart("Chest");
+        report.setProcedureCode("71045");
+        report.setProcedureDisplay("X-ray Chest, single view");
+        ImagingReport.Finding finding = new ImagingReport.Finding();
+        finding.setText("No acute findings");
+        finding.setSignificance("Normal");
+        report.getFindings().add(finding);
+        return report;
+    }
+    
+    @Test
+    void javaSerializationKeepsSharedCategoricalStrings() throws Exception {
+        ImagingReport report = roundTrip(report());
+        assertSame(SymbolTable.global().intern("X-ray"), report.getModality());
+        assertSame(SymbolTable.global().intern("Chest"), report.getBodyPart());
+        assertEquals("71045", report.getProcedureCode());
+        assertSame(SymbolTable.global().intern("Normal"), report.getFindings().get(0).getSignificance());
+        
+        WearableData data = new WearableData("patient-1");
+        data.setDeviceType("SmartWatch");
+        data.addMeasurement("heart_rate", "bpm", 72);
+        WearableData copy = roundTrip(data);
+        assertSame(SymbolTable.global().intern("SmartWatch"), copy.getDeviceType());
+        assertSame(SymbolTable.global().intern("heart_rate"), copy.getMeasurements().get(0).getType());
+        assertSame(SymbolTable.global().intern("bpm"), copy.getMeasurements().get(0).getUnit());
+        
+        PatientReportedOutcome outcome = new PatientReportedOutcome("patient-1", "encounter-1");
+        outcome.setInstrumentType("PHQ-9");
+        outcome.setCondition("Depression");
+        PatientReportedOutcome outcomeCopy = roundTrip(outcome);
+        assertSame(SymbolTable.global().intern("PHQ-9"), outcomeCopy.getInstrumentType());
+        assertEquals("Depression", outcomeCopy.getCondition());
+    }
+    
+    @Test
+    void reflectiveGsonSeesCategoricalFields() {
+        Gson gson = new Gson();
+        JsonObject report = gson.toJsonTree(report()).getAsJsonObject();
+        assertEquals("X-ray", report.get("modality").getAsString());
+        assertEquals("Chest", report.get("bodyPart").getAsString());
+        assertEquals("Normal", report.getAsJsonArray("findings").get(0).getAsJsonObject()
+                .get("significance").getAsString());
+        
+        WearableData data = new WearableData("patient-1");
+        data.setDeviceType("SmartWatch");
+        data.addMeasurement("heart_rate", "bpm", 72);
+        JsonObject wearable = gson.toJsonTree(data).getAsJsonObject();
+        assertEquals("SmartWatch", wearable.get("deviceType").getAsString());
+        assertEquals("bpm", wearable.getAsJsonArray("measurements").get(0).getAsJsonObject()
+                .get("unit").getAsString());
+    }
+}
@@ -0,0 +1,87 @@
+package com.healthcaremock.generator.scheduler;
+
+import com.healthcaremock.generator.EnhancedPatientData;
+import org.junit.jupiter.api.Test;
+import org.mitre.synthea.world.agents.Person;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JobSchedulerTest {
+    
+    @Test
+    void jobWaitsForItsResultsToBeTaken() throws Exception {
+        JobScheduler scheduler = new JobScheduler(4, 2);
+        try {
+            AtomicInteger started = new AtomicInteger();
+            ScheduledJob job = scheduler.submit("test", 10, Priority.BATCH, 0, 1, (index, attempt) -> {
+                started.incrementAndGet();
+                return new EnhancedPatientData(new Person(index));
+            });
+            
+            Thread.sleep(200);
+            assertTrue(started.get() <= 2, "started " + started.get() + " patients");
+            
+            int taken = 0;
+            while (job.take() != null) {
+                taken++;
+            }
+            assertEquals(10, taken);
+            assertEquals(10, started.get());
+            assertNull(job.take());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+    
+    @Test
+    void onlyKeptAttemptsAreAccepted() throws Exception {
+        JobScheduler scheduler = new JobScheduler(4);
+        try {
+            List<EnhancedPatientData> accepted = new CopyOnWriteArrayList<>();
+            ScheduledJob job = scheduler.submit("test", 3, Priority.BATCH, 100, 2,
+                    new JobScheduler.PatientTask() {
+                        @Override
+                        public EnhancedPatientData generate(int index, int attempt) {
+                            if (attempt == 0) {
+                                // Overrun the deadline without noticing the interrupt
+                                long end = System.nanoTime() + 300_000_000L;
+                                while (System.nanoTime() < end) {
+                                    Thread.onSpinWait();
+                                }
+                            }
+                            return new EnhancedPatientData(new Person(index * 10 + attempt));
+                        }
+                        
+                        @Override
+                        public void accepted(EnhancedPatientData patient) {
+                            accepted.add(patient);
+                        }
+                    });
+            
+            Set<EnhancedPatientData> taken = new HashSet<>();
+            EnhancedPatientData patient;
+            while ((patient = job.take()) != null) {
+                taken.add(patient);
+            }
+            // Let the abandoned stragglers return
+            Thread.sleep(400);
+            
+            assertEquals(3, taken.size());
+            assertEquals(taken, new HashSet<>(accepted));
+            assertEquals(3, accepted.size());
+            for (EnhancedPatientData kept : accepted) {
+                assertEquals(1, kept.getPerson().seed % 10, "kept an expired attempt");
+            }
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.healthcaremock.generator.server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GenerationJobTest {
+    
+    @TempDir
+    File root;
+    
+    @Test
+    void populationIsCapped() {
+        GenerationJob job = new GenerationJob();
+        job.setPopulation(100);
+        assertDoesNotThrow(() -> job.validate(100));
+        assertThrows(IllegalArgumentException.class, () -> job.validate(99));
+    }
+    
+    @Test
+    void outputPathMustStayUnderTheRoot() throws IOException {
+        GenerationJob job = new GenerationJob();
+        job.setOutputPath(new File(root, "run1").getPath());
+        assertEquals(new File(root, "run1").getCanonicalFile(), job.resolveOutputDirectory(root));
+        
+        job.setOutputPath(new File(root, "run1/../../elsewhere").getPath());
+        assertThrows(IllegalArgumentException.class, () -> job.resolveOutputDirectory(root));
+        job.setOutputPath(root.getPath() + "-sibling");
+        assertThrows(IllegalArgumentException.class, () -> job.resolveOutputDirectory(root));
+    }
+    
+    @Test
+    void onlyLocalOriginsAreAccepted() {
+        assertTrue(GenerationServer.isLocalOrigin("http://localhost:3000"));
+        assertTrue(GenerationServer.isLocalOrigin("http://127.0.0.1"));
+        assertTrue(GenerationServer.isLocalOrigin("http://[::1]:8085"));
+        assertFalse(GenerationServer.isLocalOrigin("https://example.com"));
+        assertFalse(GenerationServer.isLocalOrigin("http://localhost.example.com"));
+        assertFalse(GenerationServer.isLocalOrigin("null"));
+    }
+}